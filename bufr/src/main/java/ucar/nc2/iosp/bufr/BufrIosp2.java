@@ -12,10 +12,15 @@ import ucar.nc2.*;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
 import ucar.nc2.util.CancelTask;
 
+import ucar.unidata.io.InMemoryRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * IOSP for BUFR data - version 2, use the preprocessor
@@ -38,6 +43,49 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     debugIter = debugFlag.isSet("Bufr/iter");
   }
 
+  // number of threads decoding messages; <= 1 means decode on the reading thread
+  static private int parallelism = 1;
+  static private ExecutorService executor;
+
+  /**
+   * Set the number of threads used to decode BUFR messages when the obs sequence of a file is read.
+   * Messages are independent of each other, so the messages following the current one are decoded on other threads,
+   * at most 2 * parallelism messages ahead. The threads are shared by all files.
+   *
+   * @param n number of threads; <= 1 means decode each message when it is needed (default)
+   */
+  static public synchronized void setParallelism(int n) {
+    n = Math.max(n, 1);
+    if (n == parallelism) return;
+    shutdown();
+    parallelism = n;
+  }
+
+  static public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Stop the threads, letting running tasks complete. They are started again if needed.
+   */
+  static public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  static private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread t = new Thread(r, "BufrIosp2");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
   //static public final Set<NetcdfDataset.Enhance> enhance = Collections.unmodifiableSet(EnumSet.of(NetcdfDataset.Enhance.ScaleMissing));
 
 
@@ -132,6 +180,8 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
   private class SeqIter implements StructureDataIterator {
     StructureDataIterator currIter;
     int recnum = 0;
+    private final int nthreads = getParallelism();
+    private final ArrayDeque<Future<ArrayStructure>> ahead = new ArrayDeque<>(); // messages being decoded, in order
 
     SeqIter() {
       reset();
@@ -141,6 +191,7 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     public StructureDataIterator reset() {
       recnum = 0;
       currIter = null;
+      cancelAhead();
       scanner.reset();
       return this;
     }
@@ -170,30 +221,82 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     }
 
     private StructureDataIterator readNextMessage() throws IOException {
-      if (!scanner.hasNext()) return null;
-      Message m = scanner.next();
-      if (m == null) {
+      if (nthreads <= 1) {
+        Message m = nextDataMessage();
+        return (m == null) ? null : readMessage(m, raf).getStructureDataIterator();
+      }
+
+      fillAhead();
+      Future<ArrayStructure> future = ahead.poll();
+      if (future == null) return null;
+      fillAhead();
+
+      try {
+        return future.get().getStructureDataIterator();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted reading " + raf.getLocation(), e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    // The file is only read on this thread: each data section is read into memory, and decoded from there
+    private void fillAhead() throws IOException {
+      while (ahead.size() < 2 * nthreads) {
+        Message m = nextDataMessage();
+        if (m == null) return;
+
+        long dataPos = m.dataSection.getDataPos();
+        int len = (int) Math.min(m.dataSection.getDataLength() + 4, raf.length() - dataPos); // include the end section
+        byte[] data = new byte[len];
+        raf.seek(dataPos);
+        raf.readFully(data);
+        RandomAccessFile dataRaf = new InMemoryRandomAccessFile(raf.getLocation(), data);
+        Message inMemory = new Message(m, dataRaf, new BufrDataSection(0, m.dataSection.getDataLength()));
+
+        ahead.add(getExecutor().submit(() -> readMessage(inMemory, dataRaf)));
+      }
+    }
+
+    private void cancelAhead() {
+      for (Future<ArrayStructure> future : ahead)
+        future.cancel(false);
+      ahead.clear();
+    }
+
+    // the next message to be read, or null if there are no more
+    private Message nextDataMessage() throws IOException {
+      while (scanner.hasNext()) {
+        Message m = scanner.next();
+        if (m == null) {
           log.warn("BUFR scanner hasNext() true but next() null!");
           return null;
-      }
-      if (m.containsBufrTable()) // data messages only
-        return readNextMessage();
-
-      // mixed messages
-      if (!protoMessage.equals(m)) {
-        if (messHash == null) messHash = new HashSet<>(20);
-        if (!messHash.contains(m.hashCode()))  {
-          log.warn("File " + raf.getLocation() + " has different BUFR message types hash=" + protoMessage.hashCode() + "; skipping");
-          messHash.add(m.hashCode());
         }
-        return readNextMessage();
-      }
+        if (m.containsBufrTable()) // data messages only
+          continue;
+
+        // mixed messages
+        if (!protoMessage.equals(m)) {
+          if (messHash == null) messHash = new HashSet<>(20);
+          if (!messHash.contains(m.hashCode())) {
+            log.warn("File " + raf.getLocation() + " has different BUFR message types hash=" + protoMessage.hashCode() + "; skipping");
+            messHash.add(m.hashCode());
+          }
+          continue;
+        }
 
-      ArrayStructure as = readMessage(m);
-      return as.getStructureDataIterator();
+        m.shareRootDataDescriptor(protoMessage); // otherwise the same tree is constructed for every message
+        return m;
+      }
+      return null;
     }
 
-    private ArrayStructure readMessage(Message m) throws IOException {
+    private ArrayStructure readMessage(Message m, RandomAccessFile raf) throws IOException {
       ArrayStructure as;
       if (m.dds.isCompressed()) {
         MessageCompressedDataReader reader = new MessageCompressedDataReader();
@@ -214,6 +317,7 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     public void close() {
       if (currIter != null) currIter.close();
       currIter = null;
+      cancelAhead();
       if (debugIter) System.out.printf("BUFR read recnum %d%n", recnum);
     }
   }
@@ -218,6 +218,8 @@ public class DataDescriptor {
    * @param toList to here
    */
   static public void transferInfo(List<DataDescriptor> fromList, List<DataDescriptor> toList) { // get info from proto message
+    if (fromList == toList) return; // the message shares the tree of the proto message
+
     if (fromList.size() != toList.size())
       throw new IllegalArgumentException("list sizes dont match "+fromList.size()+" != "+toList.size());
 
@@ -36,6 +36,7 @@ public class Message {
   private String header; // wmo header
   private long startPos; // starting pos in raf
   private byte[] raw; // raw bytes
+  private boolean embeddedTables; // lookup uses tables embedded in the file
 
   // bit counting
   BitCounterUncompressed[] counterDatasets; // uncompressed: one for each dataset
@@ -51,8 +52,23 @@ public class Message {
     lookup = BufrTableLookup.factory(this);
   }
 
+  // the same message, with its data section read from somewhere else
+  Message(Message from, RandomAccessFile raf, BufrDataSection dataSection) {
+    this.raf = raf;
+    this.is = from.is;
+    this.ids = from.ids;
+    this.dds = from.dds;
+    this.dataSection = dataSection;
+    this.lookup = from.lookup;
+    this.root = from.getRootDataDescriptor();
+    this.header = from.header;
+    this.startPos = from.startPos;
+    this.embeddedTables = from.embeddedTables;
+  }
+
   void setTableLookup(TableLookup lookup) {
     this.lookup.setTableLookup(lookup);
+    this.embeddedTables = true;
   }
 
   public void close() throws IOException {
@@ -128,6 +144,27 @@ public class Message {
     return root;
   }
 
+  /**
+   * Use the DataDescriptor tree of another message, if it has the same data descriptors and tables,
+   * rather than constructing the same tree again.
+   *
+   * @param other share the tree of this message
+   * @return true if the tree is shared
+   */
+  boolean shareRootDataDescriptor(Message other) {
+    if (root != null) return root == other.root;
+    if (embeddedTables || other.embeddedTables) return false;
+    if (!equals(other)) return false;
+    if (is.getBufrEdition() != other.is.getBufrEdition()) return false;
+    if (ids.getSubCenterId() != other.ids.getSubCenterId()) return false;
+    if (ids.getMasterTableId() != other.ids.getMasterTableId()) return false;
+    if (ids.getMasterTableVersion() != other.ids.getMasterTableVersion()) return false;
+    if (ids.getLocalTableVersion() != other.ids.getLocalTableVersion()) return false;
+    if (ids.getLocalSubCategory() != other.ids.getLocalSubCategory()) return false;
+    root = other.getRootDataDescriptor();
+    return true;
+  }
+
   public boolean usesLocalTable() throws IOException {
     DataDescriptor root = getRootDataDescriptor();
     return usesLocalTable(root);
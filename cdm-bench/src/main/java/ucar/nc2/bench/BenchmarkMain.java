@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with the given options, leaving out the benchmarks that cannot run here.
+ * H5iospBenchmark needs the netCDF C library to write its file, which is often not installed.
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+    if (!SyntheticData.canWriteNetcdf4()) {
+      System.out.printf("Skipping H5iospBenchmark: the netCDF C library was not found, so its file cannot be written%n");
+      jmhArgs.add("-e");
+      jmhArgs.add(H5iospBenchmark.class.getSimpleName());
+    }
+    org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+  }
+}
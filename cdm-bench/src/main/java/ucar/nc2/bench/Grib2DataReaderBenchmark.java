@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.nc2.grib.grib2.Grib2DataReader2;
+import ucar.nc2.grib.grib2.Grib2Drs;
+import ucar.nc2.grib.grib2.Grib2SectionBitMap;
+import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unpacking one GRIB-2 record with Grib2DataReader2, as Grib2Record does, for each data representation template
+ * that we can pack (see Grib2Packing).
+ * JPEG 2000 (template 40) is not included, since there is no encoder to make the data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Grib2DataReaderBenchmark {
+  private static final int NY = 721, NX = 1440; // 0.25 degree global
+
+  @Param({"0", "2", "3"})
+  public int template;
+
+  private Grib2Packing packing;
+  private Grib2Drs drs;
+  private Grib2SectionBitMap bitmap;
+  private RandomAccessFile raf;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    float[] values = SyntheticData.field(NY * NX, NX, 0);
+    packing = new Grib2Packing(template, values);
+    drs = packing.makeDrs();
+    bitmap = new Grib2SectionBitMap(0, 255); // no bitmap
+    raf = new InMemoryRandomAccessFile("grib", packing.data);
+    raf.order(RandomAccessFile.BIG_ENDIAN);
+
+    // make sure we are measuring the real thing
+    float[] result = unpack();
+    for (int i = 0; i < values.length; i++) {
+      if (Math.abs(result[i] - values[i]) > 0.051)
+        throw new IllegalStateException("template " + template + " unpacked " + result[i] + " != " + values[i] + " at " + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    raf.close();
+  }
+
+  @Benchmark
+  public float[] unpack() throws IOException {
+    Grib2DataReader2 reader = new Grib2DataReader2(template, packing.npoints, packing.npoints, 0, NX, 0, packing.data.length);
+    return reader.getData(raf, bitmap, drs);
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import ucar.nc2.grib.grib2.Grib2Drs;
+import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A minimal GRIB-2 packer, just enough to make the data representation and data sections that Grib2DataReader2
+ * unpacks. Supports simple packing (DRS template 0), complex packing (2) and complex packing with first order
+ * spatial differencing (3). There are no missing values and no bitmap; the decimal scale factor is 1.
+ */
+class Grib2Packing {
+  private static final int GROUP_LENGTH = 32;
+  private static final int D = 1; // decimal scale factor
+
+  final int template;
+  final int npoints;
+  final byte[] drs;   // octets 12-nn of section 5
+  final byte[] data;  // all of section 7
+
+  Grib2Packing(int template, float[] values) throws IOException {
+    this.template = template;
+    this.npoints = values.length;
+
+    // Y * 10^D = R + X, so X = round(Y * 10^D) - R
+    int[] x = new int[npoints];
+    int min = Integer.MAX_VALUE;
+    for (int i = 0; i < npoints; i++) {
+      x[i] = Math.round(values[i] * 10);
+      min = Math.min(min, x[i]);
+    }
+    for (int i = 0; i < npoints; i++)
+      x[i] -= min;
+    float R = min;
+
+    BitWriter bits = new BitWriter();
+    for (int i = 0; i < 5; i++) // section length and number; Grib2DataReader2 skips them
+      bits.write(0, 8);
+
+    ByteArrayOutputStream drsBytes = new ByteArrayOutputStream();
+    DataOutputStream drsOut = new DataOutputStream(drsBytes);
+
+    if (template == 0) {
+      int nb = bitsNeeded(max(x, 0, npoints));
+      writeTemplate0(drsOut, R, nb);
+      for (int v : x)
+        bits.write(v, nb);
+
+    } else if (template == 2 || template == 3) {
+      int[] packed = x;
+      if (template == 3) {
+        // g(0) is unused, g(n) = f(n) - f(n-1), then remove the minimum difference
+        packed = new int[npoints];
+        int minDiff = Integer.MAX_VALUE;
+        for (int i = 1; i < npoints; i++)
+          minDiff = Math.min(minDiff, x[i] - x[i - 1]);
+        for (int i = 1; i < npoints; i++)
+          packed[i] = x[i] - x[i - 1] - minDiff;
+
+        bits.writeSigned(x[0], 32); // first value
+        bits.writeSigned(minDiff, 32); // overall minimum of the differences
+      }
+
+      // fixed length groups
+      int ngroups = (npoints + GROUP_LENGTH - 1) / GROUP_LENGTH;
+      int[] refs = new int[ngroups];
+      int[] widths = new int[ngroups];
+      for (int g = 0; g < ngroups; g++) {
+        int start = g * GROUP_LENGTH, end = Math.min(npoints, start + GROUP_LENGTH);
+        refs[g] = Integer.MAX_VALUE;
+        for (int i = start; i < end; i++)
+          refs[g] = Math.min(refs[g], packed[i]);
+        widths[g] = bitsNeeded(max(packed, start, end) - refs[g]);
+      }
+      int refBits = Math.max(1, bitsNeeded(max(refs, 0, ngroups)));
+      int widthBits = Math.max(1, bitsNeeded(max(widths, 0, ngroups)));
+      int lastLength = npoints - (ngroups - 1) * GROUP_LENGTH;
+
+      writeTemplate0(drsOut, R, refBits);
+      drsOut.write(1);                // splitting method: general group splitting
+      drsOut.write(0);                // no missing values
+      drsOut.writeFloat(0);           // primary missing value
+      drsOut.writeFloat(0);           // secondary missing value
+      drsOut.writeInt(ngroups);
+      drsOut.write(0);                // reference for group widths
+      drsOut.write(widthBits);
+      drsOut.writeInt(GROUP_LENGTH);  // reference for group lengths
+      drsOut.write(1);                // length increment
+      drsOut.writeInt(lastLength);
+      drsOut.write(0);                // scaled group lengths are not stored, all groups have the reference length
+      if (template == 3) {
+        drsOut.write(1);              // first order spatial differencing
+        drsOut.write(4);              // octets for each of the extra descriptors
+      }
+
+      bits.pad();
+      for (int r : refs)
+        bits.write(r, refBits);
+      bits.pad();
+      for (int w : widths)
+        bits.write(w, widthBits);
+      bits.pad();
+      for (int g = 0; g < ngroups; g++) {
+        int start = g * GROUP_LENGTH, end = Math.min(npoints, start + GROUP_LENGTH);
+        for (int i = start; i < end; i++)
+          bits.write(packed[i] - refs[g], widths[g]);
+      }
+
+    } else {
+      throw new IllegalArgumentException("Unsupported DRS template " + template);
+    }
+
+    bits.pad();
+    this.drs = drsBytes.toByteArray();
+    this.data = bits.toByteArray();
+  }
+
+  Grib2Drs makeDrs() throws IOException {
+    RandomAccessFile raf = new InMemoryRandomAccessFile("drs", drs);
+    raf.order(RandomAccessFile.BIG_ENDIAN);
+    return Grib2Drs.factory(template, raf);
+  }
+
+  private static void writeTemplate0(DataOutputStream out, float R, int nbits) throws IOException {
+    out.writeFloat(R);
+    out.writeShort(0);   // binary scale factor
+    out.writeShort(D);   // decimal scale factor
+    out.write(nbits);
+    out.write(0);        // floating point
+  }
+
+  private static int max(int[] a, int start, int end) {
+    int result = 0;
+    for (int i = start; i < end; i++)
+      result = Math.max(result, a[i]);
+    return result;
+  }
+
+  private static int bitsNeeded(int v) {
+    return 32 - Integer.numberOfLeadingZeros(v);
+  }
+
+  private static class BitWriter {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private int current, nbits;
+
+    void write(int value, int n) {
+      for (int i = n - 1; i >= 0; i--) {
+        current = (current << 1) | ((value >>> i) & 1);
+        if (++nbits == 8) {
+          bytes.write(current);
+          current = nbits = 0;
+        }
+      }
+    }
+
+    // sign and magnitude
+    void writeSigned(int value, int n) {
+      write(value < 0 ? 1 : 0, 1);
+      write(Math.abs(value), n - 1);
+    }
+
+    // to the next byte boundary
+    void pad() {
+      if (nbits > 0) write(0, 8 - nbits);
+    }
+
+    byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+  }
+}
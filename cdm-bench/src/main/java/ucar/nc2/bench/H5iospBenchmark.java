@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of a chunked netCDF-4 variable through the pure Java H5iosp, with and without deflate.
+ * Each time step is one chunk.
+ * <p>
+ * Writing the file needs the netCDF C library (see Nc4Iosp); the benchmarks themselves do not use it.
+ * BenchmarkMain leaves this benchmark out when the library is not found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class H5iospBenchmark {
+  private static final int NT = 20, NY = 500, NX = 720;
+
+  @Param({"0", "5"})
+  public int deflateLevel;
+
+  private File file;
+  private NetcdfFile ncfile;
+  private Variable v;
+
+  private Section oneChunk, subset, timeSeries;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, InvalidRangeException {
+    if (!SyntheticData.canWriteNetcdf4())
+      throw new IllegalStateException("H5iospBenchmark needs the netCDF C library to write its test file");
+    file = SyntheticData.netcdf4(NT, NY, NX, deflateLevel);
+    ncfile = NetcdfFile.open(file.getPath());
+    v = ncfile.findVariable(SyntheticData.VAR_NAME);
+
+    oneChunk = new Section("10,:,:");
+    subset = new Section(":,100:199,200:399");
+    timeSeries = new Section(":,250,360");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ncfile.close();
+    SyntheticData.delete(file);
+  }
+
+  @Benchmark
+  public Array readAll() throws IOException {
+    return v.read();
+  }
+
+  @Benchmark
+  public Array readOneChunk() throws IOException, InvalidRangeException {
+    return v.read(oneChunk);
+  }
+
+  // part of every chunk
+  @Benchmark
+  public Array readSubset() throws IOException, InvalidRangeException {
+    return v.read(subset);
+  }
+
+  // one value from every chunk: worst case when deflated
+  @Benchmark
+  public Array readTimeSeries() throws IOException, InvalidRangeException {
+    return v.read(timeSeries);
+  }
+}
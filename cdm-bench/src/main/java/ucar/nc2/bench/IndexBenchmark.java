@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traversal of a 3D Array with Index and IndexIterator, for contiguous, sectioned and permuted views.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+  private static final int NZ = 50, NY = 200, NX = 300;
+
+  private Array contiguous, sectioned, permuted;
+
+  @Setup(Level.Trial)
+  public void setup() throws InvalidRangeException {
+    float[] data = SyntheticData.field(NZ * NY * NX, NX, 0);
+    contiguous = Array.factory(DataType.FLOAT, new int[] {NZ, NY, NX}, data);
+    sectioned = contiguous.section(new Section("0:49:2,10:189,0:299:3").getRanges());
+    permuted = contiguous.permute(new int[] {2, 1, 0});
+  }
+
+  private static double iterate(Array a) {
+    double sum = 0;
+    IndexIterator ii = a.getIndexIterator();
+    while (ii.hasNext())
+      sum += ii.getFloatNext();
+    return sum;
+  }
+
+  private static double indexed(Array a) {
+    int[] shape = a.getShape();
+    Index index = a.getIndex();
+    double sum = 0;
+    for (int k = 0; k < shape[0]; k++)
+      for (int j = 0; j < shape[1]; j++)
+        for (int i = 0; i < shape[2]; i++)
+          sum += a.getFloat(index.set(k, j, i));
+    return sum;
+  }
+
+  @Benchmark
+  public double iterateContiguous() {
+    return iterate(contiguous);
+  }
+
+  @Benchmark
+  public double iterateSectioned() {
+    return iterate(sectioned);
+  }
+
+  @Benchmark
+  public double iteratePermuted() {
+    return iterate(permuted);
+  }
+
+  @Benchmark
+  public double indexContiguous() {
+    return indexed(contiguous);
+  }
+
+  @Benchmark
+  public double indexSectioned() {
+    return indexed(sectioned);
+  }
+
+  @Benchmark
+  public double indexPermuted() {
+    return indexed(permuted);
+  }
+
+  @Benchmark
+  public Object copySectioned() {
+    return sectioned.copyTo1DJavaArray();
+  }
+
+  @Benchmark
+  public Object copyPermuted() {
+    return permuted.copyTo1DJavaArray();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.iosp.netcdf3.N3raf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Section reads of a netCDF-3 variable, from contiguous to badly strided, with and without N3raf positional reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class N3iospBenchmark {
+  private static final int NT = 20, NY = 500, NX = 720;
+
+  @Param({"false", "true"})
+  public boolean positionalReads;
+
+  private File file;
+  private NetcdfFile ncfile;
+  private Variable v;
+  private int count;
+
+  private Section oneTime, subset, strided, timeSeries;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, InvalidRangeException {
+    N3raf.setPositionalReads(positionalReads);
+    file = SyntheticData.netcdf3(NT, NY, NX);
+    ncfile = NetcdfFile.open(file.getPath());
+    v = ncfile.findVariable(SyntheticData.VAR_NAME);
+
+    oneTime = new Section("10,:,:");
+    subset = new Section(":,100:199,200:399");
+    strided = new Section(":,0:499:5,0:719:5");
+    timeSeries = new Section(":,250,360");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ncfile.close();
+    SyntheticData.delete(file);
+    N3raf.setPositionalReads(false);
+  }
+
+  @Benchmark
+  public Array readAll() throws IOException {
+    return v.read();
+  }
+
+  @Benchmark
+  public Array readOneTime() throws IOException, InvalidRangeException {
+    return v.read(oneTime);
+  }
+
+  @Benchmark
+  public Array readSubset() throws IOException, InvalidRangeException {
+    return v.read(subset);
+  }
+
+  @Benchmark
+  public Array readStrided() throws IOException, InvalidRangeException {
+    return v.read(strided);
+  }
+
+  @Benchmark
+  public Array readTimeSeries() throws IOException, InvalidRangeException {
+    return v.read(timeSeries);
+  }
+
+  // a different point each time, so each read has to seek
+  @Benchmark
+  public Array readPointsScattered() throws IOException, InvalidRangeException {
+    count = (count + 7919) % (NY * NX);
+    return v.read(new int[] {count % NT, count / NX, count % NX}, new int[] {1, 1, 1});
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.stream.NcStreamCompression;
+import ucar.nc2.stream.NcStreamReader;
+import ucar.nc2.stream.NcStreamWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a variable to an ncstream data message and reading it back, as cdmremote does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NcStreamBenchmark {
+  private static final int NT = 10, NY = 500, NX = 720;
+
+  @Param({"none", "deflate", "lz4"})
+  public String compression;
+
+  private File file;
+  private NetcdfFile ncfile;
+  private Variable v;
+  private NcStreamWriter writer;
+  private NcStreamCompression compress;
+  private byte[] message;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(NT * NY * NX * 4 + 1000);
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, InvalidRangeException {
+    file = SyntheticData.netcdf3(NT, NY, NX);
+    ncfile = NetcdfFile.open(file.getPath());
+    v = ncfile.findVariable(SyntheticData.VAR_NAME);
+    v.setCaching(true); // measure the serialization, not the file read
+    v.read();
+
+    writer = new NcStreamWriter(ncfile, "bench");
+    compress = NcStreamCompression.fromName(compression);
+    message = write();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ncfile.close();
+    SyntheticData.delete(file);
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException, InvalidRangeException {
+    out.reset();
+    writer.sendData(v, v.getShapeAsSection(), out, compress);
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public NcStreamReader.DataResult read() throws IOException {
+    return new NcStreamReader().readData(new ByteArrayInputStream(message), ncfile, "bench");
+  }
+}
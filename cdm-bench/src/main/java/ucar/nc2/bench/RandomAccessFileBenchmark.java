@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typed array reads from RandomAccessFile, through the buffer and positional.
+ * Each operation reads 1 MB, so throughput in ops/s is also MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomAccessFileBenchmark {
+  private static final int MB = 1024 * 1024;
+  private static final int FILE_SIZE = 16 * MB;
+  private static final int READ_SIZE = MB;  // bytes per read
+
+  @Param({"8192", "65536"})
+  public int bufferSize;
+
+  @Param({"0", "1"}) // RandomAccessFile.BIG_ENDIAN, LITTLE_ENDIAN
+  public int byteOrder;
+
+  private File file;
+  private RandomAccessFile raf;
+  private long pos;
+
+  private final short[] shorts = new short[READ_SIZE / 2];
+  private final int[] ints = new int[READ_SIZE / 4];
+  private final float[] floats = new float[READ_SIZE / 4];
+  private final double[] doubles = new double[READ_SIZE / 8];
+  private final byte[] bytes = new byte[READ_SIZE];
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    file = SyntheticData.randomFile(FILE_SIZE);
+    raf = new RandomAccessFile(file.getPath(), "r", bufferSize);
+    raf.order(byteOrder);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    raf.close();
+    SyntheticData.delete(file);
+  }
+
+  // step through the file, so we arent just reading the same page of the OS cache
+  private long nextPos() {
+    pos += READ_SIZE;
+    if (pos + READ_SIZE > FILE_SIZE) pos = 0;
+    return pos;
+  }
+
+  @Benchmark
+  public short[] readShort() throws IOException {
+    raf.seek(nextPos());
+    raf.readShort(shorts, 0, shorts.length);
+    return shorts;
+  }
+
+  @Benchmark
+  public int[] readInt() throws IOException {
+    raf.seek(nextPos());
+    raf.readInt(ints, 0, ints.length);
+    return ints;
+  }
+
+  @Benchmark
+  public float[] readFloat() throws IOException {
+    raf.seek(nextPos());
+    raf.readFloat(floats, 0, floats.length);
+    return floats;
+  }
+
+  @Benchmark
+  public double[] readDouble() throws IOException {
+    raf.seek(nextPos());
+    raf.readDouble(doubles, 0, doubles.length);
+    return doubles;
+  }
+
+  @Benchmark
+  public byte[] readFully() throws IOException {
+    raf.seek(nextPos());
+    raf.readFully(bytes);
+    return bytes;
+  }
+
+  @Benchmark
+  public float[] readFloatPositional() throws IOException {
+    raf.readFloat(nextPos(), floats, 0, floats.length);
+    return floats;
+  }
+
+  @Benchmark
+  public double[] readDoublePositional() throws IOException {
+    raf.readDouble(nextPos(), doubles, 0, doubles.length);
+    return doubles;
+  }
+
+  // the many small reads that header parsing does
+  @Benchmark
+  public long readIntOneAtATime() throws IOException {
+    raf.seek(nextPos());
+    long sum = 0;
+    for (int i = 0; i < ints.length; i++)
+      sum += raf.readInt();
+    return sum;
+  }
+}
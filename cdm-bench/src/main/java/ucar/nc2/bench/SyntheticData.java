@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.bench;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingStrategy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Generates the data and files used by the benchmarks, so they dont depend on any test data being present.
+ * All files are temporary, and should be deleted in the benchmark's TearDown.
+ */
+class SyntheticData {
+  static final String VAR_NAME = "temperature";
+
+  private SyntheticData() {
+  }
+
+  /**
+   * A smooth field with a little noise, which compresses about as well as real model output.
+   */
+  static float[] field(int n, int nx, long seed) {
+    Random r = new Random(seed);
+    float[] data = new float[n];
+    for (int i = 0; i < n; i++) {
+      int x = i % nx, y = i / nx;
+      data[i] = (float) (273.0 + 20 * Math.sin(x / 50.0) * Math.cos(y / 70.0) + r.nextGaussian() / 10);
+    }
+    return data;
+  }
+
+  static File randomFile(int size) throws IOException {
+    File file = File.createTempFile("bench", ".dat");
+    byte[] data = new byte[size];
+    new Random(17).nextBytes(data);
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+    return file;
+  }
+
+  /**
+   * A netCDF-3 file with a float variable "temperature(time, y, x)".
+   */
+  static File netcdf3(int nt, int ny, int nx) throws IOException {
+    File file = File.createTempFile("bench", ".nc");
+    write(NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.getPath()), nt, ny, nx, null);
+    return file;
+  }
+
+  /**
+   * Can netCDF-4 files be written here? That needs the netCDF C library, which is loaded by Nc4Iosp.
+   * The netcdf4 module is only a runtime dependency, so use reflection.
+   */
+  static boolean canWriteNetcdf4() {
+    try {
+      Class<?> iospClass = SyntheticData.class.getClassLoader().loadClass("ucar.nc2.jni.netcdf.Nc4Iosp");
+      return (Boolean) iospClass.getMethod("isClibraryPresent").invoke(null);
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  /**
+   * A netCDF-4 file with a float variable "temperature(time, y, x)", chunked by time and (optionally) deflated.
+   * This needs the netCDF C library to write, but not to read, see canWriteNetcdf4().
+   */
+  static File netcdf4(int nt, int ny, int nx, int deflateLevel) throws IOException {
+    File file = File.createTempFile("bench", ".nc4");
+    Nc4Chunking chunker = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, deflateLevel, deflateLevel > 0);
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf4, file.getPath(), chunker);
+    write(writer, nt, ny, nx, new int[] {1, ny, nx});
+    return file;
+  }
+
+  private static void write(NetcdfFileWriter writer, int nt, int ny, int nx, int[] chunks) throws IOException {
+    try {
+      writer.addDimension("time", nt);
+      writer.addDimension("y", ny);
+      writer.addDimension("x", nx);
+      Variable v = writer.addVariable(VAR_NAME, DataType.FLOAT, "time y x");
+      v.addAttribute(new Attribute(CDM.UNITS, "K"));
+      if (chunks != null) {
+        Array chunkSizes = Array.factory(DataType.INT, new int[] {chunks.length}, chunks);
+        v.addAttribute(new Attribute(CDM.CHUNK_SIZES, chunkSizes));
+      }
+      writer.create();
+
+      int[] shape = new int[] {1, ny, nx};
+      for (int t = 0; t < nt; t++) {
+        Array data = Array.factory(DataType.FLOAT, shape, field(ny * nx, nx, t));
+        writer.write(v, new int[] {t, 0, 0}, data);
+      }
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e); // cant happen
+    } finally {
+      writer.close();
+    }
+  }
+
+  static void delete(File file) {
+    if (file != null && !file.delete())
+      file.deleteOnExit();
+  }
+}
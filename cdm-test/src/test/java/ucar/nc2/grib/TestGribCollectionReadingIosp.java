@@ -16,6 +16,7 @@ import ucar.nc2.NCdumpW;
 import ucar.nc2.Variable;
 import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.grib.collection.GribDataReader;
 import ucar.nc2.util.Misc;
 import ucar.unidata.util.test.Assert2;
 import ucar.unidata.util.test.TestDir;
@@ -123,4 +124,33 @@ public class TestGribCollectionReadingIosp {
     }
   }
 
+  @Test
+  public void testReadConcurrently() throws IOException, InvalidRangeException {
+    // time series and multiple levels, from a single file and from a partition collection
+    checkConcurrentRead(TestDir.cdmUnitTestDir + "gribCollections/gfs_conus80/gfsConus80_file.ncx4",
+            "Best/Temperature_height_above_ground", ":, 0, 20:30, 40:50");
+    checkConcurrentRead(TestDir.cdmUnitTestDir + "gribCollections/tp/GFSonedega.ncx4",
+            "Relative_humidity_isobaric", ":, :, 50, 50");
+  }
+
+  private void checkConcurrentRead(String endpoint, String varName, String section) throws IOException, InvalidRangeException {
+    Array serial, concurrent;
+    try (NetcdfDataset ds = NetcdfDataset.openDataset(endpoint)) {
+      Variable v = ds.findVariable(null, varName);
+      assert v != null;
+      serial = v.read(section);
+
+      GribDataReader.setParallelism(4);
+      GribDataReader.setMaxBytesInFlight(1000 * 1000);
+      try {
+        concurrent = v.read(section);
+      } finally {
+        GribDataReader.setParallelism(1);
+        GribDataReader.setMaxBytesInFlight(128 * 1000 * 1000);
+      }
+    }
+    logger.debug("{} {} size = {}", endpoint, varName, serial.getSize());
+    Assert.assertArrayEquals((float[]) serial.copyTo1DJavaArray(), (float[]) concurrent.copyTo1DJavaArray(), 0.0f);
+  }
+
 }
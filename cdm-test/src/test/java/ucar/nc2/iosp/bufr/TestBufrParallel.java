@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.bufr;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.NCdumpW;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Sequence;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reading the obs of a file of many messages gives the same data in the same order, whether or not the messages
+ * are decoded in parallel. Messages of another type in between are skipped.
+ */
+public class TestBufrParallel {
+  private static final int NMESSAGES = 25;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    BufrIosp2.setParallelism(1);
+  }
+
+  // the data messages have WMO station numbers 0, 1, ...; every fifth message is of another data category
+  private File makeFile() throws IOException {
+    byte[] message = Files.readAllBytes(new File(TestDir.cdmTestDataDir + "ucar/nc2/bufr/IUPT02_KBBY_281400_522246081.bufr.2018032814").toPath());
+    int start = new String(message, StandardCharsets.ISO_8859_1).indexOf("BUFR");
+    int section1 = start + 8; // edition 4
+    int section3 = section1 + uint3(message, section1);
+    if ((message[section1 + 9] & 0x80) != 0) // optional section 2
+      section3 += uint3(message, section3);
+    int section4 = section3 + uint3(message, section3);
+    long stationBit = 8L * (section4 + 4) + 7; // after the 7 bit WMO block number
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < NMESSAGES; i++) {
+      if (i % 5 == 3) {
+        byte[] other = message.clone();
+        other[section1 + 10]++; // data category
+        setBits(other, stationBit, 10, 1000);
+        out.write(other);
+      }
+      setBits(message, stationBit, 10, i);
+      out.write(message);
+    }
+    File file = tempFolder.newFile("many.bufr");
+    Files.write(file.toPath(), out.toByteArray());
+    return file;
+  }
+
+  private static int uint3(byte[] b, int pos) {
+    return ((b[pos] & 0xff) << 16) | ((b[pos + 1] & 0xff) << 8) | (b[pos + 2] & 0xff);
+  }
+
+  private static void setBits(byte[] b, long bitPos, int nbits, int value) {
+    for (int i = 0; i < nbits; i++) {
+      long bit = bitPos + i;
+      int mask = 0x80 >> (bit % 8);
+      if (((value >> (nbits - 1 - i)) & 1) != 0)
+        b[(int) (bit / 8)] |= mask;
+      else
+        b[(int) (bit / 8)] &= ~mask;
+    }
+  }
+
+  private static List<String> readObs(File file, int max) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfFile.open(file.getPath())) {
+      Sequence obs = (Sequence) ncfile.findVariable(BufrIosp2.obsRecord);
+      try (StructureDataIterator iter = obs.getStructureIterator()) {
+        while (iter.hasNext() && result.size() < max) {
+          StructureData sdata = iter.next();
+          StringWriter sw = new StringWriter();
+          NCdumpW.printStructureData(new PrintWriter(sw), sdata);
+          result.add(sw.toString());
+        }
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testParallel() throws IOException {
+    File file = makeFile();
+    List<String> want = readObs(file, Integer.MAX_VALUE);
+    Assert.assertEquals(NMESSAGES, want.size());
+    for (int i = 0; i < NMESSAGES; i++)
+      Assert.assertTrue(want.get(i), want.get(i).contains("WMO_station_number = " + i + "\n"));
+
+    BufrIosp2.setParallelism(4);
+    Assert.assertEquals(want, readObs(file, Integer.MAX_VALUE));
+    Assert.assertEquals(want.subList(0, 3), readObs(file, 3)); // close with messages still being decoded
+  }
+}
@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.Array;
 import ucar.ma2.Index;
+import ucar.ma2.MAMath;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 import ucar.unidata.util.test.category.NeedsCdmUnitTest;
@@ -80,6 +81,28 @@ public class TestH5filter {
     }
   }
 
+  @org.junit.Test
+  public void testDeflateParallel() throws IOException {
+    try (NetcdfFile ncfile = TestH5.openH5("msg/MSG1_8bit_HRV.H5")) {
+      Variable v = ncfile.findVariable("image1/image_data");
+      assert v != null;
+      Array serial = v.read();
+
+      H5iosp.setFilterParallelism(4);
+      try {
+        Array parallel = v.read();
+        assert MAMath.equals(serial, parallel);
+
+        Array section = v.read("100:899:3, 17:1400");
+        assert MAMath.equals(serial.section(new int[] {100, 17}, new int[] {267, 1384}, new int[] {3, 1}), section);
+      } catch (ucar.ma2.InvalidRangeException e) {
+        throw new RuntimeException(e);
+      } finally {
+        H5iosp.setFilterParallelism(1);
+      }
+    }
+  }
+
   @org.junit.Test
   public void testMissing() throws IOException {
     //H5header.setDebugFlags( new ucar.nc2.util.DebugFlagsImpl("H5header/header"));
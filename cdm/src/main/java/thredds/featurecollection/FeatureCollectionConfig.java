@@ -466,6 +466,7 @@ public class FeatureCollectionConfig {
     public boolean intvMerge = intvMergeDef;
     public boolean useCenter = useCenterDef;
     public boolean unionRuntimeCoord;
+    public boolean memoryMap;  // read the data files with a MMapRandomAccessFile
 
     public GribIntvFilter intvFilter;
     public TimeUnitConverterHash tuc;
@@ -587,6 +588,10 @@ public class FeatureCollectionConfig {
         unionRuntimeCoord = true;
         return true;
       }
+      if (name.equalsIgnoreCase("memoryMap")) {
+        memoryMap = value.equalsIgnoreCase("true");
+        return true;
+      }
       return false;
     }
 
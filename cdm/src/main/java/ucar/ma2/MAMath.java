@@ -7,6 +7,8 @@ package ucar.ma2;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.stream.IntStream;
+
 import ucar.nc2.util.Misc;
 
 /**
@@ -423,6 +425,9 @@ public class MAMath {
    * @return MinMax
    */
   public static MAMath.MinMax getMinMax(Array a) {
+    if (isParallel(a))
+      return new Accumulator().add(a).getMinMax();
+
     IndexIterator iter = a.getIndexIterator();
     double max = -Double.MAX_VALUE;
     double min = Double.MAX_VALUE;
@@ -440,6 +445,8 @@ public class MAMath {
   public static MAMath.MinMax getMinMaxSkipMissingData(Array a, IsMissingEvaluator eval) {
     if (eval == null || !eval.hasMissing())
       return MAMath.getMinMax(a);
+    if (isParallel(a))
+      return new Accumulator(eval).add(a).getMinMax();
 
     IndexIterator iter = a.getIndexIterator();
     double max = -Double.MAX_VALUE;
@@ -480,6 +487,9 @@ public class MAMath {
   }
 
   public static MAMath.MinMax getMinMaxSkipMissingData(Array a, double missingValue) {
+    if (isParallel(a))
+      return new Accumulator(missingValue).add(a).getMinMax();
+
     IndexIterator iter = a.getIndexIterator();
     double max = -Double.MAX_VALUE;
     double min = Double.MAX_VALUE;
@@ -513,10 +523,14 @@ public class MAMath {
   /**
    * sum all of the elements of array a as doubles.
    * The values from the array a are converted to double (if needed).
+   * Large arrays may be summed in parallel, see {@link #setParallelThreshold}.
    * @param a read values from this Array
    * @return sum of elements
    */
   public static double sumDouble(Array a) {
+    if (isParallel(a))
+      return parallelSum(a);
+
     double sum = 0;
     IndexIterator iterA = a.getIndexIterator();
     while (iterA.hasNext()) {
@@ -533,6 +547,9 @@ public class MAMath {
    * @return sum of elements
    */
   public static double sumDoubleSkipMissingData(Array a, double missingValue) {
+    if (isParallel(a))
+      return new Accumulator(missingValue).add(a).getSum();
+
     double sum = 0;
     IndexIterator iterA = a.getIndexIterator();
     while (iterA.hasNext()) {
@@ -589,9 +606,11 @@ public class MAMath {
    * @return ScaleOffset, calculated as above.
    */
   public static MAMath.ScaleOffset calcScaleOffsetSkipMissingData(Array a, double missingValue, int nbits) {
-    MAMath.MinMax minmax = getMinMaxSkipMissingData(a, missingValue);
+    return calcScaleOffset(getMinMaxSkipMissingData(a, missingValue), a.isUnsigned(), nbits);
+  }
 
-    if (a.isUnsigned()) {
+  private static MAMath.ScaleOffset calcScaleOffset(MAMath.MinMax minmax, boolean isUnsigned, int nbits) {
+    if (isUnsigned) {
       long size = (1L << nbits) - 1;
       double offset = minmax.min;
       double scale =(minmax.max - minmax.min) / size;
@@ -638,6 +657,216 @@ public class MAMath {
     }
   }
 
+  ///////////////////////////////////////////////////////////////////////////////////////////////
+  // reductions over large arrays
+
+  // number of elements reduced by each fork/join task. It is fixed, so that the order of the additions, and so the
+  // sum, does not depend on the number of threads.
+  private static final int PARALLEL_BLOCK = 64 * 1024;
+
+  private static long parallelThreshold = 0;
+
+  /**
+   * Set the minimum number of elements for getMinMax(), getMinMaxSkipMissingData(), sumDouble(),
+   * sumDoubleSkipMissingData() and calcScaleOffsetSkipMissingData() to run in parallel, using the common
+   * ForkJoinPool. Only arrays in canonical order over their backing storage, not sections or other views, are
+   * done in parallel. Min and max are the same as the serial result, but the additions of a sum are done in a
+   * different order, so a sum may differ in its last bits.
+   *
+   * @param n minimum number of elements, or 0 to never run in parallel (default 0)
+   */
+  public static void setParallelThreshold(long n) {
+    parallelThreshold = n;
+  }
+
+  /**
+   * Get the minimum number of elements for a reduction to run in parallel.
+   *
+   * @return minimum number of elements, or 0 if never run in parallel
+   */
+  public static long getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  private static boolean isParallel(Array a) {
+    if (parallelThreshold <= 0 || a.getSize() < parallelThreshold || a.getSize() < 2 * PARALLEL_BLOCK)
+      return false;
+    if (a.getSize() > Integer.MAX_VALUE || !a.indexCalc.isFastIterator())
+      return false;
+    Class elemType = a.getElementType();
+    return elemType == double.class || elemType == float.class || elemType == long.class || elemType == int.class ||
+           elemType == short.class || elemType == byte.class;
+  }
+
+  // Array.getDouble(int) is the element in canonical order, when isParallel()
+  private static double parallelSum(final Array a) {
+    final int size = (int) a.getSize();
+    int nblocks = (size + PARALLEL_BLOCK - 1) / PARALLEL_BLOCK;
+    double[] partials = IntStream.range(0, nblocks).parallel().mapToDouble(block -> {
+      int end = Math.min(size, (block + 1) * PARALLEL_BLOCK);
+      double sum = 0;
+      for (int i = block * PARALLEL_BLOCK; i < end; i++)
+        sum += a.getDouble(i);
+      return sum;
+    }).toArray();
+
+    double sum = 0;
+    for (double partial : partials)
+      sum += partial;
+    return sum;
+  }
+
+  /**
+   * Accumulates the count, sum, minimum and maximum of the non-missing values of one or more Arrays.
+   * NaNs are always missing. Use it to find statistics of data that is read in pieces, for example a Variable
+   * too large to read into memory at once, see {@link ucar.nc2.VariableStatistics}.
+   * <p>
+   * The minimum and maximum are the same as from getMinMax() or getMinMaxSkipMissingData() on all of the data.
+   * Large arrays are done in parallel, see {@link MAMath#setParallelThreshold}. If none of the pieces is, and they are
+   * added in order, the sum is the same as from a serial sumDoubleSkipMissingData(); otherwise its additions are done
+   * in a different order, and it may differ in the last bits.
+   * Not thread-safe.
+   */
+  public static class Accumulator {
+    private final boolean hasMissingValue;
+    private final double missingValue;
+    private final IsMissingEvaluator eval;
+
+    private long count;
+    private double sum;
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+
+    /**
+     * Accumulate all values except NaNs.
+     */
+    public Accumulator() {
+      this(false, 0.0, null);
+    }
+
+    /**
+     * Accumulate all values except NaNs and missingValue.
+     *
+     * @param missingValue skip values equal to this
+     */
+    public Accumulator(double missingValue) {
+      this(true, missingValue, null);
+    }
+
+    /**
+     * Accumulate all values except NaNs and those that eval says are missing.
+     *
+     * @param eval skip values that are missing according to this; may be null
+     */
+    public Accumulator(IsMissingEvaluator eval) {
+      this(false, 0.0, (eval != null && eval.hasMissing()) ? eval : null);
+    }
+
+    private Accumulator(boolean hasMissingValue, double missingValue, IsMissingEvaluator eval) {
+      this.hasMissingValue = hasMissingValue;
+      this.missingValue = missingValue;
+      this.eval = eval;
+    }
+
+    // an empty Accumulator with the same missing values
+    private Accumulator empty() {
+      return new Accumulator(hasMissingValue, missingValue, eval);
+    }
+
+    /**
+     * Add one value.
+     *
+     * @param val add this value, unless it is missing
+     */
+    public void add(double val) {
+      if (Double.isNaN(val) || (hasMissingValue && val == missingValue) || (eval != null && eval.isMissing(val)))
+        return;
+      count++;
+      sum += val;
+      if (val > max)
+        max = val;
+      if (val < min)
+        min = val;
+    }
+
+    /**
+     * Add all of the values of an Array, as doubles.
+     *
+     * @param a add the values from this Array
+     * @return this
+     */
+    public Accumulator add(Array a) {
+      if (!isParallel(a)) {
+        IndexIterator iter = a.getIndexIterator();
+        while (iter.hasNext())
+          add(iter.getDoubleNext());
+        return this;
+      }
+
+      final int size = (int) a.getSize();
+      int nblocks = (size + PARALLEL_BLOCK - 1) / PARALLEL_BLOCK;
+      Accumulator[] partials = IntStream.range(0, nblocks).parallel().mapToObj(block -> {
+        Accumulator partial = empty();
+        int end = Math.min(size, (block + 1) * PARALLEL_BLOCK);
+        for (int i = block * PARALLEL_BLOCK; i < end; i++)
+          partial.add(a.getDouble(i));
+        return partial;
+      }).toArray(Accumulator[]::new);
+
+      for (Accumulator partial : partials)
+        add(partial);
+      return this;
+    }
+
+    /**
+     * Add what another Accumulator has accumulated.
+     *
+     * @param other add the values accumulated here
+     * @return this
+     */
+    public Accumulator add(Accumulator other) {
+      count += other.count;
+      sum += other.sum;
+      if (other.max > max)
+        max = other.max;
+      if (other.min < min)
+        min = other.min;
+      return this;
+    }
+
+    /**
+     * @return number of values that were not missing
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return sum of the values that were not missing
+     */
+    public double getSum() {
+      return sum;
+    }
+
+    /**
+     * @return minimum and maximum of the values that were not missing
+     */
+    public MAMath.MinMax getMinMax() {
+      return new MinMax(min, max);
+    }
+
+    /**
+     * Calculate the scale/offset to pack the values that were not missing, as calcScaleOffsetSkipMissingData() does.
+     *
+     * @param isUnsigned if the packed values are unsigned
+     * @param nbits      map into this many bits
+     * @return ScaleOffset
+     */
+    public MAMath.ScaleOffset getScaleOffset(boolean isUnsigned, int nbits) {
+      return calcScaleOffset(getMinMax(), isUnsigned, nbits);
+    }
+  }
+
   /**
    * Returns true if the specified arrays have the same size, signedness, and <b>approximately</b> equal corresponding
    * elements. {@code float} elements must be within {@link Misc#defaultMaxRelativeDiffFloat} of each other, as
@@ -39,6 +39,7 @@ import ucar.ma2.Section;
 import ucar.ma2.StructureDataIterator;
 import ucar.nc2.constants.CDM;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.FileSignature;
 import ucar.nc2.iosp.IOServiceProvider;
 import ucar.nc2.iosp.IospHelper;
 import ucar.nc2.iosp.netcdf3.N3header;
@@ -63,6 +64,7 @@ import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -105,6 +107,16 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
 
   static private int default_buffersize = 8092;
   static private List<IOServiceProvider> registeredProviders = new ArrayList<>();
+  static private Map<String, FileSignature[]> registeredSignatures = new ConcurrentHashMap<>(); // key = iosp class name
+  static private final int SIGNATURE_HEAD_SIZE = 8 * 1024; // read once from the start of the file to check signatures
+  static private final int IOSP_CACHE_SIZE = 1000;
+  static private final Map<String, Class> iospCache = Collections.synchronizedMap( // key = location
+          new LinkedHashMap<String, Class>(100, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Class> eldest) {
+              return size() > IOSP_CACHE_SIZE;
+            }
+          });
   static protected boolean debugSPI = false, debugCompress = false, showRequest = false;
   static boolean debugStructureIterator = false;
   static boolean loadWarnings = false;
@@ -273,6 +285,23 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
       if (loadWarnings) log.info("Cant load class Cinrad2IOServiceProvider: {}", e);
     }
 
+    ////////////////////////////////
+    // what the isValidFile() of these iosps check first, so they need not be asked about other files
+    registerIOProviderSignatures("ucar.nc2.stream.NcStreamIosp", FileSignature.magic(0, "CDFS")); // NcStream.MAGIC_START
+    registerIOProviderSignatures("ucar.nc2.iosp.nexrad2.Nexrad2IOServiceProvider",
+            FileSignature.magic(0, "ARCHIVE2"), FileSignature.magic(0, "AR2V"));
+    registerIOProviderSignatures("ucar.nc2.iosp.misc.GtopoIosp", FileSignature.suffix(".DEM"));
+    registerIOProviderSignatures("ucar.nc2.iosp.uf.UFiosp", FileSignature.magic(4, "UF"));
+    registerIOProviderSignatures("ucar.nc2.iosp.misc.Nldn", FileSignature.magic(0, "NLDN"));
+    registerIOProviderSignatures("ucar.nc2.iosp.noaa.Ghcnm2",
+            FileSignature.suffix(".dat"), FileSignature.suffix(".inv"), FileSignature.suffix(".ncx"));
+    registerIOProviderSignatures("ucar.nc2.iosp.dmsp.DMSPiosp", FileSignature.magic(0, "file ID"));
+    registerIOProviderSignatures("ucar.nc2.iosp.dorade.Doradeiosp", FileSignature.magic(0, "SSWB"), FileSignature.magic(0, "COMM"));
+    FileSignature gempak = FileSignature.magic(0, "GEMPAK DATA MANAGEMENT FILE ");
+    registerIOProviderSignatures("ucar.nc2.iosp.gempak.GempakSurfaceIOSP", gempak);
+    registerIOProviderSignatures("ucar.nc2.iosp.gempak.GempakSoundingIOSP", gempak);
+    registerIOProviderSignatures("ucar.nc2.iosp.gempak.GempakGridServiceProvider", gempak);
+
     userLoads = true;
   }
 
@@ -320,6 +349,7 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
     if (userLoads && !last)
       registeredProviders.add(0, spi);  // put user stuff first
     else registeredProviders.add(spi);
+    iospCache.clear();
   }
 
   /**
@@ -351,6 +381,7 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
      if(pos < 0) pos = 0;
      IOServiceProvider spi = (IOServiceProvider) iospClass.newInstance(); // fail fast
      registeredProviders.add(pos, spi);  // insert before target
+     iospCache.clear();
    }
 
   /**
@@ -376,12 +407,39 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
         IOServiceProvider spi = registeredProviders.get(i);
         if (spi.getClass() == iospClass) {
           registeredProviders.remove(i);
+          iospCache.clear();
           return true;
         }
       }
       return false;
   }
 
+  /**
+   * Register the signatures of an IOServiceProvider, so that its isValidFile() is only called for files that match
+   * one of them. The IOServiceProvider need not be registered yet, or at all.
+   * Its isValidFile() must return false for any file that matches none of them.
+   *
+   * @param iospClassName fully qualified class name of the IOServiceProvider
+   * @param signatures    what its files look like; if none, isValidFile() is called for all files
+   */
+  static public void registerIOProviderSignatures(String iospClassName, FileSignature... signatures) {
+    if (signatures == null || signatures.length == 0)
+      registeredSignatures.remove(iospClassName);
+    else
+      registeredSignatures.put(iospClassName, signatures.clone());
+  }
+
+  /**
+   * Register the signatures of an IOServiceProvider.
+   *
+   * @param iospClass  Class that implements IOServiceProvider.
+   * @param signatures what its files look like; if none, isValidFile() is called for all files
+   * @see #registerIOProviderSignatures(String, FileSignature...)
+   */
+  static public void registerIOProviderSignatures(Class iospClass, FileSignature... signatures) {
+    registerIOProviderSignatures(iospClass.getName(), signatures);
+  }
+
   /**
    * debugging
    *
@@ -504,22 +562,73 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
   }
 
   private static boolean canOpen(ucar.unidata.io.RandomAccessFile raf) throws IOException {
-    if (N3header.isValidFile(raf)) {
-      return true;
-    } else {
-      for (IOServiceProvider iosp : ServiceLoader.load(IOServiceProvider.class)) {
-        log.info("ServiceLoader IOServiceProvider {}", iosp.getClass().getName());        if (iosp.isValidFile(raf)) {
-          return true;
-        }
+    return N3header.isValidFile(raf) || findIospClass(raf) != null;
+  }
+
+  /*
+   * Find the IOSP for a file that is not netcdf-3: the last one loaded through the ServiceLoader or registered that
+   * says it is valid, registered ones taking precedence. IOSPs whose signatures dont match are not asked.
+   * The answer is remembered for the location, and on reopening only that IOSP is asked.
+   */
+  static private Class findIospClass(ucar.unidata.io.RandomAccessFile raf) throws IOException {
+    String location = raf.getLocation();
+    Class cached = (location == null) ? null : iospCache.get(location);
+    if (cached != null) {
+      if (newIosp(cached).isValidFile(raf)) return cached;
+      iospCache.remove(location);
+    }
+
+    long length = raf.length();
+    byte[] head = new byte[(int) Math.min(length, SIGNATURE_HEAD_SIZE)];
+    raf.seek(0);
+    raf.readFully(head);
+
+    Class result = null;
+
+    // look for dynamically loaded IOSPs
+    for (IOServiceProvider currentSpi : ServiceLoader.load(IOServiceProvider.class)) {
+      if (matchesSignature(currentSpi, location, head, length) && currentSpi.isValidFile(raf)) {
+        result = currentSpi.getClass();
+        break;
       }
-      for (IOServiceProvider registeredSpi : registeredProviders) {
-        if (registeredSpi.isValidFile(raf))
-          return true;
+    }
+
+    // look for registered providers
+    for (IOServiceProvider registeredSpi : registeredProviders) {
+      if (!matchesSignature(registeredSpi, location, head, length)) continue;
+      if (debugSPI) log.info(" try iosp = {}", registeredSpi.getClass().getName());
+
+      if (registeredSpi.isValidFile(raf)) {
+        result = registeredSpi.getClass();
+        break;
       }
     }
+
+    if (result != null && location != null)
+      iospCache.put(location, result);
+    return result;
+  }
+
+  static private boolean matchesSignature(IOServiceProvider spi, String location, byte[] head, long length) {
+    FileSignature[] signatures = registeredSignatures.get(spi.getClass().getName());
+    if (signatures == null) return true;
+    for (FileSignature signature : signatures) {
+      if (signature.matches(location, head, length)) return true;
+    }
     return false;
   }
 
+  // need a new instance for thread safety
+  static private IOServiceProvider newIosp(Class c) throws IOException {
+    try {
+      return (IOServiceProvider) c.newInstance();
+    } catch (InstantiationException e) {
+      throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor."); // shouldnt happen
+    } catch (IllegalAccessException e) {
+      throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage()); // shouldnt happen
+    }
+  }
+
   /**
    * Open an existing file (read only), specifying which IOSP is to be used.
    *
@@ -841,39 +950,9 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable, Closeable
       // spi = new ucar.nc2.iosp.hdf5.H5iosp();
 
     } else {
-
-      // look for dynamically loaded IOSPs
-      for (IOServiceProvider currentSpi : ServiceLoader.load(IOServiceProvider.class)) {
-        if (currentSpi.isValidFile(raf)) {
-          Class c = currentSpi.getClass();
-          try {
-            spi = (IOServiceProvider) c.newInstance();
-          } catch (InstantiationException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor."); // shouldnt happen
-          } catch (IllegalAccessException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage()); // shouldnt happen
-          }
-          break;
-        }
-      }
-
-      // look for registered providers
-      for (IOServiceProvider registeredSpi : registeredProviders) {
-        if (debugSPI) log.info(" try iosp = {}", registeredSpi.getClass().getName());
-
-        if (registeredSpi.isValidFile(raf)) {
-          // need a new instance for thread safety
-          Class c = registeredSpi.getClass();
-          try {
-            spi = (IOServiceProvider) c.newInstance();
-          } catch (InstantiationException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + "must have no-arg constructor."); // shouldnt happen
-          } catch (IllegalAccessException e) {
-            throw new IOException("IOServiceProvider " + c.getName() + " IllegalAccessException: " + e.getMessage()); // shouldnt happen
-          }
-          break;
-        }
-      }
+      Class c = findIospClass(raf);
+      if (c != null)
+        spi = newIosp(c);
     }
 
     if (spi == null) {
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2;
+
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+
+import java.io.IOException;
+
+/**
+ * Statistics of Variables too large to read into memory at once.
+ *
+ * @see MAMath.Accumulator
+ */
+public class VariableStatistics {
+
+  /**
+   * Add all of the values of a Variable to an Accumulator, reading at most maxChunkElems elements at a time.
+   * The chunks are contiguous and read in order. The Variable may have more than 2^31 elements.
+   *
+   * @param acc           add the values to this
+   * @param v             read the data of this Variable; must have a numeric data type
+   * @param maxChunkElems maximum number of elements to have in memory at once
+   * @return acc
+   * @throws IOException on read error
+   */
+  public static MAMath.Accumulator accumulate(MAMath.Accumulator acc, Variable v, long maxChunkElems)
+          throws IOException {
+    int[] shape = v.getShape();
+    int rank = shape.length;
+    long[] stride = new long[rank];
+    long size = 1;
+    for (int i = rank - 1; i >= 0; i--) {
+      stride[i] = size;
+      size *= shape[i];
+    }
+
+    int[] origin = new int[rank];
+    int[] chunkShape = new int[rank];
+    long elem = 0;
+    while (elem < size) {
+      long chunkSize = 1;
+      long rest = elem;
+      for (int i = 0; i < rank; i++) {
+        origin[i] = (int) (rest / stride[i]);
+        rest %= stride[i];
+        long n = Math.max(1, maxChunkElems / stride[i]);
+        chunkShape[i] = (int) Math.min(n, shape[i] - origin[i]);
+        chunkSize *= chunkShape[i];
+      }
+
+      try {
+        acc.add(v.read(origin, chunkShape));
+      } catch (InvalidRangeException e) {
+        throw new IOException(e.getMessage() + " for Variable " + v.getFullName());
+      }
+      elem += chunkSize;
+    }
+    return acc;
+  }
+}
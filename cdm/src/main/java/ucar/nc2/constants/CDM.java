@@ -21,6 +21,7 @@ public class CDM {
   public static final String CHUNK_SIZES = "_ChunkSizes";
   public static final String COMPRESS = "_Compress";
   public static final String COMPRESS_DEFLATE = "deflate";
+  public static final String COMPRESS_LZ4 = "lz4";
   public static final String FIELD_ATTS = "_field_atts";    // netcdf4 compound atts
 
   // from the Netcdf Users Guide
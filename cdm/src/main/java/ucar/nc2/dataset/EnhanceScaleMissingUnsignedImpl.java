@@ -16,6 +16,7 @@ import ucar.nc2.util.Misc;
 import javax.annotation.Nonnull;
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import static ucar.ma2.DataType.*;
 
@@ -543,7 +544,146 @@ class EnhanceScaleMissingUnsignedImpl implements EnhanceScaleMissingUnsigned {
     if (outType != DataType.FLOAT && outType != DataType.DOUBLE) {
       convertMissing = false;
     }
-    
+
+    Kernel kernel = makeKernel(in, outType, convertUnsigned, applyScaleOffset, convertMissing);
+    if (kernel == null) {
+      return convertByElement(in, outType, convertUnsigned, applyScaleOffset, convertMissing);
+    }
+
+    int size = (int) in.getSize();
+    int threshold = NetcdfDataset.parallelEnhanceThreshold;
+    if (threshold > 0 && size >= threshold) {
+      int nchunks = Math.min(Runtime.getRuntime().availableProcessors() * 4, size / PARALLEL_CHUNK_MIN);
+      if (nchunks > 1) {
+        IntStream.range(0, nchunks).parallel().forEach(chunk -> kernel.run(
+                (int) ((long) size * chunk / nchunks), (int) ((long) size * (chunk + 1) / nchunks)));
+        return kernel.result(in.getShape());
+      }
+    }
+
+    kernel.run(0, size);
+    return kernel.result(in.getShape());
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////////////////
+  // Converting whole arrays in one pass over the backing primitive arrays.
+  //
+  // The data goes through a double when the result is FLOAT or DOUBLE, or else through a long, which gives the
+  // same values as the element by element conversion of the boxed Numbers. Anything else (LONG or object source data,
+  // scale/offset to an integral type) uses convertByElement().
+
+  // the smallest number of elements given to each thread when converting in parallel
+  private static final int PARALLEL_CHUNK_MIN = 32 * 1000;
+
+  // returns null if this combination must be done element by element
+  private Kernel makeKernel(Array in, DataType outType, boolean convertUnsigned, boolean applyScaleOffset,
+          boolean convertMissing) {
+    Class elemType = in.getElementType();
+    if (elemType != byte.class && elemType != short.class && elemType != int.class && elemType != float.class &&
+            elemType != double.class) {
+      return null;
+    }
+    if (in.getSize() > Integer.MAX_VALUE) {
+      return null;
+    }
+    boolean floating = (outType == DataType.FLOAT || outType == DataType.DOUBLE);
+    boolean integralSource = (elemType != float.class && elemType != double.class);
+    if (!floating && (applyScaleOffset || !outType.isIntegral() || !integralSource)) {
+      return null;
+    }
+
+    // isMissing(NaN) is always true, so if nothing else is missing the values are unchanged
+    return new Kernel(in, outType, convertUnsigned, applyScaleOffset, convertMissing && hasMissing());
+  }
+
+  // Converts the source into a preallocated result, in one pass, with a loop for each primitive source type.
+  // Disjoint ranges of elements may be run concurrently.
+  private class Kernel {
+    private final Object src;
+    private final DataType outType;
+    private final boolean unsigned, scaled, missing;
+    private final double[] dresult;
+    private final float[] fresult;
+    private final Object result;
+
+    Kernel(Array in, DataType outType, boolean unsigned, boolean scaled, boolean missing) {
+      this.src = in.get1DJavaArray(in.getDataType()); // no copy if already in canonical order
+      this.outType = outType;
+      this.unsigned = unsigned;
+      this.scaled = scaled;
+      this.missing = missing;
+      this.result = Array.factory(outType, new int[] {(int) in.getSize()}).getStorage();
+      this.dresult = (result instanceof double[]) ? (double[]) result : null;
+      this.fresult = (result instanceof float[]) ? (float[]) result : null;
+    }
+
+    Array result(int[] shape) {
+      return Array.factory(outType, shape, result);
+    }
+
+    void run(int start, int end) {
+      if (src instanceof byte[]) {
+        byte[] vals = (byte[]) src;
+        for (int i = start; i < end; i++) {
+          put(i, unsigned ? DataType.unsignedByteToShort(vals[i]) : vals[i]);
+        }
+      } else if (src instanceof short[]) {
+        short[] vals = (short[]) src;
+        for (int i = start; i < end; i++) {
+          put(i, unsigned ? DataType.unsignedShortToInt(vals[i]) : vals[i]);
+        }
+      } else if (src instanceof int[]) {
+        int[] vals = (int[]) src;
+        for (int i = start; i < end; i++) {
+          put(i, unsigned ? DataType.unsignedIntToLong(vals[i]) : vals[i]);
+        }
+      } else if (src instanceof float[]) {
+        float[] vals = (float[]) src;
+        for (int i = start; i < end; i++) {
+          put(i, (double) vals[i]);
+        }
+      } else {
+        double[] vals = (double[]) src;
+        for (int i = start; i < end; i++) {
+          put(i, vals[i]);
+        }
+      }
+    }
+
+    // integral source: a long holds the (unsigned) value exactly, as the boxed Number does.
+    // A floating point source always has a FLOAT or DOUBLE result.
+    private void put(int i, long v) {
+      if (dresult != null || fresult != null) {
+        put(i, (double) v);
+      } else if (result instanceof long[]) {
+        ((long[]) result)[i] = v;
+      } else if (result instanceof int[]) {
+        ((int[]) result)[i] = (int) v;
+      } else if (result instanceof short[]) {
+        ((short[]) result)[i] = (short) v;
+      } else {
+        ((byte[]) result)[i] = (byte) v;
+      }
+    }
+
+    private void put(int i, double d) {
+      if (scaled) {
+        d = scale * d + offset;
+      }
+      if (missing && isMissing(d)) {
+        d = Double.NaN;
+      }
+      if (dresult != null) {
+        dresult[i] = d;
+      } else {
+        fresult[i] = (float) d;
+      }
+    }
+  }
+
+  // the general case, one boxed value at a time
+  Array convertByElement(Array in, DataType outType, boolean convertUnsigned, boolean applyScaleOffset,
+          boolean convertMissing) {
     Array out = Array.factory(outType, in.getShape());
     IndexIterator iterIn = in.getIndexIterator();
     IndexIterator iterOut = out.getIndexIterator();
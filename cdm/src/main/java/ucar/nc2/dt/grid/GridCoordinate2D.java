@@ -10,14 +10,15 @@ import ucar.nc2.dataset.CoordinateAxis;
 import ucar.nc2.dt.GridCoordSystem;
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.MAMath;
+import ucar.unidata.geoloc.LatLonCellIndex;
 
 import java.io.IOException;
 
 /**
  * 2D Coordinate System has lat(x,y) and lon(x,y).
  * This class implements finding the index (i,j) from (lat, lon) coord.
- * This is for "one-off" computation, not a systematic lookup table for all points in a pixel array.
- * Hueristic search of the 2D space for the cell that contains the point.
+ * findCoordElement() uses a LatLonCellIndex, which is made once and shared by all GridCoordinate2D on the same axes.
+ * findCoordElementNoForce() is the original heuristic search of the 2D space for the cell that contains the point.
  *
  * @author caron
  * @since Jul 10, 2009
@@ -33,6 +34,7 @@ public class GridCoordinate2D {
   private final int nrows, ncols;
   private ArrayDouble.D2 latEdge, lonEdge;
   private MAMath.MinMax latMinMax, lonMinMax;
+  private LatLonCellIndex index;
 
   GridCoordinate2D(CoordinateAxis2D latCoord, CoordinateAxis2D lonCoord) {
     this.latCoord = latCoord;
@@ -86,9 +88,31 @@ public class GridCoordinate2D {
     return false;
   }
 
+  /**
+   * Find the cell that contains the given lat,lon point.
+   * @param wantLat   lat of point
+   * @param wantLon   lon of point
+   * @param rectIndex return (row,col) index, or if not found, the cell whose center is nearest. may not be null
+   *
+   * @return false if not in the grid.
+   */
   public boolean findCoordElement(double wantLat, double wantLon, int[] rectIndex) {
-    return findCoordElementNoForce(wantLat, wantLon,rectIndex);
-  }  
+    LatLonCellIndex index = getIndex();
+    if (index.findContaining(wantLat, wantLon, rectIndex))
+      return true;
+    index.findNearest(wantLat, wantLon, rectIndex); // best guess
+    return false;
+  }
+
+  private synchronized LatLonCellIndex getIndex() {
+    if (index == null) {
+      index = LatLonCellIndex.factory(latCoord, () -> {
+        findBounds();
+        return new LatLonCellIndex(latEdge, lonEdge);
+      });
+    }
+    return index;
+  }
 
 
   /**
@@ -1,18 +1,38 @@
 package ucar.nc2.ft.point;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import com.google.common.base.Preconditions;
+import ucar.ma2.ArrayStructureBB;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataDeep;
+import ucar.ma2.StructureMembers;
 import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.DsgFeatureCollection;
 import ucar.nc2.ft.FeatureDatasetFactoryManager;
 import ucar.nc2.ft.FeatureDatasetPoint;
 import ucar.nc2.ft.NoFactoryFoundException;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.units.DateUnit;
+import ucar.nc2.util.DiskCache2;
+
+import javax.annotation.Nonnull;
 
 /**
+ * Sorts StationPointFeatures with a Comparator. Features that compare equal are kept in the order they were added.
+ * <p>
+ * Copies of the features are kept in a columnar layout: the station, times and the bytes of the feature data
+ * of all features are stored in a few flat arrays. If a memory budget and a DiskCache2 are given, once the
+ * features in memory exceed the budget, they are sorted and written to a scratch file (a "run"), and memory is
+ * reused for the next features. The iterator merges the runs lazily, reading one feature at a time from each.
+ * Call close() to delete the scratch files.
+ * <p>
+ * Feature data with Strings may be written to disk; feature data with other variable length members, such as
+ * vlens or nested Sequences, is kept in memory.
  *
  * @author cwardgar
  * @since 2014/08/21
@@ -20,44 +40,106 @@ import ucar.nc2.units.DateUnit;
 // This class ought to be a PointFeatureCollection, by extending PointCollectionImpl.
 // However, we do not have the timeUnit and altUnits that the constructor requires. Does it really need
 // that info? Can't it calculate it from one of its features? That interface may need to be re-thought.
-public class SortingStationPointFeatureCache {
+public class SortingStationPointFeatureCache implements Closeable {
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SortingStationPointFeatureCache.class);
+
     public static final Comparator<StationPointFeature> stationNameComparator = (pointFeat1, pointFeat2) ->
             pointFeat1.getStation().getName().compareTo(pointFeat2.getStation().getName());
 
-    private final SortedMap<StationPointFeature, List<StationPointFeature>> inMemCache;
+    private static final int COLUMNS_SIZE = 4 + 4 + 8 + 8; // station, dsg, obsTime, nomTime
+    private static final int OBJECT_SIZE = 40;              // overhead per object estimate
+
+    private final Comparator<StationPointFeature> comp;
+    private final long maxMemoryBytes;
+    private final DiskCache2 diskCache;
+
+    // The stations and collections of the features, which the copies refer to by index
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+    private final List<StationFeatureImpl> stations = new ArrayList<>();
+    private final Map<DsgFeatureCollection, Integer> dsgIndex = new IdentityHashMap<>();
+    private final List<DsgFeatureCollection> dsgs = new ArrayList<>();
+
+    private StructureMembers sm; // from the first feature; all features must have the same members
 
-    private volatile StationFeatureCopyFactory stationFeatCopyFactory;
+    private Columns columns = new Columns();                 // features not yet sorted
+    private final List<Run> runs = new ArrayList<>();       // in the order they were made
+    private final List<RunReader> openReaders = new ArrayList<>();
+    private boolean spillable = true;                      // false once feature data cannot be written to disk
 
     public SortingStationPointFeatureCache() {
         this(stationNameComparator);
     }
 
-    // We're going to init stationFeatCopyFactory using the first feat that's add()ed.
+    // We're going to init the StructureMembers using the first feat that's add()ed.
     public SortingStationPointFeatureCache(Comparator<StationPointFeature> comp) {
-        this.inMemCache = new TreeMap<>(Preconditions.checkNotNull(comp, "comp == null"));
-        // stationFeatCopyFactory remains null.
+        this(comp, Long.MAX_VALUE, null);
     }
 
     public SortingStationPointFeatureCache(
             Comparator<StationPointFeature> comp, StationPointFeature proto, DateUnit dateUnit) throws IOException {
-        this.inMemCache = new TreeMap<>(Preconditions.checkNotNull(comp, "comp == null"));
+        this(comp);
 
         if (proto != null && dateUnit != null) {
-            this.stationFeatCopyFactory = new StationFeatureCopyFactory(proto);
+            init(proto);
         }
     }
 
+    /**
+     * Constructor that writes sorted runs of features to disk when the features in memory exceed a budget.
+     *
+     * @param comp           sort features with this
+     * @param maxMemoryBytes approximate size of the features to keep in memory before writing them to disk
+     * @param diskCache      make the scratch files here; if null, all features are kept in memory
+     */
+    public SortingStationPointFeatureCache(
+            Comparator<StationPointFeature> comp, long maxMemoryBytes, DiskCache2 diskCache) {
+        this.comp = Preconditions.checkNotNull(comp, "comp == null");
+        Preconditions.checkArgument(maxMemoryBytes > 0, "maxMemoryBytes must be > 0");
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.diskCache = diskCache;
+    }
+
+    private void init(StationPointFeature proto) throws IOException {
+        sm = new StructureMembers(proto.getFeatureData().getStructureMembers());
+        ArrayStructureBB.setOffsets(sm);
+    }
+
     public void add(StationPointFeature feat) throws IOException {
         Preconditions.checkNotNull(feat, "feat == null");
-        StationPointFeature featCopy = getStationFeatureCopyFactory(feat).deepCopy(feat);
+        if (sm == null) {
+            init(feat);
+        }
+
+        ArrayStructureBB abb = StructureDataDeep.copyToArrayBB(feat.getFeatureData(), sm, ByteOrder.BIG_ENDIAN);
+        List<Object> heap = abb.getHeap();
+        columns.add(stationIndex(feat.getStation()), dsgIndex(feat.getFeatureCollection()),
+                feat.getObservationTime(), feat.getNominalTime(), abb.getByteBuffer().array(),
+                (heap == null || heap.isEmpty()) ? null : heap.toArray());
+
+        if (columns.sizeInBytes > maxMemoryBytes && diskCache != null && spillable) {
+            spill();
+        }
+    }
 
-        List<StationPointFeature> bucket = inMemCache.get(featCopy);
-        if (bucket == null) {
-            bucket = new LinkedList<>();
-            inMemCache.put(featCopy, bucket);
+    private int stationIndex(StationFeature s) throws IOException {
+        Integer index = stationIndex.get(s.getName());
+        if (index == null) {
+            index = stations.size();
+            stations.add(new StationFeatureImpl(s));
+            stationIndex.put(s.getName(), index);
         }
+        stations.get(index).incrNobs();
+        return index;
+    }
 
-        bucket.add(featCopy);
+    private int dsgIndex(DsgFeatureCollection dsg) {
+        Integer index = dsgIndex.get(dsg);
+        if (index == null) {
+            index = dsgs.size();
+            dsgs.add(dsg);
+            dsgIndex.put(dsg, index);
+        }
+        return index;
     }
 
     public void addAll(File datasetFile) throws NoFactoryFoundException, IOException {
@@ -78,58 +160,383 @@ public class SortingStationPointFeatureCache {
         }
     }
 
-    // Double-check idiom for lazy initialization of instance fields. See Effective Java 2nd Ed, p. 283.
-    private StationFeatureCopyFactory getStationFeatureCopyFactory(StationPointFeature proto) throws IOException {
-        if (stationFeatCopyFactory == null) {
-            synchronized (this) {
-                if (stationFeatCopyFactory == null) {
-                    stationFeatCopyFactory = createStationFeatureCopyFactory(proto);
-                }
+    /**
+     * Iterate over all of the features added so far, in sorted order.
+     * Features added after this is called are not seen by the returned iterator.
+     */
+    public PointFeatureIterator getPointFeatureIterator() throws IOException {
+        if (columns.size > 0) {
+            runs.add(new MemoryRun(columns.sorted()));
+            columns = new Columns();
+        }
+        return new PointIteratorAdapter(new Iter());
+    }
+
+    /**
+     * Delete the scratch files. The cache and its iterators must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        for (RunReader reader : openReaders) {
+            reader.close();
+        }
+        openReaders.clear();
+
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        columns = new Columns();
+    }
+
+    // sort the features in memory and write them to a new scratch file
+    private void spill() throws IOException {
+        CachedFeature[] sorted = columns.sorted();
+        for (CachedFeature feat : sorted) {
+            if (feat.heap != null && !isWritable(feat.heap)) {
+                logger.warn("Feature data has variable length members that cannot be written to disk;" +
+                        " keeping all features in memory");
+                spillable = false;
+                return;
+            }
+        }
+
+        File file = diskCache.createUniqueFile("stationSort", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (CachedFeature feat : sorted) {
+                feat.write(out);
             }
+        } catch (IOException e) {
+            if (!file.delete()) {
+                logger.warn("Failed to delete {}", file.getPath());
+            }
+            throw e;
         }
 
-        assert stationFeatCopyFactory != null : "We screwed this up.";
-        return stationFeatCopyFactory;
+        logger.debug("wrote {} features ({} bytes in memory) to {}", sorted.length, columns.sizeInBytes, file.getPath());
+        runs.add(new FileRun(file, sorted.length));
+        columns = new Columns();
     }
 
-    private StationFeatureCopyFactory createStationFeatureCopyFactory(StationPointFeature proto) throws IOException {
-        return new StationFeatureCopyFactory(proto);
+    ////////////////////////////////////////////////////////////////////////////////////
+    // The copies of the features
+
+    // The features in memory, in the order they were added
+    private class Columns {
+        int size;
+        long sizeInBytes;
+        int[] station = new int[64];
+        int[] dsg = new int[64];
+        double[] obsTime = new double[64];
+        double[] nomTime = new double[64];
+        byte[] data = new byte[0];
+        Object[][] heap; // null until a feature has something on its heap
+
+        void add(int stationIdx, int dsgIdx, double obs, double nom, byte[] featData, Object[] featHeap) {
+            if (size == station.length) {
+                int cap = 2 * size;
+                station = Arrays.copyOf(station, cap);
+                dsg = Arrays.copyOf(dsg, cap);
+                obsTime = Arrays.copyOf(obsTime, cap);
+                nomTime = Arrays.copyOf(nomTime, cap);
+                if (heap != null) heap = Arrays.copyOf(heap, cap);
+            }
+            int recSize = sm.getStructureSize();
+            if (data.length < (size + 1) * recSize) {
+                data = Arrays.copyOf(data, Math.max(2 * data.length, 64 * recSize));
+            }
+
+            station[size] = stationIdx;
+            dsg[size] = dsgIdx;
+            obsTime[size] = obs;
+            nomTime[size] = nom;
+            System.arraycopy(featData, 0, data, size * recSize, recSize);
+            sizeInBytes += COLUMNS_SIZE + recSize;
+            if (featHeap != null) {
+                if (heap == null) heap = new Object[station.length][];
+                heap[size] = featHeap;
+                sizeInBytes += heapSize(featHeap);
+            }
+            size++;
+        }
+
+        // stable sort
+        CachedFeature[] sorted() {
+            int recSize = sm.getStructureSize();
+            CachedFeature[] feats = new CachedFeature[size];
+            for (int i = 0; i < size; i++) {
+                feats[i] = new CachedFeature(station[i], dsg[i], obsTime[i], nomTime[i], data, i * recSize,
+                        (heap == null) ? null : heap[i]);
+            }
+            Arrays.sort(feats, comp);
+            return feats;
+        }
     }
 
-    // TODO: Once this method is called, prohibit any further additions to cache.
-    public PointFeatureIterator getPointFeatureIterator() throws IOException {
-        return new PointIteratorAdapter(new Iter());
+    private static long heapSize(Object[] heap) {
+        long size = OBJECT_SIZE;
+        for (Object o : heap) {
+            if (o instanceof String) {
+                size += OBJECT_SIZE + 2 * ((String) o).length();
+            } else if (o instanceof String[]) {
+                for (String s : (String[]) o) size += OBJECT_SIZE + ((s == null) ? 0 : 2 * s.length());
+            } else {
+                size += OBJECT_SIZE; // LOOK vlens
+            }
+        }
+        return size;
     }
 
-    private class Iter implements Iterator<StationPointFeature> {
-        private final Iterator<List<StationPointFeature>> bucketsIter;
-        private Iterator<StationPointFeature> featsIter;
+    private static boolean isWritable(Object[] heap) {
+        for (Object o : heap) {
+            if (!(o instanceof String) && !(o instanceof String[])) return false;
+        }
+        return true;
+    }
+
+    // A copy of a feature. The feature data is made from its bytes when asked for.
+    private class CachedFeature extends PointFeatureImpl implements StationPointFeature {
+        final int stationIdx, dsgIdx;
+        final byte[] data;
+        final int offset;
+        final Object[] heap;
 
-        public Iter() {
-            this.bucketsIter = inMemCache.values().iterator();
+        CachedFeature(int stationIdx, int dsgIdx, double obsTime, double nomTime, byte[] data, int offset,
+                Object[] heap) {
+            super(dsgs.get(dsgIdx), stations.get(stationIdx), obsTime, nomTime, dsgs.get(dsgIdx).getTimeUnit());
+            this.stationIdx = stationIdx;
+            this.dsgIdx = dsgIdx;
+            this.data = data;
+            this.offset = offset;
+            this.heap = heap;
         }
 
+        @Nonnull
         @Override
-        public boolean hasNext() {  // Method is idempotent.
-            while (featsIter == null || !featsIter.hasNext()) {
-                if (!bucketsIter.hasNext()) {
-                    return false;
+        public StructureData getDataAll() throws IOException {
+            return getFeatureData();
+        }
+
+        @Nonnull
+        @Override
+        public StructureData getFeatureData() throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN); // as copied in add()
+            ArrayStructureBB abb = new ArrayStructureBB(sm, new int[] {1}, bb, offset);
+            if (heap != null) {
+                for (Object o : heap) abb.addObjectToHeap(o);
+            }
+            return abb.getStructureData(0);
+        }
+
+        @Override
+        public StationFeature getStation() {
+            return stations.get(stationIdx);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(stationIdx);
+            out.writeInt(dsgIdx);
+            out.writeDouble(getObservationTime());
+            out.writeDouble(getNominalTime());
+            out.write(data, offset, sm.getStructureSize());
+
+            if (heap == null) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(heap.length);
+            for (Object o : heap) {
+                if (o instanceof String) {
+                    out.writeByte(0);
+                    writeString(out, (String) o);
+                } else {
+                    String[] ss = (String[]) o;
+                    out.writeByte(1);
+                    out.writeInt(ss.length);
+                    for (String s : ss) writeString(out, s);
+                }
+            }
+        }
+    }
+
+    private CachedFeature readFeature(DataInputStream in) throws IOException {
+        int stationIdx = in.readInt();
+        int dsgIdx = in.readInt();
+        double obsTime = in.readDouble();
+        double nomTime = in.readDouble();
+        byte[] data = new byte[sm.getStructureSize()];
+        in.readFully(data);
+
+        Object[] heap = null;
+        int nheap = in.readInt();
+        if (nheap > 0) {
+            heap = new Object[nheap];
+            for (int i = 0; i < nheap; i++) {
+                if (in.readByte() == 0) {
+                    heap[i] = readString(in);
                 } else {
-                    featsIter = bucketsIter.next().iterator();
+                    String[] ss = new String[in.readInt()];
+                    for (int j = 0; j < ss.length; j++) ss[j] = readString(in);
+                    heap[i] = ss;
                 }
             }
+        }
+        return new CachedFeature(stationIdx, dsgIdx, obsTime, nomTime, data, 0, heap);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////
+    // Sorted runs, and merging them
+
+    private interface Run {
+        RunReader open() throws IOException;
+
+        void delete();
+    }
+
+    private interface RunReader extends Closeable {
+        // null when done
+        CachedFeature next() throws IOException;
+    }
+
+    private static class MemoryRun implements Run {
+        private final CachedFeature[] feats;
+
+        MemoryRun(CachedFeature[] feats) {
+            this.feats = feats;
+        }
+
+        @Override
+        public RunReader open() {
+            return new RunReader() {
+                int next = 0;
+
+                @Override
+                public CachedFeature next() {
+                    return (next < feats.length) ? feats[next++] : null;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void delete() {
+        }
+    }
+
+    private class FileRun implements Run {
+        private final File file;
+        private final int count;
 
-            assert featsIter != null && featsIter.hasNext();
-            return true;
+        FileRun(File file, int count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        @Override
+        public RunReader open() throws IOException {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return new RunReader() {
+                int nread = 0;
+
+                @Override
+                public CachedFeature next() throws IOException {
+                    if (nread == count) return null;
+                    nread++;
+                    return readFeature(in);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+        }
+
+        @Override
+        public void delete() {
+            if (file.exists() && !file.delete()) {
+                logger.warn("Failed to delete {}", file.getPath());
+            }
+        }
+    }
+
+    // The next feature of a run
+    private static class Head {
+        final int runIdx;
+        final RunReader reader;
+        CachedFeature feat;
+
+        Head(int runIdx, RunReader reader) {
+            this.runIdx = runIdx;
+            this.reader = reader;
+        }
+    }
+
+    private class Iter implements Iterator<StationPointFeature> {
+        // ties go to the earlier run, which keeps the sort stable
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, runs.size()), (h1, h2) -> {
+            int c = comp.compare(h1.feat, h2.feat);
+            return (c != 0) ? c : Integer.compare(h1.runIdx, h2.runIdx);
+        });
+
+        public Iter() throws IOException {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = runs.get(i).open();
+                openReaders.add(reader);
+                advance(new Head(i, reader));
+            }
+        }
+
+        private void advance(Head head) throws IOException {
+            head.feat = head.reader.next();
+            if (head.feat != null) {
+                heads.add(head);
+            } else {
+                head.reader.close();
+                openReaders.remove(head.reader);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {  // Method is idempotent.
+            return !heads.isEmpty();
         }
 
         @Override
         public StationPointFeature next() {
             if (!hasNext()) {  // Don't rely on user to call this.
                 throw new NoSuchElementException("There are no more elements.");
-            } else {
-                return featsIter.next();
             }
+
+            Head head = heads.poll();
+            StationPointFeature feat = head.feat;
+            try {
+                advance(head);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return feat;
         }
 
         @Override
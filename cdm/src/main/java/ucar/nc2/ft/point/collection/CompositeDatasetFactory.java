@@ -8,6 +8,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import thredds.inventory.MFileCollectionManager;
 import thredds.inventory.TimedCollection;
@@ -37,6 +39,63 @@ public class CompositeDatasetFactory {
   // static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(CompositeDatasetFactory.class);
   static boolean debug = false;
 
+  // number of datasets of a composite point collection read ahead of the current one; 0 means none
+  static private int prefetch = 0;
+  static private int prefetchQueueSize = 1000;
+  static private ExecutorService prefetchExecutor;
+
+  /**
+   * Set the number of datasets that iterators over composite point and station collections open and read ahead of
+   * the one being used, on other threads. The threads are shared by all iterators.
+   *
+   * @param n number of datasets; 0 means read each dataset on the calling thread when it is needed (default)
+   */
+  static public synchronized void setPrefetch(int n) {
+    n = Math.max(n, 0);
+    if (n == prefetch) return;
+    shutdown();
+    prefetch = n;
+  }
+
+  static public synchronized int getPrefetch() {
+    return prefetch;
+  }
+
+  /**
+   * Stop the threads, letting running tasks complete. They are started again if needed.
+   */
+  static public synchronized void shutdown() {
+    if (prefetchExecutor != null) {
+      prefetchExecutor.shutdown();
+      prefetchExecutor = null;
+    }
+  }
+
+  /**
+   * Set the number of features read ahead from each dataset, before the reading thread waits for them to be used.
+   *
+   * @param n number of features; default is 1000
+   */
+  static public synchronized void setPrefetchQueueSize(int n) {
+    prefetchQueueSize = Math.max(n, 1);
+  }
+
+  static public synchronized int getPrefetchQueueSize() {
+    return prefetchQueueSize;
+  }
+
+  static synchronized ExecutorService getPrefetchExecutor() {
+    if (prefetchExecutor == null) {
+      int nthreads = Math.max(prefetch, Runtime.getRuntime().availableProcessors());
+      prefetchExecutor = Executors.newFixedThreadPool(nthreads, r -> {
+        Thread t = new Thread(r, "CompositePointPrefetch");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return prefetchExecutor;
+  }
+
   static public FeatureDataset factory(String location, FeatureType wantFeatureType, MFileCollectionManager dcm, Formatter errlog) throws IOException {
 
     TimedCollection collection = new TimedCollection(dcm, errlog);
@@ -6,7 +6,6 @@ package ucar.nc2.ft.point.collection;
 
 import java.io.IOException;
 import java.util.Formatter;
-import java.util.Iterator;
 import java.util.List;
 import javax.annotation.Nonnull;
 
@@ -21,7 +20,6 @@ import ucar.nc2.ft.PointFeature;
 import ucar.nc2.ft.PointFeatureCollection;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.ft.point.PointCollectionImpl;
-import ucar.nc2.ft.point.PointIteratorAbstract;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarDateUnit;
 import ucar.unidata.geoloc.LatLonRect;
@@ -92,22 +90,16 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
     return pointCollections.update();
   }
 
-  private class CompositePointFeatureIterator extends PointIteratorAbstract {
-    private boolean finished = false;
-    private Iterator<TimedCollection.Dataset> iter;
-    private FeatureDatasetPoint currentDataset;
-    private PointFeatureIterator pfIter = null;
+  private class CompositePointFeatureIterator extends CompositePointIterator {
 
     CompositePointFeatureIterator() {
-      iter = pointCollections.getDatasets().iterator();
+      super(pointCollections.getDatasets().iterator());
     }
 
-    private PointFeatureIterator getNextIterator() throws IOException {
-      if (!iter.hasNext()) return null;
-      TimedCollection.Dataset td = iter.next();
-
+    @Override
+    protected Source open(TimedCollection.Dataset td) throws IOException {
       Formatter errlog = new Formatter();
-      currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, td.getLocation(), null, errlog);
+      FeatureDatasetPoint currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, td.getLocation(), null, errlog);
       if (currentDataset == null)
         throw new IllegalStateException("Cant open FeatureDatasetPoint " + td.getLocation());
       if (CompositeDatasetFactory.debug)
@@ -115,129 +107,13 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
 
       List<DsgFeatureCollection> fcList = currentDataset.getPointFeatureCollectionList();
       PointFeatureCollection pc = (PointFeatureCollection) fcList.get(0);
-      return pc.getPointFeatureIterator();
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        if (pfIter == null) {
-          pfIter = getNextIterator();
-          if (pfIter == null) {
-            close();
-            return false;
-          }
-        }
-
-        if (!pfIter.hasNext()) {
-          pfIter.close();
-          if (CompositeDatasetFactory.debug)
-            System.out.printf("CompositePointFeatureIterator open dataset %s%n", currentDataset.getLocation());
-          currentDataset.close();
-
-          pfIter = getNextIterator();
-          return hasNext();
-        }
-
-        return true;
-      } catch (IOException ioe) {
-        throw new RuntimeException(ioe);
-      }
+      return new Source(currentDataset, pc.getPointFeatureIterator(), false);
     }
 
     @Override
     public PointFeature next() {
-      return pfIter.next();
-    }
-
-    @Override
-    public void close() {
-      if (finished) return;
-
-      if (pfIter != null)
-        pfIter.close();
-      finishCalcBounds();
-
-      if (currentDataset != null)
-        try {
-          currentDataset.close();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-
-      finished = true;
+      return nextFeature();
     }
   }
 
-  /* private class CompositePointFeatureIteratorMultithreaded extends PointIteratorAbstract {
-    private boolean finished = false;
-    private int bufferSize = -1;
-    private Iterator<TimedCollection.Dataset> iter;
-    private FeatureDatasetPoint currentDataset;
-    private PointFeatureIterator pfIter = null;
-
-    CompositePointFeatureIteratorMultithreaded() {
-      iter = pointCollections.getDatasets().iterator();
-    }
-
-    private PointFeatureIterator getNextIterator() throws IOException {
-      if (!iter.hasNext()) return null;
-      TimedCollection.Dataset td = iter.next();
-      Formatter errlog = new Formatter();
-      currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, td.getLocation(), null, errlog);
-      if (currentDataset == null)
-        throw new IllegalStateException("Cant open FeatureDatasetPoint " + td.getLocation());
-      if (CompositeDatasetFactory.debug)
-        System.out.printf("CompositePointFeatureIterator open dataset %s%n", td.getLocation());
-      List<FeatureCollection> fcList = currentDataset.getPointFeatureCollectionList();
-      PointFeatureCollection pc = (PointFeatureCollection) fcList.get(0);
-      return pc.getPointFeatureIterator(bufferSize);
-    }
-
-    public boolean hasNext() {
-
-      if (pfIter == null) {
-        pfIter = getNextIterator();
-        if (pfIter == null) {
-          close();
-          return false;
-        }
-      }
-
-      if (!pfIter.hasNext()) {
-        pfIter.close();
-        currentDataset.close();
-        pfIter = getNextIterator();
-        return hasNext();
-      }
-
-      return true;
-    }
-
-    public PointFeature next() {
-      return pfIter.next();
-    }
-
-    public void close() {
-      if (finished) return;
-
-      if (pfIter != null)
-        pfIter.close();
-      finishCalcBounds();
-
-      if (currentDataset != null)
-        try {
-          currentDataset.close();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-
-      finished = true;
-    }
-
-    public void setBufferSize(int bytes) {
-      bufferSize = bytes;
-    }
-  }  */
-
 }
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point.collection;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+
+import thredds.inventory.TimedCollection;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataDeep;
+import ucar.ma2.StructureMembers;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.point.PointFeatureImpl;
+import ucar.nc2.ft.point.PointIteratorAbstract;
+import ucar.nc2.ft.point.StationFeature;
+import ucar.nc2.ft.point.StationPointFeature;
+
+/**
+ * An iterator over the PointFeatures of the datasets of a TimedCollection, one dataset after another.
+ * Each dataset is closed when its features are used up, or when this iterator is closed.
+ * <p>
+ * If CompositeDatasetFactory.getPrefetch() is greater than 0, that many of the following datasets are opened and
+ * read by other threads while the current one is being used. Their features are copied, and handed over in order
+ * through queues of CompositeDatasetFactory.getPrefetchQueueSize() features; a reading thread waits when its queue
+ * is full.
+ * If the next dataset has not been started by another thread when it is needed, it is read on the calling thread.
+ * If the iterator is garbage collected without being closed, the reading threads stop and close their datasets.
+ *
+ * @since 5.0
+ */
+abstract class CompositePointIterator extends PointIteratorAbstract {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CompositePointIterator.class);
+  static private final Object END = new Object();
+  static private final long OFFER_WAIT_MSECS = 100;
+
+  // iterators with datasets being read by other threads, until they are closed
+  static private final ReferenceQueue<CompositePointIterator> dropped = new ReferenceQueue<>();
+  static private final Set<Owner> owners = Collections.newSetFromMap(new ConcurrentHashMap<Owner, Boolean>());
+
+  // The datasets read by other threads for an iterator, which refer to it only weakly, so that it can be
+  // garbage collected if it is dropped without being closed; they are then cancelled
+  static private class Owner extends WeakReference<CompositePointIterator> {
+    final Set<Fetch> fetches = Collections.newSetFromMap(new ConcurrentHashMap<Fetch, Boolean>());
+
+    Owner(CompositePointIterator iter) {
+      super(iter, dropped);
+    }
+  }
+
+  static private void cancelDropped() {
+    Reference<? extends CompositePointIterator> ref;
+    while ((ref = dropped.poll()) != null) {
+      Owner owner = (Owner) ref;
+      if (owners.remove(owner)) {
+        logger.debug("CompositePointIterator was not closed, cancelling {} datasets", owner.fetches.size());
+        for (Fetch fetch : owner.fetches)
+          fetch.cancel();
+      }
+    }
+  }
+
+  /**
+   * An open dataset and an iterator over the features wanted from it.
+   */
+  static class Source {
+    final FeatureDatasetPoint dataset;
+    final PointFeatureIterator iter; // null if nothing is wanted from the dataset
+    final boolean isStation;         // the features are StationPointFeatures
+
+    Source(FeatureDatasetPoint dataset, PointFeatureIterator iter, boolean isStation) {
+      this.dataset = dataset;
+      this.iter = iter;
+      this.isStation = isStation;
+    }
+
+    void close() throws IOException {
+      if (iter != null)
+        iter.close();
+      dataset.close();
+      if (CompositeDatasetFactory.debug)
+        System.out.printf("CompositePointIterator close dataset %s%n", dataset.getLocation());
+    }
+  }
+
+  private final Iterator<TimedCollection.Dataset> datasets;
+  private final int prefetch, queueSize;
+  private final ArrayDeque<Fetch> ahead = new ArrayDeque<>();
+  private Owner owner; // made with the first Fetch
+
+  private Source current;       // the current dataset, when read on this thread
+  private Fetch currentFetch;   // the current dataset, when read by another thread
+  private PointFeature nextFeature; // taken from currentFetch by hasNext()
+  private boolean finished = false;
+
+  protected CompositePointIterator(Iterator<TimedCollection.Dataset> datasets) {
+    this.datasets = datasets;
+    this.prefetch = CompositeDatasetFactory.getPrefetch();
+    this.queueSize = CompositeDatasetFactory.getPrefetchQueueSize();
+  }
+
+  /**
+   * Open a dataset of the collection. Called on the reading thread, which may not be the calling thread.
+   *
+   * @param td the dataset
+   * @return the open dataset, with a null iterator if it has nothing wanted; or null to skip the dataset
+   * @throws IOException on read error
+   */
+  protected abstract Source open(TimedCollection.Dataset td) throws IOException;
+
+  @Override
+  public boolean hasNext() {
+    if (finished) return false;
+
+    try {
+      while (true) {
+        if (currentFetch != null) {
+          if (nextFeature != null) return true;
+          Object item = currentFetch.take();
+          if (item instanceof PointFeature) {
+            nextFeature = (PointFeature) item;
+            return true;
+          }
+          Fetch done = currentFetch;
+          currentFetch = null;
+          owner.fetches.remove(done);
+          done.finish(item);
+
+        } else if (current != null) {
+          if (current.iter != null && current.iter.hasNext()) return true;
+          Source done = current;
+          current = null;
+          done.close();
+        }
+
+        if (!advance()) {
+          close();
+          return false;
+        }
+      }
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  // move on to the next dataset, return false if there are no more
+  private boolean advance() throws IOException {
+    fillAhead();
+    Fetch fetch = ahead.poll();
+    if (fetch == null) {
+      if (!datasets.hasNext()) return false;
+      current = open(datasets.next());
+
+    } else if (fetch.claim()) { // not started yet, so read it here
+      owner.fetches.remove(fetch);
+      current = open(fetch.td);
+
+    } else {
+      currentFetch = fetch;
+    }
+    fillAhead();
+    return true;
+  }
+
+  private void fillAhead() {
+    if (ahead.size() >= prefetch || !datasets.hasNext()) return;
+    cancelDropped();
+    if (owner == null) {
+      owner = new Owner(this);
+      owners.add(owner);
+    }
+
+    while (ahead.size() < prefetch && datasets.hasNext()) {
+      Fetch fetch = new Fetch(owner, datasets.next(), queueSize);
+      owner.fetches.add(fetch);
+      ahead.add(fetch);
+      CompositeDatasetFactory.getPrefetchExecutor().execute(fetch);
+    }
+  }
+
+  /**
+   * Get the next feature from the current dataset.
+   * Subclasses call this from next(), after calculating bounds if they want to.
+   *
+   * @return the next feature
+   */
+  protected PointFeature nextFeature() {
+    if (current == null && nextFeature == null && !hasNext())
+      throw new NoSuchElementException();
+    if (nextFeature != null) {
+      PointFeature pf = nextFeature;
+      nextFeature = null;
+      return pf;
+    }
+    return current.iter.next();
+  }
+
+  @Override
+  public void close() {
+    if (finished) return;
+    finished = true;
+
+    for (Fetch fetch : ahead)
+      fetch.cancel();
+    ahead.clear();
+    if (currentFetch != null) {
+      currentFetch.cancel();
+      currentFetch = null;
+    }
+    if (owner != null) {
+      owners.remove(owner);
+      owner.clear();
+    }
+    finishCalcBounds();
+
+    if (current != null)
+      try {
+        current.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      } finally {
+        current = null;
+      }
+  }
+
+  // A feature read by another thread must not depend on the state of the iterator it came from,
+  // which has moved on by the time the feature is used
+  static private PointFeature copy(PointFeature from, boolean isStation) throws IOException {
+    StructureData featureData = from.getFeatureData();
+    StructureData dataAll = from.getDataAll();
+    StructureData featureCopy = StructureDataDeep.copy(featureData, new StructureMembers(featureData.getStructureMembers()));
+    StructureData dataAllCopy = (dataAll == featureData) ? featureCopy :
+            StructureDataDeep.copy(dataAll, new StructureMembers(dataAll.getStructureMembers()));
+
+    if (isStation)
+      return new StationFeatureCopy((StationPointFeature) from, featureCopy, dataAllCopy);
+    return new FeatureCopy(from, featureCopy, dataAllCopy);
+  }
+
+  static private class FeatureCopy extends PointFeatureImpl {
+    private final StructureData featureData, dataAll;
+
+    FeatureCopy(PointFeature from, StructureData featureData, StructureData dataAll) {
+      super(from.getFeatureCollection(), from.getLocation(), from.getObservationTime(), from.getNominalTime(),
+              from.getFeatureCollection().getTimeUnit());
+      this.featureData = featureData;
+      this.dataAll = dataAll;
+    }
+
+    @Nonnull
+    @Override
+    public StructureData getFeatureData() {
+      return featureData;
+    }
+
+    @Nonnull
+    @Override
+    public StructureData getDataAll() {
+      return dataAll;
+    }
+  }
+
+  static private class StationFeatureCopy extends FeatureCopy implements StationPointFeature {
+    private final StationFeature station;
+
+    StationFeatureCopy(StationPointFeature from, StructureData featureData, StructureData dataAll) {
+      super(from, featureData, dataAll);
+      this.station = from.getStation();
+    }
+
+    @Nonnull
+    @Override
+    public StationFeature getStation() {
+      return station;
+    }
+  }
+
+  // One dataset read by another thread. It must not refer to the iterator, except through owner.
+  static private class Fetch implements Runnable {
+    final TimedCollection.Dataset td;
+    private final Owner owner;
+    private final BlockingQueue<Object> queue;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private Source source; // guarded by this
+    private boolean done;  // guarded by this
+
+    Fetch(Owner owner, TimedCollection.Dataset td, int queueSize) {
+      this.owner = owner;
+      this.td = td;
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    // only one of the reading thread and the calling thread reads a dataset
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    @Override
+    public void run() {
+      if (!claim()) return;
+
+      Object last = END;
+      try {
+        Source s = open();
+        synchronized (this) {
+          source = s;
+        }
+        if (s != null && s.iter != null) {
+          while (s.iter.hasNext()) {
+            if (!put(copy(s.iter.next(), s.isStation))) break;
+          }
+        }
+      } catch (Throwable t) {
+        last = t;
+      }
+      put(last);
+
+      // whoever comes last closes the dataset if it was cancelled
+      synchronized (this) {
+        done = true;
+        if (cancelled) closeQuietly();
+      }
+    }
+
+    // the iterator is only used while the dataset is being opened
+    private Source open() throws IOException {
+      CompositePointIterator iter = owner.get();
+      return (iter == null) ? null : iter.open(td);
+    }
+
+    // wait for room in the queue; false if cancelled
+    private boolean put(Object item) {
+      try {
+        while (!cancelled) {
+          if (queue.offer(item, OFFER_WAIT_MSECS, TimeUnit.MILLISECONDS)) return true;
+          if (owner.get() == null) // nothing will take it
+            cancelDropped();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+
+    Object take() throws IOException {
+      try {
+        return queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted reading " + td.getLocation(), e);
+      }
+    }
+
+    // the last item has been taken: close the dataset, and pass on any failure
+    void finish(Object last) throws IOException {
+      Source s;
+      synchronized (this) {
+        s = source;
+        source = null;
+      }
+      if (s != null) s.close();
+
+      if (last instanceof IOException) throw (IOException) last;
+      if (last instanceof RuntimeException) throw (RuntimeException) last;
+      if (last instanceof Error) throw (Error) last;
+      if (last instanceof Throwable) throw new RuntimeException((Throwable) last);
+    }
+
+    void cancel() {
+      if (claim()) return; // never started
+      synchronized (this) {
+        cancelled = true;
+        queue.clear();
+        if (done) closeQuietly();
+      }
+    }
+
+    private void closeQuietly() {
+      if (source == null) return;
+      try {
+        source.close();
+      } catch (Throwable t) {
+        logger.warn("Failed to close {}", td.getLocation(), t);
+      }
+      source = null;
+    }
+  }
+}
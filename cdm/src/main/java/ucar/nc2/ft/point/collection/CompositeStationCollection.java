@@ -26,7 +26,6 @@ import ucar.nc2.ft.PointFeatureCollectionIterator;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.ft.StationTimeSeriesFeature;
 import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
-import ucar.nc2.ft.point.PointIteratorAbstract;
 import ucar.nc2.ft.point.StationFeature;
 import ucar.nc2.ft.point.StationHelper;
 import ucar.nc2.ft.point.StationTimeSeriesCollectionImpl;
@@ -281,21 +280,16 @@ public class CompositeStationCollection extends StationTimeSeriesCollectionImpl
 
     // the iterator over PointFeature - an iterator over iterators, one for each dataset
 
-    private class CompositeStationFeatureIterator extends PointIteratorAbstract {
-      private Iterator<TimedCollection.Dataset> iter;
-      private FeatureDatasetPoint currentDataset;
-      private PointFeatureIterator pfIter = null;
-      private boolean finished = false;
+    private class CompositeStationFeatureIterator extends CompositePointIterator {
 
       CompositeStationFeatureIterator() {
-        iter = collForFeature.getDatasets().iterator();
+        super(collForFeature.getDatasets().iterator());
       }
 
-      private PointFeatureIterator getNextIterator() throws IOException {
-        if (!iter.hasNext()) return null;
-        TimedCollection.Dataset td = iter.next();
+      @Override
+      protected Source open(TimedCollection.Dataset td) throws IOException {
         Formatter errlog = new Formatter();
-        currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, td.getLocation(), null, errlog);
+        FeatureDatasetPoint currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, td.getLocation(), null, errlog);
         if (currentDataset == null)
           throw new IllegalStateException("Cant open FeatureDatasetPoint " + td.getLocation());
 
@@ -305,67 +299,21 @@ public class CompositeStationCollection extends StationTimeSeriesCollectionImpl
         if (s == null) {
           System.out.printf("CompositeStationFeatureIterator dataset: %s missing station %s%n",
                   td.getLocation(), getName());
-          return getNextIterator();
+          return new Source(currentDataset, null, true);
         }
 
         StationTimeSeriesFeature stnFeature = stnCollection.getStationTimeSeriesFeature(s);
         if (CompositeDatasetFactory.debug)
           System.out.printf("CompositeStationFeatureIterator open dataset: %s for %s%n", td.getLocation(), s.getName());
-        return stnFeature.getPointFeatureIterator();
-      }
-
-      @Override
-      public boolean hasNext() {
-        try {
-          if (pfIter == null) {
-            pfIter = getNextIterator();
-            if (pfIter == null) {
-              close();
-              return false;
-            }
-          }
-
-          if (!pfIter.hasNext()) {
-            pfIter.close();
-            currentDataset.close();
-            if (CompositeDatasetFactory.debug)
-              System.out.printf("CompositeStationFeatureIterator close dataset: %s%n", currentDataset.getLocation());
-            pfIter = getNextIterator();
-            return hasNext();
-          }
-
-          return true;
-        } catch (IOException ioe) {
-          throw new RuntimeException(ioe);
-        }
+        return new Source(currentDataset, stnFeature.getPointFeatureIterator(), true);
       }
 
       @Override
       public PointFeature next() {
-        PointFeature pf =  pfIter.next();
+        PointFeature pf = nextFeature();
         calcBounds(pf);
         return pf;
       }
-
-      @Override
-      public void close() {
-        if (finished) return;
-
-        if (pfIter != null)
-          pfIter.close();
-
-        if (currentDataset != null)
-          try {
-            currentDataset.close();
-            if (CompositeDatasetFactory.debug)
-              System.out.printf("CompositeStationFeatureIterator close dataset: %s%n", currentDataset.getLocation());
-          } catch (IOException e) {
-            throw new RuntimeException(e);
-          }
-
-        finishCalcBounds();
-        finished = true;
-      }
     }
   }
 }
@@ -7,7 +7,6 @@ package ucar.nc2.ft.point.collection;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Formatter;
-import java.util.Iterator;
 import java.util.List;
 
 import thredds.inventory.TimedCollection;
@@ -21,7 +20,6 @@ import ucar.nc2.ft.PointFeatureCollection;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
 import ucar.nc2.ft.point.PointCollectionImpl;
-import ucar.nc2.ft.point.PointIteratorAbstract;
 import ucar.nc2.ft.point.StationFeature;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarDateUnit;
@@ -67,26 +65,21 @@ public class CompositeStationCollectionFlattened extends PointCollectionImpl {
     return new PointIterator();
   }
 
-  private class PointIterator extends PointIteratorAbstract {
-    private boolean finished = false;
-    private Iterator<TimedCollection.Dataset> iter;
-    private FeatureDatasetPoint currentDataset;
-    private PointFeatureIterator pfIter = null;
+  private class PointIterator extends CompositePointIterator {
 
     PointIterator() {
-      iter = stnCollections.getDatasets().iterator();
+      super(stnCollections.getDatasets().iterator());
     }
 
-    private PointFeatureIterator getNextIterator() throws IOException {
-      if (!iter.hasNext()) return null;
-      TimedCollection.Dataset td = iter.next();
+    @Override
+    protected Source open(TimedCollection.Dataset td) throws IOException {
       Formatter errlog = new Formatter();
 
       // open the next dataset
-      currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, td.getLocation(), null, errlog);
+      FeatureDatasetPoint currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, td.getLocation(), null, errlog);
       if (currentDataset == null) {
         logger.error("FeatureDatasetFactoryManager failed to open: " + td.getLocation() + " \nerrlog = " + errlog);
-        return getNextIterator();
+        return null;
       }
 
       if (CompositeDatasetFactory.debug)
@@ -109,61 +102,15 @@ public class CompositeStationCollectionFlattened extends PointCollectionImpl {
         pc = stnCollection.flatten(names, dateRange, null);
       }
 
-      return pc.getPointFeatureIterator();
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        if (pfIter == null) {
-          pfIter = getNextIterator();
-          if (pfIter == null) {
-            close();
-            return false;
-          }
-        }
-
-        if (!pfIter.hasNext()) {
-          pfIter.close();
-          currentDataset.close();
-          if (CompositeDatasetFactory.debug)
-            System.out.printf("CompositeStationCollectionFlattened.Iterator close dataset: %s%n", currentDataset.getLocation());
-          pfIter = getNextIterator();
-          return hasNext();
-        }
-        return true;
-
-      } catch (IOException ioe) {
-        throw new RuntimeException(ioe);
-      }
+      return new Source(currentDataset, pc.getPointFeatureIterator(), true);
     }
 
     @Override
     public PointFeature next() {
-      PointFeature pf =  pfIter.next();
+      PointFeature pf = nextFeature();
       calcBounds(pf);
       return pf;
     }
-
-    @Override
-    public void close() {
-      if (finished) return;
-
-      if (pfIter != null)
-        pfIter.close();
-      finishCalcBounds();
-
-      if (currentDataset != null)
-        try {
-          currentDataset.close();
-          if (CompositeDatasetFactory.debug)
-            System.out.printf("CompositeStationCollectionFlattened close dataset: %s%n", currentDataset.getLocation());
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-
-      finished = true;
-    }
   }
 
 }
@@ -11,12 +11,18 @@ import ucar.ma2.Section;
 import ucar.nc2.*;
 import ucar.nc2.constants.*;
 import ucar.nc2.ft2.coverage.*;
+import ucar.nc2.iosp.netcdf3.N3iosp;
+import ucar.nc2.iosp.netcdf3.N3outputStreamWriter;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.util.Optional;
 import ucar.unidata.geoloc.*;
 import ucar.unidata.geoloc.projection.LatLonProjection;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -56,15 +62,47 @@ public class CFGridCoverageWriter2 {
     return writer2.writeFile(gdsOrg, gridNames, subset, tryToAddLatLon2D, testSizeOnly, writer);
   }
 
+  /**
+   * Set up to write a netCDF-3 file from a CoverageDataset directly to a stream, without an intermediate file.
+   * The header and the variable sizes are computed here, so the length of the file is known before
+   * any coverage data is read. The data is read and written when Netcdf3Stream.write() is called.
+   *
+   * @param gdsOrg            the CoverageDataset
+   * @param gridNames         the list of coverage names to be written, or null for all
+   * @param subset            defines the requested subset, or null to include everything in gdsOrg
+   * @param tryToAddLatLon2D  add 2D lat/lon coordinates, if possible
+   * @return the stream writer, or an error message if the request contains no data
+   * @throws IOException
+   * @throws InvalidRangeException
+   */
+  public static ucar.nc2.util.Optional<Netcdf3Stream> makeNetcdf3Stream(CoverageCollection gdsOrg, List<String> gridNames,
+          SubsetParams subset, boolean tryToAddLatLon2D) throws IOException, InvalidRangeException {
+    CFGridCoverageWriter2 writer2 = new CFGridCoverageWriter2();
+    if (gridNames == null) gridNames = writer2.allGridNames(gdsOrg);
+    if (subset == null) subset = new SubsetParams();
+
+    Optional<CoverageCollection> opt = CoverageSubsetter2.makeCoverageDatasetSubset(gdsOrg, gridNames, subset);
+    if (!opt.isPresent())
+      return ucar.nc2.util.Optional.empty(opt.getErrorMessage());
+    CoverageCollection subsetDataset = opt.get();
+
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(null, false);  // only used to define the file
+    boolean shouldAddLatLon2D = writer2.defineFile(subsetDataset, tryToAddLatLon2D, writer);
+    long totalSizeOfVars = writer2.sizeOfVars(writer);
+
+    // The writer's NetcdfFile is only handed out after create(), so use the same hack as sizeOfVars() to get it.
+    NetcdfFile ncfile = writer.addGroup(null, null).getNetcdfFile();
+    ncfile.finish();
+
+    return Optional.of(writer2.new Netcdf3Stream(gdsOrg, subset, subsetDataset, ncfile, shouldAddLatLon2D,
+            totalSizeOfVars));
+  }
+
   private ucar.nc2.util.Optional<Long> writeFile(CoverageCollection gdsOrg, List<String> gridNames,
           SubsetParams subsetParams, boolean tryToAddLatLon2D, boolean testSizeOnly, NetcdfFileWriter writer)
           throws IOException, InvalidRangeException {
     if (gridNames == null) {  // want all of them
-      gridNames = new LinkedList<>();
-
-      for (Coverage coverage : gdsOrg.getCoverages()) {
-        gridNames.add(coverage.getName());
-      }
+      gridNames = allGridNames(gdsOrg);
     }
 
     if (subsetParams == null) {
@@ -89,6 +127,37 @@ public class CFGridCoverageWriter2 {
 
     ////////////////////////////////////////////////////////////////////
 
+    boolean shouldAddLatLon2D = defineFile(subsetDataset, tryToAddLatLon2D, writer);
+    long totalSizeOfVars = sizeOfVars(writer);
+
+    if (!testSizeOnly) {
+      // Actually create file and write variable data to it.
+      writer.setLargeFile(isLargeFile(totalSizeOfVars));
+      writer.create();
+
+      writeCoordinateData(subsetDataset, writer);
+      writeCoverageData(gdsOrg, subsetParams, subsetDataset, writer);
+
+      if (shouldAddLatLon2D) {
+        writeLatLon2D(subsetDataset, writer);
+      }
+
+      writer.close();
+    }
+
+    return Optional.of(totalSizeOfVars);
+  }
+
+  private List<String> allGridNames(CoverageCollection gdsOrg) {
+    List<String> gridNames = new LinkedList<>();
+    for (Coverage coverage : gdsOrg.getCoverages()) {
+      gridNames.add(coverage.getName());
+    }
+    return gridNames;
+  }
+
+  // add the dimensions, variables and attributes to the writer; return true if 2D lat/lon variables were added
+  private boolean defineFile(CoverageCollection subsetDataset, boolean tryToAddLatLon2D, NetcdfFileWriter writer) {
     addGlobalAttributes(subsetDataset, writer);
     addDimensions(subsetDataset, writer);
     addCoordinateAxes(subsetDataset, writer);
@@ -101,7 +170,10 @@ public class CFGridCoverageWriter2 {
     }
 
     addCFAnnotations(subsetDataset, writer, shouldAddLatLon2D);
+    return shouldAddLatLon2D;
+  }
 
+  private long sizeOfVars(NetcdfFileWriter writer) {
     long totalSizeOfVars = 0;
     // This is a hack to get the root group of writer's underlying NetcdfFile. See the method's Javadoc.
     Group rootGroup = writer.addGroup(null, null);
@@ -110,23 +182,7 @@ public class CFGridCoverageWriter2 {
     for (Variable var : rootGroup.getVariables()) {
       totalSizeOfVars += var.getSize() * var.getElementSize();
     }
-
-    if (!testSizeOnly) {
-      // Actually create file and write variable data to it.
-      writer.setLargeFile(isLargeFile(totalSizeOfVars));
-      writer.create();
-
-      writeCoordinateData(subsetDataset, writer);
-      writeCoverageData(gdsOrg, subsetParams, subsetDataset, writer);
-
-      if (shouldAddLatLon2D) {
-        writeLatLon2D(subsetDataset, writer);
-      }
-
-      writer.close();
-    }
-
-    return Optional.of(totalSizeOfVars);
+    return totalSizeOfVars;
   }
 
   /**
@@ -403,6 +459,19 @@ public class CFGridCoverageWriter2 {
 
   private void writeLatLon2D(CoverageCollection subsetDataset, NetcdfFileWriter writer)
           throws IOException, InvalidRangeException {
+    Array[] latlon = makeLatLon2D(subsetDataset);
+
+    Variable latVar = writer.findVariable("lat");
+    assert latVar != null : "We should have added lat var in addLatLon2D().";
+    writer.write(latVar, latlon[0]);
+
+    Variable lonVar = writer.findVariable("lon");
+    assert lonVar != null : "We should have added lon var in addLatLon2D().";
+    writer.write(lonVar, latlon[1]);
+  }
+
+  // returns { lat, lon }
+  private Array[] makeLatLon2D(CoverageCollection subsetDataset) {
     HorizCoordSys horizCoordSys = subsetDataset.getHorizCoordSys();
     CoverageCoordAxis1D xAxis = horizCoordSys.getXAxis();
     CoverageCoordAxis1D yAxis = horizCoordSys.getYAxis();
@@ -430,15 +499,9 @@ public class CFGridCoverageWriter2 {
       }
     }
 
-    Variable latVar = writer.findVariable("lat");
-    assert latVar != null : "We should have added lat var in addLatLon2D().";
     Array latDataArray = Array.factory(DataType.DOUBLE, new int[] { numY, numX }, latData);
-    writer.write(latVar, latDataArray);
-
-    Variable lonVar = writer.findVariable("lon");
-    assert lonVar != null : "We should have added lon var in addLatLon2D().";
     Array lonDataArray = Array.factory(DataType.DOUBLE, new int[] { numY, numX }, lonData);
-    writer.write(lonVar, lonDataArray);
+    return new Array[] {latDataArray, lonDataArray};
   }
 
   private void checkConformance(Coverage gridSubset, GeoReferencedArray geo, String where) {
@@ -462,4 +525,144 @@ public class CFGridCoverageWriter2 {
     if (!ok || !ok2)
       logger.warn("CFGridCoverageWriter2 checkConformance fails " +where);
   }
+
+  /**
+   * Writes a netCDF-3 (classic format) file to a stream, in file order, reading each variable's data just before
+   * it is written. Made by makeNetcdf3Stream().
+   */
+  public class Netcdf3Stream {
+    private final CoverageCollection gdsOrg;
+    private final SubsetParams subsetParams;
+    private final CoverageCollection subsetDataset;
+    private final NetcdfFile ncfile;
+    private final boolean shouldAddLatLon2D;
+    private final long totalSizeOfVars;
+    private N3outputStreamWriter n3writer;
+    private byte[] header;
+    private Array[] latlon;
+
+    private Netcdf3Stream(CoverageCollection gdsOrg, SubsetParams subsetParams, CoverageCollection subsetDataset,
+            NetcdfFile ncfile, boolean shouldAddLatLon2D, long totalSizeOfVars) throws IOException {
+      this.gdsOrg = gdsOrg;
+      this.subsetParams = subsetParams;
+      this.subsetDataset = subsetDataset;
+      this.ncfile = ncfile;
+      this.shouldAddLatLon2D = shouldAddLatLon2D;
+      this.totalSizeOfVars = totalSizeOfVars;
+
+      if (isSupported()) {
+        // the header is small, so make it now, to find out where everything goes
+        n3writer = new N3outputStreamWriter(ncfile);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(10 * 1000);
+        n3writer.writeHeader(new DataOutputStream(bout), 0);
+        header = bout.toByteArray();
+      }
+    }
+
+    /**
+     * Can this file be streamed? It must fit in the classic format, with its 2 Gbyte limit on offsets,
+     * and use only the classic data types. The data read for each coverage must also have the size that the header
+     * gives it, since the header is written first. If not, write it to a file with writeOrTestSize() instead.
+     *
+     * @return true if the file can be streamed
+     */
+    public boolean isSupported() {
+      if (isLargeFile(totalSizeOfVars)) return false;
+      for (Variable v : ncfile.getVariables()) {
+        if (v.isUnlimited()) return false;
+        DataType dt = v.getDataType();
+        if (dt != DataType.BYTE && dt != DataType.CHAR && dt != DataType.SHORT && dt != DataType.INT &&
+                dt != DataType.FLOAT && dt != DataType.DOUBLE) return false;
+        if (!hasExpectedSize(v)) return false;
+      }
+      return true;
+    }
+
+    // The readers subset the original coverage themselves, which may not give the shape that the subset dataset has
+    private boolean hasExpectedSize(Variable v) {
+      Coverage coverage = subsetDataset.findCoverage(v.getShortName());
+      if (coverage == null) return true;
+      Coverage coverageOrg = gdsOrg.findCoverage(v.getShortName());
+      Optional<CoverageCoordSys> opt = coverageOrg.getCoordSys().subset(subsetParams);
+      return opt.isPresent() && new Section(opt.get().getShape()).computeSize() == v.getSize();
+    }
+
+    /**
+     * The exact number of bytes that write() will write.
+     *
+     * @return length of the file in bytes
+     */
+    public long getLength() {
+      if (n3writer == null) throw new IllegalStateException("Cannot be streamed, check isSupported()");
+      return n3writer.getRecordStart();
+    }
+
+    /**
+     * Read the data and write the file to the stream. Can only be called once.
+     *
+     * @param out write to this stream. It is flushed but not closed.
+     * @throws IOException
+     * @throws InvalidRangeException
+     */
+    public void write(OutputStream out) throws IOException, InvalidRangeException {
+      if (n3writer == null) throw new IllegalStateException("Cannot be streamed, check isSupported()");
+      DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(out, 64 * 1000));
+      stream.write(header);
+
+      // data must be written in the same order as the header laid it out
+      for (Variable v : ncfile.getVariables()) {
+        if (show) System.out.printf("CFGridCoverageWriter2 stream %s%n", v.getNameAndDimensions());
+        Array data = readData(v);
+        // anything else would move the data of the variables that follow it
+        if (data.getSize() != v.getSize())
+          throw new IOException(String.format("CFGridCoverageWriter2 stream: %s has %d values, header has %d",
+                  v.getShortName(), data.getSize(), v.getSize()));
+        n3writer.writeNonRecordData(v, stream, data);
+      }
+      stream.flush();
+    }
+
+    private Array readData(Variable v) throws IOException, InvalidRangeException {
+      String name = v.getShortName();
+
+      Coverage coverage = subsetDataset.findCoverage(name);
+      if (coverage != null) {
+        // we need to call readData on the original
+        Coverage coverageOrg = gdsOrg.findCoverage(name);
+        GeoReferencedArray array = coverageOrg.readData(subsetParams);
+        checkConformance(coverage, array, gdsOrg.getName());
+        return array.getData();
+      }
+
+      for (CoverageCoordAxis axis : subsetDataset.getCoordAxes()) {
+        if (name.equals(axis.getName()))
+          return axis.getCoordsAsArray();
+        if (axis.isInterval() && name.equals(axis.getName() + BOUNDS))
+          return axis.getCoordBoundsAsArray();
+      }
+
+      if (shouldAddLatLon2D && (name.equals("lat") || name.equals("lon"))) {
+        if (latlon == null) latlon = makeLatLon2D(subsetDataset);
+        return name.equals("lat") ? latlon[0] : latlon[1];
+      }
+
+      // not otherwise written, eg coordinate transform variables, so it gets the fill value
+      Attribute att = v.findAttribute(CDM.FILL_VALUE);
+      Number fill = (att != null) ? att.getNumericValue() : N3iosp.getFillValueDefault(v.getDataType());
+      Array data = Array.factory(v.getDataType(), v.getShape());
+      for (int i = 0; i < data.getSize(); i++)
+        data.setObject(i, (v.getDataType() == DataType.CHAR) ? (char) fill.intValue() : convert(fill, v.getDataType()));
+      return data;
+    }
+
+    private Object convert(Number fill, DataType dataType) {
+      switch (dataType) {
+        case BYTE: return fill.byteValue();
+        case SHORT: return fill.shortValue();
+        case INT: return fill.intValue();
+        case FLOAT: return fill.floatValue();
+        default: return fill.doubleValue();
+      }
+    }
+  }
 }
@@ -9,6 +9,7 @@ import ucar.unidata.io.RandomAccessFile;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Helper for reading data that has been bit packed.
@@ -133,6 +134,94 @@ public class BitReader {
     return result;
   }
 
+  /**
+   * Read the next n values of nb bits each, as unsigned ints.
+   * When reading from a byte array, this is much faster than calling bits2UInt(nb) n times,
+   * especially for the common widths of 8, 12, 16 and 24 bits.
+   *
+   * @param nb     the number of bits in each value, must be 0 <= nb <= 32.
+   * @param result put the values here
+   * @param start  starting index in result
+   * @param n      number of values to read
+   * @throws java.io.IOException on read error
+   */
+  public void bits2UInt(int nb, int[] result, int start, int n) throws IOException {
+    assert nb <= 32;
+    assert nb >= 0;
+
+    if (raf != null) {
+      for (int i = start; i < start + n; i++)
+        result[i] = (int) bits2UInt(nb);
+      return;
+    }
+
+    if (nb == 0) {
+      Arrays.fill(result, start, start + n, 0);
+      return;
+    }
+
+    if (bitPos == 0) { // on a byte boundary
+      switch (nb) {
+        case 8:
+          for (int i = start; i < start + n; i++)
+            result[i] = data[dataPos++] & BYTE_BITMASK;
+          return;
+
+        case 12: {
+          int i = start;
+          for (; i < start + n - 1; i += 2) {
+            int b0 = data[dataPos++] & BYTE_BITMASK;
+            int b1 = data[dataPos++] & BYTE_BITMASK;
+            int b2 = data[dataPos++] & BYTE_BITMASK;
+            result[i] = (b0 << 4) | (b1 >> 4);
+            result[i + 1] = ((b1 & 0x0F) << 8) | b2;
+          }
+          if (i < start + n) { // odd number of values, leaves half a byte
+            int b0 = data[dataPos++] & BYTE_BITMASK;
+            bitBuf = data[dataPos++];
+            bitPos = 4;
+            result[i] = (b0 << 4) | ((bitBuf & BYTE_BITMASK) >> 4);
+          }
+          return;
+        }
+
+        case 16:
+          for (int i = start; i < start + n; i++) {
+            result[i] = ((data[dataPos] & BYTE_BITMASK) << 8) | (data[dataPos + 1] & BYTE_BITMASK);
+            dataPos += 2;
+          }
+          return;
+
+        case 24:
+          for (int i = start; i < start + n; i++) {
+            result[i] = ((data[dataPos] & BYTE_BITMASK) << 16) | ((data[dataPos + 1] & BYTE_BITMASK) << 8)
+                    | (data[dataPos + 2] & BYTE_BITMASK);
+            dataPos += 3;
+          }
+          return;
+      }
+    }
+
+    // general case: keep the unread bits in an accumulator, adding whole bytes as needed
+    long acc = (bitPos > 0) ? bitBuf & (BYTE_BITMASK >> (BIT_LENGTH - bitPos)) : 0;
+    int nacc = bitPos;
+    int pos = dataPos;
+    long mask = (1L << nb) - 1;
+    for (int i = start; i < start + n; i++) {
+      while (nacc < nb) {
+        acc = (acc << BIT_LENGTH) | (data[pos++] & BYTE_BITMASK);
+        nacc += BIT_LENGTH;
+      }
+      nacc -= nb;
+      result[i] = (int) ((acc >>> nacc) & mask);
+    }
+
+    dataPos = pos;
+    bitPos = nacc;
+    if (bitPos > 0)
+      bitBuf = data[dataPos - 1];
+  }
+
   /**
    * Read the next nb bits and return an Signed Long .
    *
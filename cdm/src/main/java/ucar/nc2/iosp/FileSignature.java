@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A cheap test of whether a file could be one that an IOServiceProvider reads: some bytes at a known offset,
+ * or a suffix of the file location.
+ * When signatures are registered for an IOServiceProvider, its isValidFile() must only ever return true for files
+ * that match at least one of them. NetcdfFile.open() then skips its isValidFile() for files that match none.
+ *
+ * @see ucar.nc2.NetcdfFile#registerIOProviderSignatures(String, FileSignature...)
+ * @since 5.0
+ */
+public class FileSignature {
+
+  /**
+   * The file has these bytes at this offset.
+   *
+   * @param offset byte offset from the start of the file
+   * @param bytes  the bytes that must be there
+   * @return the signature
+   */
+  static public FileSignature magic(long offset, byte[] bytes) {
+    if (offset < 0) throw new IllegalArgumentException("offset must be >= 0");
+    return new FileSignature(offset, bytes.clone(), null);
+  }
+
+  /**
+   * The file has these ASCII characters at this offset.
+   *
+   * @param offset byte offset from the start of the file
+   * @param chars  the characters that must be there
+   * @return the signature
+   */
+  static public FileSignature magic(long offset, String chars) {
+    return magic(offset, chars.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * The file location ends with this suffix. Case sensitive.
+   *
+   * @param suffix eg ".DEM"
+   * @return the signature
+   */
+  static public FileSignature suffix(String suffix) {
+    return new FileSignature(-1, null, suffix);
+  }
+
+  ////////////////////////////////////////////////////////////
+
+  private final long offset;
+  private final byte[] bytes;
+  private final String suffix;
+
+  private FileSignature(long offset, byte[] bytes, String suffix) {
+    this.offset = offset;
+    this.bytes = bytes;
+    this.suffix = suffix;
+  }
+
+  /**
+   * Could the file match this signature?
+   *
+   * @param location the file location, as from RandomAccessFile.getLocation()
+   * @param head     the first bytes of the file, possibly fewer than all of them
+   * @param length   the length of the file
+   * @return false if the file does not match; true if it matches, or if head is too short to tell
+   */
+  public boolean matches(String location, byte[] head, long length) {
+    if (suffix != null)
+      return location != null && location.endsWith(suffix);
+
+    if (offset + bytes.length > head.length)
+      return offset + bytes.length <= length && head.length < length; // not read: cant tell
+    for (int i = 0; i < bytes.length; i++) {
+      if (head[(int) offset + i] != bytes[i]) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    if (suffix != null) return "suffix " + suffix;
+    return "magic " + Arrays.toString(bytes) + " at " + offset;
+  }
+}
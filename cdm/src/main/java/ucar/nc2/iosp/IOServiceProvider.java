@@ -23,7 +23,8 @@ import java.nio.channels.WritableByteChannel;
  * <ol>
  * <li> the file is opened as a ucar.unidata.io.RandomAccessFile;</li>
  * <li> the file is handed to the isValidFile() method of each registered
- * IOServiceProvider class (until one returns true, which means it can read the file).</li>
+ * IOServiceProvider class (until one returns true, which means it can read the file),
+ * skipping those with registered FileSignatures that the file does not match.</li>
  * <li> the open() method on the resulting IOServiceProvider class is handed the file.</li>
  *
  * @see ucar.nc2.NetcdfFile#registerIOProvider(Class) ;
@@ -31,6 +31,8 @@ import java.util.ArrayList;
  */
 public class IospHelper {
   static private boolean showLayoutTypes = false;
+  static private final int maxPositionalGap = 8 * 1024;   // positional reads read through smaller gaps between chunks
+  static private final int maxPositionalSpan = 64 * 1024; // most bytes to read at once for several chunks
 
   /**
    * Read data subset from RandomAccessFile, create primitive array of size Layout.getTotalNelems.
@@ -150,6 +152,84 @@ public class IospHelper {
     throw new IllegalStateException("unknown type= " + dataType);
   }
 
+  /**
+   * Read data subset from RandomAccessFile, place in given primitive array, using the positional reads.
+   * These do not use or change the file position or buffer, so many threads may read the same file at once.
+   * Chunks that are close together are read with one positional read of the bytes that span them.
+   * The file's current byte order is used, so it must not be changed while other threads are reading.
+   * Reading is controlled by the Layout object.
+   *
+   * @param raf         read from here.
+   * @param layout      handles skipping around in the file.
+   * @param dataType    dataType of the variable
+   * @param arr         primitive array to read data into
+   * @param convertChar true if bytes should be converted to char for dataType CHAR
+   * @return primitive array with data read in
+   * @throws java.io.IOException on read error
+   */
+  static public Object readDataPositional(RandomAccessFile raf, Layout layout, DataType dataType, Object arr, boolean convertChar) throws java.io.IOException {
+    int elemSize;
+    if (dataType == DataType.STRUCTURE)
+      elemSize = layout.getElemSize();
+    else if (dataType.getPrimitiveClassType() == byte.class || dataType == DataType.CHAR)
+      elemSize = 1;
+    else if (dataType.getPrimitiveClassType() == short.class)
+      elemSize = 2;
+    else if (dataType.getPrimitiveClassType() == int.class || dataType == DataType.FLOAT)
+      elemSize = 4;
+    else if (dataType == DataType.DOUBLE || dataType.getPrimitiveClassType() == long.class)
+      elemSize = 8;
+    else
+      throw new IllegalStateException("unknown type= " + dataType);
+
+    // the chunks to read with one positional read, as {srcPos, destElem, nelems}; Layout reuses its Chunk
+    List<long[]> span = new ArrayList<>();
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      long pos = chunk.getSrcPos();
+      long end = pos + (long) chunk.getNelems() * elemSize;
+      if (!span.isEmpty()) {
+        long[] last = span.get(span.size() - 1);
+        long spanStart = span.get(0)[0];
+        long spanEnd = last[0] + last[2] * elemSize;
+        if (pos < spanEnd || pos - spanEnd > maxPositionalGap || end - spanStart > maxPositionalSpan) {
+          readSpan(raf, span, dataType, elemSize, arr);
+          span.clear();
+        }
+      }
+      span.add(new long[]{pos, chunk.getDestElem(), chunk.getNelems()});
+    }
+    if (!span.isEmpty())
+      readSpan(raf, span, dataType, elemSize, arr);
+
+    if (convertChar && dataType == DataType.CHAR) return convertByteToChar((byte[]) arr);
+    else return arr;
+  }
+
+  // read the bytes from the first to the last chunk, and copy each chunk into arr
+  static private void readSpan(RandomAccessFile raf, List<long[]> span, DataType dataType, int elemSize, Object arr) throws java.io.IOException {
+    long[] last = span.get(span.size() - 1);
+    long spanStart = span.get(0)[0];
+    ByteBuffer bb = raf.readFully(spanStart, Math.toIntExact(last[0] + last[2] * elemSize - spanStart));
+    for (long[] chunk : span) {
+      bb.position((int) (chunk[0] - spanStart));
+      int dest = (int) chunk[1];
+      int n = (int) chunk[2];
+      if (dataType == DataType.STRUCTURE || elemSize == 1)
+        bb.get((byte[]) arr, dest * elemSize, n * elemSize);
+      else if (dataType.getPrimitiveClassType() == short.class)
+        bb.asShortBuffer().get((short[]) arr, dest, n);
+      else if (dataType.getPrimitiveClassType() == int.class)
+        bb.asIntBuffer().get((int[]) arr, dest, n);
+      else if (dataType == DataType.FLOAT)
+        bb.asFloatBuffer().get((float[]) arr, dest, n);
+      else if (dataType == DataType.DOUBLE)
+        bb.asDoubleBuffer().get((double[]) arr, dest, n);
+      else
+        bb.asLongBuffer().get((long[]) arr, dest, n);
+    }
+  }
+
   /**
    * Read data subset from PositioningDataInputStream, create primitive array of size Layout.getTotalNelems.
    * Reading is controlled by the Layout object.
@@ -90,6 +90,31 @@ public class H5iosp extends AbstractIOServiceProvider {
     useHdfEos = val;
   }
 
+  /**
+   * Set the number of threads used to decompress/unfilter the chunks of filtered (eg deflated) variables.
+   * The default is 1, which runs the filters on the reading thread.
+   * Also may be set with -Dunidata.h5iosp.filter.parallelism=n
+   *
+   * @param n number of threads in the shared pool
+   */
+  public static void setFilterParallelism(int n) {
+    H5tiledLayoutBB.setParallelism(n);
+  }
+
+  /**
+   * Set a cache for the decoded chunks of filtered (eg deflated) variables, shared across all open files.
+   * Only files with a known last modified time are cached.
+   *
+   * @param cache use this cache, or null to not cache (default)
+   */
+  public static void setChunkCache(ucar.nc2.util.cache.ChunkCache cache) {
+    H5tiledLayoutBB.setChunkCache(cache);
+  }
+
+  public static ucar.nc2.util.cache.ChunkCache getChunkCache() {
+    return H5tiledLayoutBB.getChunkCache();
+  }
+
   //////////////////////////////////////////////////////////////////////////////////
 
   //private RandomAccessFile raf;
@@ -12,20 +12,35 @@ import ucar.ma2.Section;
 import ucar.nc2.Variable;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
-import ucar.nc2.util.IO;
+import ucar.nc2.util.cache.ChunkCache;
 import ucar.unidata.io.RandomAccessFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Iterator to read/write subsets of an array.
  * This calculates byte offsets for HD5 chunked datasets.
  * Assumes that the data is stored in chunks, indexed by a Btree.
  * for filtered data
+ * <p>
+ * When the filter parallelism is greater than one, the chunks that intersect the wanted section are prefetched
+ * from the btree, their raw bytes are read on the calling thread, and the filters are run concurrently on a shared,
+ * bounded pool. Results are identical to the serial path.
+ * <p>
+ * If a ChunkCache has been set, decoded chunks are looked up there before being read and unfiltered.
  *
  * @author caron
  */
@@ -34,9 +49,84 @@ class H5tiledLayoutBB implements LayoutBB {
   static final int DEFAULTZIPBUFFERSIZE = 512;
   // System property name for -D flag
   static final String INFLATEBUFFERSIZE = "unidata.h5iosp.inflate.buffersize";
+  // System property name for -D flag
+  static final String FILTERPARALLELISM = "unidata.h5iosp.filter.parallelism";
 
   static public boolean debugFilter = false;
 
+  // number of threads used to run the filters; <= 1 means run them serially on the calling thread
+  static private int parallelism = 1;
+  static private ExecutorService executor;
+
+  // Inflater instances are expensive to create (native zlib stream), so keep a bounded pool of them
+  static private final int MAX_POOLED_INFLATERS = 64;
+  static private final BlockingQueue<Inflater> inflaterPool = new ArrayBlockingQueue<>(MAX_POOLED_INFLATERS);
+
+  // per-thread scratch buffer for intermediate filter results; dont hang on to anything really big
+  static private final int MAX_SCRATCH_SIZE = 16 * 1000 * 1000;
+  static private final ThreadLocal<byte[]> scratch = new ThreadLocal<>();
+
+  // optional cache of decoded chunks, shared by all readers
+  static private volatile ChunkCache chunkCache;
+
+  static void setChunkCache(ChunkCache cache) {
+    chunkCache = cache;
+  }
+
+  static ChunkCache getChunkCache() {
+    return chunkCache;
+  }
+
+  static {
+    String p = System.getProperty(FILTERPARALLELISM);
+    if (p != null) {
+      try {
+        setParallelism(Integer.parseInt(p));
+      } catch (NumberFormatException nfe) {
+        H5iosp.log.warn(String.format("-D%s is not an integer", FILTERPARALLELISM));
+      }
+    }
+  }
+
+  /**
+   * Set the number of threads used to decompress/unfilter chunks concurrently.
+   * @param n number of threads; <= 1 means use the calling thread only (default)
+   */
+  static synchronized void setParallelism(int n) {
+    if (n == parallelism) return;
+    if (executor != null) {
+      executor.shutdown(); // running tasks are allowed to complete
+      executor = null;
+    }
+    parallelism = Math.max(n, 1);
+  }
+
+  static synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  static private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread t = new Thread(r, "H5iosp-filter");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  static private Inflater getInflater() {
+    Inflater inflater = inflaterPool.poll();
+    return (inflater != null) ? inflater : new Inflater();
+  }
+
+  static private void releaseInflater(Inflater inflater) {
+    inflater.reset();
+    if (!inflaterPool.offer(inflater))
+      inflater.end();
+  }
+
   private LayoutBBTiled delegate;
 
   private RandomAccessFile raf;
@@ -47,6 +137,11 @@ class H5tiledLayoutBB implements LayoutBB {
   private int[] chunkSize; // from the StorageLayout message (exclude the elemSize)
   private int elemSize; // last dimension of the StorageLayout message
   private int nChunkDims;
+  private int chunkBytes; // expected size in bytes of an unfiltered chunk, or 0 if unknown
+
+  private ChunkCache cache; // may be null
+  private String location;
+  private long lastModified;
 
   private boolean debug = false;
 
@@ -90,9 +185,23 @@ class H5tiledLayoutBB implements LayoutBB {
     System.arraycopy(vinfo.storageSize, 0, chunkSize, 0, nChunkDims);
     this.elemSize = vinfo.storageSize[vinfo.storageSize.length - 1]; // last one is always the elements size
 
+    long nbytes = 1;
+    for (int len : vinfo.storageSize) nbytes *= len;
+    this.chunkBytes = (nbytes > 0 && nbytes <= DataChunk.MAX_ARRAY_LEN) ? (int) nbytes : 0;
+
+    this.cache = chunkCache;
+    if (this.cache != null) {
+      this.location = raf.getLocation();
+      this.lastModified = raf.getLastModified();
+      if (this.location == null || this.lastModified <= 0) // cant tell if the file has changed
+        this.cache = null;
+    }
+
     // create the data chunk iterator
     DataBTree.DataChunkIterator iter = vinfo.btree.getDataChunkIteratorFilter(this.want);
-    DataChunkIterator dcIter = new DataChunkIterator(iter);
+    int nthreads = getParallelism();
+    LayoutBBTiled.DataChunkIterator dcIter = (nthreads > 1) ? new PrefetchingDataChunkIterator(iter, 2 * nthreads) :
+            new DataChunkIterator(iter);
     delegate = new LayoutBBTiled(dcIter, chunkSize, elemSize, this.want);
 
     if(System.getProperty(INFLATEBUFFERSIZE) != null)  {
@@ -157,11 +266,71 @@ class H5tiledLayoutBB implements LayoutBB {
     }
   }
 
+  // Reads ahead up to maxInFlight intersecting chunks, and starts their decoding on the shared executor.
+  // The raw bytes are read here, on the calling thread, since the RandomAccessFile is not thread safe.
+  private class PrefetchingDataChunkIterator implements LayoutBBTiled.DataChunkIterator {
+    DataBTree.DataChunkIterator delegate;
+    private final int maxInFlight;
+    private final ArrayDeque<DataChunk> pending = new ArrayDeque<>();
+    private final long totalNelems;
+    private long nelemsScheduled;
+
+    PrefetchingDataChunkIterator(DataBTree.DataChunkIterator delegate, int maxInFlight) {
+      this.delegate = delegate;
+      this.maxInFlight = maxInFlight;
+      this.totalNelems = want.computeSize();
+    }
+
+    public boolean hasNext() {
+      return !pending.isEmpty() || moreToSchedule();
+    }
+
+    public LayoutBBTiled.DataChunk next() throws IOException {
+      fill();
+      return pending.poll();
+    }
+
+    // LayoutBBTiled stops once it has all the wanted elements, so we dont need to look past that
+    private boolean moreToSchedule() {
+      return (nelemsScheduled < totalNelems) && delegate.hasNext();
+    }
+
+    private void fill() throws IOException {
+      int ndecoding = 0;
+      for (DataChunk dc : pending)
+        if (dc.future != null) ndecoding++;
+
+      while (ndecoding < maxInFlight && moreToSchedule()) {
+        DataChunk dc = new DataChunk(delegate.next());
+        Section intersect = intersect(dc);
+        if (intersect != null) {
+          nelemsScheduled += intersect.computeSize();
+          if (!dc.findInCache()) {
+            dc.startDecoding();
+            ndecoding++;
+          }
+        }
+        pending.add(dc);
+      }
+    }
+
+    private Section intersect(DataChunk dc) throws IOException {
+      try {
+        Section dataSection = new Section(dc.getOffset(), chunkSize);
+        return dataSection.intersects(want) ? dataSection.intersect(want) : null;
+      } catch (InvalidRangeException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
   private class DataChunk implements ucar.nc2.iosp.LayoutBBTiled.DataChunk {
     // Copied from ArrayList.
     private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
 
     DataBTree.DataChunk delegate;
+    Future<ByteBuffer> future; // not null when decoding has been handed off to the executor
+    ByteBuffer cached;         // not null when found in the ChunkCache
 
     DataChunk(DataBTree.DataChunk delegate) {
       this.delegate = delegate;
@@ -196,64 +365,162 @@ class H5tiledLayoutBB implements LayoutBB {
       return offset;
     }
 
+    boolean findInCache() {
+      if (cache == null) return false;
+      ByteBuffer bb = cache.get(location, lastModified, delegate.filePos);
+      if (bb == null) return false;
+      cached = bb.order(byteOrder);
+      return true;
+    }
+
+    // read the raw bytes here, filter them on the executor
+    void startDecoding() throws IOException {
+      final byte[] data = readRaw();
+      future = getExecutor().submit(() -> unfilter(data));
+    }
+
     public ByteBuffer getByteBuffer() throws IOException {
+      if (cached != null || (future == null && findInCache()))
+        return cached;
+
+      if (future == null)
+        return unfilter(readRaw());
+
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while decoding HDF5 filtered chunk", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    private byte[] readRaw() throws IOException {
       try {
-        // read the data
         byte[] data = new byte[delegate.size];
         raf.seek(delegate.filePos);
         raf.readFully(data);
+        return data;
+      } catch (OutOfMemoryError e) {
+        throw outOfMemory(e);
+      }
+    }
 
-      // apply filters backwards
-      for (int i = filters.length - 1; i >= 0; i--) {
-        H5header.Filter f = filters[i];
-        if (isBitSet(delegate.filterMask, i)) {
-          if (debug) System.out.println("skip for chunk " + delegate);
-          continue;
+    private ByteBuffer unfilter(byte[] data) throws IOException {
+      try {
+        int len = data.length;
+
+        // find the last filter applied that copies its input; results of the filters before it are intermediate,
+        // so they can go into scratch space
+        int lastCopy = -1;
+        for (int i = 0; i < filters.length; i++) {
+          if (isBitSet(delegate.filterMask, i)) continue;
+          if (filters[i].id == 2 && filters[i].data[0] > 1) {
+            lastCopy = i;
+            break;
+          }
         }
-        if (f.id == 1) {
-          data = inflate(data);
-        } else if (f.id == 2) {
-          data = shuffle(data, f.data[0]);
-        } else if (f.id == 3) {
-          data = checkfletcher32(data);
-        /* }  else if (f.id == 307) {
-          data = unbzip2(data); */
-        } else
-          throw new RuntimeException("Unknown filter type="+f.id);
-      }
 
-        ByteBuffer result = ByteBuffer.wrap(data);
+        // apply filters backwards
+        for (int i = filters.length - 1; i >= 0; i--) {
+          H5header.Filter f = filters[i];
+          if (isBitSet(delegate.filterMask, i)) {
+            if (debug) System.out.println("skip for chunk " + delegate);
+            continue;
+          }
+          if (f.id == 1) {
+            data = inflate(data, len, lastCopy < 0 || lastCopy > i);
+            len = inflatedLen;
+          } else if (f.id == 2) {
+            data = shuffle(data, len, f.data[0]);
+          } else if (f.id == 3) {
+            len = checkfletcher32(len);
+          /* }  else if (f.id == 307) {
+            data = unbzip2(data); */
+          } else
+            throw new RuntimeException("Unknown filter type="+f.id);
+        }
+
+        if (data == scratch.get()) // must not hand out the scratch buffer
+          data = Arrays.copyOf(data, len);
+
+        ByteBuffer result = ByteBuffer.wrap(data, 0, len);
         result.order(byteOrder);
+        if (cache != null)
+          cache.put(location, lastModified, delegate.filePos, result);
         return result;
       } catch (OutOfMemoryError e) {
-        Error oom =  new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the " +
-                "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
-        oom.initCause(e);  // OutOfMemoryError lacks a constructor with a cause parameter.
-        throw oom;
+        throw outOfMemory(e);
       }
     }
 
+    private Error outOfMemory(OutOfMemoryError e) {
+      Error oom =  new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the " +
+              "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
+      oom.initCause(e);  // OutOfMemoryError lacks a constructor with a cause parameter.
+      return oom;
+    }
+
+    private int inflatedLen; // number of valid bytes returned by the last call to inflate()
+
     /**
-     * inflate data
+     * inflate data, using a pooled Inflater. The output is sized from the chunk storage layout, so there is
+     * normally no need to grow or copy it.
      *
      * @param compressed compressed data
-     * @return uncompressed data
+     * @param len number of valid bytes in compressed
+     * @param isFinal true if the result is handed out; otherwise it may be put in the per-thread scratch buffer
+     * @return uncompressed data, valid up to inflatedLen
      * @throws IOException on I/O error
      */
-    private byte[] inflate(byte[] compressed) throws IOException {
-      // run it through the Inflator
-      ByteArrayInputStream in = new ByteArrayInputStream(compressed);
-      java.util.zip.Inflater inflater = new java.util.zip.Inflater();
-      java.util.zip.InflaterInputStream inflatestream
-        = new java.util.zip.InflaterInputStream(in, inflater, inflatebuffersize);
-      int len = Math.min(8 * compressed.length, MAX_ARRAY_LEN);
-      ByteArrayOutputStream out = new ByteArrayOutputStream(len); // Fixes KXL-349288
-      IO.copyB(inflatestream, out, len);
-
-      byte[] uncomp = out.toByteArray();
+    private byte[] inflate(byte[] compressed, int len, boolean isFinal) throws IOException {
+      int size = (chunkBytes > 0) ? chunkBytes : Math.min(8 * len, MAX_ARRAY_LEN);
+      byte[] out = null;
+      if (!isFinal) {
+        out = scratch.get();
+        if (out == null || out == compressed || out.length < size) out = null;
+      }
+      if (out == null) out = new byte[size];
+
+      Inflater inflater = getInflater();
+      try {
+        inflater.setInput(compressed, 0, len);
+        int pos = 0;
+        while (!inflater.finished()) {
+          if (pos == out.length) {
+            if (out.length >= MAX_ARRAY_LEN)
+              throw new IOException("HDF5 filtered chunk inflates to more than " + MAX_ARRAY_LEN + " bytes");
+            out = Arrays.copyOf(out, (int) Math.min(2L * out.length + inflatebuffersize, MAX_ARRAY_LEN));
+          }
+          int n = inflater.inflate(out, pos, out.length - pos);
+          if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            if (inflater.needsDictionary())
+              throw new IOException("HDF5 filtered chunk needs a zlib dictionary");
+            throw new EOFException("Unexpected end of ZLIB input stream");
+          }
+          pos += n;
+        }
+        inflatedLen = pos;
+
+      } catch (DataFormatException e) {
+        throw new IOException(e.getMessage(), e);
+      } finally {
+        releaseInflater(inflater);
+      }
+
+      if (!isFinal && out.length <= MAX_SCRATCH_SIZE)
+        scratch.set(out);
+      if (isFinal && out.length != inflatedLen && chunkBytes == 0)
+        out = Arrays.copyOf(out, inflatedLen);
+
       if (debug || debugFilter)
-        System.out.println(" inflate bytes in= " + compressed.length + " bytes out= " + uncomp.length);
-      return uncomp;
+        System.out.println(" inflate bytes in= " + len + " bytes out= " + inflatedLen);
+      return out;
     }
 
     /* private byte[] unbzip2(byte[] compressed) throws IOException {
@@ -277,25 +544,23 @@ class H5tiledLayoutBB implements LayoutBB {
       return out.toByteArray();
      } */
 
-     // just strip off the 4-byte fletcher32 checksum at the end
-    private byte[] checkfletcher32(byte[] org) throws IOException {
-      byte[] result = new byte[org.length-4];
-      System.arraycopy(org, 0, result, 0, result.length);
-      if (debug) System.out.println(" checkfletcher32 bytes in= " + org.length + " bytes out= " + result.length);
-      return result;
+     // just strip off the 4-byte fletcher32 checksum at the end; returns the new length, no need to copy
+    private int checkfletcher32(int len) throws IOException {
+      if (debug) System.out.println(" checkfletcher32 bytes in= " + len + " bytes out= " + (len - 4));
+      return len - 4;
     }
 
-    private byte[] shuffle(byte[] data, int n) throws IOException {
-      if (debug) System.out.println(" shuffle bytes in= " + data.length + " n= " + n);
+    private byte[] shuffle(byte[] data, int len, int n) throws IOException {
+      if (debug) System.out.println(" shuffle bytes in= " + len + " n= " + n);
 
-      assert data.length % n == 0;
+      assert len % n == 0;
       if (n <= 1) return data;
 
-      int m = data.length / n;
+      int m = len / n;
       int[] count = new int[n];
       for (int k = 0; k < n; k++) count[k] = k * m;
 
-      byte[] result = new byte[data.length];
+      byte[] result = new byte[len];
       /* for (int i = 0; i < data.length; i += n) {
         for (int k = 0; k < n; k++) {
           result[count[k]++] = data[i + k];
@@ -499,12 +499,8 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
     int count = 0;
     for (int recnum : recordRange) {
       if (debugRecord) System.out.println(" read record " + recnum);
-      raf.seek(header.recStart + recnum * header.recsize); // where the record starts
-
-      if (recnum != header.numrecs - 1)
-        raf.readFully(result, (int) (count * header.recsize), (int) header.recsize);
-      else
-        raf.read(result, (int) (count * header.recsize), (int) header.recsize); // "wart" allows file to be one byte short. since its always padding, we allow
+      readRecord(header.recStart + recnum * header.recsize, result, (int) (count * header.recsize), (int) header.recsize,
+              recnum == header.numrecs - 1);
       count++;
     }
 
@@ -624,7 +620,6 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
 
     for (int recnum : recordRange) {
         if (debugRecord) System.out.println(" read record " + recnum);
-        raf.seek(header.recStart + recnum * header.recsize); // where the record starts
         count += raf.readToByteChannel(out, header.recStart + recnum * header.recsize, header.recsize);
       }
     // }
@@ -977,6 +972,25 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
 
   abstract protected long readData(Layout index, DataType dataType, WritableByteChannel out) throws IOException;
 
+  /**
+   * Read one record of the record structure.
+   *
+   * @param pos    where the record starts
+   * @param buff   put data into this buffer
+   * @param offset buffer offset
+   * @param len    record size
+   * @param last   if its the last record, which may be short; the "wart" allows the file to be one byte short,
+   *               since its always padding
+   * @throws java.io.IOException on error
+   */
+  protected void readRecord(long pos, byte[] buff, int offset, int len, boolean last) throws IOException {
+    raf.seek(pos);
+    if (!last)
+      raf.readFully(buff, offset, len);
+    else
+      raf.read(buff, offset, len);
+  }
+
 
   /**
    * Write data subset to file for a variable, create primitive array.
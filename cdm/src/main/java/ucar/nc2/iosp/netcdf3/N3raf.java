@@ -18,6 +18,18 @@ import java.nio.channels.WritableByteChannel;
  */
 
 public class N3raf extends N3iosp  {
+  static private volatile boolean positionalReads = false;
+
+  /**
+   * Read variable data and records with the positional reads of RandomAccessFile, so that the variables of one
+   * open file can be read by several threads at once. Off by default, since the reads then go to the file's FileChannel,
+   * which is closed for all of the threads if any one of them is interrupted.
+   *
+   * @param b use positional reads
+   */
+  static public void setPositionalReads(boolean b) {
+    positionalReads = b;
+  }
 
   protected void _open(ucar.unidata.io.RandomAccessFile raf) throws java.io.IOException {
   }
@@ -30,11 +42,30 @@ public class N3raf extends N3iosp  {
    * @param index handles skipping around in the file.
    * @param dataType dataType of the variable
    * @return primitive array with data read in
+   * @see #setPositionalReads(boolean)
    */
  protected Object readData( Layout index, DataType dataType) throws java.io.IOException {
-   return IospHelper.readDataFill(raf, index, dataType, null, -1);
+   if (!positionalReads)
+     return IospHelper.readDataFill(raf, index, dataType, null, -1);
+   Object arr = IospHelper.makePrimitiveArray((int) index.getTotalNelems(), dataType);
+   return IospHelper.readDataPositional(raf, index, dataType, arr, true);
  }
 
+  /**
+   * Read one record of the record structure.
+   * @see #setPositionalReads(boolean)
+   */
+  @Override
+  protected void readRecord(long pos, byte[] buff, int offset, int len, boolean last) throws java.io.IOException {
+    if (!positionalReads) {
+      super.readRecord(pos, buff, offset, len, last);
+      return;
+    }
+    if (last) // the buffer is new, so the missing padding is zeros
+      len = (int) Math.max(0, Math.min(len, raf.length() - pos));
+    raf.readFully(pos, buff, offset, len);
+  }
+
   /**
    * Read data subset from file for a variable, to WritableByteChannel.
    * Will send as bigendian, since thats what the underlying file has.
@@ -29,7 +29,7 @@ public abstract class N3streamWriter {
   protected ucar.nc2.NetcdfFile ncfile;
   protected Map<Variable,Vinfo> vinfoMap = new HashMap<Variable,Vinfo>();
   protected List<Vinfo> vinfoList = new ArrayList<Vinfo>(); // output order of the variables
-  protected boolean debug=false, debugPos=true, debugWriteData = false;
+  protected boolean debug=false, debugPos=false, debugWriteData = false;
   protected int recStart, recSize;
   protected boolean usePadding = true;
   protected long filePos = 0;
@@ -163,6 +163,16 @@ public abstract class N3streamWriter {
     if (debugPos) System.out.println("header written filePos= " + filePos+" recsize= "+recSize);
   }
 
+  /**
+   * Where the record data starts, which is the size of the file if there are no records.
+   * Only valid after writeHeader() is called.
+   *
+   * @return offset of the record data from start of file
+   */
+  public int getRecordStart() {
+    return recStart;
+  }
+
   private Vinfo writeVar(DataOutputStream stream, Variable var, int offset) throws IOException {
     int hsize = 0;
     hsize += writeString(stream, N3iosp.makeValidNetcdfObjectName( var.getShortName()));
@@ -31,6 +31,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Superclass for NcML Aggregation.
@@ -109,6 +111,71 @@ public abstract class Aggregation {
     executor = exec;
   }
 
+  // nested datasets read concurrently on a pool owned by Aggregation, unless setExecutor() has been called
+  static private int parallelism = 1;
+  static private int maxReadsPerRequest = 0;
+  static private ExecutorService readPool;
+
+  /**
+   * Set the number of threads used to read the nested datasets of an aggregation variable concurrently.
+   * The threads are shared by all aggregations. An executor set with setExecutor() is used instead, if there is one.
+   *
+   * @param n number of threads; <= 1 means read the nested datasets one at a time (default)
+   */
+  static public synchronized void setParallelism(int n) {
+    n = Math.max(n, 1);
+    if (n == parallelism) return;
+    shutdown();
+    parallelism = n;
+  }
+
+  static public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Stop the threads, letting running reads complete. They are started again if needed.
+   */
+  static public synchronized void shutdown() {
+    if (readPool != null) {
+      readPool.shutdown();
+      readPool = null;
+    }
+  }
+
+  /**
+   * Limit the number of nested datasets that one read of an aggregation variable has in progress at once,
+   * so that a large request does not hold up the other requests using the same threads.
+   *
+   * @param n maximum number of nested reads per request; <= 0 means the number of threads (default)
+   */
+  static public synchronized void setMaxReadsPerRequest(int n) {
+    maxReadsPerRequest = n;
+  }
+
+  static public synchronized int getMaxReadsPerRequest() {
+    if (maxReadsPerRequest > 0) return maxReadsPerRequest;
+    return (parallelism > 1) ? parallelism : Integer.MAX_VALUE;
+  }
+
+  /**
+   * The executor for reading nested datasets concurrently.
+   *
+   * @return the executor set with setExecutor(), or the pool of setParallelism() threads, or null if reads are not concurrent
+   */
+  static protected synchronized Executor getReadExecutor() {
+    if (executor != null) return executor;
+    if (parallelism <= 1) return null;
+    if (readPool == null) {
+      readPool = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread t = new Thread(r, "AggregationRead");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return readPool;
+  }
+
   static public void setTypicalDatasetMode(String mode) {
     if (mode.equalsIgnoreCase("random"))
       typicalDatasetMode = TypicalDataset.RANDOM;
@@ -17,10 +17,11 @@ import ucar.nc2.util.CancelTask;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 /**
  * Superclass for Aggregations on the outer dimension: joinNew, joinExisting, Fmrc, FmrcSingle
@@ -314,43 +315,9 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
     //if (mainv.getShortName().equals(dimName))
     //  return readAggCoord(mainv, section, cancelTask);
 
-    Array sectionData = Array.factory(dtype, section.getShape());
-    int destPos = 0;
+    if (debug) System.out.println("   agg wants range=" + mainv.getFullName() + "(" + section.getRange(0) + ")");
 
-    List<Range> ranges = section.getRanges();
-    Range joinRange = section.getRange(0);
-    List<Range> nestedSection = new ArrayList<>(ranges); // get copy
-    List<Range> innerSection = ranges.subList(1, ranges.size());
-
-    if (debug) System.out.println("   agg wants range=" + mainv.getFullName() + "(" + joinRange + ")");
-
-    // LOOK: could multithread here
-    List<Dataset> nestedDatasets = getDatasets();
-    for (Dataset nested : nestedDatasets) {
-      DatasetOuterDimension dod = (DatasetOuterDimension) nested;
-      Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
-      if (nestedJoinRange == null)
-        continue;
-      //if (debug)
-      //  System.out.println("   agg use " + nested.aggStart + ":" + nested.aggEnd + " range= " + nestedJoinRange + " file " + nested.getLocation());
-
-      Array varData;
-      if ((type == Type.joinNew) || (type == Type.forecastModelRunCollection)) {
-        varData = dod.read(mainv, cancelTask, innerSection);
-      } else {
-        nestedSection.set(0, nestedJoinRange);
-        varData = dod.read(mainv, cancelTask, nestedSection);
-      }
-
-      if ((cancelTask != null) && cancelTask.isCancel())
-        return null;
-      varData = MAMath.convert(varData, dtype); // just in case it need to be converted
-
-      Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
-      destPos += varData.getSize();
-    }
-
-    return sectionData;
+    return readSection(mainv, section, dtype, cancelTask);
   }
 
   /**
@@ -390,75 +357,144 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
     //if (mainv.getShortName().equals(dimName))
     //  return readAggCoord(mainv, cancelTask);
 
-    Array allData = Array.factory(dtype, mainv.getShape());
-    int destPos = 0;
+    try {
+      return readSection(mainv, mainv.getShapeAsSection(), dtype, cancelTask);
 
-    List<Dataset> nestedDatasets = getDatasets();
-    if (executor != null) {
-      CompletionService<Result> completionService = new ExecutorCompletionService<>(executor);
+    } catch (InvalidRangeException e) {
+      logger.error("readAgg " + getLocation(), e);
+      throw new IllegalArgumentException("readAgg " + getLocation(), e);
+    }
+  }
 
-      int count = 0;
-      for (Dataset vnested : nestedDatasets)
-        completionService.submit(new ReaderTask(vnested, mainv, cancelTask, count++));
+  /**
+   * Read a section of an aggregation variable from the nested datasets that it overlaps.
+   * Each of those is asked for just its part of the section, which is copied straight into place in the result.
+   * If there is an executor for reading (see Aggregation.setParallelism()), the nested datasets are read concurrently,
+   * with at most getMaxReadsPerRequest() in progress at once. A nested dataset that is itself an aggregation is read
+   * one nested dataset at a time, so that reads waiting for the executor never hold all of its threads.
+   *
+   * @param mainv      the aggregation variable
+   * @param section    read this section, must be complete
+   * @param dtype      data type of the result
+   * @param cancelTask let user cancel
+   * @return the data, or null if cancelled
+   */
+  private Array readSection(Variable mainv, Section section, DataType dtype, CancelTask cancelTask) throws IOException, InvalidRangeException {
+    Array result = Array.factory(dtype, section.getShape());
+    List<NestedRead> plan = planReads(mainv, section);
+
+    Executor exec = getReadExecutor();
+    if ((exec == null) || (plan.size() < 2) || inNestedRead.get()) {
+      for (NestedRead read : plan) {
+        if (!read.readInto(result, dtype, cancelTask))
+          return null;
+      }
+      return result;
+    }
 
-      try {
-        int n = nestedDatasets.size();
-        for (int i = 0; i < n; ++i) {
-          Result r = completionService.take().get();
-          if (r != null) {
-            r.data = MAMath.convert(r.data, dtype); // just in case it needs to be converted
-            int size = (int) r.data.getSize();
-            Array.arraycopy(r.data, 0, allData, size * r.index, size);
-          }
+    CompletionService<Boolean> completionService = new ExecutorCompletionService<>(exec);
+    List<Future<Boolean>> futures = new ArrayList<>(plan.size());
+    int maxInProgress = getMaxReadsPerRequest();
+    int next = 0, inProgress = 0;
+    try {
+      while ((next < plan.size()) || (inProgress > 0)) {
+        while ((next < plan.size()) && (inProgress < maxInProgress)) {
+          NestedRead read = plan.get(next++);
+          futures.add(completionService.submit(() -> {
+            inNestedRead.set(true);
+            try {
+              return read.readInto(result, dtype, cancelTask);
+            } finally {
+              inNestedRead.remove();
+            }
+          }));
+          inProgress++;
         }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      } catch (ExecutionException e) {
-        throw new IOException(e.getMessage());
+        Future<Boolean> done = completionService.take();
+        inProgress--;
+        if (!done.get())
+          return null; // cancelled
       }
+      return result;
 
-    } else {
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted reading " + mainv.getFullName() + " from " + getLocation(), e);
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof InvalidRangeException) throw (InvalidRangeException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+
+    } finally {
+      // dont interrupt reads in progress, that would close the files they are reading
+      for (Future<Boolean> future : futures)
+        future.cancel(false);
+    }
+  }
 
-      for (Dataset vnested : nestedDatasets) {
-        Array varData = vnested.read(mainv, cancelTask);
-        if ((cancelTask != null) && cancelTask.isCancel())
-          return null;
-        varData = MAMath.convert(varData, dtype); // just in case it need to be converted
+  // which nested datasets are needed for the section, what to read from each, and where it goes in the result
+  private List<NestedRead> planReads(Variable mainv, Section section) throws InvalidRangeException {
+    List<Range> ranges = section.getRanges();
+    Range joinRange = section.getRange(0);
+    List<Range> innerSection = ranges.subList(1, ranges.size());
+    long innerSize = new Section(innerSection).computeSize();
 
-        Array.arraycopy(varData, 0, allData, destPos, (int) varData.getSize());
-        destPos += varData.getSize();
+    List<NestedRead> plan = new ArrayList<>();
+    long destPos = 0;
+    for (Dataset nested : getDatasets()) {
+      DatasetOuterDimension dod = (DatasetOuterDimension) nested;
+      Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
+      if (nestedJoinRange == null)
+        continue;
+
+      List<Range> nestedSection;
+      if ((type == Type.joinNew) || (type == Type.forecastModelRunCollection)) {
+        nestedSection = innerSection;
+      } else {
+        nestedSection = new ArrayList<>(ranges);
+        nestedSection.set(0, nestedJoinRange);
       }
+      plan.add(new NestedRead(dod, mainv, nestedSection, (int) destPos));
+      destPos += nestedJoinRange.length() * innerSize;
     }
-
-    return allData;
+    return plan;
   }
 
-  private static class ReaderTask implements Callable<Result> {
-    Dataset ds;
-    Variable mainv;
-    CancelTask cancelTask;
-    int index;
+  // true while a nested dataset is being read by the executor
+  private static final ThreadLocal<Boolean> inNestedRead = ThreadLocal.withInitial(() -> false);
 
-    ReaderTask(Dataset ds, Variable mainv, CancelTask cancelTask, int index) {
-      this.ds = ds;
-      this.mainv = mainv;
-      this.cancelTask = cancelTask;
-      this.index = index;
-    }
+  // read part of the section from one nested dataset
+  private static class NestedRead {
+    final DatasetOuterDimension dod;
+    final Variable mainv;
+    final List<Range> nestedSection;
+    final int destPos; // where it goes in the result
 
-    public Result call() throws Exception {
-      Array data = ds.read(mainv, cancelTask);
-      return new Result(data, index);
+    NestedRead(DatasetOuterDimension dod, Variable mainv, List<Range> nestedSection, int destPos) {
+      this.dod = dod;
+      this.mainv = mainv;
+      this.nestedSection = nestedSection;
+      this.destPos = destPos;
     }
-  }
 
-  private static class Result {
-    Array data;
-    int index;
+    // return false if cancelled
+    boolean readInto(Array result, DataType dtype, CancelTask cancelTask) throws IOException, InvalidRangeException {
+      Array varData = dod.read(mainv, cancelTask, nestedSection);
+      if ((varData == null) || ((cancelTask != null) && cancelTask.isCancel()))
+        return false;
 
-    Result(Array data, int index) {
-      this.data = data;
-      this.index = index;
+      int n = (int) varData.getSize();
+      if (varData.getElementType() == result.getElementType()) {
+        Array.arraycopy(varData, 0, result, destPos, n);
+      } else { // convert as it is copied
+        Array dest = result.reshapeNoCopy(new int[] {(int) result.getSize()}).section(new int[] {destPos}, new int[] {n});
+        MAMath.copy(dtype, varData.getIndexIterator(), dest.getIndexIterator());
+      }
+      return true;
     }
   }
 
@@ -807,12 +843,14 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
 
         // its possible that we are asking for more of the time coordinate than actually exists (fmrc ragged time)
         // so we need to read only what is there
-        Range fullRange = v.getRanges().get(0);
-        Range want = section.get(0);
-        if (fullRange.last() < want.last()) {
-          Range limitRange = new Range(want.first(), fullRange.last(), want.stride());
-          section = new ArrayList<>(section); // make a copy
-          section.set(0, limitRange);
+        if (!section.isEmpty()) { // nothing to limit if the nested variable is a scalar (joinNew)
+          Range fullRange = v.getRanges().get(0);
+          Range want = section.get(0);
+          if (fullRange.last() < want.last()) {
+            Range limitRange = new Range(want.first(), fullRange.last(), want.stride());
+            section = new ArrayList<>(section); // make a copy
+            section.set(0, limitRange);
+          }
         }
 
         return v.read(section);
@@ -33,14 +33,24 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
 
   // static private org.slf4SCHEMEj.Logger logger = org.slf4j.LoggerFactory.getLogger(CdmRemote.class);
   static private boolean showRequest = false;
-  static private boolean compress = false;
+  static private NcStreamProto.Compress compress = NcStreamProto.Compress.NONE;
 
   static public void setDebugFlags(ucar.nc2.util.DebugFlags debugFlag) {
     showRequest = debugFlag.isSet("CdmRemote/showRequest");
   }
 
   static public void setAllowCompression(boolean b) {
-    compress = b;
+    compress = b ? NcStreamProto.Compress.DEFLATE : NcStreamProto.Compress.NONE;
+  }
+
+  /**
+   * Ask the server to compress data responses. LZ4 is much faster than DEFLATE, but compresses less well.
+   * Servers that do not support the requested compression send the data uncompressed.
+   *
+   * @param type NONE, DEFLATE, or LZ4
+   */
+  static public void setCompression(NcStreamProto.Compress type) {
+    compress = type;
   }
 
 
@@ -129,8 +139,10 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
 
     Formatter f = new Formatter();
     f.format("%s?req=data", remoteURI);
-    if (compress)
+    if (compress == NcStreamProto.Compress.DEFLATE)
       f.format("&deflate=5");
+    else if (compress == NcStreamProto.Compress.LZ4)
+      f.format("&compress=lz4");
     //f.format("&var=%s", v.getShortName());
     f.format("&var=%s", v.getFullNameEscaped());
     if ((section != null) && (section.computeSize() != v.getSize()) && (v.getDataType() != DataType.SEQUENCE)) {
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.stream;
+
+import java.io.IOException;
+
+/**
+ * Compress and decompress using the LZ4 block format.
+ * The output is compatible with other LZ4 block implementations, eg liblz4's LZ4_decompress_safe().
+ * This trades compression ratio for speed: it is many times faster than deflate, on both ends.
+ * <p>
+ * Thread safe: all state is local to each call.
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format</a>
+ */
+public final class Lz4 {
+  static private final int MIN_MATCH = 4;
+  static private final int LAST_LITERALS = 5;  // the last 5 bytes are always literals
+  static private final int MF_LIMIT = 12;      // the last match must start at least 12 bytes before the end
+  static private final int MAX_OFFSET = 65535;
+  static private final int HASH_LOG = 14;
+  static private final int SKIP_TRIGGER = 6;   // search faster through data that doesnt compress
+
+  private Lz4() {
+  }
+
+  /**
+   * The maximum size of the compressed data.
+   *
+   * @param srcLen number of bytes to compress
+   * @return size of the dst array needed by compress()
+   */
+  static public int maxCompressedLength(int srcLen) {
+    return srcLen + srcLen / 255 + 16;
+  }
+
+  /**
+   * Compress src[srcOff, srcOff + srcLen) into dst, starting at dstOff.
+   *
+   * @param src    data to compress
+   * @param srcOff starting here
+   * @param srcLen this many bytes
+   * @param dst    put compressed bytes here; must have at least maxCompressedLength(srcLen) bytes after dstOff
+   * @param dstOff starting here
+   * @return number of compressed bytes
+   */
+  static public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+    int end = srcOff + srcLen;
+    int anchor = srcOff; // start of literals not yet written
+    int dp = dstOff;
+
+    if (srcLen >= MF_LIMIT + 1) {
+      int[] table = new int[1 << HASH_LOG]; // hash of 4 bytes -> position + 1
+      int mfLimit = end - MF_LIMIT;
+      int matchLimit = end - LAST_LITERALS;
+      int ip = srcOff;
+
+      while (ip < mfLimit) {
+        int seq = readInt(src, ip);
+        int h = hash(seq);
+        int ref = table[h] - 1;
+        table[h] = ip + 1;
+        if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+          ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+          continue;
+        }
+
+        // extend the match backwards into the literals
+        while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+          ip--;
+          ref--;
+        }
+
+        // and forwards
+        int matchLen = MIN_MATCH;
+        while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen])
+          matchLen++;
+
+        dp = writeSequence(src, anchor, ip - anchor, dst, dp, ip - ref, matchLen);
+        ip += matchLen;
+        anchor = ip;
+        if (ip < mfLimit) table[hash(readInt(src, ip - 2))] = ip - 2 + 1;
+      }
+    }
+
+    // last literals
+    int litLen = end - anchor;
+    dp = writeToken(dst, dp, litLen);
+    System.arraycopy(src, anchor, dst, dp, litLen);
+    return dp + litLen - dstOff;
+  }
+
+  /**
+   * Decompress src[srcOff, srcOff + srcLen) into dst, which must be exactly the uncompressed size.
+   *
+   * @param src    compressed data
+   * @param srcOff starting here
+   * @param srcLen this many bytes
+   * @param dst    put uncompressed bytes here
+   * @param dstOff starting here
+   * @param dstLen exact number of uncompressed bytes
+   * @throws IOException if the compressed data is malformed
+   */
+  static public void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+    int sp = srcOff, srcEnd = srcOff + srcLen;
+    int dp = dstOff, dstEnd = dstOff + dstLen;
+
+    try {
+      while (true) {
+        int token = src[sp++] & 0xff;
+
+        // literals
+        int litLen = token >>> 4;
+        if (litLen == 15) {
+          int b;
+          do {
+            b = src[sp++] & 0xff;
+            litLen += b;
+          } while (b == 255);
+        }
+        if (litLen > srcEnd - sp || litLen > dstEnd - dp)
+          throw new IOException("Malformed LZ4 data: literals too long");
+        System.arraycopy(src, sp, dst, dp, litLen);
+        sp += litLen;
+        dp += litLen;
+        if (sp == srcEnd) break; // the last sequence has only literals
+
+        // match
+        int offset = (src[sp] & 0xff) | ((src[sp + 1] & 0xff) << 8);
+        sp += 2;
+        int matchLen = token & 0x0f;
+        if (matchLen == 15) {
+          int b;
+          do {
+            b = src[sp++] & 0xff;
+            matchLen += b;
+          } while (b == 255);
+        }
+        matchLen += MIN_MATCH;
+        if (offset == 0 || offset > dp - dstOff || matchLen > dstEnd - dp)
+          throw new IOException("Malformed LZ4 data: bad match");
+
+        int ref = dp - offset;
+        if (offset >= matchLen) {
+          System.arraycopy(dst, ref, dst, dp, matchLen);
+          dp += matchLen;
+        } else { // overlapping copy repeats the pattern
+          for (int i = 0; i < matchLen; i++)
+            dst[dp++] = dst[ref++];
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Malformed LZ4 data: truncated");
+    }
+
+    if (dp != dstEnd)
+      throw new IOException("Malformed LZ4 data: uncompressed size = " + (dp - dstOff) + " expected " + dstLen);
+  }
+
+  static private int writeSequence(byte[] src, int litStart, int litLen, byte[] dst, int dp, int offset, int matchLen) {
+    int tokenPos = dp;
+    dp = writeToken(dst, dp, litLen);
+    System.arraycopy(src, litStart, dst, dp, litLen);
+    dp += litLen;
+
+    dst[dp++] = (byte) offset;
+    dst[dp++] = (byte) (offset >>> 8);
+
+    int ml = matchLen - MIN_MATCH;
+    if (ml >= 15) {
+      dst[tokenPos] |= 0x0f;
+      dp = writeExtraLength(dst, dp, ml - 15);
+    } else {
+      dst[tokenPos] |= ml;
+    }
+    return dp;
+  }
+
+  // write the token with the literal length in the high nibble, followed by any extra length bytes.
+  // the match length is or-ed into the low nibble later
+  static private int writeToken(byte[] dst, int dp, int litLen) {
+    if (litLen >= 15) {
+      dst[dp++] = (byte) 0xf0;
+      return writeExtraLength(dst, dp, litLen - 15);
+    }
+    dst[dp++] = (byte) (litLen << 4);
+    return dp;
+  }
+
+  static private int writeExtraLength(byte[] dst, int dp, int len) {
+    while (len >= 255) {
+      dst[dp++] = (byte) 255;
+      len -= 255;
+    }
+    dst[dp++] = (byte) len;
+    return dp;
+  }
+
+  static private int readInt(byte[] b, int pos) {
+    return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+  }
+
+  static private int hash(int seq) {
+    return (seq * -1640531535) >>> (32 - HASH_LOG);
+  }
+}
@@ -5,8 +5,11 @@
 
 package ucar.nc2.stream;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Created by rmay on 8/10/15.
@@ -36,6 +39,34 @@ public class NcStreamCompression {
         return new NcStreamCompression(NcStreamProto.Compress.DEFLATE, level);
     }
 
+    /**
+     * LZ4 compression: much faster than deflate, but does not compress as well.
+     * Older readers do not understand it, so only use it when the reader has asked for it.
+     */
+    public static NcStreamCompression lz4() {
+        return new NcStreamCompression(NcStreamProto.Compress.LZ4);
+    }
+
+    /**
+     * Find compression by name, eg from a request parameter.
+     *
+     * @param name "lz4", "deflate", or "none", case insensitive
+     * @return the NcStreamCompression, or null if the name is not recognized
+     */
+    public static NcStreamCompression fromName(String name) {
+        if (name == null) return null;
+        switch (name.toLowerCase()) {
+            case "lz4": return lz4();
+            case "deflate": return deflate();
+            case "none": return none();
+            default: return null;
+        }
+    }
+
+    public NcStreamProto.Compress getType() {
+        return type;
+    }
+
     public OutputStream setupStream(OutputStream out, int size)
             throws IOException
     {
@@ -48,6 +79,9 @@ public class NcStreamCompression {
                 int bufferSize = Math.min(size / 2, 512 * 1024 * 1024);
                 return new NcStreamCompressedOutputStream(out, bufferSize, level);
 
+            case LZ4:
+                return new NcStreamLz4OutputStream(out, size);
+
             default:
                 System.out.printf(" Unknown compression type %s. Defaulting to none.%n", type);
 
@@ -58,4 +92,46 @@ public class NcStreamCompression {
                 return out;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Uncompress a data block written by setupStream().
+     *
+     * @param type             type of compression
+     * @param data             the compressed data, not including its size
+     * @param uncompressedSize size of the uncompressed data
+     * @return the uncompressed data
+     * @throws IOException if the data is malformed
+     */
+    public static byte[] decompress(NcStreamProto.Compress type, byte[] data, int uncompressedSize)
+            throws IOException
+    {
+        byte[] result = new byte[uncompressedSize];
+        switch (type) {
+            case DEFLATE:
+                try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+                    NcStream.readFully(in, result);
+                }
+                return result;
+
+            case LZ4:
+                int pos = 0;
+                ByteArrayInputStream bin = new ByteArrayInputStream(data);
+                while (bin.available() > 0) {
+                    int ulen = NcStream.readVInt(bin);
+                    int clen = NcStream.readVInt(bin);
+                    int start = data.length - bin.available();
+                    if (ulen > uncompressedSize - pos || clen > bin.available())
+                        throw new IOException("Malformed LZ4 block");
+                    Lz4.decompress(data, start, clen, result, pos, ulen);
+                    pos += ulen;
+                    bin.skip(clen);
+                }
+                if (pos != uncompressedSize)
+                    throw new IOException("LZ4 uncompressed size = " + pos + " expected " + uncompressedSize);
+                return result;
+
+            default:
+                throw new IOException("Unknown compression type " + type);
+        }
+    }
+}
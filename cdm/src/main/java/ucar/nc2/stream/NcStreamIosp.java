@@ -71,6 +71,7 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
     long filePos;
     Section section;
     boolean isVlen, isDeflate;
+    NcStreamProto.Compress compress;
     ByteOrder bo;
     int nelems, uncompressedLen;
     NcStreamProto.StructureData sdata;
@@ -82,8 +83,9 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
       nelems = (int) section.computeSize();
       bo = NcStream.decodeDataByteOrder(dproto);
       isVlen = dproto.getVdata();
-      isDeflate = dproto.getCompress() == NcStreamProto.Compress.DEFLATE;
-      if (isDeflate)
+      compress = dproto.getCompress();
+      isDeflate = compress == NcStreamProto.Compress.DEFLATE;
+      if (compress != NcStreamProto.Compress.NONE)
         uncompressedLen = dproto.getUncompressedSize();
     }
 
@@ -94,7 +96,7 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
               ", section=" + section +
               ", nelems=" + nelems +
               ", isVlen=" + isVlen +
-              ", isDeflate=" + isDeflate;
+              ", compress=" + compress;
     }
   }
 
@@ -126,6 +128,10 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
           if (debug) System.out.printf(" uncompressedLen header=%d actual=%d%n", dataStorage.uncompressedLen , resultb.length);
           result.order(dataStorage.bo);
 
+        } else if (dataStorage.compress == NcStreamProto.Compress.LZ4) {
+          result = ByteBuffer.wrap(NcStreamCompression.decompress(dataStorage.compress, data, dataStorage.uncompressedLen));
+          result.order(dataStorage.bo);
+
         } else {
           result = ByteBuffer.wrap(data);
           result.order(dataStorage.bo);
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Compresses a data block with LZ4. Like NcStreamCompressedOutputStream, the compressed block is written
+ * to the underlying stream, preceded by its size, when flush() is called.
+ * <p>
+ * The data is split into independent LZ4 blocks of at most BLOCK_SIZE bytes, which are compressed in parallel
+ * in the common ForkJoinPool while the rest of the data is being written. The compressed data is:
+ * <pre>
+ *   vint total size of what follows
+ *   for each block:
+ *     vint uncompressed size
+ *     vint compressed size
+ *     LZ4 compressed block
+ * </pre>
+ *
+ * @see NcStreamCompression#decompress
+ */
+public class NcStreamLz4OutputStream extends OutputStream {
+  static final int BLOCK_SIZE = 1024 * 1024;
+
+  private final OutputStream writer;
+  private final List<CompletableFuture<byte[]>> blocks = new ArrayList<>();
+  private byte[] current;
+  private int count;
+  private boolean written; // the block has been written, and nothing added since
+
+  public NcStreamLz4OutputStream(OutputStream out, int size) {
+    this.writer = out;
+    this.current = new byte[Math.max(Math.min(size, BLOCK_SIZE), 16)];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    written = false;
+    if (count == current.length) submit();
+    current[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len > 0) written = false;
+    while (len > 0) {
+      if (count == current.length) submit();
+      int n = Math.min(len, current.length - count);
+      System.arraycopy(b, off, current, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  // compress the current block in the background
+  private void submit() {
+    final byte[] block = current;
+    final int len = count;
+    blocks.add(CompletableFuture.supplyAsync(() -> compressBlock(block, len)));
+    current = new byte[BLOCK_SIZE];
+    count = 0;
+  }
+
+  static private byte[] compressBlock(byte[] block, int len) {
+    byte[] compressed = new byte[Lz4.maxCompressedLength(len)];
+    int clen = Lz4.compress(block, 0, len, compressed, 0);
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream(clen + 10);
+    try {
+      NcStream.writeVInt(bout, len);
+      NcStream.writeVInt(bout, clen);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // cant happen
+    }
+    bout.write(compressed, 0, clen);
+    return bout.toByteArray();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (written && count == 0) return; // dont write an empty block on a second flush
+    if (count > 0) submit();
+
+    int total = 0;
+    List<byte[]> compressed = new ArrayList<>(blocks.size());
+    try {
+      for (CompletableFuture<byte[]> block : blocks) {
+        byte[] b = block.join();
+        compressed.add(b);
+        total += b.length;
+      }
+    } catch (CompletionException e) {
+      throw new IOException(e.getCause());
+    }
+
+    NcStream.writeVInt(writer, total);
+    for (byte[] b : compressed)
+      writer.write(b);
+    writer.flush();
+
+    // so that in theory we could continue to write to this stream
+    blocks.clear();
+    written = true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+}
@@ -257,6 +257,10 @@ public final class NcStreamProto {
      * <code>DEFLATE = 1;</code>
      */
     DEFLATE(1, 1),
+    /**
+     * <code>LZ4 = 2;</code>
+     */
+    LZ4(2, 2),
     UNRECOGNIZED(-1, -1),
     ;
 
@@ -268,6 +272,10 @@ public final class NcStreamProto {
      * <code>DEFLATE = 1;</code>
      */
     public static final int DEFLATE_VALUE = 1;
+    /**
+     * <code>LZ4 = 2;</code>
+     */
+    public static final int LZ4_VALUE = 2;
 
 
     public final int getNumber() {
@@ -282,6 +290,7 @@ public final class NcStreamProto {
       switch (value) {
         case 0: return NONE;
         case 1: return DEFLATE;
+        case 2: return LZ4;
         default: return null;
       }
     }
@@ -23181,8 +23190,8 @@ public final class NcStreamProto {
       "OUBLE\020\006\022\n\n\006STRING\020\007\022\r\n\tSTRUCTURE\020\010\022\014\n\010SE" +
       "QUENCE\020\t\022\t\n\005ENUM1\020\n\022\t\n\005ENUM2\020\013\022\t\n\005ENUM4\020" +
       "\014\022\n\n\006OPAQUE\020\r\022\t\n\005UBYTE\020\016\022\n\n\006USHORT\020\017\022\010\n\004" +
-      "UINT\020\020\022\t\n\005ULONG\020\021*!\n\010Compress\022\010\n\004NONE\020\000\022" +
-      "\013\n\007DEFLATE\020\001B \n\017ucar.nc2.streamB\rNcStrea" +
+      "UINT\020\020\022\t\n\005ULONG\020\021**\n\010Compress\022\010\n\004NONE\020\000\022" +
+      "\013\n\007DEFLATE\020\001\022\007\n\003LZ4\020\002B \n\017ucar.nc2.streamB\rNcStrea" +
       "mProtob\006proto3"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
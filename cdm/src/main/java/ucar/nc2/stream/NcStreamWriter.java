@@ -155,6 +155,8 @@ public class NcStreamWriter {
         String compType = compressAtt.getStringValue();
         if (compType.equalsIgnoreCase(CDM.COMPRESS_DEFLATE)) {
           compress = NcStreamCompression.deflate();
+        } else if (compType.equalsIgnoreCase(CDM.COMPRESS_LZ4)) {
+          compress = NcStreamCompression.lz4();
         } else {
           if (show) System.out.printf(" Unknown compression type %s. Defaulting to none.%n", compType);
           compress = NcStreamCompression.none();
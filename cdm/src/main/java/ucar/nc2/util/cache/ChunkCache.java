@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.util.cache;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of decoded (eg decompressed) data chunks, shared across all readers of a file.
+ * Chunks are keyed by file location, file last modified time, and the chunk's position in the file,
+ * so a file that is rewritten never returns stale data.
+ * <p>
+ * The cache is bounded by the total number of bytes held, not by number of entries.
+ * Eviction uses a segmented LRU: new chunks go into a probationary segment, and are promoted to the protected segment
+ * on their second hit. This keeps a single large scan from flushing out the chunks that are used over and over,
+ * as happens with WMS tiles.
+ * <p>
+ * Chunks may optionally be held off-heap, in direct ByteBuffers.
+ */
+@ThreadSafe
+public class ChunkCache {
+  static private final int ENTRY_OVERHEAD = 100; // approximate bytes used by the key and the map entry
+  static private final float PROTECTED_FRACTION = 0.8f;
+
+  private final String name;
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final boolean offHeap;
+
+  // guarded by this
+  private final LinkedHashMap<Key, ByteBuffer> probation = new LinkedHashMap<>(64, 0.75f, true);
+  private final LinkedHashMap<Key, ByteBuffer> protectd = new LinkedHashMap<>(64, 0.75f, true);
+  private long probationBytes, protectedBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong miss = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param name     name of the cache, for reporting
+   * @param maxBytes maximum number of bytes to keep in the cache
+   * @param offHeap  if true, keep the chunk data in direct ByteBuffers
+   */
+  public ChunkCache(String name, long maxBytes, boolean offHeap) {
+    this.name = name;
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * PROTECTED_FRACTION);
+    this.offHeap = offHeap;
+  }
+
+  /**
+   * Find a chunk in the cache.
+   *
+   * @param location     file location
+   * @param lastModified file last modified time
+   * @param chunkPos     position of the (encoded) chunk in the file
+   * @return a new view of the cached data, with position 0 and BIG_ENDIAN byte order, or null if not in the cache
+   */
+  public ByteBuffer get(String location, long lastModified, long chunkPos) {
+    Key key = new Key(location, lastModified, chunkPos);
+    ByteBuffer bb;
+    synchronized (this) {
+      bb = protectd.get(key);
+      if (bb == null) {
+        bb = probation.remove(key);
+        if (bb != null) { // second hit: promote
+          probationBytes -= size(bb);
+          protectd.put(key, bb);
+          protectedBytes += size(bb);
+          demote();
+        }
+      }
+    }
+
+    if (bb == null) {
+      miss.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return bb.duplicate();
+  }
+
+  /**
+   * Add a chunk to the cache. The data from position 0 to limit is cached; the caller may continue to use the
+   * ByteBuffer, but must not change its contents.
+   *
+   * @param location     file location
+   * @param lastModified file last modified time
+   * @param chunkPos     position of the (encoded) chunk in the file
+   * @param data         decoded chunk data
+   */
+  public void put(String location, long lastModified, long chunkPos, ByteBuffer data) {
+    long size = data.limit() + ENTRY_OVERHEAD;
+    if (size > maxBytes) return;
+
+    ByteBuffer bb;
+    if (offHeap) {
+      bb = ByteBuffer.allocateDirect(data.limit());
+      ByteBuffer src = data.duplicate();
+      src.position(0);
+      bb.put(src);
+      bb.flip();
+    } else {
+      bb = data.duplicate();
+      bb.position(0);
+    }
+
+    Key key = new Key(location, lastModified, chunkPos);
+    synchronized (this) {
+      if (protectd.containsKey(key) || probation.containsKey(key)) return; // another reader got here first
+      probation.put(key, bb);
+      probationBytes += size;
+      evict();
+    }
+  }
+
+  // move LRU protected entries back to probation, until protected is under its limit
+  private void demote() {
+    Iterator<Map.Entry<Key, ByteBuffer>> iter = protectd.entrySet().iterator();
+    while (protectedBytes > maxProtectedBytes && iter.hasNext()) {
+      Map.Entry<Key, ByteBuffer> entry = iter.next();
+      iter.remove();
+      long size = size(entry.getValue());
+      protectedBytes -= size;
+      probation.put(entry.getKey(), entry.getValue());
+      probationBytes += size;
+    }
+    evict();
+  }
+
+  // remove LRU entries, probation first, until under the limit
+  private void evict() {
+    evict(probation.entrySet().iterator(), true);
+    evict(protectd.entrySet().iterator(), false);
+  }
+
+  private void evict(Iterator<Map.Entry<Key, ByteBuffer>> iter, boolean isProbation) {
+    while (probationBytes + protectedBytes > maxBytes && iter.hasNext()) {
+      long size = size(iter.next().getValue());
+      iter.remove();
+      if (isProbation) probationBytes -= size;
+      else protectedBytes -= size;
+      evictions.incrementAndGet();
+    }
+  }
+
+  private long size(ByteBuffer bb) {
+    return bb.limit() + ENTRY_OVERHEAD;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized long getBytes() {
+    return probationBytes + protectedBytes;
+  }
+
+  public synchronized int getCount() {
+    return probation.size() + protectd.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return miss.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Remove all chunks from the cache.
+   */
+  public synchronized void clearCache() {
+    probation.clear();
+    protectd.clear();
+    probationBytes = 0;
+    protectedBytes = 0;
+  }
+
+  /**
+   * Remove all chunks belonging to the given file.
+   *
+   * @param location file location
+   */
+  public synchronized void eject(String location) {
+    probation.entrySet().removeIf(e -> {
+      if (!e.getKey().location.equals(location)) return false;
+      probationBytes -= size(e.getValue());
+      return true;
+    });
+    protectd.entrySet().removeIf(e -> {
+      if (!e.getKey().location.equals(location)) return false;
+      protectedBytes -= size(e.getValue());
+      return true;
+    });
+  }
+
+  // debugging
+
+  public void resetTracking() {
+    hits.set(0);
+    miss.set(0);
+    evictions.set(0);
+  }
+
+  /**
+   * Show individual cache entries, add to formatter.
+   *
+   * @param format add to this
+   */
+  public void showCache(Formatter format) {
+    format.format("%nChunkCache %s (maxBytes= %d offHeap= %s)%n", name, maxBytes, offHeap);
+    showStats(format);
+    for (String s : showCache())
+      format.format(" %s%n", s);
+  }
+
+  /**
+   * Add stat report (hits, misses, etc) to formatter.
+   *
+   * @param format add to this
+   */
+  public synchronized void showStats(Formatter format) {
+    format.format("  hits= %d miss= %d evictions= %d chunks= %d (protected= %d) bytes= %d (protected= %d)%n",
+            hits.get(), miss.get(), evictions.get(), getCount(), protectd.size(), getBytes(), protectedBytes);
+  }
+
+  public synchronized List<String> showCache() {
+    List<String> result = new ArrayList<>(getCount());
+    for (Map.Entry<Key, ByteBuffer> entry : protectd.entrySet())
+      result.add("protected " + entry.getKey() + " nbytes=" + entry.getValue().limit());
+    for (Map.Entry<Key, ByteBuffer> entry : probation.entrySet())
+      result.add("probation " + entry.getKey() + " nbytes=" + entry.getValue().limit());
+    return result;
+  }
+
+  private static class Key {
+    final String location;
+    final long lastModified;
+    final long chunkPos;
+
+    Key(String location, long lastModified, long chunkPos) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.chunkPos = chunkPos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return lastModified == key.lastModified && chunkPos == key.chunkPos && location.equals(key.location);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = location.hashCode();
+      result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+      result = 31 * result + (int) (chunkPos ^ (chunkPos >>> 32));
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return location + " (" + lastModified + ") pos=" + chunkPos;
+    }
+  }
+}
@@ -6,79 +6,152 @@
 package ucar.nc2.util.cache;
 
 import ucar.nc2.dataset.DatasetUrl;
-import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateFormatter;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.util.Misc;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
 
 /**
-  ARC cach algorithm
- not complete.
+ * Keep cache of open FileCacheable objects, using the ARC (Adaptive Replacement Cache) algorithm to decide which
+ * ones to close. Same contract as FileCache, but:
+ * <ol>
+ * <li>The cache is bounded by the number of open files, and optionally by their estimated memory.
+ *     The limits are enforced when files are added and released, in the calling thread; there is no background thread
+ *     and no need to call shutdown().
+ * <li>Files that have been used once (T1) and files that have been used more than once (T2) are kept in separate LRU lists.
+ *     The keys of recently evicted files are remembered (B1, B2), and a miss on one of them shifts the target size of T1,
+ *     so the cache adapts between recency and frequency. A scan through many files used once does not flush out the
+ *     files that are used over and over.
+ * <li>acquire() and release() do not take a global lock. Finding a file is a ConcurrentHashMap lookup and a compare-and-set
+ *     on the file's lock; accesses are recorded in a queue, and applied to the ARC lists by whichever thread next holds the
+ *     policy lock, usually without waiting for it.
+ * </ol>
+ * A CacheElement holds all the open copies of the same hashKey. ARC works on elements; the limits count files.
+ * Files that are locked (in use) are never closed, so the limits may be exceeded while many files are in use.
+ * <p/>
+ * Hit rate, evictions, time spent opening files, and time spent waiting for the policy lock are shown by showStats().
+ *
+ * @author caron
+ * @see FileCache
  */
 @ThreadSafe
 public class FileCacheARC implements FileCacheIF {
   static protected final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(FileCacheARC.class);
   static protected final org.slf4j.Logger cacheLog = org.slf4j.LoggerFactory.getLogger("cacheLogger");
-  static boolean debug = false;
-  static boolean debugPrint = false;
-  static boolean trackAll = true;
+  static final boolean debugPrint = false;
+
+  static private final int DRAIN_THRESHOLD = 64;    // apply recorded accesses when this many are pending
+  static private final long ESTIMATED_FILE_BYTES = 16 * 1000; // estimated memory of a FileCacheable, besides its buffer
+
+  /**
+   * Default estimate of the memory used by a FileCacheable: the size of its buffer for a RandomAccessFile,
+   * otherwise a fixed amount.
+   *
+   * @param ncfile estimate this
+   * @return estimated size in bytes
+   */
+  static public long estimateBytes(FileCacheable ncfile) {
+    if (ncfile instanceof ucar.unidata.io.RandomAccessFile)
+      return ((ucar.unidata.io.RandomAccessFile) ncfile).getBufferSize() + ESTIMATED_FILE_BYTES;
+    return ESTIMATED_FILE_BYTES;
+  }
 
   /////////////////////////////////////////////////////////////////////////////////////////
 
-  protected String name;
-  protected final int softLimit, minElements, hardLimit, period;
+  protected final String name;
+  protected final int maxFiles;
+  protected final long maxBytes;
+  private final ToLongFunction<FileCacheable> sizeOf;
 
   private final AtomicBoolean disabled = new AtomicBoolean(false);  // cache is disabled
 
-  protected final ConcurrentSkipListMap<CacheElement, CacheElement> shadowCache; // this is used to decide which file to release
-                                                                                 // this can be biggger than the cache, eg ARC uses 2c, where c = cache size
-  protected final ConcurrentHashMap<Object, CacheElement> cache;                // collection of all unique files in the cache, keyed by hashKey, typically filename
-                                                                                // cache has open file handle / object in memory
-  protected final ConcurrentHashMap<Integer, CacheElement.CacheFile> files;     // collection of all files in the cache, keyed by FileCacheable hashcode (object id)
-                                                                                // this is needed for release
-
-  // debugging and global stats
-  protected final AtomicInteger hits = new AtomicInteger();
-  protected final AtomicInteger miss = new AtomicInteger();
+  protected final ConcurrentHashMap<Object, CacheElement> cache;                  // unique files, keyed by hashKey, typically filename
+  protected final ConcurrentHashMap<FileCacheable, CacheElement.CacheFile> files; // all files in the cache, needed for release
+  private final AtomicInteger nfiles = new AtomicInteger();
+  private final AtomicLong nbytes = new AtomicLong();
+
+  // accessed elements not yet applied to the ARC lists
+  private final ConcurrentLinkedQueue<CacheElement> accessed = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pending = new AtomicInteger();
+
+  // the ARC lists, oldest first
+  private final ReentrantLock policyLock = new ReentrantLock();
+  @GuardedBy("policyLock")
+  private final LinkedHashMap<Object, CacheElement> t1 = new LinkedHashMap<>(); // resident, used once
+  @GuardedBy("policyLock")
+  private final LinkedHashMap<Object, CacheElement> t2 = new LinkedHashMap<>(); // resident, used more than once
+  @GuardedBy("policyLock")
+  private final LinkedHashSet<Object> b1 = new LinkedHashSet<>(); // ghosts evicted from t1
+  @GuardedBy("policyLock")
+  private final LinkedHashSet<Object> b2 = new LinkedHashSet<>(); // ghosts evicted from t2
+  @GuardedBy("policyLock")
+  private int p; // target size of t1
+
+  // debugging and stats
+  protected final AtomicLong hits = new AtomicLong();
+  protected final AtomicLong miss = new AtomicLong();
+  protected final AtomicLong evictions = new AtomicLong();
+  protected final AtomicLong openNanos = new AtomicLong();  // time spent opening files on a miss
+  protected final AtomicLong waits = new AtomicLong();      // number of times a thread had to wait for the policy lock
+  protected final AtomicLong waitNanos = new AtomicLong();  // time spent waiting for the policy lock
   protected ConcurrentHashMap<Object, Tracker> track;
+  protected boolean trackAll = false;
+
+  /**
+   * Constructor, limited only by number of open files.
+   *
+   * @param name     of file cache
+   * @param maxFiles close unlocked files when more than this many are open; must be > 0
+   */
+  public FileCacheARC(String name, int maxFiles) {
+    this(name, maxFiles, -1, FileCacheARC::estimateBytes);
+  }
 
   /**
    * Constructor.
    *
-   * @param name                of file cache
-   * @param minElementsInMemory keep this number in the cache
-   * @param softLimit           trigger a cleanup if it goes over this number.
-   * @param hardLimit           if > 0, never allow more than this many elements. This causes a cleanup to be done in the calling thread.
-   * @param period              if > 0, do periodic cleanups every this number of seconds.
+   * @param name     of file cache
+   * @param maxFiles close unlocked files when more than this many are open; must be > 0
+   * @param maxBytes if > 0, close unlocked files when their estimated memory is more than this, using estimateBytes()
    */
-  public FileCacheARC(String name, int minElementsInMemory, int softLimit, int hardLimit, int period) {
-    this.name = name;
-    this.minElements = minElementsInMemory;
-    this.softLimit = softLimit;
-    this.hardLimit = hardLimit;
-    this.period = period;
+  public FileCacheARC(String name, int maxFiles, long maxBytes) {
+    this(name, maxFiles, maxBytes, FileCacheARC::estimateBytes);
+  }
 
-    shadowCache = new ConcurrentSkipListMap<>(new CacheElementComparator());
-    cache = new ConcurrentHashMap<>(2 * softLimit, 0.75f, 8);
-    files = new ConcurrentHashMap<>(4 * softLimit, 0.75f, 8);
+  /**
+   * Constructor.
+   *
+   * @param name     of file cache
+   * @param maxFiles close unlocked files when more than this many are open; must be > 0
+   * @param maxBytes if > 0, close unlocked files when their estimated memory is more than this
+   * @param sizeOf   estimates the memory used by a FileCacheable; called once, when it is added to the cache
+   */
+  public FileCacheARC(String name, int maxFiles, long maxBytes, ToLongFunction<FileCacheable> sizeOf) {
+    if (maxFiles <= 0) throw new IllegalArgumentException("maxFiles must be > 0");
+    this.name = name;
+    this.maxFiles = maxFiles;
+    this.maxBytes = maxBytes;
+    this.sizeOf = sizeOf;
 
-    if (trackAll)
-      track = new ConcurrentHashMap<>(5000);
+    cache = new ConcurrentHashMap<>(2 * maxFiles, 0.75f, 8);
+    files = new ConcurrentHashMap<>(2 * maxFiles, 0.75f, 8);
   }
 
   /**
    * Disable the cache, and force release all files.
-   * You must still call shutdown() before exiting the application.
    */
   @Override
   public void disable() {
@@ -113,16 +186,13 @@ public class FileCacheARC implements FileCacheIF {
    * If not already in cache, open it with FileFactory, and put in cache.
    * <p/>
    * Call FileCacheable.close() when done, (rather than FileCacheIF.release() directly) and the file is then released instead of closed.
-   * <p/>
-   * If cache size goes over maxElement, then immediately (actually in 100 msec) schedule a cleanup in a background thread.
-   * This means that the cache should never get much larger than maxElement, unless you have them all locked.
    *
    * @param factory     use this factory to open the file if not in the cache; may not be null
    * @param hashKey     unique key for this file. If null, the location will be used
    * @param location    file location, may also used as the cache name, will be passed to the NetcdfFileFactory
    * @param buffer_size RandomAccessFile buffer size, if <= 0, use default size
    * @param cancelTask  user can cancel, ok to be null.
-   * @param spiObject   sent to iosp.setSpecial() if not null
+   * @param spiObject   passed to the factory if object needs to be recreated
    * @return FileCacheable corresponding to location.
    * @throws IOException on error
    */
@@ -150,7 +220,9 @@ public class FileCacheARC implements FileCacheIF {
     if (t != null) t.miss++;
 
     // open the file
+    long start = System.nanoTime();
     ncfile = factory.open(location, buffer_size, cancelTask, spiObject);
+    openNanos.addAndGet(System.nanoTime() - start);
     if (cacheLog.isDebugEnabled())
       cacheLog.debug("FileCacheARC " + name + " acquire " + hashKey + " " + ncfile.getLocation());
     if (debugPrint) System.out.println("  FileCacheARC " + name + " acquire " + hashKey + " " + ncfile.getLocation());
@@ -164,7 +236,6 @@ public class FileCacheARC implements FileCacheIF {
     if (disabled.get()) return ncfile;
 
     addToCache(hashKey, ncfile);
-
     return ncfile;
   }
 
@@ -178,7 +249,7 @@ public class FileCacheARC implements FileCacheIF {
     if (disabled.get()) return null;
 
     // see if its in the cache
-    CacheElement wantCacheElem  = cache.get(hashKey);
+    CacheElement wantCacheElem = cache.get(hashKey);
     if (wantCacheElem == null) return null;  // not found in cache
 
     CacheElement.CacheFile want = null;
@@ -191,110 +262,61 @@ public class FileCacheARC implements FileCacheIF {
     if (want == null) return null; // no unlocked file in cache
 
     // check if modified, remove if so
-    if (want.ncfile != null) {
-      long lastModified = want.ncfile.getLastModified();
-      boolean changed = lastModified != wantCacheElem.lastModified.get();
-
-      if (changed) { // underlying file was modified
-        if (cacheLog.isDebugEnabled())
-          cacheLog.debug("FileCacheARC " + name + ": acquire from cache " + hashKey + " " + want.ncfile.getLocation() + " was changed; discard");
-
-        expireFromCache(wantCacheElem);
-        return null;
-      }
+    FileCacheable ncfile = want.ncfile;
+    if (ncfile == null) return null; // lost a race with eject
+    if (ncfile.getLastModified() != want.lastModified) {
+      if (cacheLog.isDebugEnabled())
+        cacheLog.debug("FileCacheARC " + name + ": acquire from cache " + hashKey + " " + ncfile.getLocation() + " was changed; discard");
+      remove(want, true);
+      return null;
     }
 
-    updateInCache(wantCacheElem);
-    return want.ncfile;
-  }
-
-  // get CacheElement specified by hashKey. If found, update lastUsed in shadowCache.
-  private CacheElement updateInCache(CacheElement elem) {
-    if (shadowCache.firstKey() == elem) return elem;
-
-    elem.updateAccessed();
-    CacheElement prev = shadowCache.put(elem, elem); // faster if we could just insert at the top of the list. maybe we need to use LinkedList ?
-    if (prev != null && (elem != prev)) {
-      CacheElementComparator cc = new CacheElementComparator();
-      System.out.printf("elem != prev compare=%d%n", cc.compare(elem, prev));
-      System.out.printf("hash elem =%d prev=%d%n", elem.hashCode(), prev.hashCode());
+    try {
+      ncfile.reacquire(); // rehydrate
+    } catch (IOException ioe) {
+      if (cacheLog.isDebugEnabled())
+        cacheLog.debug("FileCacheARC " + name + " acquire from cache " + hashKey + " " + ncfile.getLocation() + " failed: " + ioe.getMessage());
+      remove(want, true);
+      return null;
     }
-    return elem;
-  }
-
-  private AtomicInteger cacheSize = new AtomicInteger();
 
-  private void expireFromCache(CacheElement elem) {
-    for (CacheElement.CacheFile cacheFile : elem.list) {
-      cacheFile.ncfile.setFileCache(null);        // next time it closes, it will really close LOOK race condition ??
-      cacheSize.getAndDecrement();
-    }
-    cache.remove(elem.hashKey);
-    shadowCache.remove(elem);
+    recordAccess(wantCacheElem);
+    if (debugPrint) System.out.printf("  FileCacheARC %s found in cache %s%n", name, hashKey);
+    return ncfile;
   }
 
-  /** LOOK copied from FileCache, probably wrong
-    * Remove all instances of object from the cache
-    * @param hashKey the object
-    */
-   @Override
-   public void eject(Object hashKey) {
-   }
-
-  /*
-      if (disabled.get()) return;
-
-      // see if its in the cache
-      CacheElement wantCacheElem = cache.get(hashKey);
-      if (wantCacheElem == null) return;
-
-      synchronized (wantCacheElem) { // synch in order to traverse the list
-        for (CacheElement.CacheFile want : wantCacheElem.list) {
-           files.remove(want.ncfile);
-           want.ncfile.setFileCache(null); // unhook the caching
-           try {
-             want.ncfile.close();  // really close the file
-             log.debug("close "+want.ncfile.getLocation());
-           } catch (IOException e) {
-             log.error("close failed on "+want.ncfile.getLocation(), e);
-           }
-           want.ncfile = null;
+  private void addToCache(Object hashKey, FileCacheable ncfile) {
+    while (true) {
+      CacheElement elem = cache.computeIfAbsent(hashKey, CacheElement::new);
+      synchronized (elem) {
+        if (!elem.removed) { // else it was evicted after we found it; try again
+          CacheElement.CacheFile file = elem.addFile(ncfile);
+          nfiles.incrementAndGet();
+          nbytes.addAndGet(file.bytes);
+          recordAccess(elem);
+          break;
         }
-        wantCacheElem.list.clear();
       }
-     cache.remove(hashKey);
-    } */
-
-
-  private void addToCache(Object hashKey, FileCacheable ncfile) {
-    CacheElement newCacheElem = new CacheElement(hashKey);
-    CacheElement previous = cache.putIfAbsent(hashKey, newCacheElem); // add new element if doesnt exist
-    CacheElement elem = (previous != null) ? previous : newCacheElem;  // use previous if it exists
-
-    elem.addFile(ncfile);                                 // add to existing list
-    shadowCache.put(newCacheElem, newCacheElem);
+    }
 
-    int size = cacheSize.getAndIncrement();
-    if (size > softLimit) {
-      removeFromCache(size - softLimit);
+    // a new file may put us over the limit: wait if needed, so that the limits are enforced
+    if (isOverLimit()) {
+      lockPolicy();
+      evict(true);
     }
   }
 
-  private void removeFromCache(int count) {
-    int done = 0;
-    while (count > done) {
-      CacheElement elem = shadowCache.lastKey();
-      done += elem.list.size();
-      expireFromCache(elem);
-    }
+  private boolean isOverLimit() {
+    return nfiles.get() > maxFiles || (maxBytes > 0 && nbytes.get() > maxBytes);
   }
 
   /**
    * Release the file. This unlocks it, updates its lastAccessed date.
-   * FileCacheable.close() needs to call this instead of actually closing.
+   * Normally applications need not call this, just close the file as usual.
+   * The FileCacheable has to do tricky stuff.
    *
-   * @param ncfile release the lock on this FileCacheable object.
-   * @throws IOException if file not in cache.
+   * @param ncfile release this file.
+   * @return true if file was in cache, false if it was not
    */
   @Override
   public boolean release(FileCacheable ncfile) throws IOException {
@@ -307,247 +329,316 @@ public class FileCacheARC implements FileCacheIF {
     }
 
     // find it in the file cache
-    int hashcode = System.identityHashCode(ncfile);    // using Object hashCode of the FileCacheable
-    CacheElement.CacheFile file = files.get(hashcode);
-    if (file != null) {
-      if (!file.isLocked.get()) {
-        Exception e = new Exception("Stack trace");
-        cacheLog.warn("FileCacheARC " + name + " release " + ncfile.getLocation() + " not locked; hash= "+ncfile.hashCode(), e);
-      }
-      //file.lastAccessed = System.currentTimeMillis();
-      //file.countAccessed++;
-      file.isLocked.set(false);
-      if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCacheARC " + name + " release " + ncfile.getLocation()+"; hash= "+ncfile.hashCode());
-      if (debugPrint) System.out.println("  FileCacheARC " + name + " release " + ncfile.getLocation());
-      return true;
-    }
-    return false;
-    // throw new IOException("FileCacheARC " + name + " release does not have file in cache = " + ncfile.getLocation());
-  }
-
-  // not private for testing
-  class CacheElement {
-    final Object hashKey;
-    final List<CacheFile> list = new CopyOnWriteArrayList<>(); // may have multiple copies of the same file opened.
+    CacheElement.CacheFile file = files.get(ncfile); // using hashCode of the FileCacheable
+    if (file == null) return false;
 
-    final AtomicLong lastModified = new AtomicLong();
-    final AtomicLong  lastAccessed = new AtomicLong();
-    final AtomicInteger countAccessed = new AtomicInteger();
-
-    CacheElement(Object hashKey) {
-      this.hashKey = hashKey;
+    if (!file.isLocked.get()) {
+      cacheLog.warn("FileCacheARC " + name + " release " + ncfile.getLocation() + " not locked; hash= " + ncfile.hashCode());
     }
+    file.lastAccessed = System.currentTimeMillis();
+    file.countAccessed.incrementAndGet();
+    ncfile.release(); // before unlocking, so no one else gets it until we are done
+    file.isLocked.set(false);
 
-    CacheFile addFile(FileCacheable ncfile) {
-      CacheFile file = new CacheFile(ncfile);
-      list.add(file);
-
-      this.lastModified.set(ncfile.getLastModified());
-      this.lastAccessed.set(System.currentTimeMillis());
-      this.countAccessed.incrementAndGet();
-
-      int hashcode = System.identityHashCode(ncfile);    // using Object hashCode of the FileCacheable
-      if (debug) {
-        if (files.get(hashcode) != null)
-          cacheLog.error("files (2) already has " + hashKey + " " + name);
-      }
-
-      files.put(hashcode, file);
-      if (cacheLog.isDebugEnabled()) cacheLog.debug("CacheElement add to cache " + hashKey + " " + name);
-      return file;
-    }
-
-    public long getLastAccessed() {
-      return lastAccessed.get();
-    }
+    if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCacheARC " + name + " release " + ncfile.getLocation() + "; hash= " + ncfile.hashCode());
+    if (debugPrint) System.out.printf("  FileCacheARC %s release %s%n", name, ncfile.getLocation());
 
-    public void updateAccessed() {
-      lastAccessed.set(System.currentTimeMillis());
-      this.countAccessed.incrementAndGet();
-    }
+    // now that its unlocked, it can be evicted if we are over the limit; let another thread do it if its busy
+    if (isOverLimit() && policyLock.tryLock())
+      evict(false);
+    return true;
+  }
 
-    public String toString() {
-      return hashKey + " count=" + list.size()+ " countAccessed=" + countAccessed + " lastAccessed=" + new Date(getLastAccessed());
-    }
+  /**
+   * Remove all instances of object from the cache, closing them even if they are locked.
+   *
+   * @param hashKey the object
+   */
+  @Override
+  public void eject(Object hashKey) {
+    if (disabled.get()) return;
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) return true;
-      if (o == null || getClass() != o.getClass()) return false;
-      CacheElement that = (CacheElement) o;
-      return that.hashCode() == hashCode();
-    }
+    CacheElement elem = cache.get(hashKey);
+    if (elem == null) return;
 
-    @Override
-    public int hashCode() {
-      return hashKey.hashCode();
+    for (CacheElement.CacheFile want : elem.list) {
+      remove(want, true);
+      if (debugPrint) System.out.println("  FileCacheARC " + name + " eject " + hashKey);
     }
+    removeElementIfEmpty(elem);
+  }
 
-    class CacheFile implements Comparable<CacheFile> {
-      FileCacheable ncfile; // actually final, but we null it out for gc
-      final AtomicBoolean isLocked = new AtomicBoolean(true);
-
-      private CacheFile(FileCacheable ncfile) {
-        this.ncfile = ncfile;
-        ncfile.setFileCache(FileCacheARC.this);
-
-        if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCacheARC " + name + " add to cache " + hashKey);
-        if (debugPrint) System.out.println("  FileCacheARC " + name + " add to cache " + hashKey);
+  /**
+   * Remove all cache entries.
+   *
+   * @param force if true, remove them even if they are currently locked.
+   */
+  @Override
+  public void clearCache(boolean force) {
+    int count = 0;
+    for (CacheElement.CacheFile file : files.values()) {
+      if (force) {
+        if (file.isLocked.get())
+          cacheLog.warn("FileCacheARC " + name + " force close locked file= " + file);
+      } else if (!file.isLocked.compareAndSet(false, true)) {
+        continue;
       }
+      if (remove(file, false)) count++;
+    }
 
-      public long getLastAccessed() {
-        return lastAccessed.get();
-      }
+    for (CacheElement elem : cache.values())
+      removeElementIfEmpty(elem);
 
-      public int getCountAccessed() {
-         return countAccessed.get();
-       }
-
-      void remove() {
-        int hashcode = System.identityHashCode(ncfile);    // using Object hashCode of the FileCacheable
-        if (null == files.remove(hashcode))
-          cacheLog.warn("FileCacheARC {} could not remove {} from files", name, ncfile.getLocation());
-        if (!list.remove(this))
-          cacheLog.warn("FileCacheARC {} could not remove {} from list", name, ncfile.getLocation());
-        close();
+    lockPolicy();
+    try {
+      drainAccessed();
+      if (force) {
+        b1.clear();
+        b2.clear();
+        p = 0;
       }
+    } finally {
+      policyLock.unlock();
+    }
 
-      void close() {
-        // really close the file
-        ncfile.setFileCache(null);
-        try {
-          ncfile.close();
-        } catch (IOException e) {
-          log.error("close failed on "+ncfile.getLocation(), e);
-        }
+    if (cacheLog.isDebugEnabled())
+      cacheLog.debug("*FileCacheARC " + name + " clearCache force= " + force + " deleted= " + count + " left=" + files.size());
+  }
 
-        if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCacheARC " + name + " remove " + ncfile.getLocation());
-        if (debugPrint) System.out.println("  FileCacheARC " + name + " remove " + ncfile.getLocation());
-        ncfile = null;
-      }
+  // Remove the file from the cache and really close it. If fromElement, also remove it from its CacheElement if that is now empty.
+  // return true if this thread removed it
+  private boolean remove(CacheElement.CacheFile file, boolean fromElement) {
+    if (!detach(file)) return false; // someone else got it
+    if (fromElement) removeElementIfEmpty(file.element);
+    close(file);
+    return true;
+  }
 
-      public String toString() {
-        return isLocked + " " + ncfile.getLocation();
-      }
+  // take the file out of the cache, so it is no longer counted against the limits
+  private boolean detach(CacheElement.CacheFile file) {
+    FileCacheable ncfile = file.ncfile;
+    if (ncfile == null || !files.remove(ncfile, file)) return false;
+    nfiles.decrementAndGet();
+    nbytes.addAndGet(-file.bytes);
+    file.element.list.remove(file);
+    return true;
+  }
 
-      public int compareTo(CacheFile o) {
-        return Misc.compare(lastAccessed.get(), o.getLastAccessed());
-      }
+  private void close(CacheElement.CacheFile file) {
+    FileCacheable ncfile = file.ncfile;
+    try {
+      ncfile.setFileCache(null); // unhook the caching
+      ncfile.close();            // really close the file
+    } catch (IOException e) {
+      log.error("FileCacheARC " + name + " close failed on " + ncfile.getLocation(), e);
     }
+    file.ncfile = null; // help the gc
+    if (debugPrint) System.out.printf("  FileCacheARC %s remove %s%n", name, ncfile.getLocation());
   }
 
-  static private class CacheElementComparator implements
-            Comparator<CacheElement> {
-    @Override
-    public int compare(CacheElement o1, CacheElement o2) {
-      return Misc.compare(o1.getLastAccessed(), o2.getLastAccessed());
+  // if the element has no files, take it out of the cache. It stays on the ARC lists until the next drain or eviction.
+  private void removeElementIfEmpty(CacheElement elem) {
+    synchronized (elem) {
+      if (elem.removed || !elem.list.isEmpty()) return;
+      elem.removed = true;
     }
+    cache.remove(elem.hashKey, elem);
+    recordAccess(elem); // so its taken off the ARC lists
   }
 
-  /*
-  case I:  if (x in T1 + T2)    // cache hit
-    x -> MRU in T2
-
-  case II: if (x in B1)         // cache miss
-    adapt1(p)
-    replace(x,p)
-    move x from B1 -> MRU in T2
+  /////////////////////////////////////////////////////////////////////////////////////////
+  // ARC policy
 
-  case III: if (x in B2)        // cache miss
-    adapt2(p)
-    replace(x,p)
-    move x from B2 -> MRU in T2
+  private void recordAccess(CacheElement elem) {
+    accessed.add(elem);
+    if (pending.incrementAndGet() > DRAIN_THRESHOLD && policyLock.tryLock()) {
+      try {
+        drainAccessed();
+      } finally {
+        policyLock.unlock();
+      }
+    }
+  }
 
-  case IV: not in cache         // cache miss
-    case A: if (size L1 == c)
-      if (size T1 < c)
-        delete LRU in B1
-        replace(x,p)
-      else            // B1 is empty
-        delete LRU in T1
-    case B:
-      if (size L1 + L2 >= c)
-         if (size L1 + L2 == 2c)
-           delete LRU in B2
-         replace(x,p)
+  private void lockPolicy() {
+    if (policyLock.tryLock()) return;
+    long start = System.nanoTime();
+    policyLock.lock();
+    waits.incrementAndGet();
+    waitNanos.addAndGet(System.nanoTime() - start);
+  }
 
-    x -> MRU in T1
+  // apply the recorded accesses to the ARC lists
+  @GuardedBy("policyLock")
+  private void drainAccessed() {
+    CacheElement elem;
+    while ((elem = accessed.poll()) != null) {
+      pending.decrementAndGet();
+      Object key = elem.hashKey;
+
+      if (elem.removed) { // no longer resident: remember it as a ghost, so a later miss adapts p
+        if (t1.get(key) == elem) {
+          t1.remove(key);
+          b1.add(key);
+        } else if (t2.get(key) == elem) {
+          t2.remove(key);
+          b2.add(key);
+        }
 
+      } else if (t1.get(key) == elem) { // second use: promote
+        t1.remove(key);
+        t2.put(key, elem);
 
+      } else if (t2.get(key) == elem) { // move to most recently used
+        t2.remove(key);
+        t2.put(key, elem);
 
-   */
+      } else if (b1.remove(key)) { // evicted too soon from t1: make t1 bigger
+        int delta = (b1.size() + 1 >= b2.size()) ? 1 : b2.size() / (b1.size() + 1);
+        p = Math.min(maxFiles, p + delta);
+        putResident(t2, key, elem);
 
-  // debug
-  public String getInfo(FileCacheable ncfile) throws IOException {
-    if (ncfile == null) return "";
+      } else if (b2.remove(key)) { // evicted too soon from t2: make t1 smaller
+        int delta = (b2.size() + 1 >= b1.size()) ? 1 : b1.size() / (b2.size() + 1);
+        p = Math.max(0, p - delta);
+        putResident(t2, key, elem);
 
-    // find it in the file cache
-    int hashcode = System.identityHashCode(ncfile);
-    CacheElement.CacheFile file = files.get(hashcode);
-    if (file != null) {
-      return "File is in cache= " + file;
+      } else {
+        putResident(t1, key, elem);
+      }
     }
-    return "File not in cache";
+    trimGhosts();
+  }
+
+  // a new element may replace an old one with the same key, eg after eject
+  private void putResident(LinkedHashMap<Object, CacheElement> list, Object key, CacheElement elem) {
+    t1.remove(key);
+    t2.remove(key);
+    list.put(key, elem);
   }
 
-  // debug
-  Map<Object, CacheElement> getCache() {
-    return cache;
+  // ARC keeps |t1| + |b1| <= c and |t1| + |t2| + |b1| + |b2| <= 2c
+  @GuardedBy("policyLock")
+  private void trimGhosts() {
+    Iterator<Object> iter = b1.iterator();
+    while (t1.size() + b1.size() > maxFiles && iter.hasNext()) {
+      iter.next();
+      iter.remove();
+    }
+    iter = b2.iterator();
+    while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * maxFiles && iter.hasNext()) {
+      iter.next();
+      iter.remove();
+    }
   }
 
   /**
-   * Remove all cache entries.
+   * Close unlocked files until the cache is under its limits. Must be called holding the policy lock; releases it.
+   * The victim is the least recently used element of t1 if t1 is larger than its target size p, otherwise of t2.
    *
-   * @param force if true, remove them even if they are currently locked.
+   * @param warn log a warning if the limits cant be met because too many files are locked
    */
-  public synchronized void clearCache(boolean force) {
-    List<CacheElement.CacheFile> deleteList = new ArrayList<>(2 * cache.size());
-
-    if (force) {
-      cache.clear(); // deletes everything from the cache
-      deleteList.addAll(files.values());  // add everything to the delete list
-      files.clear();
-      // counter.set(0);
-
-    } else {
-
-      // add unlocked files to the delete list, remove from files hash
-      Iterator<CacheElement.CacheFile> iter = files.values().iterator();
-      while (iter.hasNext()) {
-        CacheElement.CacheFile file = iter.next();
-        if (file.isLocked.compareAndSet(false, true)) {
-          file.remove(); // remove from the containing CacheElement
-          deleteList.add(file);
-          iter.remove();
+  private void evict(boolean warn) {
+    List<CacheElement.CacheFile> deleteList = new ArrayList<>();
+    try {
+      drainAccessed();
+      int needFiles = nfiles.get() - maxFiles;
+      long needBytes = (maxBytes > 0) ? nbytes.get() - maxBytes : 0;
+
+      while (needFiles > 0 || needBytes > 0) {
+        boolean fromT1 = !t1.isEmpty() && (t1.size() > p || t2.isEmpty());
+        CacheElement.CacheFile victim = findVictim(fromT1 ? t1 : t2, fromT1 ? b1 : b2);
+        if (victim == null)
+          victim = findVictim(fromT1 ? t2 : t1, fromT1 ? b2 : b1);
+        if (victim == null) {
+          if (warn) cacheLog.warn("FileCacheARC " + name + " couldnt remove enough to keep under the maximum= " + maxFiles +
+                  " files, " + maxBytes + " bytes due to locked files; currently at = " + nfiles.get() + " files, " + nbytes.get() + " bytes");
+          break;
+        }
+        if (detach(victim)) { // else it was ejected while we were looking
+          deleteList.add(victim);
+          needFiles--;
+          needBytes -= victim.bytes;
         }
       }
+      trimGhosts();
 
-      // remove empty cache elements
-      for (CacheElement elem : cache.values()) {
-        if (elem.list.size() == 0)
-          cache.remove(elem.hashKey);
-      }
+    } finally {
+      policyLock.unlock();
     }
 
-    // close all files in deleteList
+    // close the files outside the lock
     for (CacheElement.CacheFile file : deleteList) {
-      if (force && file.isLocked.get())
-        cacheLog.warn("FileCacheARC " + name + " force close locked file= " + file);
-      //counter.decrementAndGet();
+      close(file);
+      evictions.incrementAndGet();
+    }
+  }
 
-      if (file.ncfile == null) continue;
+  // lock the oldest unlocked file in the least recently used element that has one, and take it out of its element.
+  // An element left with no files becomes a ghost.
+  @GuardedBy("policyLock")
+  private CacheElement.CacheFile findVictim(LinkedHashMap<Object, CacheElement> list, LinkedHashSet<Object> ghosts) {
+    Iterator<CacheElement> iter = list.values().iterator();
+    while (iter.hasNext()) {
+      CacheElement elem = iter.next();
+      CacheElement.CacheFile victim = null;
+      synchronized (elem) {
+        for (CacheElement.CacheFile file : elem.list) {
+          if (file.isLocked.compareAndSet(false, true)) {
+            victim = file;
+            break;
+          }
+        }
+        if (victim != null) {
+          elem.list.remove(victim);
+          if (elem.list.isEmpty()) elem.removed = true;
+        }
+      }
 
-      try {
-        file.ncfile.setFileCache(null);
-        file.ncfile.close();
-        file.ncfile = null; // help the gc
-      } catch (IOException e) {
-        log.error("FileCacheARC " + name + " close failed on " + file);
+      if (elem.removed) {
+        iter.remove();
+        ghosts.add(elem.hashKey);
+        cache.remove(elem.hashKey, elem);
       }
+      if (victim != null) return victim;
     }
-    if (cacheLog.isDebugEnabled())
-      cacheLog.debug("*FileCacheARC " + name + " clearCache force= " + force + " deleted= " + deleteList.size() + " left=" + files.size());
-    //System.out.println("\n*NetcdfFileCache.clearCache force= " + force + " deleted= " + deleteList.size() + " left=" + counter.get());
+    return null;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////
+  // stats and debugging
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return miss.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return number of files in the cache, locked or not
+   */
+  public int getFileCount() {
+    return nfiles.get();
+  }
+
+  /**
+   * @return estimated memory of the files in the cache, locked or not
+   */
+  public long getBytes() {
+    return nbytes.get();
+  }
+
+  /**
+   * @return total time threads have waited for the policy lock, in msecs
+   */
+  public long getWaitMsecs() {
+    return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
   }
 
   /**
@@ -557,69 +648,92 @@ public class FileCacheARC implements FileCacheIF {
    */
   @Override
   public void showCache(Formatter format) {
-    ArrayList<CacheElement.CacheFile> allFiles = new ArrayList<>(files.size());
-    for (CacheElement elem : cache.values()) {
-      allFiles.addAll(elem.list);
-    }
-    Collections.sort(allFiles); // sort so oldest are on top
-
-    format.format("%nFileCacheARC %s (min=%d softLimit=%d hardLimit=%d scour=%d):%n", name, minElements, softLimit, hardLimit, period);
-    format.format("isLocked  accesses lastAccess                   location %n");
-    for (CacheElement.CacheFile file : allFiles) {
+    format.format("%nFileCacheARC %s (maxFiles=%d maxBytes=%d):%n", name, maxFiles, maxBytes);
+    format.format(" isLocked  accesses lastAccess                   location %n");
+    for (CacheElement.CacheFile file : getAllFiles()) {
       String loc = file.ncfile != null ? file.ncfile.getLocation() : "null";
-      CalendarDate cd = CalendarDate.of(file.getLastAccessed());
-      format.format("%8s %9d %s %s %n", file.isLocked, file.getCountAccessed(), CalendarDateFormatter.toTimeUnits(cd), loc);
+      format.format("%8s %9d %s == %s %n", file.isLocked, file.countAccessed.get(), CalendarDateFormatter.toDateTimeStringISO(file.lastAccessed), loc);
     }
     showStats(format);
   }
 
   @Override
   public List<String> showCache() {
-    List<CacheElement.CacheFile> allFiles = new ArrayList<>(files.size());
-    for (CacheElement elem : cache.values()) {
-      allFiles.addAll(elem.list);
-    }
-    Collections.sort(allFiles); // sort so oldest are on top
-
+    List<CacheElement.CacheFile> allFiles = getAllFiles();
     List<String> result = new ArrayList<>(allFiles.size());
-    for (CacheElement.CacheFile file : allFiles) {
+    for (CacheElement.CacheFile file : allFiles)
       result.add(file.toString());
-    }
-
     return result;
   }
 
+  private List<CacheElement.CacheFile> getAllFiles() {
+    List<CacheElement.CacheFile> allFiles = new ArrayList<>(files.values());
+    allFiles.sort(null); // sort so oldest are on top
+    return allFiles;
+  }
+
   /**
    * Add stat report (hits, misses, etc) to formatter.
    *
    * @param format add to this
    */
+  @Override
   public void showStats(Formatter format) {
-    format.format("  hits= %d miss= %d nfiles= %d elems= %d shadow=%d%n", hits.get(), miss.get(), files.size(), cache.values().size(), shadowCache.size());
+    int t1size, t2size, b1size, b2size, target;
+    lockPolicy();
+    try {
+      drainAccessed();
+      t1size = t1.size();
+      t2size = t2.size();
+      b1size = b1.size();
+      b2size = b2.size();
+      target = p;
+    } finally {
+      policyLock.unlock();
+    }
+
+    long h = hits.get(), m = miss.get();
+    float ratio = (h + m == 0) ? 0 : ((float) h) / (h + m);
+    long nmiss = Math.max(m, 1);
+    format.format("  hits= %d miss= %d hit ratio= %f evictions= %d nfiles= %d elems= %d bytes= %d%n",
+            h, m, ratio, evictions.get(), nfiles.get(), cache.size(), nbytes.get());
+    format.format("  T1= %d T2= %d B1= %d B2= %d p= %d%n", t1size, t2size, b1size, b2size, target);
+    format.format("  avg open= %.3f msecs; waited for lock %d times, total= %d msecs%n",
+            openNanos.get() / 1.0e6 / nmiss, waits.get(), getWaitMsecs());
   }
 
-  ///////////////////////////////////////////////////////////////
-
+  @Override
   public void showTracking(Formatter format) {
     if (track == null) return;
-    List<Tracker> all = new ArrayList<>(track.size());
-    for (Tracker val : track.values()) all.add(val);
-    Collections.sort(all);       // LOOK what should we sort by ??
-    int count = 0;
+    List<Tracker> all = new ArrayList<>(track.values());
+    Collections.sort(all);
+    int seq = 0;
     int countAll = 0;
-    format.format("%nTrack of all files in FileCacheARC%n");
-    format.format("   seq  accum   hit   miss  file%n");
+    int countHits = 0;
+    int countMiss = 0;
+    format.format("%nTracking All files in cache %s%n", name);
+    format.format("    #    accum       hit    miss  file%n");
     for (Tracker t : all) {
-      count++;
+      seq++;
       countAll += t.hit + t.miss;
-      format.format("%6d  %6d : %5d %5d %s%n", count, countAll, t.hit, t.miss, t.key);
+      countHits += t.hit;
+      countMiss += t.miss;
+      format.format("%6d  %7d : %6d %6d %s%n", seq, countAll, t.hit, t.miss, t.key);
     }
-    format.format("%n");
+    float r = (countAll == 0) ? 0 : ((float) countHits) / countAll;
+    format.format("  total=%7d : %6d %6d hit ratio=%f%n", countAll, countHits, countMiss, r);
   }
 
   @Override
   public void resetTracking() {
     track = new ConcurrentHashMap<>(5000);
+    trackAll = true;
+    hits.set(0);
+    miss.set(0);
+    evictions.set(0);
+    openNanos.set(0);
+    waits.set(0);
+    waitNanos.set(0);
   }
 
   private static class Tracker implements Comparable<Tracker> {
@@ -635,7 +749,7 @@ public class FileCacheARC implements FileCacheIF {
       if (this == o) return true;
       if (o == null || getClass() != o.getClass()) return false;
       Tracker tracker = (Tracker) o;
-      return key.equals(tracker.key);   // maybe == ?? LOOK
+      return key.equals(tracker.key);
     }
 
     @Override
@@ -648,4 +762,59 @@ public class FileCacheARC implements FileCacheIF {
       return Misc.compare(hit + miss, o.hit + o.miss);
     }
   }
+
+  // not private for testing
+  class CacheElement {
+    final List<CacheFile> list = new CopyOnWriteArrayList<>(); // may have multiple copies of the same file opened
+    final Object hashKey;
+    volatile boolean removed; // no longer in the cache; never reused. Set while synchronized on this
+
+    CacheElement(Object hashKey) {
+      this.hashKey = hashKey;
+    }
+
+    CacheFile addFile(FileCacheable ncfile) {
+      CacheFile file = new CacheFile(ncfile, this);
+      list.add(file);
+      files.put(ncfile, file);
+      return file;
+    }
+
+    public String toString() {
+      return hashKey + " count=" + list.size();
+    }
+
+    class CacheFile implements Comparable<CacheFile> {
+      volatile FileCacheable ncfile; // actually final, but we null it out for gc
+      final CacheElement element;
+      final AtomicBoolean isLocked = new AtomicBoolean(true);
+      final AtomicInteger countAccessed = new AtomicInteger();
+      final long lastModified;
+      final long bytes;
+      volatile long lastAccessed;
+
+      private CacheFile(FileCacheable ncfile, CacheElement element) {
+        this.ncfile = ncfile;
+        this.element = element;
+        this.lastModified = ncfile.getLastModified();
+        this.lastAccessed = System.currentTimeMillis();
+        this.bytes = sizeOf.applyAsLong(ncfile);
+
+        ncfile.setFileCache(FileCacheARC.this);
+
+        if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCacheARC " + name + " add to cache " + hashKey);
+      }
+
+      public String toString() {
+        FileCacheable nc = ncfile;
+        String loc = nc == null ? "ncfile is null" : nc.getLocation();
+        return isLocked + " " + countAccessed + " " + CalendarDateFormatter.toDateTimeStringISO(lastAccessed) + "   " + loc;
+      }
+
+      public int compareTo(CacheFile o) {
+        return Long.compare(lastAccessed, o.lastAccessed);
+      }
+    }
+  }
+
 }
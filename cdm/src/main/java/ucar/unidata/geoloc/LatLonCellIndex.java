@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.geoloc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ucar.ma2.ArrayDouble;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Spatial index of the cells of a curvilinear grid, given the lat(row, col) and lon(row, col) of the cell edges.
+ * Cell (row, col) has corners (row, col), (row, col+1), (row+1, col+1), (row+1, col) of the edge arrays.
+ * <p>
+ * The bounding box of the grid is divided into buckets, about one per cell, and each cell is registered in the
+ * buckets its own bounding box overlaps. A point is then looked up in only the few cells of its bucket.
+ * Cells with a missing (NaN) corner are not indexed.
+ * <p>
+ * Longitudes are used as given: the caller must put the point in the same longitude range as the edges.
+ * Immutable, so thread-safe once made.
+ */
+public class LatLonCellIndex {
+  static private final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(LatLonCellIndex.class);
+
+  // reuse the index of the same coordinate axes, eg across requests on a cached dataset; keys are compared by identity
+  static private final Cache<Object, LatLonCellIndex> cache = CacheBuilder.newBuilder()
+          .weakKeys()
+          .maximumSize(100)
+          .build();
+
+  /**
+   * Get the index for this key from the cache, or make it.
+   *
+   * @param key     the object that owns the coordinates, usually the latitude axis; compared by identity
+   * @param factory makes the index if not in the cache
+   * @return the index
+   */
+  public static LatLonCellIndex factory(Object key, Supplier<LatLonCellIndex> factory) {
+    try {
+      return cache.get(key, factory::get);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+
+  private final int nrows, ncols;      // number of cells
+  private final double[] lat, lon;    // edges, (nrows+1) * (ncols+1)
+  private final double latMin, lonMin, latMax, lonMax;
+  private final int nbLat, nbLon;      // number of buckets
+  private final double bucketLat, bucketLon; // size of a bucket
+  private final int[] bucketStart;     // cells of bucket b are cells[bucketStart[b] .. bucketStart[b+1])
+  private final int[] cells;           // row * ncols + col
+
+  /**
+   * Constructor.
+   *
+   * @param latEdge lat(row, col) of the edges, shape (nrows+1, ncols+1)
+   * @param lonEdge lon(row, col) of the edges, same shape
+   */
+  public LatLonCellIndex(ArrayDouble.D2 latEdge, ArrayDouble.D2 lonEdge) {
+    int[] shape = latEdge.getShape();
+    this.nrows = shape[0] - 1;
+    this.ncols = shape[1] - 1;
+    this.lat = (double[]) latEdge.get1DJavaArray(double.class);
+    this.lon = (double[]) lonEdge.get1DJavaArray(double.class);
+
+    // bounding box of each cell
+    int n = nrows * ncols;
+    double[] cellMinLat = new double[n], cellMaxLat = new double[n];
+    double[] cellMinLon = new double[n], cellMaxLon = new double[n];
+    double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+    double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+    int nvalid = 0;
+    for (int row = 0; row < nrows; row++) {
+      for (int col = 0; col < ncols; col++) {
+        int cell = row * ncols + col;
+        double lat1 = lat(row, col), lat2 = lat(row, col + 1), lat3 = lat(row + 1, col + 1), lat4 = lat(row + 1, col);
+        double lon1 = lon(row, col), lon2 = lon(row, col + 1), lon3 = lon(row + 1, col + 1), lon4 = lon(row + 1, col);
+        cellMinLat[cell] = Math.min(Math.min(lat1, lat2), Math.min(lat3, lat4));
+        cellMaxLat[cell] = Math.max(Math.max(lat1, lat2), Math.max(lat3, lat4));
+        cellMinLon[cell] = Math.min(Math.min(lon1, lon2), Math.min(lon3, lon4));
+        cellMaxLon[cell] = Math.max(Math.max(lon1, lon2), Math.max(lon3, lon4));
+        if (Double.isNaN(cellMinLat[cell]) || Double.isNaN(cellMinLon[cell])) { // Math.min propagates NaN
+          cellMinLat[cell] = Double.NaN;
+          continue;
+        }
+        minLat = Math.min(minLat, cellMinLat[cell]);
+        maxLat = Math.max(maxLat, cellMaxLat[cell]);
+        minLon = Math.min(minLon, cellMinLon[cell]);
+        maxLon = Math.max(maxLon, cellMaxLon[cell]);
+        nvalid++;
+      }
+    }
+    if (nvalid == 0) { // nothing to index
+      minLat = maxLat = minLon = maxLon = 0;
+    }
+    this.latMin = minLat;
+    this.latMax = maxLat;
+    this.lonMin = minLon;
+    this.lonMax = maxLon;
+
+    // about one bucket per cell, in the proportion of the grid
+    double aspect = (nrows == 0) ? 1 : (double) ncols / nrows;
+    int nb = Math.max(1, nvalid);
+    this.nbLat = Math.max(1, (int) Math.round(Math.sqrt(nb / aspect)));
+    this.nbLon = Math.max(1, nb / nbLat);
+    this.bucketLat = Math.max((latMax - latMin) / nbLat, Double.MIN_NORMAL);
+    this.bucketLon = Math.max((lonMax - lonMin) / nbLon, Double.MIN_NORMAL);
+
+    // count the cells in each bucket, then fill them in
+    int nbuckets = nbLat * nbLon;
+    this.bucketStart = new int[nbuckets + 1];
+    for (int cell = 0; cell < n; cell++) {
+      if (Double.isNaN(cellMinLat[cell])) continue;
+      for (int bi = bucketLat(cellMinLat[cell]); bi <= bucketLat(cellMaxLat[cell]); bi++)
+        for (int bj = bucketLon(cellMinLon[cell]); bj <= bucketLon(cellMaxLon[cell]); bj++)
+          bucketStart[bi * nbLon + bj + 1]++;
+    }
+    for (int b = 0; b < nbuckets; b++)
+      bucketStart[b + 1] += bucketStart[b];
+
+    this.cells = new int[bucketStart[nbuckets]];
+    int[] next = Arrays.copyOf(bucketStart, nbuckets);
+    for (int cell = 0; cell < n; cell++) {
+      if (Double.isNaN(cellMinLat[cell])) continue;
+      for (int bi = bucketLat(cellMinLat[cell]); bi <= bucketLat(cellMaxLat[cell]); bi++)
+        for (int bj = bucketLon(cellMinLon[cell]); bj <= bucketLon(cellMaxLon[cell]); bj++)
+          cells[next[bi * nbLon + bj]++] = cell;
+    }
+
+    if (log.isDebugEnabled())
+      log.debug("LatLonCellIndex {} x {} cells, {} x {} buckets, {} entries", nrows, ncols, nbLat, nbLon, cells.length);
+  }
+
+  private double lat(int row, int col) {
+    return lat[row * (ncols + 1) + col];
+  }
+
+  private double lon(int row, int col) {
+    return lon[row * (ncols + 1) + col];
+  }
+
+  private int bucketLat(double v) {
+    return Math.max(0, Math.min(nbLat - 1, (int) ((v - latMin) / bucketLat)));
+  }
+
+  private int bucketLon(double v) {
+    return Math.max(0, Math.min(nbLon - 1, (int) ((v - lonMin) / bucketLon)));
+  }
+
+  /**
+   * Find the cell that contains the point.
+   *
+   * @param wantLat   lat of point
+   * @param wantLon   lon of point
+   * @param rectIndex return (row, col) of the cell, if found
+   * @return false if no cell contains the point
+   */
+  public boolean findContaining(double wantLat, double wantLon, int[] rectIndex) {
+    if (!(wantLat >= latMin && wantLat <= latMax && wantLon >= lonMin && wantLon <= lonMax)) // also false for NaN
+      return false;
+
+    int b = bucketLat(wantLat) * nbLon + bucketLon(wantLon);
+    for (int i = bucketStart[b]; i < bucketStart[b + 1]; i++) {
+      int cell = cells[i];
+      int row = cell / ncols;
+      int col = cell % ncols;
+      if (contains(wantLat, wantLon, row, col)) {
+        rectIndex[0] = row;
+        rectIndex[1] = col;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the cell whose center (the mean of its corners) is nearest to the point, in degrees of lat and lon.
+   *
+   * @param wantLat   lat of point
+   * @param wantLon   lon of point
+   * @param rectIndex return (row, col) of the cell, if found
+   * @return false if there are no valid cells
+   */
+  public boolean findNearest(double wantLat, double wantLon, int[] rectIndex) {
+    if (cells.length == 0 || Double.isNaN(wantLat) || Double.isNaN(wantLon))
+      return false;
+
+    int bi = bucketLat(wantLat);
+    int bj = bucketLon(wantLon);
+    int maxRing = Math.max(Math.max(bi, nbLat - 1 - bi), Math.max(bj, nbLon - 1 - bj));
+    double best = Double.MAX_VALUE;
+    int bestCell = -1;
+
+    for (int ring = 0; ring <= maxRing; ring++) {
+      int i0 = bi - ring, i1 = bi + ring, j0 = bj - ring, j1 = bj + ring;
+      for (int i = Math.max(i0, 0); i <= Math.min(i1, nbLat - 1); i++) {
+        for (int j = Math.max(j0, 0); j <= Math.min(j1, nbLon - 1); j++) {
+          if (i != i0 && i != i1 && j != j0 && j != j1) continue; // only the ring itself
+          int b = i * nbLon + j;
+          for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+            int cell = cells[k];
+            double d = distance2(wantLat, wantLon, cell / ncols, cell % ncols);
+            if (d < best || (d == best && cell < bestCell)) {
+              best = d;
+              bestCell = cell;
+            }
+          }
+        }
+      }
+
+      // all the buckets not yet searched are at least this far away
+      if (bestCell >= 0) {
+        double limit = Double.MAX_VALUE;
+        if (i0 > 0) limit = Math.min(limit, wantLat - (latMin + i0 * bucketLat));
+        if (i1 < nbLat - 1) limit = Math.min(limit, (latMin + (i1 + 1) * bucketLat) - wantLat);
+        if (j0 > 0) limit = Math.min(limit, wantLon - (lonMin + j0 * bucketLon));
+        if (j1 < nbLon - 1) limit = Math.min(limit, (lonMin + (j1 + 1) * bucketLon) - wantLon);
+        if (limit > 0 && limit * limit >= best) break;
+      }
+    }
+
+    rectIndex[0] = bestCell / ncols;
+    rectIndex[1] = bestCell % ncols;
+    return true;
+  }
+
+  private double distance2(double wantLat, double wantLon, int row, int col) {
+    double clat = (lat(row, col) + lat(row, col + 1) + lat(row + 1, col + 1) + lat(row + 1, col)) / 4;
+    double clon = (lon(row, col) + lon(row, col + 1) + lon(row + 1, col + 1) + lon(row + 1, col)) / 4;
+    double dlat = wantLat - clat;
+    double dlon = wantLon - clon;
+    return dlat * dlat + dlon * dlon;
+  }
+
+  // same test as GridCoordinate2D: the point is inside if the four triangles it makes with the sides all have the same orientation
+  private boolean contains(double wantLat, double wantLon, int row, int col) {
+    double x1 = lon(row, col);
+    double y1 = lat(row, col);
+    double x2 = lon(row, col + 1);
+    double y2 = lat(row, col + 1);
+    double x3 = lon(row + 1, col + 1);
+    double y3 = lat(row + 1, col + 1);
+    double x4 = lon(row + 1, col);
+    double y4 = lat(row + 1, col);
+
+    boolean sign = detIsPositive(x1, y1, x2, y2, wantLon, wantLat);
+    if (sign != detIsPositive(x2, y2, x3, y3, wantLon, wantLat)) return false;
+    if (sign != detIsPositive(x3, y3, x4, y4, wantLon, wantLat)) return false;
+    if (sign != detIsPositive(x4, y4, x1, y1, wantLon, wantLat)) return false;
+    return true;
+  }
+
+  private static boolean detIsPositive(double x0, double y0, double x1, double y1, double x2, double y2) {
+    double det = (x1 * y2 - y1 * x2 - x0 * y2 + y0 * x2 + x0 * y1 - y0 * x1);
+    return det > 0;
+  }
+}
@@ -56,6 +56,14 @@ public class InMemoryRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     return len;
   }
 
+  @Override
+  protected int read_(long pos, ByteBuffer dst) {
+    if (pos >= buffer.length) return -1;
+    int len = (int) Math.min(dst.remaining(), buffer.length - pos);
+    dst.put(buffer, (int) pos, len);
+    return len;
+  }
+
   @Override
   public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
     return dest.write(ByteBuffer.wrap(buffer, (int) offset, (int) nbytes));
@@ -5,93 +5,325 @@
 package ucar.unidata.io;
 
 import java.io.*;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Use NIO MappedByteBuffer to implement a RandomAccessFile.
- * Limited to 2G size. Not currently used - NOT UP TO DATE DO NOT USE
+ * Use NIO MappedByteBuffers to implement a read-only RandomAccessFile.
+ * The file is mapped in segments (1 GB by default), so there is no limit on the file size.
+ * Segments are mapped when first used, and each overlaps the next by 8 bytes, so that any primitive value
+ * lies entirely in one segment.
+ * <p>
+ * Reads come straight from the mapped memory, with no intermediate buffer. The bulk array reads
+ * (eg readInt(int[], int, int)) copy directly from the mapping into the array.
+ * The mapped segments are only accessed with absolute gets or private duplicates, so the positional reads
+ * (eg readInt(long pos, int[] pa, int start, int n)) may be called by many threads at once. If two threads map the
+ * same segment at the same time, the first mapping is kept and the other is simply discarded.
+ * <p>
+ * Mapped memory is released when the object is garbage collected, not when the file is closed.
+ *
  * @author john
+ * @see RandomAccessFile#setMemoryMapDefault(boolean)
  */
 public class MMapRandomAccessFile extends RandomAccessFile {
+  static private final int OVERLAP = 8; // largest primitive
+  static private final int defaultSegmentSize = 1 << 30;
 
-  private MappedByteBuffer source;
+  private final long segmentSize;
+  private final long fileLength;
+  private volatile AtomicReferenceArray<MappedByteBuffer> segments; // null when closed
+
+  /**
+   * Open an existing file for reading.
+   *
+   * @param location the file location
+   * @throws java.io.IOException on error
+   */
+  public MMapRandomAccessFile(String location) throws IOException {
+    this(location, defaultSegmentSize);
+  }
 
   /**
-    * Constructor for in-memory "files"
-    * @param location used as a name
-    * @param mode the open mode
-    * @throws java.io.IOException on error
-    */
+   * Open an existing file for reading.
+   *
+   * @param location the file location
+   * @param mode must be "r"
+   * @throws java.io.IOException on error
+   */
   public MMapRandomAccessFile(String location, String mode) throws IOException {
-    super(location, mode, 1);
-    FileChannel channel = file.getChannel();
-    source = channel.map( readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, (long) 0, channel.size());
-    //channel.close();
+    this(location, defaultSegmentSize);
+    if (!mode.equals("r"))
+      throw new IllegalArgumentException("MMapRandomAccessFile is read only");
+  }
+
+  // for testing with small segments
+  MMapRandomAccessFile(String location, int segmentSize) throws IOException {
+    super(location, "r", 1);
+    this.segmentSize = segmentSize;
+    this.fileLength = file.length();
+    this.segments = new AtomicReferenceArray<>((int) ((fileLength + segmentSize - 1) / segmentSize));
 
     bufferStart = 0;
-	  dataSize = (int) channel.size();
-	  dataEnd = channel.size();
+    dataSize = 0;
+    dataEnd = 0;
     filePosition = 0;
-    buffer = null;
-    endOfFile = false;
+    endOfFile = (fileLength == 0);
   }
 
-
-  public void flush() throws IOException {
-    if (bufferModified) {
-      source.force();
-      bufferModified = false;
+  private MappedByteBuffer getSegment(int segno) throws IOException {
+    AtomicReferenceArray<MappedByteBuffer> segments = this.segments; // close() may set it to null at any time
+    if (segments == null)
+      throw new IOException("MMapRandomAccessFile " + location + " is closed");
+    MappedByteBuffer segment = segments.get(segno);
+    if (segment == null) {
+      long start = segno * segmentSize;
+      long size = Math.min(segmentSize + OVERLAP, fileLength - start);
+      segment = getFileChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+      if (!segments.compareAndSet(segno, null, segment))
+        segment = segments.get(segno);
     }
+    return segment;
   }
 
-  public long length( ) {
-    return dataEnd;
+  // a view of the mapped data starting at pos, with the current byte order.
+  // The view has at least segmentSize bytes, or up to the end of the file.
+  private ByteBuffer view(long pos) throws IOException {
+    ByteBuffer bb = getSegment((int) (pos / segmentSize)).duplicate();
+    bb.position((int) (pos % segmentSize));
+    bb.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    return bb;
   }
 
-  public void seek( long pos ) {
+  // the number of elements of the given size that can be read from a view starting at pos
+  private int elemsInView(long pos, int n, int elemSize) throws IOException {
+    if (pos < 0 || pos + (long) n * elemSize > fileLength)
+      throw new EOFException("Reading " + location + " at " + pos + " file length = " + fileLength);
+    long inSegment = segmentSize - (pos % segmentSize); // any element that starts in this segment fits in it
+    return (int) Math.min(n, (inSegment + elemSize - 1) / elemSize);
+  }
+
+  @Override
+  public long length() {
+    return fileLength;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos < 0)
+      throw new java.io.IOException("Negative seek offset");
     filePosition = pos;
-    if( filePosition < dataEnd )
-      source.position((int) filePosition);
-    else
-      endOfFile = true;
+    endOfFile = (pos >= fileLength);
+  }
+
+  @Override
+  public void setBufferSize(int bufferSize) {
+    // no buffer
   }
 
-   public void unread( ) {
-     seek( filePosition-1);
-   }
+  @Override
+  public void flush() {
+    // read only
+  }
 
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    if (file == null) // really closed, not just released to the cache
+      segments = null;
+  }
+
+  @Override
   public int read() throws IOException {
-    // If the file position is within the data, return the byte...
-    if( filePosition < dataEnd ) {
-      filePosition++;
-      return source.get() & 0xff;
+    if (filePosition >= fileLength) {
+      endOfFile = true;
+      return -1;
+    }
+    int b = getSegment((int) (filePosition / segmentSize)).get((int) (filePosition % segmentSize)) & 0xff;
+    filePosition++;
+    return b;
+  }
+
+  @Override
+  public int readBytes(byte b[], int off, int len) throws IOException {
+    if (filePosition >= fileLength) {
+      endOfFile = true;
+      return -1;
+    }
+    int n = read_(filePosition, b, off, (int) Math.min(len, fileLength - filePosition));
+    filePosition += n;
+    return n;
+  }
+
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    len = (int) Math.min(len, fileLength - pos);
+    int done = 0;
+    while (done < len) {
+      ByteBuffer bb = view(pos + done);
+      int n = Math.min(len - done, bb.remaining());
+      bb.get(b, offset + done, n);
+      done += n;
+    }
+    return Math.max(done, 0);
+  }
+
+  @Override
+  protected int read_(long pos, ByteBuffer dst) throws IOException {
+    if (pos >= fileLength) return -1;
+    ByteBuffer bb = view(pos);
+    int n = (int) Math.min(dst.remaining(), Math.min(bb.remaining(), fileLength - pos));
+    bb.limit(bb.position() + n);
+    dst.put(bb);
+    return n;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    throw new IOException("MMapRandomAccessFile is read only");
+  }
+
+  @Override
+  public void writeBytes(byte b[], int off, int len) throws IOException {
+    throw new IOException("MMapRandomAccessFile is read only");
+  }
+
+  //////////////////////////////////////////////////////////////////////
+  // read directly from the mapped memory
+
+  @Override
+  public short readShort() throws IOException {
+    elemsInView(filePosition, 1, 2);
+    short result = view(filePosition).getShort();
+    filePosition += 2;
+    return result;
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    elemsInView(filePosition, 1, 4);
+    int result = view(filePosition).getInt();
+    filePosition += 4;
+    return result;
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    elemsInView(filePosition, 1, 8);
+    long result = view(filePosition).getLong();
+    filePosition += 8;
+    return result;
+  }
+
+  @Override
+  public void readShort(short[] pa, int start, int n) throws IOException {
+    readShort(filePosition, pa, start, n);
+    filePosition += 2L * n;
+  }
+
+  @Override
+  public void readInt(int[] pa, int start, int n) throws IOException {
+    readInt(filePosition, pa, start, n);
+    filePosition += 4L * n;
+  }
+
+  @Override
+  public void readLong(long[] pa, int start, int n) throws IOException {
+    readLong(filePosition, pa, start, n);
+    filePosition += 8L * n;
+  }
 
-    } else {
-       return -1;
+  @Override
+  public void readFloat(float[] pa, int start, int n) throws IOException {
+    readFloat(filePosition, pa, start, n);
+    filePosition += 4L * n;
+  }
+
+  @Override
+  public void readDouble(double[] pa, int start, int n) throws IOException {
+    readDouble(filePosition, pa, start, n);
+    filePosition += 8L * n;
+  }
+
+  @Override
+  public void readShort(long pos, short[] pa, int start, int n) throws IOException {
+    while (n > 0) {
+      int count = elemsInView(pos, n, 2);
+      view(pos).asShortBuffer().get(pa, start, count);
+      pos += 2L * count;
+      start += count;
+      n -= count;
     }
   }
 
-   public int readBytes( byte dst[], int offset, int length ) throws IOException {
-     if( endOfFile ) return -1;
+  @Override
+  public void readInt(long pos, int[] pa, int start, int n) throws IOException {
+    while (n > 0) {
+      int count = elemsInView(pos, n, 4);
+      view(pos).asIntBuffer().get(pa, start, count);
+      pos += 4L * count;
+      start += count;
+      n -= count;
+    }
+  }
 
-     length = (int) Math.min( length, dataEnd - filePosition);
-     if (length > 0) {
-       source.get(dst, offset, length);
-       filePosition += length;
-     }
-     return length;
-   }
+  @Override
+  public void readLong(long pos, long[] pa, int start, int n) throws IOException {
+    while (n > 0) {
+      int count = elemsInView(pos, n, 8);
+      view(pos).asLongBuffer().get(pa, start, count);
+      pos += 8L * count;
+      start += count;
+      n -= count;
+    }
+  }
 
-  public void write( int b ) throws IOException {
-     source.put( (byte)b);
-     filePosition++;
-     bufferModified = true;
+  @Override
+  public void readFloat(long pos, float[] pa, int start, int n) throws IOException {
+    while (n > 0) {
+      int count = elemsInView(pos, n, 4);
+      view(pos).asFloatBuffer().get(pa, start, count);
+      pos += 4L * count;
+      start += count;
+      n -= count;
+    }
+  }
+
+  @Override
+  public void readDouble(long pos, double[] pa, int start, int n) throws IOException {
+    while (n > 0) {
+      int count = elemsInView(pos, n, 8);
+      view(pos).asDoubleBuffer().get(pa, start, count);
+      pos += 8L * count;
+      start += count;
+      n -= count;
+    }
   }
 
-  public void writeBytes( byte dst[], int offset, int length ) throws IOException {
-    source.put(dst, offset, length);
-    filePosition += length;
+  @Override
+  public boolean searchForward(KMPMatch match, int maxBytes) throws IOException {
+    long start = getFilePointer();
+    long last = (maxBytes < 0) ? length() : Math.min(length(), start + maxBytes);
+    int matchLen = match.getMatchLength();
+
+    byte[] window = new byte[64 * 1024];
+    long pos = start;
+    while (last - pos >= matchLen) {
+      int n = read_(pos, window, 0, (int) Math.min(window.length, last - pos));
+      int found = match.indexOf(window, 0, n);
+      if (found >= 0) {
+        seek(pos + found);
+        return true;
+      }
+      if (pos + n >= last) break;
+      pos += n - matchLen + 1; // a match may straddle the windows
+    }
+
+    // failure
+    seek(last);
+    return false;
   }
 
-}
\ No newline at end of file
+}
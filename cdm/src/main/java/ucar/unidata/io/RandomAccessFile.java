@@ -16,6 +16,7 @@ import ucar.unidata.util.StringUtil2;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
@@ -40,6 +41,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * Freeware Java Classes</a>.
  * <p/>
  * Must be thread confined - that is, can only be used by a single thread at a time..
+ * The exception is the positional read methods, eg readFully(long pos, byte[] b, int off, int len), which do not use
+ * the buffer or the file position, and may be called by many threads at once on a read-only file.
+ * They read from the file's FileChannel, which is closed (and the file with it) if a reading thread is interrupted.
  *
  * @author Alex McManus
  * @author Russ Rew
@@ -169,7 +173,33 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     }
   };
 
+  static private final ucar.nc2.util.cache.FileFactory mmapFactory = new FileFactory() {
+    public FileCacheable open(DatasetUrl durl, int buffer_size, CancelTask cancelTask, Object iospMessage) throws IOException {
+      String location = StringUtil2.replace(durl.trueurl, "\\", "/"); // canonicalize the name
+      RandomAccessFile result = new MMapRandomAccessFile(location);
+      result.cacheState = 1;  // in use
+      return result;
+    }
+  };
+  static private final String MMAP_KEY = "#mmap"; // memory mapped files are cached separately
+
   static private FileCacheIF cache = null;
+  static private boolean memoryMapDefault = false;
+
+  /**
+   * Set whether acquire() opens files as a MMapRandomAccessFile, which reads directly from memory mapped segments
+   * instead of through a read buffer. Only use this for files that do not change while they are open.
+   * Default is false.
+   *
+   * @param b use memory mapping for all files opened with acquire()
+   */
+  static public void setMemoryMapDefault(boolean b) {
+    memoryMapDefault = b;
+  }
+
+  static public boolean getMemoryMapDefault() {
+    return memoryMapDefault;
+  }
 
   static public synchronized void enableDefaultGlobalFileCache() {
     if (cache != null) cache.disable();
@@ -186,6 +216,8 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   }
 
   static public RandomAccessFile acquire(String location) throws IOException {
+    if (memoryMapDefault)
+      return acquireMemoryMapped(location);
     if (cache == null)
       return new RandomAccessFile(location, "r");
     else
@@ -193,14 +225,33 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   }
 
   static public RandomAccessFile acquire(String location, int buffer_size) throws IOException {
+    if (memoryMapDefault)
+      return acquireMemoryMapped(location);
     if (cache == null)
       return new RandomAccessFile(location, "r", buffer_size);
     else
       return (RandomAccessFile) cache.acquire(factory, location, new DatasetUrl(null, location), buffer_size, null, null);
   }
 
+  /**
+   * Acquire a read-only, memory mapped file, regardless of getMemoryMapDefault().
+   *
+   * @param location location of the file
+   * @return a MMapRandomAccessFile, from the global file cache if there is one
+   * @throws IOException on open error
+   */
+  static public RandomAccessFile acquireMemoryMapped(String location) throws IOException {
+    if (cache == null)
+      return new MMapRandomAccessFile(location);
+    else
+      return (RandomAccessFile) cache.acquire(mmapFactory, location + MMAP_KEY, new DatasetUrl(null, location), -1, null, null);
+  }
+
   static public void eject(String location) {
-    if (cache != null) cache.eject(location);
+    if (cache != null) {
+      cache.eject(location);
+      cache.eject(location + MMAP_KEY);
+    }
   }
 
   static public void shutdown() {
@@ -219,7 +270,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * The underlying java.io.RandomAccessFile.
    */
   protected java.io.RandomAccessFile file;
-  protected java.nio.channels.FileChannel fileChannel;
+  protected volatile java.nio.channels.FileChannel fileChannel; // opened when first needed, see getFileChannel()
 
   /**
    * The offset in bytes from the file start, of the next read or
@@ -705,9 +756,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @throws IOException if an I/O error occurs.
    */
   public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
-
-    if (fileChannel == null)
-      fileChannel = file.getChannel();
+    java.nio.channels.FileChannel fileChannel = getFileChannel();
 
     long need = nbytes;
     while (need > 0) {
@@ -865,6 +914,174 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     filePosition--;
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // Positional reads. These do not use the buffer or change the file position, and are thread safe for read-only files.
+  // Multibyte values use the current byte order, so dont change it while other threads are reading.
+
+  /**
+   * Get the FileChannel of the underlying file, opening it if needed. It is shared by all threads.
+   * Note that a thread that is interrupted while it is using the channel closes it, and so the file.
+   *
+   * @return the FileChannel
+   */
+  protected java.nio.channels.FileChannel getFileChannel() {
+    java.nio.channels.FileChannel result = fileChannel;
+    if (result == null) {
+      result = file.getChannel(); // always the same object, so it doesnt matter if two threads get it
+      fileChannel = result;
+    }
+    return result;
+  }
+
+  /**
+   * Read directly from the file at the given position, without going through the buffer or changing the
+   * file position. This is the positional equivalent of read_(long pos, byte[] b, int offset, int len), and must be
+   * safe to call from multiple threads. Subclasses that are not backed by a file should override.
+   *
+   * @param pos start here in the file
+   * @param dst read up to dst.remaining() bytes into this buffer
+   * @return actual number of bytes read, or -1 if pos is at the end of the file
+   * @throws IOException on io error
+   */
+  protected int read_(long pos, ByteBuffer dst) throws IOException {
+    // a writer may have data in the buffer that is not in the file yet. Writers are single threaded.
+    if (bufferModified)
+      flush();
+
+    if (file != null)
+      return getFileChannel().read(dst, pos);
+
+    // subclasses that override read_(long pos, byte[] b, int offset, int len)
+    byte[] b = new byte[dst.remaining()];
+    int n;
+    synchronized (this) {
+      n = read_(pos, b, 0, b.length);
+    }
+    if (n > 0) dst.put(b, 0, n);
+    return (n > 0 || b.length == 0) ? n : -1;
+  }
+
+  /**
+   * Read exactly <code>len</code> bytes starting at the given file position,
+   * without using or changing the file position.
+   *
+   * @param pos start here in the file
+   * @param b   the buffer into which the data is read.
+   * @param off the start offset of the data.
+   * @param len the number of bytes to read.
+   * @throws EOFException if the end of the file is reached before reading all the bytes.
+   * @throws IOException  if an I/O error occurs.
+   */
+  public final void readFully(long pos, byte[] b, int off, int len) throws IOException {
+    readFully(pos, ByteBuffer.wrap(b, off, len));
+  }
+
+  /**
+   * Read exactly <code>dst.remaining()</code> bytes starting at the given file position,
+   * without using or changing the file position.
+   *
+   * @param pos start here in the file
+   * @param dst the buffer into which the data is read.
+   * @throws EOFException if the end of the file is reached before reading all the bytes.
+   * @throws IOException  if an I/O error occurs.
+   */
+  public void readFully(long pos, ByteBuffer dst) throws IOException {
+    while (dst.hasRemaining()) {
+      int count = read_(pos, dst);
+      if (count < 0) {
+        if (extendMode) { // same as read_(long pos, byte[] b, int offset, int len)
+          while (dst.hasRemaining()) dst.put((byte) 0);
+          return;
+        }
+        throw new EOFException("Reading " + location + " at " + pos + " file length = " + length());
+      }
+      pos += count;
+    }
+  }
+
+  /**
+   * Read exactly <code>nbytes</code> bytes starting at the given file position into a new ByteBuffer,
+   * without using or changing the file position.
+   *
+   * @param pos    start here in the file
+   * @param nbytes the number of bytes to read.
+   * @return the bytes, ready to get from, in the current byte order
+   * @throws EOFException if the end of the file is reached before reading all the bytes.
+   * @throws IOException  if an I/O error occurs.
+   */
+  public ByteBuffer readFully(long pos, int nbytes) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(nbytes);
+    readFully(pos, bb);
+    bb.flip();
+    bb.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    return bb;
+  }
+
+  /**
+   * Read an array of shorts at the given file position, without using or changing the file position.
+   *
+   * @param pos   start here in the file
+   * @param pa    read into this array
+   * @param start starting at pa[start]
+   * @param n     read this many elements
+   * @throws IOException on read error
+   */
+  public void readShort(long pos, short[] pa, int start, int n) throws IOException {
+    readFully(pos, Math.multiplyExact(n, 2)).asShortBuffer().get(pa, start, n);
+  }
+
+  /**
+   * Read an array of ints at the given file position, without using or changing the file position.
+   *
+   * @param pos   start here in the file
+   * @param pa    read into this array
+   * @param start starting at pa[start]
+   * @param n     read this many elements
+   * @throws IOException on read error
+   */
+  public void readInt(long pos, int[] pa, int start, int n) throws IOException {
+    readFully(pos, Math.multiplyExact(n, 4)).asIntBuffer().get(pa, start, n);
+  }
+
+  /**
+   * Read an array of longs at the given file position, without using or changing the file position.
+   *
+   * @param pos   start here in the file
+   * @param pa    read into this array
+   * @param start starting at pa[start]
+   * @param n     read this many elements
+   * @throws IOException on read error
+   */
+  public void readLong(long pos, long[] pa, int start, int n) throws IOException {
+    readFully(pos, Math.multiplyExact(n, 8)).asLongBuffer().get(pa, start, n);
+  }
+
+  /**
+   * Read an array of floats at the given file position, without using or changing the file position.
+   *
+   * @param pos   start here in the file
+   * @param pa    read into this array
+   * @param start starting at pa[start]
+   * @param n     read this many elements
+   * @throws IOException on read error
+   */
+  public void readFloat(long pos, float[] pa, int start, int n) throws IOException {
+    readFully(pos, Math.multiplyExact(n, 4)).asFloatBuffer().get(pa, start, n);
+  }
+
+  /**
+   * Read an array of doubles at the given file position, without using or changing the file position.
+   *
+   * @param pos   start here in the file
+   * @param pa    read into this array
+   * @param start starting at pa[start]
+   * @param n     read this many elements
+   * @throws IOException on read error
+   */
+  public void readDouble(long pos, double[] pa, int start, int n) throws IOException {
+    readFully(pos, Math.multiplyExact(n, 8)).asDoubleBuffer().get(pa, start, n);
+  }
+
   //
   // Write primitives.
   //
@@ -1084,7 +1301,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    *                      two bytes.
    * @throws IOException  if an I/O error occurs.
    */
-  public final short readShort() throws IOException {
+  public short readShort() throws IOException {
     int ch1 = this.read();
     int ch2 = this.read();
     if ((ch1 | ch2) < 0) {
@@ -1105,7 +1322,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readShort(short[] pa, int start, int n) throws IOException {
+  public void readShort(short[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = readShort();
     }
@@ -1208,7 +1425,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    *                      four bytes.
    * @throws IOException  if an I/O error occurs.
    */
-  public final int readInt() throws IOException {
+  public int readInt() throws IOException {
     int ch1 = this.read();
     int ch2 = this.read();
     int ch3 = this.read();
@@ -1258,7 +1475,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readInt(int[] pa, int start, int n) throws IOException {
+  public void readInt(int[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = readInt();
     }
@@ -1291,7 +1508,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    *                      eight bytes.
    * @throws IOException  if an I/O error occurs.
    */
-  public final long readLong() throws IOException {
+  public long readLong() throws IOException {
     if (bigEndian) {
       return ((long) (readInt()) << 32) + (readInt() & 0xFFFFFFFFL);  // tested ok
     } else {
@@ -1324,7 +1541,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readLong(long[] pa, int start, int n) throws IOException {
+  public void readLong(long[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = readLong();
     }
@@ -1361,7 +1578,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readFloat(float[] pa, int start, int n) throws IOException {
+  public void readFloat(float[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = Float.intBitsToFloat(readInt());
     }
@@ -1398,7 +1615,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readDouble(double[] pa, int start, int n) throws IOException {
+  public void readDouble(double[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = Double.longBitsToDouble(readLong());
     }
@@ -6,22 +6,42 @@
 package ucar.unidata.io.http;
 
 import org.apache.http.Header;
+import org.apache.http.client.utils.DateUtils;
 import ucar.httpservices.HTTPFactory;
 import ucar.httpservices.HTTPMethod;
 import ucar.httpservices.HTTPSession;
+import ucar.nc2.util.cache.ChunkCache;
 import ucar.unidata.util.Urlencoded;
 
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Gives access to files over HTTP, using "Accept-Ranges" HTTP header to do random access.
  * This version uses a single instance of HttpClient, following performance guidelines at
  * http://jakarta.apache.org/commons/httpclient/performance.html
  * Plus other improvements.
+ * <p>
+ * If a block cache is set with setBlockCache(), data is read in blocks of cacheBlockSize bytes, which are shared by
+ * all HTTPRandomAccessFiles opened on the same URL. Adjacent blocks that are not in the cache are read with one
+ * request, and when reading sequentially, more blocks are read ahead each time, up to getMaxReadAhead().
+ * If getParallelism() is greater than 1, blocks that are not adjacent are read concurrently.
+ * Requests for blocks send an If-Range header with the ETag or Last-Modified header the server sent when the file
+ * was opened, and fail if the file has changed since, so that blocks of different versions are never mixed.
  *
  * @author John Caron, based on work by Donald Denbo
  */
@@ -29,13 +49,84 @@ import java.nio.channels.WritableByteChannel;
 public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
   static public final int defaultHTTPBufferSize = 20 * 1000;       // 20K
   static public final int maxHTTPBufferSize = 10 * 1000 * 1000;     // 10 M
+  static public final int cacheBlockSize = 64 * 1000;               // 64K
   static private final boolean debug = false, debugDetails = false;
 
+  static private ChunkCache blockCache;     // null = dont cache
+  static private int maxReadAhead = 16;     // blocks
+  static private int parallelism = 1;
+  static private ExecutorService executor;
+
+  /**
+   * Set a cache for the blocks read from remote files, shared by all HTTPRandomAccessFiles.
+   * Blocks are only cached for files whose server sends an ETag or Last-Modified header, and are used
+   * only as long as it sends the same one.
+   *
+   * @param cache use this cache, or null to not cache (default)
+   */
+  static public synchronized void setBlockCache(ChunkCache cache) {
+    blockCache = cache;
+  }
+
+  static public synchronized ChunkCache getBlockCache() {
+    return blockCache;
+  }
+
+  /**
+   * Set the most blocks to read ahead when reading sequentially through the block cache.
+   *
+   * @param blocks number of blocks; 0 to not read ahead. Default is 16.
+   */
+  static public synchronized void setMaxReadAhead(int blocks) {
+    maxReadAhead = Math.max(blocks, 0);
+  }
+
+  static public synchronized int getMaxReadAhead() {
+    return maxReadAhead;
+  }
+
+  /**
+   * Set the number of threads used to read blocks that are not adjacent, shared by all HTTPRandomAccessFiles.
+   *
+   * @param n number of threads; 1 (the default) reads them one after another on the calling thread.
+   *          Reads already using the old threads finish on them.
+   */
+  static public synchronized void setParallelism(int n) {
+    n = Math.max(n, 1);
+    if (n == parallelism) return;
+    parallelism = n;
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  static public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  static private synchronized ExecutorService getExecutor() {
+    if (parallelism <= 1) return null;
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread t = new Thread(r, "HTTPRandomAccessFile");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////
 
   private String url;
   private HTTPSession session = null;
   private long total_length = 0;
+  private String etag;             // from the server, to validate cached blocks
+  private long lastModified;       // from the server, 0 if unknown
+  private String lastModifiedHeader; // as sent by the server, to validate range requests without an etag
+  private long nextReadPos = -1;   // where the next read starts if reading sequentially
+  private int readAhead;           // blocks to read ahead on the next sequential read
 
   public HTTPRandomAccessFile(String url) throws IOException {
     this(url, defaultHTTPBufferSize);
@@ -85,12 +176,25 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
         throw new IOException("Server has malformed Content-Length header");
       }
 
+      head = method.getResponseHeader("ETag");
+      if (head != null && !head.getValue().startsWith("W/")) // weak ETags dont promise the same bytes
+        etag = head.getValue();
+      head = method.getResponseHeader("Last-Modified");
+      if (head != null) {
+        lastModifiedHeader = head.getValue();
+        Date date = DateUtils.parseDate(head.getValue());
+        if (date != null) lastModified = date.getTime();
+      }
     }
 
     if (needtest && !rangeOk(url))
       throw new IOException("Server does not support byte Ranges");
 
-    if (total_length > 0) {
+    if (total_length > maxHTTPBufferSize && isCached()) {
+      // read through the block cache, rather than a large buffer at each seek
+      setBufferSize(cacheBlockSize);
+
+    } else if (total_length > 0) {
       // this means that we will read the file in one gulp then deal with it in memory
       int useBuffer = (int) Math.min(total_length, maxHTTPBufferSize); // entire file size if possible
       useBuffer = Math.max(useBuffer, defaultHTTPBufferSize); // minimum buffer
@@ -170,6 +274,132 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
    */
   @Override
   protected int read_(long pos, byte[] buff, int offset, int len) throws IOException {
+    ChunkCache cache = getBlockCache();
+    if (cache != null && isCached())
+      return readBlocks(cache, pos, buff, offset, len);
+    return readRemote(pos, buff, offset, len, false);
+  }
+
+  private boolean isCached() {
+    return (etag != null || lastModified > 0) && getBlockCache() != null;
+  }
+
+  // read through the block cache
+  private int readBlocks(ChunkCache cache, long pos, byte[] buff, int offset, int len) throws IOException {
+    len = (int) Math.min(len, total_length - pos);
+    if (len <= 0) return -1;
+
+    String key = (etag == null) ? url : url + " " + etag;
+    long firstBlock = pos / cacheBlockSize;
+    long lastBlock = (pos + len - 1) / cacheBlockSize;
+    ByteBuffer[] blocks = new ByteBuffer[(int) (lastBlock - firstBlock + 1)];
+    for (int i = 0; i < blocks.length; i++)
+      blocks[i] = cache.get(key, lastModified, (firstBlock + i) * cacheBlockSize);
+
+    // each sequential read reads further ahead, up to the limit
+    synchronized (this) {
+      readAhead = (pos == nextReadPos) ? Math.min(Math.max(2 * readAhead, 1), getMaxReadAhead()) : 0;
+      nextReadPos = pos + len;
+    }
+
+    // runs of adjacent blocks that are not in the cache, as {first, last} block numbers
+    List<long[]> runs = new ArrayList<>();
+    for (int i = 0; i < blocks.length; i++) {
+      if (blocks[i] == null) {
+        long block = firstBlock + i;
+        if (!runs.isEmpty() && runs.get(runs.size() - 1)[1] == block - 1)
+          runs.get(runs.size() - 1)[1] = block;
+        else
+          runs.add(new long[]{block, block});
+      }
+    }
+    if (!runs.isEmpty()) {
+      long[] last = runs.get(runs.size() - 1);
+      if (last[1] == lastBlock)
+        last[1] = Math.min(lastBlock + readAhead, (total_length - 1) / cacheBlockSize);
+    }
+
+    // read the runs, concurrently if allowed and there is more than one
+    List<byte[]> runData = new ArrayList<>();
+    ExecutorService exec = (runs.size() > 1) ? getExecutor() : null;
+    if (exec == null) {
+      for (long[] run : runs)
+        runData.add(readRun(run));
+
+    } else {
+      List<Future<byte[]>> futures = new ArrayList<>();
+      try {
+        for (long[] run : runs) {
+          try {
+            futures.add(exec.submit(() -> readRun(run)));
+          } catch (RejectedExecutionException e) {
+            // setParallelism() replaced the executor since we got it
+            FutureTask<byte[]> task = new FutureTask<>(() -> readRun(run));
+            task.run();
+            futures.add(task);
+          }
+        }
+        for (Future<byte[]> future : futures)
+          runData.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted reading " + url, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        throw new IOException(cause);
+      } finally {
+        for (Future<byte[]> future : futures)
+          future.cancel(false);
+      }
+    }
+
+    // split the runs into blocks and cache them
+    for (int r = 0; r < runs.size(); r++) {
+      byte[] data = runData.get(r);
+      for (long block = runs.get(r)[0]; block <= runs.get(r)[1]; block++) {
+        int start = (int) ((block - runs.get(r)[0]) * cacheBlockSize);
+        int end = Math.min(start + cacheBlockSize, data.length);
+        ByteBuffer bb = ByteBuffer.wrap(Arrays.copyOfRange(data, start, end));
+        cache.put(key, lastModified, block * cacheBlockSize, bb);
+        if (block <= lastBlock)
+          blocks[(int) (block - firstBlock)] = bb;
+      }
+    }
+
+    // copy the wanted bytes
+    int done = 0;
+    for (int i = 0; i < blocks.length && done < len; i++) {
+      ByteBuffer bb = blocks[i].duplicate();
+      long blockStart = (firstBlock + i) * cacheBlockSize;
+      int from = (int) (pos + done - blockStart);
+      int n = Math.min(len - done, bb.limit() - from);
+      if (n <= 0) break;
+      bb.position(from);
+      bb.get(buff, offset + done, n);
+      done += n;
+    }
+    return done;
+  }
+
+  // read the blocks from run[0] to run[1]
+  private byte[] readRun(long[] run) throws IOException {
+    long start = run[0] * cacheBlockSize;
+    long end = Math.min((run[1] + 1) * cacheBlockSize, total_length);
+    byte[] data = new byte[(int) (end - start)];
+    int done = 0;
+    while (done < data.length) {
+      int n = readRemote(start + done, data, done, data.length - done, true);
+      if (n <= 0)
+        throw new EOFException("Reading " + url + " at " + (start + done) + " file length = " + total_length);
+      done += n;
+    }
+    return data;
+  }
+
+  // one request to the server; if validate, fail if the file is not the one that was opened
+  private int readRemote(long pos, byte[] buff, int offset, int len, boolean validate) throws IOException {
     long end = pos + len - 1;
     if (end >= total_length)
       end = total_length - 1;
@@ -179,9 +409,14 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     try (HTTPMethod method = HTTPFactory.Get(session,url)) {
       method.setFollowRedirects(true);
       method.setRange(pos,end);
+      String validator = (etag != null) ? etag : lastModifiedHeader;
+      if (validate && validator != null)
+        method.setRequestHeader("If-Range", validator);
       doConnect(method);
 
       int code = method.getStatusCode();
+      if (validate && validator != null && (code == 200 || isChanged(validator, method)))
+        throw new IOException(url + " has changed since it was opened");
       if (code != 206)
         throw new IOException("Server does not support Range requests, code= " + code);
 
@@ -199,6 +434,12 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     }
   }
 
+  // if the server sent a different validator with the response
+  private boolean isChanged(String validator, HTTPMethod method) {
+    Header head = method.getResponseHeader((etag != null) ? "ETag" : "Last-Modified");
+    return head != null && !validator.equals(head.getValue());
+  }
+
   private int copy(InputStream in, byte[] buff, int offset, int want) throws IOException {
     int done = 0;
     while (want > 0) {
@@ -231,13 +472,12 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
   }
 
   /**
-   * Always returns {@code 0L}, as we cannot easily determine the last time that a remote file was modified.
+   * Returns the time from the Last-Modified header the server sent when the file was opened.
    *
-   * @return  {@code 0L}, always.
+   * @return  the last time the remote file was modified, or {@code 0L} if the server did not say.
    */
-  // LOOK: An idea of how we might implement this: https://github.com/Unidata/thredds/pull/479#issuecomment-194562614
   @Override
   public long getLastModified() {
-    return 0;
+    return lastModified;
   }
 }
@@ -126,4 +126,42 @@ class CFGridCoverageWriter2Spec extends Specification {
         writer?.close()
         featDsetCov?.close()
     }
+    
+    def "streamed netCDF-3 has the same data as the written file"() {
+        setup: "Open test resource as FeatureDatasetCoverage"
+        File testFile = new File(HorizCoordSysCrossSeamBoundarySpec.getResource("crossSeamProjection.ncml").toURI())
+        FeatureDatasetCoverage featDsetCov = CoverageDatasetFactory.open(testFile.absolutePath)
+        CoverageCollection covColl = featDsetCov.getCoverageCollections().get(0)
+        
+        and: "write output file, with fill mode as NCSS does"
+        File outputFile = tempFolder.newFile()
+        NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, outputFile.absolutePath, null)
+        CFGridCoverageWriter2.writeOrTestSize(covColl, null, null, true, false, writer)
+        writer.close()
+        
+        and: "write the same thing to a stream"
+        CFGridCoverageWriter2.Netcdf3Stream stream = CFGridCoverageWriter2.makeNetcdf3Stream(covColl, null, null, true).get()
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        stream.write(bytes)
+        
+        expect: "stream length is known in advance and matches the file"
+        stream.isSupported()
+        stream.getLength() == bytes.size()
+        stream.getLength() == outputFile.length()
+        
+        when: "open both"
+        NetcdfFile ncFile = NetcdfFile.open(outputFile.absolutePath)
+        NetcdfFile ncStream = NetcdfFile.openInMemory("stream", bytes.toByteArray())
+        
+        then: "all variables have the same data"
+        ncFile.variables.size() == ncStream.variables.size()
+        ncFile.variables.every { v ->
+            MAMath.nearlyEquals(v.read(), ncStream.findVariable(v.fullNameEscaped).read())
+        }
+        
+        cleanup: "close all resources"
+        ncStream?.close()
+        ncFile?.close()
+        featDsetCov?.close()
+    }
 }
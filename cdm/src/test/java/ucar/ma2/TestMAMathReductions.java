@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.ma2;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.VariableStatistics;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Parallel and streaming MAMath reductions must agree with the serial ones. */
+public class TestMAMathReductions {
+  private static final int NROWS = 301, NCOLS = 1003;
+  private static final double MISSING = -9999.0;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void resetThreshold() {
+    MAMath.setParallelThreshold(0);
+  }
+
+  private static Array makeData(DataType dataType, long seed) {
+    Random r = new Random(seed);
+    Array data = Array.factory(dataType, new int[] {NROWS, NCOLS});
+    IndexIterator iter = data.getIndexIterator();
+    while (iter.hasNext()) {
+      int k = r.nextInt(100);
+      if (k == 0) iter.setDoubleNext(MISSING);
+      else if (k == 1 && !dataType.isIntegral()) iter.setDoubleNext(Double.NaN);
+      else iter.setDoubleNext(dataType.isIntegral() ? r.nextInt(20000) - 10000 : r.nextGaussian() * 1000);
+    }
+    return data;
+  }
+
+  private static class Serial {
+    MAMath.MinMax minmax, minmaxSkip, minmaxEval;
+    double sum, sumSkip;
+    MAMath.ScaleOffset so;
+
+    Serial(Array a, IsMissingEvaluator eval) {
+      MAMath.setParallelThreshold(0);
+      minmax = MAMath.getMinMax(a);
+      minmaxSkip = MAMath.getMinMaxSkipMissingData(a, MISSING);
+      minmaxEval = MAMath.getMinMaxSkipMissingData(a, eval);
+      sum = MAMath.sumDouble(a);
+      sumSkip = MAMath.sumDoubleSkipMissingData(a, MISSING);
+      so = MAMath.calcScaleOffsetSkipMissingData(a, MISSING, 16);
+    }
+  }
+
+  private static IsMissingEvaluator evaluator() {
+    return new IsMissingEvaluator() {
+      public boolean hasMissing() {
+        return true;
+      }
+
+      public boolean isMissing(double val) {
+        return val == MISSING || val > 2000;
+      }
+    };
+  }
+
+  private static void assertSame(MAMath.MinMax want, MAMath.MinMax got) {
+    assertEquals(want.min, got.min, 0.0);
+    assertEquals(want.max, got.max, 0.0);
+  }
+
+  private void checkParallel(DataType dataType, long seed) {
+    Array a = makeData(dataType, seed);
+    IsMissingEvaluator eval = evaluator();
+    Serial serial = new Serial(a, eval);
+
+    MAMath.setParallelThreshold(1000);
+    assertSame(serial.minmax, MAMath.getMinMax(a));
+    assertSame(serial.minmaxSkip, MAMath.getMinMaxSkipMissingData(a, MISSING));
+    assertSame(serial.minmaxEval, MAMath.getMinMaxSkipMissingData(a, eval));
+    MAMath.ScaleOffset so = MAMath.calcScaleOffsetSkipMissingData(a, MISSING, 16);
+    assertEquals(serial.so.scale, so.scale, 0.0);
+    assertEquals(serial.so.offset, so.offset, 0.0);
+
+    // only the order of the additions is different
+    double sum = MAMath.sumDouble(a);
+    if (Double.isNaN(serial.sum)) assertTrue(Double.isNaN(sum));
+    else assertEquals(serial.sum, sum, Math.abs(serial.sum) * 1.0e-12);
+    assertEquals(serial.sumSkip, MAMath.sumDoubleSkipMissingData(a, MISSING), Math.abs(serial.sumSkip) * 1.0e-12);
+
+    // the same results every time
+    assertEquals(sum, MAMath.sumDouble(a), 0.0);
+  }
+
+  @Test
+  public void testParallelDouble() {
+    checkParallel(DataType.DOUBLE, 1);
+  }
+
+  @Test
+  public void testParallelFloat() {
+    checkParallel(DataType.FLOAT, 2);
+  }
+
+  @Test
+  public void testParallelShort() {
+    checkParallel(DataType.SHORT, 3);
+  }
+
+  @Test
+  public void testSectionIsSerial() throws InvalidRangeException {
+    Array a = makeData(DataType.DOUBLE, 4).section(new int[] {1, 1}, new int[] {NROWS - 2, NCOLS - 2});
+    Serial serial = new Serial(a, null);
+    MAMath.setParallelThreshold(1000);
+    assertSame(serial.minmax, MAMath.getMinMax(a));
+    assertEquals(serial.sumSkip, MAMath.sumDoubleSkipMissingData(a, MISSING), 0.0);
+  }
+
+  @Test
+  public void testAccumulatorInPieces() throws InvalidRangeException {
+    Array a = makeData(DataType.DOUBLE, 5);
+    Serial serial = new Serial(a, null);
+
+    MAMath.Accumulator acc = new MAMath.Accumulator(MISSING);
+    for (int row = 0; row < NROWS; row += 7) {
+      int nrows = Math.min(7, NROWS - row);
+      acc.add(a.section(new int[] {row, 0}, new int[] {nrows, NCOLS}));
+    }
+    assertSame(serial.minmaxSkip, acc.getMinMax());
+    assertEquals(serial.sumSkip, acc.getSum(), 0.0);
+    MAMath.ScaleOffset so = acc.getScaleOffset(false, 16);
+    assertEquals(serial.so.scale, so.scale, 0.0);
+    assertEquals(serial.so.offset, so.offset, 0.0);
+
+    long count = 0;
+    IndexIterator iter = a.getIndexIterator();
+    while (iter.hasNext()) {
+      double val = iter.getDoubleNext();
+      if (val != MISSING && !Double.isNaN(val)) count++;
+    }
+    assertEquals(count, acc.getCount());
+  }
+
+  @Test
+  public void testAccumulatorVariable() throws Exception {
+    Array a = makeData(DataType.FLOAT, 6);
+    Serial serial = new Serial(a, null);
+
+    String filename = tempFolder.newFile().getAbsolutePath();
+    try (NetcdfFileWriter writer = NetcdfFileWriter.createNew(filename, false)) {
+      writer.addDimension(null, "rows", NROWS);
+      writer.addDimension(null, "cols", NCOLS);
+      writer.addVariable(null, "data", DataType.FLOAT, "rows cols");
+      writer.create();
+      writer.write("data", a);
+    }
+
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      for (long maxChunkElems : new long[] {5000, 400}) { // several rows, part of a row
+        MAMath.Accumulator acc = VariableStatistics.accumulate(new MAMath.Accumulator(MISSING),
+                ncfile.findVariable("data"), maxChunkElems);
+        assertSame(serial.minmaxSkip, acc.getMinMax());
+        assertEquals(serial.sumSkip, acc.getSum(), 0.0);
+      }
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.dataset;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.*;
+import ucar.nc2.Attribute;
+import ucar.nc2.constants.CDM;
+
+import java.util.Random;
+
+/**
+ * The whole array conversion in EnhanceScaleMissingUnsignedImpl must give the same values as converting
+ * one element at a time.
+ */
+public class TestEnhanceArrayConversion {
+  private static final int N = 7 * 14301; // not a multiple of the parallel chunk size
+
+  @After
+  public void resetThreshold() {
+    NetcdfDataset.setParallelEnhanceThreshold(0);
+  }
+
+  private static EnhanceScaleMissingUnsignedImpl makeImpl(DataType dataType, Attribute... atts) {
+    VariableDS v = new VariableDS(new NetcdfDataset(), null, null, "v", dataType, "", null, null);
+    for (Attribute att : atts) v.addAttribute(att);
+    return new EnhanceScaleMissingUnsignedImpl(v);
+  }
+
+  private static Array makeData(DataType dataType, long seed) {
+    Random r = new Random(seed);
+    Array data = Array.factory(dataType, new int[] {N});
+    IndexIterator iter = data.getIndexIterator();
+    while (iter.hasNext()) {
+      int k = r.nextInt(1000);
+      if (dataType.isIntegral()) iter.setIntNext(k < 10 ? -1 : k < 20 ? -9999 : r.nextInt());
+      else iter.setDoubleNext(k < 10 ? Double.NaN : k < 20 ? -9999 : r.nextGaussian() * 1000);
+    }
+    return data;
+  }
+
+  private static void check(EnhanceScaleMissingUnsignedImpl impl, Array data) {
+    for (int flags = 1; flags < 8; flags++) {
+      boolean unsigned = (flags & 1) != 0, scale = (flags & 2) != 0, missing = (flags & 4) != 0;
+      Array got = impl.convert(data, unsigned, scale, missing);
+
+      // what convert() does to the flags before converting
+      boolean u = unsigned && impl.getSignedness() == DataType.Signedness.UNSIGNED;
+      boolean s = scale && impl.hasScaleOffset();
+      DataType outType = data.getDataType();
+      if (u) outType = impl.getUnsignedConversionType();
+      if (s) outType = impl.getScaledOffsetType();
+      boolean m = missing && (outType == DataType.FLOAT || outType == DataType.DOUBLE);
+      Array want = impl.convertByElement(data, outType, u, s, m);
+
+      Assert.assertEquals(want.getDataType(), got.getDataType());
+      Assert.assertArrayEquals(want.getShape(), got.getShape());
+      IndexIterator wantIter = want.getIndexIterator();
+      IndexIterator gotIter = got.getIndexIterator();
+      while (wantIter.hasNext()) {
+        Object w = wantIter.getObjectNext();
+        Object g = gotIter.getObjectNext();
+        Assert.assertEquals("flags=" + flags, w, g);
+      }
+    }
+  }
+
+  @Test
+  public void testShortScaleOffsetMissing() {
+    EnhanceScaleMissingUnsignedImpl impl = makeImpl(DataType.SHORT, new Attribute(CDM.SCALE_FACTOR, 0.01f),
+            new Attribute(CDM.ADD_OFFSET, 273.15f), new Attribute(CDM.MISSING_VALUE, (short) -9999));
+    check(impl, makeData(DataType.SHORT, 1));
+  }
+
+  @Test
+  public void testUnsignedByte() {
+    EnhanceScaleMissingUnsignedImpl impl = makeImpl(DataType.BYTE, new Attribute(CDM.UNSIGNED, "true"),
+            new Attribute(CDM.SCALE_FACTOR, 0.5), new Attribute(CDM.FILL_VALUE, (byte) -1));
+    check(impl, makeData(DataType.BYTE, 2));
+  }
+
+  @Test
+  public void testUnsignedIntNoScale() {
+    EnhanceScaleMissingUnsignedImpl impl = makeImpl(DataType.UINT);
+    check(impl, makeData(DataType.UINT, 3));
+  }
+
+  @Test
+  public void testFloatValidRange() {
+    EnhanceScaleMissingUnsignedImpl impl = makeImpl(DataType.FLOAT,
+            new Attribute(CDM.VALID_RANGE, Array.makeFromJavaArray(new float[] {-1000f, 1000f})),
+            new Attribute(CDM.FILL_VALUE, -9999f));
+    check(impl, makeData(DataType.FLOAT, 4));
+  }
+
+  @Test
+  public void testNotCanonicalOrder() {
+    EnhanceScaleMissingUnsignedImpl impl = makeImpl(DataType.SHORT, new Attribute(CDM.SCALE_FACTOR, 2.0),
+            new Attribute(CDM.VALID_MIN, (short) 0));
+    Array data = makeData(DataType.SHORT, 5).reshape(new int[] {N / 7, 7}).transpose(0, 1);
+    check(impl, data);
+  }
+
+  @Test
+  public void testParallel() {
+    NetcdfDataset.setParallelEnhanceThreshold(1000);
+    EnhanceScaleMissingUnsignedImpl impl = makeImpl(DataType.INT, new Attribute(CDM.SCALE_FACTOR, 1.0e-3),
+            new Attribute(CDM.MISSING_VALUE, -9999));
+    check(impl, makeData(DataType.INT, 6));
+  }
+}
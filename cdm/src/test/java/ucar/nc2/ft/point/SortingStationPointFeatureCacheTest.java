@@ -10,9 +10,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import com.google.common.collect.Ordering;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.DataType;
@@ -23,10 +26,13 @@ import ucar.nc2.ft.FeatureDatasetPoint;
 import ucar.nc2.ft.NoFactoryFoundException;
 import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.time.CalendarDateUnit;
+import ucar.nc2.util.DiskCache2;
 
 public class SortingStationPointFeatureCacheTest {
     private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void test1() throws Exception {
         StructureDataScalar stationData = new StructureDataScalar("StationFeature");  // leave it empty.
@@ -119,4 +125,59 @@ public class SortingStationPointFeatureCacheTest {
             Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
         }
     }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        CalendarDateUnit timeUnit = CalendarDateUnit.of(null, "days since 1970-01-01");
+        DsgFeatureCollection dummyDsg = new SimplePointFeatureCC("dummy", timeUnit, "m", FeatureType.STATION);
+
+        List<StationFeature> stationFeats = new ArrayList<>();
+        for (String name : Arrays.asList("AAA", "BBB", "CCC", "DDD")) {
+            StructureDataScalar stationData = new StructureDataScalar("StationFeature");
+            stationData.addMemberString("name", null, null, name, 3);
+            stationFeats.add(new StationFeatureImpl(name, "desc " + name, null, 30, 60, 5000, 0, stationData));
+        }
+
+        // Many ties in obsTime, so that the order of equal features is checked as well.
+        Random random = new Random(16);
+        List<StationPointFeature> spfList = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            StationFeature stationFeat = stationFeats.get(random.nextInt(stationFeats.size()));
+            double obsTime = random.nextInt(200);
+            StructureDataScalar featureData = new StructureDataScalar("StationPointFeature");
+            featureData.addMember("obsTime", "Observation time", timeUnit.getUdUnit(), DataType.DOUBLE, obsTime);
+            featureData.addMember("tasmax", "Max temperature", "Celsius", DataType.DOUBLE, (double) i);
+            featureData.addMemberString("remark", null, null, "remark " + i, 20);
+            spfList.add(new SimpleStationPointFeature(dummyDsg, stationFeat, obsTime, obsTime, timeUnit, featureData));
+        }
+
+        Comparator<StationPointFeature> obsTimeComp =
+                (left, right) -> Double.compare(left.getObservationTime(), right.getObservationTime());
+        File scratchDir = tempFolder.newFolder();
+        DiskCache2 diskCache = new DiskCache2(scratchDir.getPath(), false, 0, 0);
+
+        try (SortingStationPointFeatureCache cache =
+                new SortingStationPointFeatureCache(obsTimeComp, 20 * 1000, diskCache)) {
+            for (StationPointFeature stationPointFeat : spfList) {
+                cache.add(stationPointFeat);
+            }
+            Assert.assertTrue(scratchDir.list().length > 5);
+
+            List<StationPointFeature> expected = new ArrayList<>(spfList);
+            Collections.sort(expected, obsTimeComp); // stable
+            Assert.assertTrue(PointTestUtil.equals(
+                    new PointIteratorAdapter(expected.iterator()), cache.getPointFeatureIterator()));
+
+            // Again, with some features that are only in memory.
+            for (StationPointFeature stationPointFeat : spfList.subList(0, 10)) {
+                cache.add(stationPointFeat);
+                expected.add(stationPointFeat);
+            }
+            Collections.sort(expected, obsTimeComp);
+            Assert.assertTrue(PointTestUtil.equals(
+                    new PointIteratorAdapter(expected.iterator()), cache.getPointFeatureIterator()));
+        }
+
+        Assert.assertEquals(0, scratchDir.list().length);
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureMembers;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.*;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Iterating over a composite point collection must give the same features in the same order,
+ * whether or not the datasets are read ahead.
+ */
+public class TestCompositePrefetch {
+  private static final int NFILES = 12;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void resetPrefetch() {
+    CompositeDatasetFactory.setPrefetch(0);
+    CompositeDatasetFactory.setPrefetchQueueSize(1000);
+  }
+
+  // copies of an ncml file, one per day, each with its own longitudes so that the order of the files shows
+  private String makeCollection(String ncml, String lonValues) throws IOException {
+    String text = new String(Files.readAllBytes(new File(TestDir.cdmLocalTestDataDir, "point/" + ncml).toPath()),
+            StandardCharsets.UTF_8);
+    Assert.assertTrue(text.contains(lonValues));
+    File dir = tempFolder.newFolder();
+    for (int i = 0; i < NFILES; i++) {
+      String day = String.format("201501%02d", i + 1);
+      String copy = text.replace(lonValues, "<values start=\"" + (-170 + 10 * i) + "\" increment=\"1\"/>");
+      Files.write(new File(dir, "obs_" + day + ".ncml").toPath(), copy.getBytes(StandardCharsets.UTF_8));
+    }
+    return CompositeDatasetFactory.SCHEME + dir.getPath().replace('\\', '/') + "/obs_#yyyyMMdd#\\.ncml";
+  }
+
+  private static String describe(PointFeature pf) throws IOException {
+    Formatter f = new Formatter();
+    f.format("%s %s", pf.getObservationTimeAsCalendarDate(), pf.getLocation().getLatLon());
+    StructureData sdata = pf.getDataAll();
+    for (StructureMembers.Member m : sdata.getMembers())
+      f.format(" %s=%s", m.getName(), sdata.getArray(m));
+    return f.toString();
+  }
+
+  private static List<String> readAll(PointFeatureIterator iter, int max) throws IOException {
+    List<String> result = new ArrayList<>();
+    try {
+      while (iter.hasNext() && result.size() < max)
+        result.add(describe(iter.next()));
+    } finally {
+      iter.close();
+    }
+    return result;
+  }
+
+  private List<String> readPoints(String location, int max) throws IOException {
+    Formatter errlog = new Formatter();
+    try (FeatureDatasetPoint fd = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, location, null, errlog)) {
+      Assert.assertNotNull(errlog.toString(), fd);
+      PointFeatureCollection pc = (PointFeatureCollection) fd.getPointFeatureCollectionList().get(0);
+      return readAll(pc.getPointFeatureIterator(), max);
+    }
+  }
+
+  private List<String> readStations(String location) throws IOException {
+    Formatter errlog = new Formatter();
+    try (FeatureDatasetPoint fd = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, location, null, errlog)) {
+      Assert.assertNotNull(errlog.toString(), fd);
+      StationTimeSeriesFeatureCollection sc = (StationTimeSeriesFeatureCollection) fd.getPointFeatureCollectionList().get(0);
+      List<String> result = new ArrayList<>();
+      for (StationTimeSeriesFeature stn : sc)
+        result.addAll(readAll(stn.getPointFeatureIterator(), Integer.MAX_VALUE));
+      result.addAll(readAll(sc.flatten(null, null, null).getPointFeatureIterator(), Integer.MAX_VALUE));
+      return result;
+    }
+  }
+
+  @Test
+  public void testPoints() throws IOException {
+    String location = makeCollection("point.ncml", "<values start=\"-105\" increment=\"3\"/>");
+    List<String> want = readPoints(location, Integer.MAX_VALUE);
+    Assert.assertEquals(3 * NFILES, want.size());
+
+    CompositeDatasetFactory.setPrefetch(3);
+    CompositeDatasetFactory.setPrefetchQueueSize(2); // smaller than a dataset, so the readers have to wait
+    Assert.assertEquals(want, readPoints(location, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testCloseEarly() throws IOException {
+    String location = makeCollection("point.ncml", "<values start=\"-105\" increment=\"3\"/>");
+    List<String> want = readPoints(location, Integer.MAX_VALUE);
+
+    CompositeDatasetFactory.setPrefetch(4);
+    CompositeDatasetFactory.setPrefetchQueueSize(1);
+    for (int max : new int[] {0, 1, 5, 17})
+      Assert.assertEquals(want.subList(0, max), readPoints(location, max));
+  }
+
+  @Test
+  public void testDropped() throws Exception {
+    String location = makeCollection("point.ncml", "<values start=\"-105\" increment=\"3\"/>");
+    CompositeDatasetFactory.setPrefetch(4);
+    CompositeDatasetFactory.setPrefetchQueueSize(1);
+    ThreadPoolExecutor pool = (ThreadPoolExecutor) CompositeDatasetFactory.getPrefetchExecutor();
+
+    Formatter errlog = new Formatter();
+    try (FeatureDatasetPoint fd = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, location, null, errlog)) {
+      Assert.assertNotNull(errlog.toString(), fd);
+      PointFeatureCollection pc = (PointFeatureCollection) fd.getPointFeatureCollectionList().get(0);
+      readOneAndDrop(pc);
+    }
+
+    // the readers, waiting for room in their queues, stop once the iterator is garbage collected
+    for (int i = 0; i < 100 && pool.getActiveCount() > 0; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(0, pool.getActiveCount());
+  }
+
+  private static void readOneAndDrop(PointFeatureCollection pc) throws IOException {
+    PointFeatureIterator iter = pc.getPointFeatureIterator();
+    Assert.assertTrue(iter.hasNext());
+    iter.next();
+  }
+
+  @Test
+  public void testStations() throws IOException {
+    String location = makeCollection("stationMultidim.ncml", "<values start=\"-100\" increment=\"3\"/>");
+    List<String> want = readStations(location);
+    Assert.assertFalse(want.isEmpty());
+
+    CompositeDatasetFactory.setPrefetch(2);
+    CompositeDatasetFactory.setPrefetchQueueSize(4);
+    Assert.assertEquals(want, readStations(location));
+  }
+}
@@ -5,10 +5,12 @@
 
 package ucar.nc2.iosp;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.Random;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -49,6 +51,35 @@ public class TestBitReader {
 		assertEquals(-945, (int) bu.bits2SInt(11));
 	}
 
+	@Test
+	public void testBulkMatchesSingle() throws IOException {
+		Random r = new Random(17);
+		byte[] data = new byte[2000];
+		r.nextBytes(data);
+
+		for (int nb = 0; nb <= 32; nb++) {
+			for (int skip = 0; skip < 8; skip++) {
+				int n = 1 + r.nextInt(300);
+				BitReader single = new BitReader(data);
+				BitReader bulk = new BitReader(data);
+				single.bits2UInt(skip);
+				bulk.bits2UInt(skip);
+
+				int[] expect = new int[n];
+				for (int i = 0; i < n; i++)
+					expect[i] = (int) single.bits2UInt(nb);
+				int[] result = new int[n + 1];
+				bulk.bits2UInt(nb, result, 1, n);
+
+				int[] got = new int[n];
+				System.arraycopy(result, 1, got, 0, n);
+				assertArrayEquals("nb=" + nb + " skip=" + skip, expect, got);
+				// both readers are left at the same place
+				assertEquals("nb=" + nb + " skip=" + skip, single.bits2UInt(13), bulk.bits2UInt(13));
+			}
+		}
+	}
+
 	@Test
 	@Ignore("why is this failing?")
 	public void testSignedNegative3() throws IOException {
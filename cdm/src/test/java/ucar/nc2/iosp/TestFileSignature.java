@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NetcdfFile.open() only asks IOSPs whose signatures match, and remembers which IOSP opened a location.
+ */
+public class TestFileSignature {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  static private final AtomicInteger askedSigned = new AtomicInteger();
+  static private final AtomicInteger askedUnsigned = new AtomicInteger();
+
+  // reads files starting with "TSIG"
+  static public class SignedIosp extends AbstractIOServiceProvider {
+    public boolean isValidFile(RandomAccessFile raf) throws IOException {
+      askedSigned.incrementAndGet();
+      raf.seek(0);
+      return raf.length() >= 4 && raf.readString(4).equals("TSIG");
+    }
+
+    public Array readData(Variable v2, Section section) {
+      return null;
+    }
+
+    public String getFileTypeId() {
+      return "TestSigned";
+    }
+
+    public String getFileTypeDescription() {
+      return "Test Signed";
+    }
+  }
+
+  // reads nothing
+  static public class UnsignedIosp extends SignedIosp {
+    public boolean isValidFile(RandomAccessFile raf) {
+      askedUnsigned.incrementAndGet();
+      return false;
+    }
+  }
+
+  @Before
+  public void register() throws Exception {
+    NetcdfFile.registerIOProvider(UnsignedIosp.class);
+    NetcdfFile.registerIOProvider(SignedIosp.class, true);
+    NetcdfFile.registerIOProviderSignatures(SignedIosp.class, FileSignature.magic(0, "TSIG"));
+    askedSigned.set(0);
+    askedUnsigned.set(0);
+  }
+
+  @After
+  public void deregister() {
+    NetcdfFile.iospDeRegister(UnsignedIosp.class);
+    NetcdfFile.iospDeRegister(SignedIosp.class);
+    NetcdfFile.registerIOProviderSignatures(SignedIosp.class);
+  }
+
+  private File makeFile(String name, String contents) throws IOException {
+    File file = new File(tempFolder.getRoot(), name);
+    Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+    return file;
+  }
+
+  @Test
+  public void testMatches() {
+    byte[] head = "ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    Assert.assertTrue(FileSignature.magic(2, "CD").matches("x", head, 6));
+    Assert.assertFalse(FileSignature.magic(2, "CE").matches("x", head, 6));
+    Assert.assertFalse(FileSignature.magic(5, "FG").matches("x", head, 6));
+    Assert.assertTrue(FileSignature.magic(5, "FG").matches("x", head, 100)); // not read
+    Assert.assertTrue(FileSignature.suffix(".DEM").matches("dir/file.DEM", head, 6));
+    Assert.assertFalse(FileSignature.suffix(".DEM").matches("dir/file.dem", head, 6));
+  }
+
+  @Test
+  public void testSkipped() throws IOException {
+    File file = makeFile("other.dat", "some other format");
+    Assert.assertFalse(NetcdfFile.canOpen(file.getPath()));
+    Assert.assertEquals(0, askedSigned.get());
+    Assert.assertEquals(1, askedUnsigned.get());
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    File file = makeFile("signed.dat", "TSIG and the rest of the file");
+    try (NetcdfFile ncfile = NetcdfFile.open(file.getPath())) {
+      Assert.assertEquals("TestSigned", ncfile.getFileTypeId());
+    }
+    Assert.assertEquals(1, askedSigned.get());
+    Assert.assertEquals(1, askedUnsigned.get());
+
+    // only the iosp that opened it before is asked
+    try (NetcdfFile ncfile = NetcdfFile.open(file.getPath())) {
+      Assert.assertEquals("TestSigned", ncfile.getFileTypeId());
+    }
+    Assert.assertEquals(1, askedUnsigned.get());
+
+    // unless the file has changed
+    makeFile("signed.dat", "no longer signed");
+    try {
+      NetcdfFile.open(file.getPath()).close();
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals(2, askedUnsigned.get());
+    }
+  }
+}
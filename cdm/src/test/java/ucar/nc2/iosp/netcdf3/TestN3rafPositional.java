@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.netcdf3;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.*;
+import ucar.nc2.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Strided reads of record and non-record variables are the same with and without N3raf positional reads.
+ * The record variables have small chunks, which are read together, the big rows are read one at a time.
+ */
+public class TestN3rafPositional {
+  private static final int NT = 50, NY = 40, NX = 3000;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    N3raf.setPositionalReads(false);
+  }
+
+  private String makeFile() throws IOException, InvalidRangeException {
+    String filename = tempFolder.newFile().getAbsolutePath();
+    try (NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, filename)) {
+      writer.addUnlimitedDimension("time");
+      writer.addDimension("y", NY);
+      writer.addDimension("x", NX);
+      writer.addVariable("rshort", DataType.SHORT, "time y");
+      writer.addVariable("rdouble", DataType.DOUBLE, "time y");
+      writer.addVariable("big", DataType.FLOAT, "y x");
+      writer.create();
+
+      ArrayShort.D2 rshort = new ArrayShort.D2(NT, NY, false);
+      ArrayDouble.D2 rdouble = new ArrayDouble.D2(NT, NY);
+      for (int t = 0; t < NT; t++) {
+        for (int y = 0; y < NY; y++) {
+          rshort.set(t, y, (short) (t * 100 + y));
+          rdouble.set(t, y, t + y / 100.0);
+        }
+      }
+      writer.write(writer.findVariable("rshort"), rshort);
+      writer.write(writer.findVariable("rdouble"), rdouble);
+
+      ArrayFloat.D2 big = new ArrayFloat.D2(NY, NX);
+      for (int y = 0; y < NY; y++)
+        for (int x = 0; x < NX; x++)
+          big.set(y, x, y * 10000 + x);
+      writer.write(writer.findVariable("big"), big);
+    }
+    return filename;
+  }
+
+  private static List<Array> readStrided(NetcdfFile ncfile) throws IOException, InvalidRangeException {
+    List<Array> result = new ArrayList<>();
+    result.add(ncfile.findVariable("rshort").read("0:49:3,1:39:4"));
+    result.add(ncfile.findVariable("rdouble").read("1:49:7,:"));
+    result.add(ncfile.findVariable("big").read("0:39:3,:"));
+    result.add(ncfile.findVariable("big").read("5:30:5,100:2999:10"));
+    return result;
+  }
+
+  @Test
+  public void testStrided() throws IOException, InvalidRangeException {
+    String filename = makeFile();
+    List<Array> want;
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      want = readStrided(ncfile);
+    }
+    Assert.assertEquals(3 * 100 + 1, want.get(0).getShort(want.get(0).getIndex().set(1, 0)));
+
+    N3raf.setPositionalReads(true);
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      List<Array> got = readStrided(ncfile);
+      for (int i = 0; i < want.size(); i++)
+        Assert.assertTrue(MAMath.nearlyEquals(want.get(i), got.get(i)));
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    String filename = makeFile();
+    List<Array> want;
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      want = readStrided(ncfile);
+    }
+
+    N3raf.setPositionalReads(true);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      List<Future<List<Array>>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++)
+        results.add(pool.submit(() -> readStrided(ncfile)));
+      for (Future<List<Array>> result : results) {
+        List<Array> got = result.get();
+        for (int i = 0; i < want.size(); i++)
+          Assert.assertTrue(MAMath.nearlyEquals(want.get(i), got.get(i)));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static Array readRecords(NetcdfFile ncfile) throws IOException {
+    return ((Structure) ncfile.findVariable("record")).read();
+  }
+
+  // records and variables are read at once from one file, neither using the file position
+  @Test
+  public void testConcurrentRecords() throws Exception {
+    String filename = makeFile();
+    List<Array> want;
+    Array wantRecords;
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      want = readStrided(ncfile);
+      ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+      wantRecords = readRecords(ncfile);
+    }
+
+    N3raf.setPositionalReads(true);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < 128; i++) {
+        if (i % 2 == 0)
+          results.add(pool.submit(() -> readStrided(ncfile)));
+        else
+          results.add(pool.submit(() -> readRecords(ncfile)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        if (i % 2 == 0) {
+          List<?> got = (List<?>) results.get(i).get();
+          for (int j = 0; j < want.size(); j++)
+            Assert.assertTrue(MAMath.nearlyEquals(want.get(j), (Array) got.get(j)));
+        } else {
+          ArrayStructureBB got = (ArrayStructureBB) results.get(i).get();
+          Assert.assertArrayEquals(((ArrayStructureBB) wantRecords).getByteBuffer().array(), got.getByteBuffer().array());
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ncml;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.dataset.NetcdfDataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reading the nested datasets of an aggregation concurrently gives the same data as reading them one at a time.
+ */
+public class TestAggParallel {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    Aggregation.setParallelism(1);
+    Aggregation.setMaxReadsPerRequest(0);
+  }
+
+  // the whole variable, and sections within one nested dataset, across nested datasets, and strided
+  private static List<String> readAll(String ncml, String varName, String... sections) throws IOException, InvalidRangeException {
+    return readLocation("file:./" + TestNcML.topDir + ncml, varName, sections);
+  }
+
+  private static List<String> readLocation(String location, String varName, String... sections) throws IOException, InvalidRangeException {
+    List<String> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfDataset.openFile(location, null)) {
+      Variable v = ncfile.findVariable(varName);
+      Assert.assertNotNull(varName, v);
+      for (String spec : sections) {
+        Array data = v.read(new Section(spec));
+        result.add(spec + ": " + data.getDataType() + " " + data);
+      }
+      Array data = v.read();
+      result.add("all: " + data.getDataType() + " " + data);
+    }
+    return result;
+  }
+
+  private static void check(String ncml, String varName, String... sections) throws IOException, InvalidRangeException {
+    Aggregation.setParallelism(1);
+    List<String> want = readAll(ncml, varName, sections);
+
+    Aggregation.setParallelism(4);
+    Aggregation.setMaxReadsPerRequest(2);
+    Assert.assertEquals(want, readAll(ncml, varName, sections));
+  }
+
+  @Test
+  public void testJoinExisting() throws IOException, InvalidRangeException {
+    // jan.nc and feb.nc have different numbers of times
+    check("aggExisting.xml", "T", "0:3,:,:", "29:33,1,2:3", "0:58:7,:,1", "40:58,:,:");
+    check("aggExisting.xml", "time", "25:40", "0:58:3");
+  }
+
+  @Test
+  public void testJoinNew() throws IOException, InvalidRangeException {
+    check("aggSynthetic.xml", "T", "1,:,:", "0:2,1,2:3", "0:2:2,:,:");
+  }
+
+  // the nested reads of the outer aggregation, on the read threads, read the inner aggregations
+  @Test(timeout = 60 * 1000)
+  public void testNested() throws IOException, InvalidRangeException {
+    String jan = new File(TestNcML.topDir, "nc/jan.nc").getAbsolutePath().replace('\\', '/');
+    String feb = new File(TestNcML.topDir, "nc/feb.nc").getAbsolutePath().replace('\\', '/');
+    StringBuilder ncml = new StringBuilder();
+    ncml.append("<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2'>\n");
+    ncml.append("  <aggregation dimName='run' type='joinNew'>\n");
+    ncml.append("    <variableAgg name='T'/>\n");
+    for (int run = 0; run < 3; run++) {
+      ncml.append("    <netcdf coordValue='").append(run).append("'>\n");
+      ncml.append("      <aggregation dimName='time' type='joinExisting'>\n");
+      ncml.append("        <netcdf location='").append(jan).append("'/>\n");
+      ncml.append("        <netcdf location='").append(feb).append("'/>\n");
+      ncml.append("      </aggregation>\n");
+      ncml.append("    </netcdf>\n");
+    }
+    ncml.append("  </aggregation>\n");
+    ncml.append("</netcdf>\n");
+    File file = tempFolder.newFile("nested.ncml");
+    Files.write(file.toPath(), ncml.toString().getBytes(StandardCharsets.UTF_8));
+    String location = "file:" + file.getAbsolutePath().replace('\\', '/');
+
+    Aggregation.setParallelism(1);
+    List<String> want = readLocation(location, "T", "1,0:3,:,:", "0:2,29:33,1,2:3", ":,40:58,:,:");
+    Assert.assertTrue(want.get(want.size() - 1).startsWith("all: double"));
+
+    Aggregation.setParallelism(2);
+    Assert.assertEquals(want, readLocation(location, "T", "1,0:3,:,:", "0:2,29:33,1,2:3", ":,40:58,:,:"));
+  }
+}
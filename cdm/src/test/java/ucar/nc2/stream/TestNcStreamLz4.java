@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the LZ4 compression of ncstream data messages.
+ */
+public class TestNcStreamLz4 {
+
+  private void roundTrip(byte[] data) throws IOException {
+    byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+    int clen = Lz4.compress(data, 0, data.length, compressed, 0);
+    byte[] result = new byte[data.length];
+    Lz4.decompress(compressed, 0, clen, result, 0, data.length);
+    Assert.assertArrayEquals(data, result);
+  }
+
+  @Test
+  public void testBlockRoundTrip() throws IOException {
+    Random r = new Random(17);
+    for (int len : new int[] {0, 1, 5, 12, 13, 100, 65536 + 100, 1000 * 1000}) {
+      // incompressible
+      byte[] data = new byte[len];
+      r.nextBytes(data);
+      roundTrip(data);
+
+      // all the same, so that matches overlap
+      roundTrip(new byte[len]);
+
+      // slowly varying, like most gridded data
+      for (int i = 0; i < len; i++)
+        data[i] = (byte) ((i / 1000) + r.nextInt(3));
+      roundTrip(data);
+    }
+  }
+
+  @Test
+  public void testCompresses() {
+    byte[] data = new byte[100 * 1000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) (i % 17);
+    byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+    int clen = Lz4.compress(data, 0, data.length, compressed, 0);
+    Assert.assertTrue("compressed size " + clen, clen < data.length / 50);
+  }
+
+  @Test
+  public void testMalformed() {
+    byte[] data = new byte[1000];
+    Arrays.fill(data, (byte) 7);
+    byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+    int clen = Lz4.compress(data, 0, data.length, compressed, 0);
+
+    try {
+      Lz4.decompress(compressed, 0, clen - 3, new byte[data.length], 0, data.length);
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+
+    try {
+      Lz4.decompress(compressed, 0, clen, new byte[data.length - 1], 0, data.length - 1);
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testStreamSpansBlocks() throws IOException {
+    int size = 3 * NcStreamLz4OutputStream.BLOCK_SIZE + 12345;
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++)
+      data[i] = (byte) (i / 100);
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    OutputStream out = NcStreamCompression.lz4().setupStream(bout, size);
+    out.write(data, 0, 1000);
+    for (int i = 1000; i < 2000; i++)
+      out.write(data[i]);
+    out.write(data, 2000, size - 2000);
+    out.flush();
+    out.flush(); // a second flush writes nothing
+
+    ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
+    int csize = NcStream.readVInt(bin);
+    Assert.assertEquals(bin.available(), csize);
+    byte[] compressed = new byte[csize];
+    NcStream.readFully(bin, compressed);
+    Assert.assertArrayEquals(data, NcStreamCompression.decompress(NcStreamProto.Compress.LZ4, compressed, size));
+  }
+
+  @Test
+  public void testDataMessage() throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFile.open(TestDir.cdmLocalTestDataDir + "testWrite.nc")) {
+      NcStreamWriter writer = new NcStreamWriter(ncfile, "test");
+      for (NcStreamCompression compress : new NcStreamCompression[] {NcStreamCompression.none(),
+              NcStreamCompression.deflate(), NcStreamCompression.lz4()}) {
+        for (Variable v : ncfile.getVariables()) {
+          if (!v.getDataType().isNumeric()) continue;
+          ByteArrayOutputStream bout = new ByteArrayOutputStream();
+          writer.sendData(v, v.getShapeAsSection(), bout, compress);
+
+          NcStreamReader reader = new NcStreamReader();
+          NcStreamReader.DataResult result = reader.readData(new ByteArrayInputStream(bout.toByteArray()), ncfile, "test");
+          Assert.assertTrue(v.getFullName() + " " + compress.getType(), MAMath.nearlyEquals(v.read(), result.data));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.util.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.Formatter;
+
+/**
+ * Test ChunkCache
+ */
+public class TestChunkCache {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static private ByteBuffer makeChunk(int size, int val) {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) data[i] = (byte) (val + i);
+    return ByteBuffer.wrap(data);
+  }
+
+  @Test
+  public void testHitAndMiss() {
+    ChunkCache cache = new ChunkCache("test", 100 * 1000, false);
+    Assert.assertNull(cache.get("file1", 1, 0));
+
+    ByteBuffer chunk = makeChunk(1000, 7);
+    chunk.position(500); // position of the original is ignored
+    cache.put("file1", 1, 0, chunk);
+
+    ByteBuffer bb = cache.get("file1", 1, 0);
+    Assert.assertNotNull(bb);
+    Assert.assertEquals(0, bb.position());
+    Assert.assertEquals(1000, bb.limit());
+    Assert.assertEquals((byte) 7, bb.get(0));
+    Assert.assertEquals((byte) (7 + 999), bb.get(999));
+
+    // reader changes to the position dont affect the cached chunk
+    bb.position(100);
+    Assert.assertEquals(0, cache.get("file1", 1, 0).position());
+
+    // different modification time or position is a different chunk
+    Assert.assertNull(cache.get("file1", 2, 0));
+    Assert.assertNull(cache.get("file1", 1, 1000));
+    Assert.assertNull(cache.get("file2", 1, 0));
+
+    Assert.assertEquals(2, cache.getHits());
+    Assert.assertEquals(4, cache.getMisses());
+  }
+
+  @Test
+  public void testByteLimit() {
+    ChunkCache cache = new ChunkCache("test", 10 * 1100, false);
+    for (int i = 0; i < 20; i++)
+      cache.put("file", 1, i * 1000, makeChunk(1000, i));
+
+    Assert.assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    Assert.assertEquals(10, cache.getCount());
+    Assert.assertEquals(10, cache.getEvictions());
+    Assert.assertNull(cache.get("file", 1, 0));       // oldest ones are gone
+    Assert.assertNotNull(cache.get("file", 1, 19000)); // newest are still there
+
+    // too big to cache
+    cache.put("file", 1, 99, makeChunk(20 * 1000, 0));
+    Assert.assertNull(cache.get("file", 1, 99));
+  }
+
+  @Test
+  public void testScanResistance() {
+    ChunkCache cache = new ChunkCache("test", 10 * 1100, false);
+
+    // hot chunks, used twice
+    for (int i = 0; i < 4; i++) {
+      cache.put("hot", 1, i, makeChunk(1000, i));
+      Assert.assertNotNull(cache.get("hot", 1, i));
+    }
+
+    // a scan through many chunks used once
+    for (int i = 0; i < 50; i++)
+      cache.put("scan", 1, i, makeChunk(1000, i));
+
+    for (int i = 0; i < 4; i++)
+      Assert.assertNotNull(cache.get("hot", 1, i));
+
+    cache.showCache(new Formatter(System.out));
+  }
+
+  @Test
+  public void testOffHeap() {
+    ChunkCache cache = new ChunkCache("test", 100 * 1000, true);
+    ByteBuffer chunk = makeChunk(1000, 3);
+    cache.put("file", 1, 0, chunk);
+    chunk.put(0, (byte) 99); // cached data is a copy
+
+    ByteBuffer bb = cache.get("file", 1, 0);
+    Assert.assertTrue(bb.isDirect());
+    Assert.assertEquals((byte) 3, bb.get(0));
+    Assert.assertEquals(1000, bb.limit());
+  }
+
+  @Test
+  public void testEject() {
+    ChunkCache cache = new ChunkCache("test", 100 * 1000, false);
+    cache.put("file1", 1, 0, makeChunk(1000, 0));
+    cache.put("file2", 1, 0, makeChunk(1000, 0));
+    cache.eject("file1");
+    Assert.assertNull(cache.get("file1", 1, 0));
+    Assert.assertNotNull(cache.get("file2", 1, 0));
+    Assert.assertEquals(1, cache.getCount());
+
+    cache.clearCache();
+    Assert.assertEquals(0, cache.getCount());
+    Assert.assertEquals(0, cache.getBytes());
+  }
+}
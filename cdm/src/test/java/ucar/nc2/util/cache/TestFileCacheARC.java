@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.util.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.util.CancelTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test FileCacheARC, using FileCacheable objects that only count opens and closes.
+ */
+public class TestFileCacheARC {
+
+  static private class MockFile implements FileCacheable {
+    final String location;
+    final MockFactory factory;
+    volatile long lastModified;
+    volatile boolean closed;
+    FileCacheIF cache;
+
+    MockFile(String location, MockFactory factory) {
+      this.location = location;
+      this.factory = factory;
+    }
+
+    @Override
+    public String getLocation() {
+      return location;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (cache != null && cache.release(this)) return;
+      Assert.assertFalse("closed twice " + location, closed);
+      closed = true;
+      factory.closes.incrementAndGet();
+    }
+
+    @Override
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    @Override
+    public synchronized void setFileCache(FileCacheIF fileCache) {
+      this.cache = fileCache;
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public void reacquire() {
+      Assert.assertFalse("reacquire closed file " + location, closed);
+    }
+  }
+
+  static private class MockFactory implements FileFactory {
+    final AtomicInteger opens = new AtomicInteger();
+    final AtomicInteger closes = new AtomicInteger();
+
+    @Override
+    public FileCacheable open(DatasetUrl location, int buffer_size, CancelTask cancelTask, Object iospMessage) {
+      opens.incrementAndGet();
+      return new MockFile(location.trueurl, this);
+    }
+  }
+
+  static private DatasetUrl url(String location) {
+    return new DatasetUrl(null, location);
+  }
+
+  private MockFile use(FileCacheIF cache, MockFactory factory, String location) throws IOException {
+    MockFile file = (MockFile) cache.acquire(factory, url(location));
+    Assert.assertFalse(file.closed);
+    file.close();
+    return file;
+  }
+
+  @Test
+  public void testHitAndMiss() throws IOException {
+    MockFactory factory = new MockFactory();
+    FileCacheARC cache = new FileCacheARC("test", 10);
+
+    MockFile file1 = use(cache, factory, "file1");
+    Assert.assertFalse(file1.closed); // released to the cache
+    Assert.assertSame(file1, use(cache, factory, "file1"));
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+
+    // a locked file is not shared
+    MockFile locked = (MockFile) cache.acquire(factory, url("file1"));
+    MockFile another = (MockFile) cache.acquire(factory, url("file1"));
+    Assert.assertNotSame(locked, another);
+    locked.close();
+    another.close();
+    Assert.assertEquals(2, cache.getFileCount());
+    Assert.assertEquals(2, factory.opens.get());
+
+    // a changed file is discarded, and the file is opened again
+    Assert.assertSame(file1, locked);
+    locked.lastModified = 99;
+    MockFile file = use(cache, factory, "file1");
+    Assert.assertNotSame(locked, file);
+    Assert.assertTrue(locked.closed);
+    Assert.assertEquals(3, factory.opens.get());
+    Assert.assertEquals(2, cache.getFileCount());
+
+    cache.showCache(new Formatter(System.out));
+  }
+
+  @Test
+  public void testFileLimit() throws IOException {
+    MockFactory factory = new MockFactory();
+    FileCacheARC cache = new FileCacheARC("test", 10);
+    for (int i = 0; i < 25; i++)
+      use(cache, factory, "file" + i);
+
+    Assert.assertEquals(10, cache.getFileCount());
+    Assert.assertEquals(15, cache.getEvictions());
+    Assert.assertEquals(15, factory.closes.get());
+    Assert.assertEquals(10, cache.showCache().size());
+
+    // locked files are never closed, so the limit may be exceeded
+    List<MockFile> inUse = new ArrayList<>();
+    for (int i = 100; i < 115; i++)
+      inUse.add((MockFile) cache.acquire(factory, url("file" + i)));
+    Assert.assertEquals(15, cache.getFileCount());
+    for (MockFile f : inUse)
+      Assert.assertFalse(f.closed);
+
+    // once released, they are closed to get back under the limit
+    for (MockFile f : inUse)
+      f.close();
+    Assert.assertEquals(10, cache.getFileCount());
+  }
+
+  @Test
+  public void testByteLimit() throws IOException {
+    MockFactory factory = new MockFactory();
+    FileCacheARC cache = new FileCacheARC("test", 100, 5500, f -> 1000);
+    for (int i = 0; i < 20; i++)
+      use(cache, factory, "file" + i);
+
+    Assert.assertEquals(5, cache.getFileCount());
+    Assert.assertEquals(5000, cache.getBytes());
+    Assert.assertEquals(15, cache.getEvictions());
+  }
+
+  @Test
+  public void testScanResistance() throws IOException {
+    MockFactory factory = new MockFactory();
+    FileCacheARC cache = new FileCacheARC("test", 10);
+
+    // hot files, used twice
+    for (int i = 0; i < 4; i++) {
+      use(cache, factory, "hot" + i);
+      use(cache, factory, "hot" + i);
+    }
+
+    // a scan through many files used once
+    for (int i = 0; i < 50; i++)
+      use(cache, factory, "scan" + i);
+
+    int opens = factory.opens.get();
+    for (int i = 0; i < 4; i++)
+      use(cache, factory, "hot" + i);
+    Assert.assertEquals(opens, factory.opens.get());
+
+    cache.showStats(new Formatter(System.out));
+  }
+
+  @Test
+  public void testEjectAndClear() throws IOException {
+    MockFactory factory = new MockFactory();
+    FileCacheARC cache = new FileCacheARC("test", 10);
+    MockFile file1 = use(cache, factory, "file1");
+    MockFile file2 = use(cache, factory, "file2");
+    MockFile locked = (MockFile) cache.acquire(factory, url("file3"));
+
+    cache.eject("file1");
+    Assert.assertTrue(file1.closed);
+    Assert.assertNotSame(file1, use(cache, factory, "file1"));
+
+    cache.clearCache(false);
+    Assert.assertTrue(file2.closed);
+    Assert.assertFalse(locked.closed);
+    Assert.assertEquals(1, cache.getFileCount());
+
+    locked.close();
+    Assert.assertFalse(locked.closed); // back in the cache
+    cache.disable();
+    Assert.assertTrue(locked.closed);
+    Assert.assertEquals(0, cache.getFileCount());
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    final MockFactory factory = new MockFactory();
+    final FileCacheARC cache = new FileCacheARC("test", 20);
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < 32; t++) {
+        final long seed = t;
+        results.add(pool.submit(() -> {
+          Random r = new Random(seed);
+          for (int i = 0; i < 2000; i++) {
+            // a few hot files, and many cold ones
+            String location = r.nextBoolean() ? "hot" + r.nextInt(10) : "cold" + r.nextInt(500);
+            use(cache, factory, location);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : results)
+        f.get(); // rethrows any assertion failure
+
+    } finally {
+      pool.shutdown();
+    }
+
+    Assert.assertEquals(32 * 2000, cache.getHits() + cache.getMisses());
+    Assert.assertEquals(factory.opens.get(), cache.getMisses());
+    Assert.assertTrue(cache.getFileCount() <= 20);
+    Assert.assertEquals(factory.opens.get() - factory.closes.get(), cache.getFileCount());
+    cache.showStats(new Formatter(System.out));
+
+    cache.clearCache(true);
+    Assert.assertEquals(factory.opens.get(), factory.closes.get());
+  }
+}
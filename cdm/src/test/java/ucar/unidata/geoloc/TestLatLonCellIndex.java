@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.geoloc;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.ArrayDouble;
+
+import java.util.Random;
+
+/**
+ * Compare LatLonCellIndex to a brute force search, on a rotated and sheared curvilinear grid.
+ */
+public class TestLatLonCellIndex {
+  private static final int NROWS = 80, NCOLS = 120;
+
+  private final ArrayDouble.D2 latEdge = new ArrayDouble.D2(NROWS + 1, NCOLS + 1);
+  private final ArrayDouble.D2 lonEdge = new ArrayDouble.D2(NROWS + 1, NCOLS + 1);
+
+  public TestLatLonCellIndex() {
+    double angle = Math.toRadians(30);
+    for (int row = 0; row <= NROWS; row++) {
+      for (int col = 0; col <= NCOLS; col++) {
+        double x = col * 0.1 + 0.0005 * row * row;
+        double y = row * 0.07;
+        lonEdge.set(row, col, -70 + x * Math.cos(angle) - y * Math.sin(angle));
+        latEdge.set(row, col, 35 + x * Math.sin(angle) + y * Math.cos(angle));
+      }
+    }
+  }
+
+  @Test
+  public void testContaining() {
+    LatLonCellIndex index = new LatLonCellIndex(latEdge, lonEdge);
+    Random r = new Random(17);
+    int[] got = new int[2];
+    int[] want = new int[2];
+    int found = 0;
+    for (int i = 0; i < 2000; i++) {
+      double lat = 33 + 10 * r.nextDouble();
+      double lon = -75 + 15 * r.nextDouble();
+      boolean ok = bruteContaining(lat, lon, want);
+      Assert.assertEquals(lat + " " + lon, ok, index.findContaining(lat, lon, got));
+      if (ok) {
+        Assert.assertArrayEquals(lat + " " + lon, want, got);
+        found++;
+      }
+    }
+    Assert.assertTrue(found > 100);
+  }
+
+  @Test
+  public void testNearest() {
+    LatLonCellIndex index = new LatLonCellIndex(latEdge, lonEdge);
+    Random r = new Random(18);
+    int[] got = new int[2];
+    for (int i = 0; i < 500; i++) {
+      double lat = 30 + 20 * r.nextDouble(); // many are outside of the grid
+      double lon = -80 + 25 * r.nextDouble();
+      Assert.assertTrue(index.findNearest(lat, lon, got));
+      Assert.assertEquals(lat + " " + lon, bruteNearest(lat, lon), distance2(lat, lon, got[0], got[1]), 0.0);
+    }
+  }
+
+  @Test
+  public void testMissing() {
+    for (int row = 10; row < 20; row++)
+      for (int col = 0; col <= NCOLS; col++)
+        latEdge.set(row, col, Double.NaN);
+
+    LatLonCellIndex index = new LatLonCellIndex(latEdge, lonEdge);
+    Random r = new Random(19);
+    int[] got = new int[2];
+    int[] want = new int[2];
+    for (int i = 0; i < 1000; i++) {
+      double lat = 33 + 10 * r.nextDouble();
+      double lon = -75 + 15 * r.nextDouble();
+      boolean ok = index.findContaining(lat, lon, got);
+      Assert.assertEquals(bruteContaining(lat, lon, want), ok);
+      if (ok) Assert.assertTrue(got[0] < 9 || got[0] >= 20);
+    }
+  }
+
+  @Test
+  public void testFactory() {
+    Object key = new Object();
+    LatLonCellIndex index = LatLonCellIndex.factory(key, () -> new LatLonCellIndex(latEdge, lonEdge));
+    Assert.assertSame(index, LatLonCellIndex.factory(key, () -> {
+      throw new IllegalStateException("should be cached");
+    }));
+  }
+
+  private boolean bruteContaining(double lat, double lon, int[] result) {
+    for (int row = 0; row < NROWS; row++) {
+      for (int col = 0; col < NCOLS; col++) {
+        if (contains(lat, lon, row, col)) {
+          result[0] = row;
+          result[1] = col;
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private double bruteNearest(double lat, double lon) {
+    double best = Double.MAX_VALUE;
+    for (int row = 0; row < NROWS; row++)
+      for (int col = 0; col < NCOLS; col++)
+        best = Math.min(best, distance2(lat, lon, row, col));
+    return best;
+  }
+
+  private double distance2(double lat, double lon, int row, int col) {
+    double clat = (latEdge.get(row, col) + latEdge.get(row, col + 1) + latEdge.get(row + 1, col + 1) + latEdge.get(row + 1, col)) / 4;
+    double clon = (lonEdge.get(row, col) + lonEdge.get(row, col + 1) + lonEdge.get(row + 1, col + 1) + lonEdge.get(row + 1, col)) / 4;
+    return (lat - clat) * (lat - clat) + (lon - clon) * (lon - clon);
+  }
+
+  private boolean contains(double lat, double lon, int row, int col) {
+    double[] x = {lonEdge.get(row, col), lonEdge.get(row, col + 1), lonEdge.get(row + 1, col + 1), lonEdge.get(row + 1, col)};
+    double[] y = {latEdge.get(row, col), latEdge.get(row, col + 1), latEdge.get(row + 1, col + 1), latEdge.get(row + 1, col)};
+    Boolean sign = null;
+    for (int k = 0; k < 4; k++) {
+      int k1 = (k + 1) % 4;
+      double det = (x[k1] - x[k]) * (lat - y[k]) - (y[k1] - y[k]) * (lon - x[k]);
+      if (Double.isNaN(det)) return false;
+      if (sign == null) sign = det > 0;
+      else if (sign != (det > 0)) return false;
+    }
+    return true;
+  }
+}
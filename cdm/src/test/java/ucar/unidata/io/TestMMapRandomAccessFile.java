@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test MMapRandomAccessFile against RandomAccessFile, using small segments so that reads cross segment boundaries.
+ */
+public class TestMMapRandomAccessFile {
+  private static final int SIZE = 10 * 1000 + 3;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File makeFile() throws IOException {
+    byte[] data = new byte[SIZE];
+    new Random(17).nextBytes(data);
+    File file = tempFolder.newFile();
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+    return file;
+  }
+
+  @Test
+  public void testSameAsRandomAccessFile() throws IOException {
+    File file = makeFile();
+    for (int endian : new int[] {RandomAccessFile.BIG_ENDIAN, RandomAccessFile.LITTLE_ENDIAN}) {
+      try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r");
+           RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), 1000)) {
+        raf.order(endian);
+        mmap.order(endian);
+        Assert.assertEquals(raf.length(), mmap.length());
+
+        for (long pos = 0; pos < SIZE - 800; pos += 333) {
+          raf.seek(pos);
+          mmap.seek(pos);
+          Assert.assertEquals(raf.readShort(), mmap.readShort());
+          Assert.assertEquals(raf.readInt(), mmap.readInt());
+          Assert.assertEquals(raf.readLong(), mmap.readLong());
+          Assert.assertEquals(raf.readDouble(), mmap.readDouble(), 0.0);
+          Assert.assertEquals(raf.read(), mmap.read());
+
+          short[] s1 = new short[50], s2 = new short[50];
+          raf.readShort(s1, 1, 49);
+          mmap.readShort(s2, 1, 49);
+          Assert.assertArrayEquals(s1, s2);
+
+          int[] i1 = new int[50], i2 = new int[50];
+          raf.readInt(i1, 0, 50);
+          mmap.readInt(i2, 0, 50);
+          Assert.assertArrayEquals(i1, i2);
+
+          float[] f1 = new float[50], f2 = new float[50];
+          raf.readFloat(f1, 0, 50);
+          mmap.readFloat(f2, 0, 50);
+          Assert.assertArrayEquals(f1, f2, 0.0f);
+
+          double[] d1 = new double[40], d2 = new double[40];
+          raf.readDouble(d1, 0, 40);
+          mmap.readDouble(d2, 0, 40);
+          Assert.assertArrayEquals(d1, d2, 0.0);
+
+          Assert.assertArrayEquals(raf.readBytes(99), mmap.readBytes(99));
+          Assert.assertEquals(raf.getFilePointer(), mmap.getFilePointer());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEndOfFile() throws IOException {
+    File file = makeFile();
+    try (RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), 1000)) {
+      byte[] b = new byte[100];
+      mmap.seek(SIZE - 10);
+      Assert.assertEquals(10, mmap.read(b));
+      Assert.assertEquals(-1, mmap.read(b));
+      Assert.assertEquals(-1, mmap.read());
+      Assert.assertTrue(mmap.isAtEndOfFile());
+
+      mmap.seek(SIZE - 2);
+      try {
+        mmap.readInt();
+        Assert.fail();
+      } catch (EOFException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testSearchForward() throws IOException {
+    File file = makeFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r");
+         RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), 1000)) {
+      raf.seek(SIZE - 7);
+      KMPMatch match = new KMPMatch(raf.readBytes(4));
+      mmap.seek(10);
+      Assert.assertTrue(mmap.searchForward(match, -1));
+      Assert.assertEquals(SIZE - 7, mmap.getFilePointer());
+
+      mmap.seek(10);
+      Assert.assertFalse(mmap.searchForward(match, 1000));
+      Assert.assertEquals(1010, mmap.getFilePointer());
+    }
+  }
+
+  @Test
+  public void testConcurrentReads() throws Exception {
+    File file = makeFile();
+    int[] want = new int[(SIZE - 3) / 4];
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      raf.readInt(want, 0, want.length);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try (RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), 1000)) {
+      mmap.order(RandomAccessFile.BIG_ENDIAN);
+      List<Future<int[]>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {  // all threads map the segments at about the same time
+        results.add(pool.submit(() -> {
+          int[] got = new int[want.length];
+          mmap.readInt(0, got, 0, got.length);
+          return got;
+        }));
+      }
+      for (Future<int[]> result : results)
+        Assert.assertArrayEquals(want, result.get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadAfterClose() throws IOException {
+    File file = makeFile();
+    RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), 1000);
+    mmap.close();
+    mmap.readInt(0, new int[10], 0, 10);
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadOnly() throws IOException {
+    File file = makeFile();
+    try (RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath())) {
+      mmap.write(1);
+    }
+  }
+}
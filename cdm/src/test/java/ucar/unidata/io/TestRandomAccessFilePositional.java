@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test the positional reads of RandomAccessFile and its subclasses, including from many threads at once.
+ */
+public class TestRandomAccessFilePositional {
+  private static final int SIZE = 100 * 1000;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private byte[] data;
+
+  private File makeFile() throws IOException {
+    data = new byte[SIZE];
+    new Random(13).nextBytes(data);
+    File file = tempFolder.newFile();
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+    return file;
+  }
+
+  private List<RandomAccessFile> openAll(File file) throws IOException {
+    List<RandomAccessFile> result = new ArrayList<>();
+    result.add(new RandomAccessFile(file.getPath(), "r"));
+    result.add(new MMapRandomAccessFile(file.getPath(), 10 * 1000));
+    result.add(new InMemoryRandomAccessFile("test", data));
+    return result;
+  }
+
+  @Test
+  public void testSameAsSequential() throws IOException {
+    File file = makeFile();
+    for (RandomAccessFile raf : openAll(file)) {
+      try (RandomAccessFile seq = new RandomAccessFile(file.getPath(), "r")) {
+        for (int endian : new int[] {RandomAccessFile.BIG_ENDIAN, RandomAccessFile.LITTLE_ENDIAN}) {
+          raf.order(endian);
+          seq.order(endian);
+          raf.seek(7);
+
+          for (long pos = 0; pos < SIZE - 1000; pos += 9999) {
+            seq.seek(pos);
+            int[] i1 = new int[100], i2 = new int[100];
+            seq.readInt(i1, 0, 100);
+            raf.readInt(pos, i2, 0, 100);
+            Assert.assertArrayEquals(i1, i2);
+
+            seq.seek(pos);
+            double[] d1 = new double[100], d2 = new double[100];
+            seq.readDouble(d1, 0, 100);
+            raf.readDouble(pos, d2, 0, 100);
+            Assert.assertArrayEquals(d1, d2, 0.0);
+
+            seq.seek(pos + 1);
+            short[] s1 = new short[100], s2 = new short[100];
+            seq.readShort(s1, 0, 100);
+            raf.readShort(pos + 1, s2, 0, 100);
+            Assert.assertArrayEquals(s1, s2);
+
+            byte[] b = new byte[333];
+            raf.readFully(pos, b, 0, b.length);
+            for (int i = 0; i < b.length; i++)
+              Assert.assertEquals(data[(int) pos + i], b[i]);
+          }
+
+          // file position is not changed
+          Assert.assertEquals(7, raf.getFilePointer());
+        }
+      }
+      raf.close();
+    }
+  }
+
+  @Test
+  public void testEndOfFile() throws IOException {
+    File file = makeFile();
+    for (RandomAccessFile raf : openAll(file)) {
+      ByteBuffer bb = ByteBuffer.allocate(10);
+      raf.readFully(SIZE - 10, bb);
+      Assert.assertEquals(0, bb.remaining());
+
+      try {
+        raf.readInt(SIZE - 8, new int[3], 0, 3);
+        Assert.fail();
+      } catch (EOFException e) {
+        // expected
+      }
+      raf.close();
+    }
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    File file = makeFile();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      for (final RandomAccessFile raf : openAll(file)) {
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+          final long seed = t;
+          results.add(pool.submit(() -> {
+            Random r = new Random(seed);
+            byte[] b = new byte[1000];
+            for (int i = 0; i < 200; i++) {
+              int pos = r.nextInt(SIZE - b.length);
+              raf.readFully(pos, b, 0, b.length);
+              for (int j = 0; j < b.length; j++)
+                if (b[j] != data[pos + j]) return false;
+            }
+            return true;
+          }));
+        }
+        for (Future<Boolean> f : results)
+          Assert.assertTrue(raf.getClass().getName(), f.get());
+        raf.close();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSeesUnflushedWrites() throws IOException {
+    File file = tempFolder.newFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "rw")) {
+      raf.order(RandomAccessFile.BIG_ENDIAN); // writes are always big endian
+      raf.writeInt(42);
+      raf.writeInt(43);
+      int[] result = new int[2];
+      raf.readInt(0, result, 0, 2);
+      Assert.assertArrayEquals(new int[] {42, 43}, result);
+    }
+  }
+}
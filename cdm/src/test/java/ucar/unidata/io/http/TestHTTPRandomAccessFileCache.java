@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ucar.nc2.util.cache.ChunkCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reading through the block cache gives the same bytes as reading from the server, with fewer requests.
+ */
+public class TestHTTPRandomAccessFileCache {
+  static private final int BS = HTTPRandomAccessFile.cacheBlockSize;
+  static private final Pattern range = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  static private HttpServer server;
+  static private volatile byte[] contents;
+  static private volatile String etag;
+  static private final AtomicInteger gets = new AtomicInteger();
+
+  // serves the contents, with byte ranges, an ETag and If-Range
+  @BeforeClass
+  static public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/data.bin", TestHTTPRandomAccessFileCache::handle);
+    server.start();
+  }
+
+  @AfterClass
+  static public void stopServer() {
+    server.stop(0);
+  }
+
+  static private void handle(HttpExchange exchange) throws IOException {
+    byte[] data = contents;
+    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+    exchange.getResponseHeaders().add("ETag", etag);
+    exchange.getResponseHeaders().add("Connection", "close");
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.getResponseHeaders().add("Content-Length", Integer.toString(data.length));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+      return;
+    }
+
+    gets.incrementAndGet();
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    if (ifRange != null && !ifRange.equals(etag)) {
+      exchange.sendResponseHeaders(200, data.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(data);
+      }
+      return;
+    }
+
+    Matcher m = range.matcher(exchange.getRequestHeaders().getFirst("Range"));
+    Assert.assertTrue(m.matches());
+    int start = Integer.parseInt(m.group(1));
+    int end = Math.min(Integer.parseInt(m.group(2)), data.length - 1);
+    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+    exchange.sendResponseHeaders(206, end - start + 1);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(data, start, end - start + 1);
+    }
+  }
+
+  private String url;
+
+  @Before
+  public void setup() {
+    contents = makeContents(11 * 1000 * 1000 + 123, 17); // bigger than maxHTTPBufferSize
+    etag = "\"v1\"";
+    url = "http://localhost:" + server.getAddress().getPort() + "/data.bin";
+    gets.set(0);
+    HTTPRandomAccessFile.setBlockCache(new ChunkCache("test", 100 * 1000 * 1000, false));
+  }
+
+  @After
+  public void reset() {
+    HTTPRandomAccessFile.setBlockCache(null);
+    HTTPRandomAccessFile.setMaxReadAhead(16);
+    HTTPRandomAccessFile.setParallelism(1);
+  }
+
+  static private byte[] makeContents(int size, long seed) {
+    byte[] result = new byte[size];
+    new Random(seed).nextBytes(result);
+    return result;
+  }
+
+  private void check(HTTPRandomAccessFile raf, long pos, int len) throws IOException {
+    byte[] got = new byte[len];
+    raf.readFully(pos, got, 0, len);
+    Assert.assertArrayEquals("at " + pos, Arrays.copyOfRange(contents, (int) pos, (int) pos + len), got);
+  }
+
+  @Test
+  public void testCached() throws IOException {
+    int n = contents.length;
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 100);
+      check(raf, BS - 10, 20);            // across blocks
+      check(raf, 5 * BS + 7, 3 * BS);     // several blocks
+      check(raf, n - 50, 50);             // the short last block
+      raf.seek(n / 2);                    // through the buffer
+      byte[] b = new byte[1000];
+      raf.readFully(b);
+      Assert.assertArrayEquals(Arrays.copyOfRange(contents, n / 2, n / 2 + 1000), b);
+    }
+
+    // another file on the same url is read from the cache
+    gets.set(0);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 100);
+      check(raf, 6 * BS, BS);
+      check(raf, n - 50, 50);
+    }
+    Assert.assertEquals(0, gets.get());
+
+    // until the file changes
+    contents = makeContents(contents.length, 99);
+    etag = "\"v2\"";
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 100);
+    }
+    Assert.assertEquals(1, gets.get());
+  }
+
+  @Test
+  public void testReadAhead() throws IOException {
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      for (int i = 0; i < 64; i++)
+        check(raf, i * BS, BS);
+    }
+    Assert.assertTrue("gets = " + gets.get(), gets.get() < 10);
+
+    gets.set(0);
+    HTTPRandomAccessFile.setMaxReadAhead(0);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      for (int i = 100; i < 110; i++)
+        check(raf, i * BS, BS);
+    }
+    Assert.assertEquals(10, gets.get());
+  }
+
+  @Test
+  public void testParallel() throws IOException {
+    HTTPRandomAccessFile.setParallelism(3);
+    HTTPRandomAccessFile.setMaxReadAhead(0);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      for (int i = 0; i < 20; i += 2)
+        check(raf, i * BS, 10);
+      gets.set(0);
+      check(raf, 3, 20 * BS); // blocks 1, 3, .. 19 and 20 are missing
+    }
+    Assert.assertEquals(10, gets.get());
+  }
+
+  @Test
+  public void testChanged() throws IOException {
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 100);
+
+      // the new version is not mixed with the old one
+      contents = makeContents(contents.length, 99);
+      etag = "\"v2\"";
+      try {
+        check(raf, 10 * BS, 100);
+        Assert.fail("read a changed file");
+      } catch (IOException e) {
+        Assert.assertTrue(e.getMessage(), e.getMessage().contains("changed"));
+      }
+      Assert.assertNull(HTTPRandomAccessFile.getBlockCache().get(url + " \"v1\"", 0, 10 * BS));
+    }
+
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 10 * BS, 100);
+    }
+  }
+
+  @Test
+  public void testSetParallelism() throws Exception {
+    HTTPRandomAccessFile.setMaxReadAhead(0);
+    AtomicBoolean done = new AtomicBoolean();
+    Thread changer = new Thread(() -> {
+      for (int n = 2; !done.get(); n = 5 - n)
+        HTTPRandomAccessFile.setParallelism(n);
+    });
+    changer.start();
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      for (int i = 0; i < 40; i++) {
+        HTTPRandomAccessFile.getBlockCache().clearCache();
+        check(raf, 2 * BS, 10);
+        check(raf, 4 * BS, 10);
+        check(raf, 0, 6 * BS); // blocks 0, 1, 3 and 5 are missing
+      }
+    } finally {
+      done.set(true);
+      changer.join();
+    }
+  }
+}
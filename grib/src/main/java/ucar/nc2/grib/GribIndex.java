@@ -10,10 +10,18 @@ import thredds.inventory.CollectionUpdateType;
 import thredds.inventory.MFile;
 import ucar.nc2.grib.grib1.Grib1Index;
 import ucar.nc2.grib.grib2.Grib2Index;
+import ucar.unidata.io.MMapRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Abstract superclass for Grib1Index and Grib2Index.
@@ -28,6 +36,74 @@ public abstract class GribIndex {
   public static final String GBX9_IDX = ".gbx9";
   public static final boolean debug = false;
 
+  // number of threads used to read or create the indexes of a collection's files; <= 1 means one at a time
+  private static int parallelism = 1;
+  private static ExecutorService executor;
+  // scan data files through a memory mapping when making an index
+  private static boolean memoryMapScan = true;
+
+  /**
+   * Set the number of threads used to read or create the gbx9 indexes of the files of a collection,
+   * see readOrCreateIndexes(). The threads are shared by all collections.
+   *
+   * @param n number of threads; <= 1 means use the calling thread only (default)
+   */
+  public static synchronized void setParallelism(int n) {
+    n = Math.max(n, 1);
+    if (n == parallelism) return;
+    shutdown();
+    parallelism = n;
+  }
+
+  public static synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Stop the threads, letting running tasks complete. They are started again if needed.
+   */
+  public static synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread t = new Thread(r, "GribIndex");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Whether makeIndex() reads a local data file through a memory mapping, rather than a buffered RandomAccessFile.
+   * Scanning a file makes many small reads, which are much cheaper from a mapping.
+   * On Windows, a mapped file cannot be deleted until the mapping is garbage collected.
+   *
+   * @param b true to map the file (default)
+   */
+  public static void setMemoryMapScan(boolean b) {
+    memoryMapScan = b;
+  }
+
+  /**
+   * Open a data file for makeIndex().
+   *
+   * @param location location of the data file
+   * @return open file, which the caller must close
+   * @throws IOException on open error
+   */
+  protected static RandomAccessFile openForScan(String location) throws IOException {
+    if (memoryMapScan && new File(location).isFile())
+      return new MMapRandomAccessFile(location);
+    return RandomAccessFile.acquire(location);
+  }
+
   private static final CollectionManager.ChangeChecker gribCC = new CollectionManager.ChangeChecker() {
     public boolean hasChangedSince(MFile file, long when) {
       String idxPath = file.getPath();
@@ -92,6 +168,119 @@ public abstract class GribIndex {
     return index;
   }
 
+  /**
+   * The gbx9 index of one file of a collection, from readOrCreateIndexes().
+   */
+  public static class IndexedFile {
+    private final MFile mfile;
+    private final GribIndex index;
+    private final Throwable failure;
+
+    private IndexedFile(MFile mfile, GribIndex index, Throwable failure) {
+      this.mfile = mfile;
+      this.index = index;
+      this.failure = failure;
+    }
+
+    public MFile getMFile() {
+      return mfile;
+    }
+
+    /**
+     * @return the index, or null if there is none
+     * @throws IOException if reading or creating the index failed
+     */
+    public GribIndex getIndex() throws IOException {
+      if (failure instanceof IOException) throw (IOException) failure;
+      if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+      if (failure instanceof Error) throw (Error) failure;
+      if (failure != null) throw new IOException(failure);
+      return index;
+    }
+  }
+
+  /**
+   * Read or create the gbx9 indexes of a sequence of files, as readOrCreateIndexFromSingleFile() does.
+   * The indexes are returned in the order of the files.
+   * If getParallelism() is greater than 1, the indexes of the files following the current one are read or created on
+   * other threads, at most 2 * getParallelism() files ahead.
+   *
+   * @param isGrib1 true if grib1
+   * @param files the grib files
+   * @param openOnly only open existing indexes, do not create them (see GribIndex.open())
+   * @param force  force writing index
+   * @return iterator over the indexes of the files
+   */
+  public static Iterator<IndexedFile> readOrCreateIndexes(boolean isGrib1, Iterator<MFile> files, boolean openOnly,
+                                                          CollectionUpdateType force, org.slf4j.Logger logger) {
+    final int nthreads = getParallelism();
+
+    return new Iterator<IndexedFile>() {
+      private final ArrayDeque<Future<IndexedFile>> ahead = new ArrayDeque<>();
+      private MFile pending; // taken from files, not yet started
+      private boolean noMoreFiles;
+
+      // MFileIterator moves on in hasNext(), so call it once for each file
+      private MFile peekFile() {
+        if (pending == null && !noMoreFiles) {
+          if (files.hasNext()) pending = files.next();
+          else noMoreFiles = true;
+        }
+        return pending;
+      }
+
+      private MFile takeFile() {
+        MFile mfile = peekFile();
+        pending = null;
+        return mfile;
+      }
+
+      private IndexedFile readOrCreate(MFile mfile) {
+        try {
+          GribIndex index = openOnly ? open(isGrib1, mfile) : readOrCreateIndexFromSingleFile(isGrib1, mfile, force, logger);
+          return new IndexedFile(mfile, index, null);
+        } catch (Throwable t) {
+          return new IndexedFile(mfile, null, t);
+        }
+      }
+
+      private void fillAhead() {
+        while (ahead.size() < 2 * nthreads && peekFile() != null) {
+          MFile mfile = takeFile();
+          ahead.add(getExecutor().submit(() -> readOrCreate(mfile)));
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return !ahead.isEmpty() || peekFile() != null;
+      }
+
+      @Override
+      public IndexedFile next() {
+        if (nthreads <= 1) {
+          MFile mfile = takeFile();
+          if (mfile == null) throw new NoSuchElementException();
+          return readOrCreate(mfile);
+        }
+
+        fillAhead();
+        Future<IndexedFile> future = ahead.poll();
+        if (future == null) throw new NoSuchElementException();
+        fillAhead();
+
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+          throw new RuntimeException(e.getCause()); // readOrCreate() does not throw
+        }
+      }
+    };
+  }
+
   //////////////////////////////////////////
 
   /**
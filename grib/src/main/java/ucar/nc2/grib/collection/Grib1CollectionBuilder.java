@@ -64,17 +64,15 @@ public class Grib1CollectionBuilder extends GribCollectionBuilder {
       if (iter == null)
         return new ArrayList<>(); // empty
 
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
+      // here is where gbx9 files get recreated, possibly several at once
+      Iterator<GribIndex.IndexedFile> indexes = GribIndex.readOrCreateIndexes(true, iter, Grib.debugGbxIndexOnly, CollectionUpdateType.test, logger);
+      while (indexes.hasNext()) {
+        GribIndex.IndexedFile indexed = indexes.next();
+        MFile mfile = indexed.getMFile();
         Grib1Index index;
         try {
-          if (Grib.debugGbxIndexOnly) {
-            index = (Grib1Index) GribIndex.open(true, mfile);
-            if (index == null) continue;
-          } else {
-            // here is where gbx9 files get recreated
-            index = (Grib1Index) GribIndex.readOrCreateIndexFromSingleFile(true, mfile, CollectionUpdateType.test, logger);
-          }
+          index = (Grib1Index) indexed.getIndex();
+          if (Grib.debugGbxIndexOnly && index == null) continue;
           allFiles.add(mfile);  // add on success
 
         } catch (IOException ioe) {
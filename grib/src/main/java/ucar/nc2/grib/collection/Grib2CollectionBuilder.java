@@ -65,17 +65,15 @@ class Grib2CollectionBuilder extends GribCollectionBuilder {
       if (iter == null)
         return new ArrayList<>(); // empty
 
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
+      // this is where gbx9 files get recreated, possibly several at once
+      Iterator<GribIndex.IndexedFile> indexes = GribIndex.readOrCreateIndexes(false, iter, Grib.debugGbxIndexOnly, CollectionUpdateType.test, logger);
+      while (indexes.hasNext()) {
+        GribIndex.IndexedFile indexed = indexes.next();
+        MFile mfile = indexed.getMFile();
         Grib2Index index;
 
         try {
-          if (Grib.debugGbxIndexOnly) {
-             index = (Grib2Index) GribIndex.open(false, mfile);
-           } else {
-             // this is where gbx9 files get recreated
-             index = (Grib2Index) GribIndex.readOrCreateIndexFromSingleFile(false, mfile, CollectionUpdateType.test, logger);
-           }
+          index = (Grib2Index) indexed.getIndex();
           allFiles.add(mfile);  // add on success
 
         } catch (IOException ioe) {
@@ -1067,7 +1067,8 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       throw new FileNotFoundException("data file not found = " + dataFile.getPath());
     }
 
-    RandomAccessFile want = RandomAccessFile.acquire(dataFile.getPath());
+    RandomAccessFile want = config.gribConfig.memoryMap ? RandomAccessFile.acquireMemoryMapped(dataFile.getPath())
+            : RandomAccessFile.acquire(dataFile.getPath());
     want.order(RandomAccessFile.BIG_ENDIAN);
     return want;
   }
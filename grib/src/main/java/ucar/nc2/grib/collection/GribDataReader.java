@@ -28,10 +28,19 @@ import ucar.unidata.io.RandomAccessFile;
 import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * Grib Data Reader.
  * Split from GribIosp, so can be used by GribCoverage.
+ * <p>
+ * Optionally, when a request touches many records, they may be read concurrently (see setParallelism()).
+ * The records are split into tasks that each read from a single file, and the decoded data that is waiting to be
+ * added to the result is limited to a maximum number of bytes.
  *
  * @author caron
  * @since 4/6/11
@@ -57,6 +66,72 @@ public abstract class GribDataReader {
   static public String currentDataRafFilename;
   static boolean show = false;   // debug
 
+  // number of threads used to read records; <= 1 means read them serially on the calling thread
+  static private int parallelism = 1;
+  static private ExecutorService executor;
+  // limit on the decoded data held by the reading threads at one time
+  static private long maxBytesInFlight = 128 * 1000 * 1000;
+  static private Semaphore bytesInFlight;
+
+  /**
+   * Set the number of threads used to read the records of one request concurrently.
+   *
+   * @param n number of threads; <= 1 means use the calling thread only (default)
+   */
+  static public synchronized void setParallelism(int n) {
+    n = Math.max(n, 1);
+    if (n == parallelism) return;
+    shutdown();
+    parallelism = n;
+  }
+
+  static public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Stop the threads, letting running tasks complete. They are started again if needed.
+   */
+  static public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Set the maximum number of bytes of decoded data held at one time by the threads reading concurrently.
+   * This is shared by all requests. A single record larger than this is still read, one at a time.
+   *
+   * @param maxBytes maximum bytes; default is 128 Mbytes
+   */
+  static public synchronized void setMaxBytesInFlight(long maxBytes) {
+    maxBytesInFlight = Math.max(maxBytes, 1);
+    bytesInFlight = null;
+  }
+
+  static private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism, r -> {
+        Thread t = new Thread(r, "GribDataReader");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  // Semaphore permits are ints, so the budget is counted in Kbytes
+  static private synchronized Semaphore getBytesInFlight() {
+    if (bytesInFlight == null)
+      bytesInFlight = new Semaphore(budgetKbytes());
+    return bytesInFlight;
+  }
+
+  static private int budgetKbytes() {
+    return (int) Math.min(Integer.MAX_VALUE, Math.max(maxBytesInFlight / 1000, 1));
+  }
+
   protected final GribCollectionImmutable gribCollection;
   private final GribCollectionImmutable.VariableIndex vindex;
   private List<DataRecord> records = new ArrayList<>();
@@ -241,6 +316,25 @@ public abstract class GribDataReader {
   private void read(DataReceiverIF dataReceiver) throws IOException {
     Collections.sort(records);
 
+    if (useConcurrentRead()) {
+      List<RecordTask> tasks = new ArrayList<>();
+      List<DataRecord> sameFile = new ArrayList<>();
+      int currFile = -1;
+      for (DataRecord dr : records) {
+        if (dr.record.pos == GribCollectionMutable.MISSING_RECORD) continue;
+        if (dr.record.fileno != currFile && !sameFile.isEmpty()) {
+          addTasks(tasks, sameFile);
+          sameFile = new ArrayList<>();
+        }
+        currFile = dr.record.fileno;
+        sameFile.add(dr);
+      }
+      if (!sameFile.isEmpty())
+        addTasks(tasks, sameFile);
+      readConcurrently(tasks, dataReceiver);
+      return;
+    }
+
     int currFile = -1;
     RandomAccessFile rafData = null;
     try {
@@ -288,6 +382,26 @@ public abstract class GribDataReader {
   private void readPartitioned(DataReceiverIF dataReceiver) throws IOException {
     Collections.sort(records);
 
+    if (useConcurrentRead()) {
+      List<RecordTask> tasks = new ArrayList<>();
+      List<DataRecord> sameFile = new ArrayList<>();
+      PartitionCollectionImmutable.DataRecord lastRecord = null;
+      for (DataRecord dr : records) {
+        PartitionCollectionImmutable.DataRecord drp = (PartitionCollectionImmutable.DataRecord) dr;
+        if (dr.record.pos == GribCollectionMutable.MISSING_RECORD) continue;
+        if (!drp.usesSameFile(lastRecord) && !sameFile.isEmpty()) {
+          addTasks(tasks, sameFile);
+          sameFile = new ArrayList<>();
+        }
+        lastRecord = drp;
+        sameFile.add(dr);
+      }
+      if (!sameFile.isEmpty())
+        addTasks(tasks, sameFile);
+      readConcurrently(tasks, dataReceiver);
+      return;
+    }
+
     PartitionCollectionImmutable.DataRecord lastRecord = null;
     RandomAccessFile rafData = null;
     try {
@@ -326,6 +440,98 @@ public abstract class GribDataReader {
     }
   }
 
+  /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // concurrent reading
+
+  // debugging and validation need the records read in order on the calling thread
+  private boolean useConcurrentRead() {
+    if (records.size() < 2 || getParallelism() < 2) return false;
+    return !(Grib.debugIndexOnly || Grib.debugGbxIndexOnly || show || validator != null);
+  }
+
+  // split the records from one file into tasks, so that a long time series in a single file is also spread out
+  private void addTasks(List<RecordTask> tasks, List<DataRecord> sameFile) {
+    int nthreads = getParallelism();
+    int size = Math.max(1, (sameFile.size() + nthreads - 1) / nthreads);
+    for (int start = 0; start < sameFile.size(); start += size) {
+      int end = Math.min(start + size, sameFile.size());
+      tasks.add(new RecordTask(sameFile.subList(start, end)));
+    }
+  }
+
+  private void readConcurrently(List<RecordTask> tasks, DataReceiverIF dataReceiver) throws IOException {
+    ExecutorService exec;
+    Semaphore budget;
+    int budgetKbytes;
+    synchronized (GribDataReader.class) {
+      exec = getExecutor();
+      budget = getBytesInFlight();
+      budgetKbytes = budgetKbytes();
+    }
+    List<Future<Void>> futures = new ArrayList<>(tasks.size());
+    try {
+      for (RecordTask task : tasks)
+        futures.add(exec.submit(() -> task.read(dataReceiver, budget, budgetKbytes)));
+      for (Future<Void> future : futures)
+        future.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("GribDataReader interrupted", e);
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+
+    } finally {
+      for (Future<Void> future : futures)
+        future.cancel(true);
+    }
+  }
+
+  // a run of records from the same file, read with a single RandomAccessFile
+  private class RecordTask {
+    private final List<DataRecord> taskRecords;
+
+    RecordTask(List<DataRecord> taskRecords) {
+      this.taskRecords = taskRecords;
+    }
+
+    private RandomAccessFile open(DataRecord dr) throws IOException {
+      if (dr instanceof PartitionCollectionImmutable.DataRecord) {
+        PartitionCollectionImmutable.DataRecord drp = (PartitionCollectionImmutable.DataRecord) dr;
+        return drp.usePartition.getRaf(drp.partno, dr.record.fileno);
+      }
+      return gribCollection.getDataRaf(dr.record.fileno);
+    }
+
+    Void read(DataReceiverIF dataReceiver, Semaphore budget, int budgetKbytes) throws IOException, InterruptedException {
+      try (RandomAccessFile rafData = open(taskRecords.get(0))) {
+        for (DataRecord dr : taskRecords) {
+          if (Thread.currentThread().isInterrupted())
+            throw new InterruptedException();
+
+          // dont decode more than the budget allows; a record bigger than the whole budget takes all of it
+          int kbytes = (int) Math.min(budgetKbytes, Math.max(1, 4L * dr.hcs.gdsNumberPoints / 1000));
+          budget.acquire(kbytes);
+          try {
+            float[] data = readData(rafData, dr);
+            dataReceiver.addData(data, dr.resultIndex, dr.hcs.nx);
+          } catch (IOException | RuntimeException e) {
+            logger.debug("GribDataReader failed reading {} at pos {}", rafData.getLocation(), dr.record.pos, e);
+            throw e;
+          } finally {
+            budget.release(kbytes);
+          }
+        }
+      }
+      return null;
+    }
+  }
+
   static public class DataRecord implements Comparable<DataRecord> {
     int resultIndex; // index into the result array
     GribCollectionImmutable.Record record;
@@ -353,6 +559,7 @@ public abstract class GribDataReader {
   }
 
   public interface DataReceiverIF {
+    // when reading concurrently, this is called from several threads at once, with different resultIndex
     void addData(float[] data, int resultIndex, int nx) throws IOException;
     void setDataToZero(); // only used when debugging with gbx/ncx only, to fake the data
     Array getArray();
@@ -187,7 +187,7 @@ public class Grib1Index extends GribIndex {
       rootBuilder.setProtoVersion(grib1index_proto_version);
 
       if (dataRaf == null)  { // open if dataRaf not already open
-        raf = RandomAccessFile.acquire(filename);
+        raf = openForScan(filename);
         dataRaf = raf;
       }
 
@@ -213,23 +213,33 @@ public class Grib2DataReader2 {
     //   X2 = scaled encoded value
     //   data[ i ] = (R + ( X1 + X2) * EE)/DD ;
 
-    BitReader reader = new BitReader(raf, startPos+5);
-    if (bitmap == null) {
-      for (int i = 0; i < totalNPoints; i++) {
-        //data[ i ] = (R + ( X1 + X2) * EE)/DD ;
-        data[i] = (R + reader.bits2UInt(nb) * EE) / DD;
-      }
-    } else {
-      for (int i = 0; i < totalNPoints; i++) {
-        if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
-          data[i] = (R + reader.bits2UInt(nb) * EE) / DD;
-        } else {
-          data[i] = staticMissingValue;
-          //data[i] = R / DD;
-        }
+    BitReader reader = readDataSection(raf);
+    int npacked = (bitmap == null) ? totalNPoints : countBitmap();
+    int[] packed = new int[Math.min(npacked, 8192)];
+
+    // when there are fewer possible packed values than points, compute each one just once
+    float[] table = null;
+    if (nb <= 16 && (1 << nb) < npacked) {
+      table = new float[1 << nb];
+      for (int x = 0; x < table.length; x++)
+        table[x] = (R + x * EE) / DD;
+    }
+
+    for (int start = 0; start < npacked; start += packed.length) {
+      int n = Math.min(packed.length, npacked - start);
+      reader.bits2UInt(nb, packed, 0, n);
+      if (table != null) {
+        for (int i = 0; i < n; i++)
+          data[start + i] = table[packed[i]];
+      } else {
+        for (int i = 0; i < n; i++) // unsigned: with 32 bits, a packed value may not fit in an int
+          data[start + i] = (R + (packed[i] & 0xFFFFFFFFL) * EE) / DD;
       }
     }
 
+    if (bitmap != null)
+      applyBitmap(data, npacked, staticMissingValue);
+
     return data;
   }
 
@@ -273,14 +283,13 @@ public class Grib2DataReader2 {
       return nGroups0(bitmapIndicator, ref_val, mv);
     }
 
-    BitReader reader = new BitReader(raf, startPos+5);
+    BitReader reader = readDataSection(raf);
 
     // 6-xx  Get reference values for groups (X1's)
     int[] X1 = new int[NG];
     int nb = gdrs.numberOfBits;
     if (nb != 0) {
-      for (int i = 0; i < NG; i++)
-        X1[i] = (int) reader.bits2UInt(nb);
+      reader.bits2UInt(nb, X1, 0, NG);
     }
 
     // [xx +1 ]-yy Get number of bits used to encode each group
@@ -288,8 +297,7 @@ public class Grib2DataReader2 {
     nb = gdrs.bitsGroupWidths;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++)
-        NB[i] = (int) reader.bits2UInt(nb);
+      reader.bits2UInt(nb, NB, 0, NG);
     }
 
     // [yy +1 ]-zz Get the scaled group lengths using formula
@@ -302,8 +310,9 @@ public class Grib2DataReader2 {
     nb = gdrs.bitsScaledGroupLength;
 
     reader.incrByte();
+    reader.bits2UInt(nb, L, 0, NG);
     for (int i = 0; i < NG; i++)
-      L[i] = ref + (int) reader.bits2UInt(nb) * len_inc;
+      L[i] = ref + L[i] * len_inc;
     L[NG - 1] = gdrs.lengthLastGroup; // enter Length of Last Group
 
 
@@ -319,44 +328,32 @@ public class Grib2DataReader2 {
 //                    X2 = THE SECOND ORDER MINIMA
 //                     E = THE BINARY SCALE FACTOR
 //                     D = THE DECIMAL SCALE FACTOR
+    int[] X2 = new int[maxLength(L)];
     int count = 0;
     reader.incrByte();
     for (int i = 0; i < NG; i++) {
-      for (int j = 0; j < L[i]; j++) {
-        if (NB[i] == 0) {
-          if (mvm == 0) {  // X2 = 0
-            data[count++] = (R + X1[i] * EE) / DD;
-          } else { //if (mvm == 1) || (mvm == 2 )
-            data[count++] = mv;
-          }
-        } else {
-          int X2 = (int) reader.bits2UInt(NB[i]);
-          if (mvm == 0) {
-            data[count++] = (R + (X1[i] + X2) * EE) / DD;
-          } else { //if (mvm == 1) || (mvm == 2 )
-            // X2 is also set to missing value if all bits set to 1's
-            if (X2 == bitsmv1[NB[i]]) {
-              data[count++] = mv;
-            } else {
-              data[count++] = (R + (X1[i] + X2) * EE) / DD;
-            }
-          }
+      int len = L[i];
+      if (len <= 0) continue;
+      if (NB[i] == 0) {
+        // X2 = 0
+        Arrays.fill(data, count, count + len, (mvm == 0) ? (R + X1[i] * EE) / DD : mv);
+      } else {
+        reader.bits2UInt(NB[i], X2, 0, len);
+        if (mvm == 0) {
+          for (int j = 0; j < len; j++)
+            data[count + j] = (R + (X1[i] + X2[j]) * EE) / DD;
+        } else { //if (mvm == 1) || (mvm == 2 )
+          // X2 is also set to missing value if all bits set to 1's
+          int msng = bitsmv1[NB[i]];
+          for (int j = 0; j < len; j++)
+            data[count + j] = (X2[j] == msng) ? mv : (R + (X1[i] + X2[j]) * EE) / DD;
         }
-      }  // end for j
+      }
+      count += len;
     }  // end for i
 
-    if (bitmap != null) {
-      int idx = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
-          tmp[i] = data[idx++];
-        } else {
-          tmp[i] = mv;
-        }
-      }
-      data = tmp;
-    }
+    if (bitmap != null)
+      applyBitmap(data, countBitmap(), mv);
 
     return data;
   }
@@ -451,7 +448,7 @@ public class Grib2DataReader2 {
       return nGroups0(bitmapIndicator, ref_val, mv);
     }
 
-    BitReader reader = new BitReader(raf, startPos+5);
+    BitReader reader = readDataSection(raf);
 
     int ival1 = 0;
     int ival2 = 0;
@@ -494,9 +491,7 @@ public class Grib2DataReader2 {
     int nb = gdrs.numberOfBits;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        X1[i] = (int) reader.bits2UInt(nb);
-      }
+      reader.bits2UInt(nb, X1, 0, NG);
     }
 
     // [xx +1 ]-yy Get number of bits used to encode each group
@@ -505,9 +500,7 @@ public class Grib2DataReader2 {
     nb = gdrs.bitsGroupWidths;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        NB[i] = (int) reader.bits2UInt(nb);
-      }
+      reader.bits2UInt(nb, NB, 0, NG);
     }
 
     int referenceGroupWidths = gdrs.referenceGroupWidths;
@@ -526,9 +519,7 @@ public class Grib2DataReader2 {
 
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        L[i] = (int) reader.bits2UInt(nb);
-      }
+      reader.bits2UInt(nb, L, 0, NG);
     }
 
     int totalL = 0;
@@ -561,7 +552,8 @@ public class Grib2DataReader2 {
       }
     }
 
-   float[] data = new float[totalNPoints];
+    // the scaled integer values, before and after spatial differencing
+    int[] ival = new int[totalNPoints];
 
     // [zz +1 ]-nn get X2 values and calculate the results Y using formula
 //      formula used to create values,  Y * 10**D = R + (X1 + X2) * 2**E
@@ -580,82 +572,73 @@ public class Grib2DataReader2 {
     boolean[] dataBitMap = null;
     if (mvm == 0) {
       for (int i = 0; i < NG; i++) {
+        int len = L[i];
+        if (len <= 0) continue;
         if (NB[i] != 0) {
-          for (int j = 0; j < L[i]; j++)
-            data[count++] = (int) reader.bits2UInt(NB[i]) + X1[i];
+          reader.bits2UInt(NB[i], ival, count, len);
+          for (int j = count; j < count + len; j++)
+            ival[j] += X1[i];
         } else {
-          for (int j = 0; j < L[i]; j++)
-            data[count++] = X1[i];
+          Arrays.fill(ival, count, count + len, X1[i]);
         }
+        count += len;
       }  // end for i
 
     } else if (mvm == 1 || mvm == 2) {
       // don't add missing values into data but keep track of them in dataBitMap
+      // the group is read in place, and the good values are moved down to dataSize, which is never past count
       dataBitMap = new boolean[totalNPoints];
       dataSize = 0;
       for (int i = 0; i < NG; i++) {
+        int len = L[i];
+        if (len <= 0) continue;
         if (NB[i] != 0) {
           int msng1 = bitsmv1[NB[i]];
           int msng2 = msng1 - 1;
-          for (int j = 0; j < L[i]; j++) {
-            data[count] = (int) reader.bits2UInt(NB[i]);
-            if (data[count] == msng1 || mvm == 2 && data[count] == msng2) {
-              dataBitMap[count] = false;
+          reader.bits2UInt(NB[i], ival, count, len);
+          for (int j = count; j < count + len; j++) {
+            int X2 = ival[j];
+            if (X2 == msng1 || mvm == 2 && X2 == msng2) {
+              dataBitMap[j] = false;
             } else {
-              dataBitMap[count] = true;
-              data[dataSize++] = data[count] + X1[i];
+              dataBitMap[j] = true;
+              ival[dataSize++] = X2 + X1[i];
             }
-            count++;
           }
         } else {  // (NB[i] == 0
           int msng1 = bitsmv1[gdrs.numberOfBits];
           int msng2 = msng1 - 1;
-          if (X1[i] == msng1) {
-            for (int j = 0; j < L[i]; j++)
-              dataBitMap[count++] = false;
-            //data[count++] = X1[i];
-          } else if (mvm == 2 && X1[i] == msng2) {
-            for (int j = 0; j < L[i]; j++)
-              dataBitMap[count++] = false;
-          } else {
-            for (int j = 0; j < L[i]; j++) {
-              dataBitMap[count] = true;
-              data[dataSize++] = X1[i];
-              count++;
-            }
+          if (X1[i] != msng1 && !(mvm == 2 && X1[i] == msng2)) {
+            Arrays.fill(dataBitMap, count, count + len, true);
+            Arrays.fill(ival, dataSize, dataSize + len, X1[i]);
+            dataSize += len;
           }
         }
+        count += len;
       }  // end for i
     }
 
+    int itemp;
+    if (mvm == 0) {           // no missing values
+      itemp = totalNPoints;
+    } else {
+      itemp = dataSize;
+    }
+
     // first order spatial differencing
     if (os == 1) {   // g1 and gMin
       // encoded by G(n) = F(n) - F(n -1 )
       // decoded by F(n) = G(n) + F(n -1 )
-      // data[] at this point contains G0, G1, G2, ....
-      data[0] = ival1;
-      int itemp;
-      if (mvm == 0) {           // no missing values
-        itemp = totalNPoints;
-      } else {
-        itemp = dataSize;
-      }
+      // ival[] at this point contains G0, G1, G2, ....
+      ival[0] = ival1;
       for (int i = 1; i < itemp; i++) {
-        data[i] += minsd;
-        data[i] = data[i] + data[i - 1];
+        ival[i] += minsd + ival[i - 1];
       }
     } else if (os == 2) { // 2nd order
-      data[0] = ival1;
-      data[1] = ival2;
-      int itemp;
-      if (mvm == 0) {           // no missing values
-        itemp = totalNPoints;
-      } else {
-        itemp = dataSize;
-      }
+      ival[0] = ival1;
+      ival[1] = ival2;
       for (int i = 2; i < itemp; i++) {
-        data[i] += minsd;
-        data[i] = data[i] + (2 * data[i - 1]) - data[i - 2];
+        ival[i] += minsd + (2 * ival[i - 1]) - ival[i - 2];
       }
     }
 
@@ -670,38 +653,91 @@ public class Grib2DataReader2 {
 //                     E = THE BINARY SCALE FACTOR
 //                     D = THE DECIMAL SCALE FACTOR
 
+    float[] data = new float[totalNPoints];
     if (mvm == 0) {  // no missing values
-      for (int i = 0; i < data.length; i++) {
-        data[i] = (R + (data[i] * EE)) / DD;
+      for (int i = 0; i < totalNPoints; i++) {
+        data[i] = (R + (ival[i] * EE)) / DD;
       }
     } else if (mvm == 1 || mvm == 2) {         // missing value == 1  || missing value == 2
       int count2 = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < data.length; i++) {
+      for (int i = 0; i < totalNPoints; i++) {
         if (dataBitMap[i]) {
-          tmp[i] = (R + (data[count2++] * EE)) / DD;
+          data[i] = (R + (ival[count2++] * EE)) / DD;
         } else { // mvm = 1 or 2
-          tmp[i] = mv;
+          data[i] = mv;
         }
       }
-      data = tmp;
     }
 
     // bit map is used
-    if (bitmap != null) {
-      int idx = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) {
-          tmp[i] = data[idx++];
-        } else {
-          tmp[i] = mv;
+    if (bitmap != null)
+      applyBitmap(data, countBitmap(), mv);
+
+    return data;
+  }
+
+  // read all of the data section at once; the reader then works from memory
+  private BitReader readDataSection(RandomAccessFile raf) throws IOException {
+    int len = dataLength - 5;
+    byte[] buff = new byte[len + 8]; // padded, so a few bits past the last value can be safely read
+    raf.seek(startPos + 5);
+    raf.readFully(buff, 0, len);
+    return new BitReader(buff);
+  }
+
+  private static int maxLength(int[] L) {
+    int max = 0;
+    for (int len : L)
+      max = Math.max(max, len);
+    return max;
+  }
+
+  // number of points in the bitmap that have data
+  private int countBitmap() {
+    int n = 0;
+    int nbytes = totalNPoints / 8;
+    for (int i = 0; i < nbytes; i++)
+      n += Integer.bitCount(bitmap[i] & 0xff);
+    for (int i = nbytes * 8; i < totalNPoints; i++)
+      if ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) n++;
+    return n;
+  }
+
+  /*
+   * Spread the first npacked values in data out to the points where the bitmap is set, and put missingValue everywhere else.
+   * This works backwards from the end, so can be done in place. The bitmap is examined a byte at a time,
+   * and runs of all-present bytes are moved together.
+   */
+  private void applyBitmap(float[] data, int npacked, float missingValue) {
+    int idx = npacked - 1;
+    int i = totalNPoints - 1;
+
+    // partial last byte
+    for (; i >= 0 && (i & 7) != 7; i--) {
+      data[i] = ((bitmap[i / 8] & GribNumbers.bitmask[i % 8]) != 0) ? data[idx--] : missingValue;
+    }
+
+    // i is now the last point of a full byte
+    for (; i >= 0; i -= 8) {
+      int b = bitmap[i >> 3] & 0xff;
+      if (b == 0xff) {
+        int first = i - 7;
+        while (first > 0 && bitmap[(first - 1) >> 3] == (byte) 0xff)
+          first -= 8;
+        int len = i - first + 1;
+        System.arraycopy(data, idx - len + 1, data, first, len);
+        idx -= len;
+        i = first + 7;
+
+      } else if (b == 0) {
+        Arrays.fill(data, i - 7, i + 1, missingValue);
+
+      } else {
+        for (int k = 0; k < 8; k++) {
+          data[i - k] = ((b >> k) & 1) != 0 ? data[idx--] : missingValue;
         }
       }
-      data = tmp;
     }
-
-    return data;
   }
 
   // Grid point data - JPEG 2000 code stream format
@@ -219,7 +219,7 @@ public class Grib2Index extends GribIndex {
       rootBuilder.setProtoVersion(grib2index_proto_version);
 
       if (dataRaf == null)  {
-        raf = RandomAccessFile.acquire(filename);
+        raf = openForScan(filename);
         dataRaf = raf;
       }
 
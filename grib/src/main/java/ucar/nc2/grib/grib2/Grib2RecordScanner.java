@@ -100,6 +100,14 @@ public class Grib2RecordScanner {
     lastPos = startFrom;
   }
 
+  // is there a GRIB-2 indicator section at pos
+  static private boolean isRecordStart(RandomAccessFile raf, long pos) throws IOException {
+    if (pos + 8 > raf.length()) return false;
+    raf.seek(pos);
+    return raf.read() == 'G' && raf.read() == 'R' && raf.read() == 'I' && raf.read() == 'B' &&
+            raf.skipBytes(3) == 3 && raf.read() == 2;
+  }
+
   public boolean hasNext() throws IOException {
     if (lastPos >= raf.length()) return false;
     if (repeatPos > 0) {
@@ -114,6 +122,13 @@ public class Grib2RecordScanner {
     boolean more;
     long gribStart = 0;
 
+    // usually the next record starts right where the last one ended, so there is nothing to scan
+    if (isRecordStart(raf, lastPos)) {
+      header = new byte[0];
+      raf.seek(lastPos);
+      return true;
+    }
+
     while (true) { // scan until we get a GRIB-2 or more == false
       raf.seek(lastPos);
       more = raf.searchForward(matcher, -1); // will scan to end for a 'GRIB' string
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.filesystem.MFileOS;
+import thredds.inventory.CollectionUpdateType;
+import thredds.inventory.MFile;
+import thredds.inventory.MFileIterator;
+import ucar.nc2.grib.grib2.Grib2Index;
+import ucar.nc2.grib.grib2.Grib2Record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Indexing the files of a collection gives the same records in the same order, whether or not it is done in parallel.
+ */
+public class TestGribIndexParallel {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TestGribIndexParallel.class);
+  private static final String dataDir = "../grib/src/test/data/";
+  private static final byte[] wmoHeader = "\u0001\r\r\n123\r\r\nHHHA00 KWBC 010000\r\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribIndex.setParallelism(1);
+  }
+
+  private static byte[] read(String name) throws IOException {
+    return Files.readAllBytes(new File(dataDir + name).toPath());
+  }
+
+  // files of several records each, some with a WMO header between records
+  private List<MFile> makeFiles(int n) throws IOException {
+    byte[] rap = read("rap-native.grib2");
+    byte[] cosmo = read("cosmo-eu.grib2");
+
+    List<MFile> result = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (int j = 0; j <= i % 3; j++) {
+        if (i % 2 == 1) out.write(wmoHeader);
+        out.write((i + j) % 2 == 0 ? rap : cosmo);
+      }
+      File file = new File(tempFolder.getRoot(), "file" + i + ".grib2");
+      Files.write(file.toPath(), out.toByteArray());
+      result.add(new MFileOS(file));
+    }
+    return result;
+  }
+
+  private static List<String> index(List<MFile> files) throws IOException {
+    List<String> result = new ArrayList<>();
+    // MFileIterator, as collections use, moves on in hasNext()
+    Iterator<GribIndex.IndexedFile> iter = GribIndex.readOrCreateIndexes(false, new MFileIterator(files.iterator(), null),
+            false, CollectionUpdateType.always, logger);
+    while (iter.hasNext()) {
+      GribIndex.IndexedFile indexed = iter.next();
+      Grib2Index index = (Grib2Index) indexed.getIndex();
+      Assert.assertNotNull(index);
+      for (Grib2Record gr : index.getRecords())
+        result.add(indexed.getMFile().getName() + " " + gr.getIs().getStartPos() + " " + gr.getHeader().length + " " +
+                gr.getPDS().getParameterNumber());
+    }
+    return result;
+  }
+
+  @Test
+  public void testParallel() throws IOException {
+    List<MFile> files = makeFiles(10);
+    List<String> want = index(files);
+    Assert.assertEquals(19, want.size());
+    Assert.assertTrue(want.get(0), want.get(0).startsWith("file0.grib2 0 0 "));
+    int n = wmoHeader.length;
+    Assert.assertTrue(want.get(1), want.get(1).startsWith("file1.grib2 " + n + " " + n + " "));
+
+    GribIndex.setParallelism(3);
+    Assert.assertEquals(want, index(files));
+  }
+
+  @Test
+  public void testFailure() throws IOException {
+    List<MFile> files = makeFiles(4);
+    files.add(2, new MFileOS(new File(tempFolder.getRoot(), "missing.grib2")));
+
+    GribIndex.setParallelism(2);
+    Iterator<GribIndex.IndexedFile> iter = GribIndex.readOrCreateIndexes(false, files.iterator(), false,
+            CollectionUpdateType.always, logger);
+    int count = 0;
+    while (iter.hasNext()) {
+      GribIndex.IndexedFile indexed = iter.next();
+      Assert.assertEquals(files.get(count++).getName(), indexed.getMFile().getName());
+      try {
+        Assert.assertNotNull(indexed.getIndex());
+        Assert.assertNotEquals("missing.grib2", indexed.getMFile().getName());
+      } catch (IOException e) {
+        Assert.assertEquals("missing.grib2", indexed.getMFile().getName());
+      }
+    }
+    Assert.assertEquals(files.size(), count);
+  }
+}
@@ -10,8 +10,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
+import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.lang.invoke.MethodHandles;
 
 public class TestDataTemplate {
@@ -42,4 +45,24 @@ public class TestDataTemplate {
             Assert.assertTrue(Double.isNaN(data[15]));
         }
     }
+
+    // Tests reading data using template 5.0 with 32 bit packed values, including ones that do not fit in an int
+    @Test
+    public void testSimplePacking32() throws IOException {
+        long[] packed = {0, 1, 0x7FFFFFFFL, 0x80000000L, 0xFFFFFFFFL};
+        ByteBuffer bb = ByteBuffer.allocate(10 + 5 + 4 * packed.length);
+        bb.putFloat(1.5f).putShort((short) 0).putShort((short) 0).put((byte) 32).put((byte) 0); // drs template 5.0
+        bb.putInt(5 + 4 * packed.length).put((byte) 7); // data section
+        for (long p : packed)
+            bb.putInt((int) p);
+
+        try (RandomAccessFile raf = new InMemoryRandomAccessFile("simple32", bb.array())) {
+            raf.order(RandomAccessFile.BIG_ENDIAN);
+            Grib2Drs.Type0 drs = new Grib2Drs.Type0(raf);
+            Grib2DataReader2 reader = new Grib2DataReader2(0, packed.length, packed.length, 0, packed.length, 10, 5 + 4 * packed.length);
+            float[] data = reader.getData(raf, new Grib2SectionBitMap(0, 255), drs);
+            for (int i = 0; i < packed.length; i++)
+                Assert.assertEquals(1.5f + (float) packed[i], data[i], 0.0f);
+        }
+    }
 }
@@ -159,18 +159,11 @@ public class Int16PrimitiveVector extends PrimitiveVector
      * @throws IOException       thrown on any other InputStream exception.
      * @see ClientIO#deserialize(DataInputStream, ServerVersion, StatusUI)
      */
-    public synchronized void deserialize(DataInputStream source,
+    public void deserialize(DataInputStream source,
                                          ServerVersion sv,
                                          StatusUI statusUI)
             throws IOException, EOFException, DataReadException {
-        for (int i = 0; i < vals.length; i++) {
-            vals[i] = (short) source.readInt();
-            if (statusUI != null) {
-                statusUI.incrementByteCount(4);
-                if (statusUI.userCancelled())
-                    throw new DataReadException("User cancelled");
-            }
-        }
+        PrimitiveVectorIO.readShortsAsInts(source, vals, statusUI, 4);
     }
 
     /**
@@ -183,9 +176,7 @@ public class Int16PrimitiveVector extends PrimitiveVector
      *                     exception.
      */
     public void externalize(DataOutputStream sink) throws IOException {
-        for (int i = 0; i < vals.length; i++) {
-            sink.writeInt((int) (vals[i]));
-        }
+        PrimitiveVectorIO.writeShortsAsInts(sink, vals, 0, vals.length - 1, 1);
     }
 
     /**
@@ -198,8 +189,7 @@ public class Int16PrimitiveVector extends PrimitiveVector
      * @throws IOException thrown on any <code>OutputStream</code> exception.
      */
     public void externalize(DataOutputStream sink, int start, int stop, int stride) throws IOException {
-        for (int i = start; i <= stop; i += stride)
-            sink.writeInt((int) vals[i]);
+        PrimitiveVectorIO.writeShortsAsInts(sink, vals, start, stop, stride);
     }
 
     /**
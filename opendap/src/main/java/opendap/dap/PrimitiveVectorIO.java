@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package opendap.dap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Bulk reading and writing of the primitive vectors, through a big-endian ByteBuffer, in blocks of BLOCK_SIZE bytes.
+ * The bytes are identical to writing one value at a time with DataOutputStream, which is how XDR encodes them.
+ * So floats and doubles are written with Float.floatToIntBits() and Double.doubleToLongBits(), which make all NaNs
+ * the canonical NaN, as DataOutputStream does.
+ * <p>
+ * The StatusUI, if any, is updated, and checked for cancel, once per block.
+ */
+final class PrimitiveVectorIO {
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  private PrimitiveVectorIO() {
+  }
+
+  // the number of elements in each block
+  private static int blockElems(int elemSize, int n) {
+    return Math.min(n, BLOCK_SIZE / elemSize);
+  }
+
+  private static int subsetLength(int start, int stop, int stride) {
+    return (stop < start) ? 0 : 1 + (stop - start) / stride;
+  }
+
+  private static void status(StatusUI statusUI, int bytes) throws DataReadException {
+    if (statusUI != null) {
+      statusUI.incrementByteCount(bytes);
+      if (statusUI.userCancelled())
+        throw new DataReadException("User cancelled");
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+  // float
+
+  static void readFloats(DataInputStream source, float[] vals, StatusUI statusUI, int statusBytesPerElem)
+          throws IOException, DataReadException {
+    byte[] buff = new byte[4 * blockElems(4, vals.length)];
+    FloatBuffer fb = ByteBuffer.wrap(buff).asFloatBuffer();
+    for (int pos = 0; pos < vals.length; ) {
+      int n = Math.min(vals.length - pos, buff.length / 4);
+      source.readFully(buff, 0, 4 * n);
+      fb.clear();
+      fb.get(vals, pos, n);
+      pos += n;
+      status(statusUI, n * statusBytesPerElem);
+    }
+  }
+
+  static void writeFloats(DataOutputStream sink, float[] vals, int start, int stop, int stride) throws IOException {
+    int len = subsetLength(start, stop, stride);
+    byte[] buff = new byte[4 * blockElems(4, len)];
+    IntBuffer ib = ByteBuffer.wrap(buff).asIntBuffer(); // FloatBuffer.put would keep the bits of each NaN
+    int i = start;
+    for (int done = 0; done < len; ) {
+      int n = Math.min(len - done, buff.length / 4);
+      ib.clear();
+      for (int k = 0; k < n; k++, i += stride)
+        ib.put(Float.floatToIntBits(vals[i]));
+      sink.write(buff, 0, 4 * n);
+      done += n;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+  // double
+
+  static void readDoubles(DataInputStream source, double[] vals, StatusUI statusUI, int statusBytesPerElem)
+          throws IOException, DataReadException {
+    byte[] buff = new byte[8 * blockElems(8, vals.length)];
+    DoubleBuffer db = ByteBuffer.wrap(buff).asDoubleBuffer();
+    for (int pos = 0; pos < vals.length; ) {
+      int n = Math.min(vals.length - pos, buff.length / 8);
+      source.readFully(buff, 0, 8 * n);
+      db.clear();
+      db.get(vals, pos, n);
+      pos += n;
+      status(statusUI, n * statusBytesPerElem);
+    }
+  }
+
+  static void writeDoubles(DataOutputStream sink, double[] vals, int start, int stop, int stride) throws IOException {
+    int len = subsetLength(start, stop, stride);
+    byte[] buff = new byte[8 * blockElems(8, len)];
+    LongBuffer lb = ByteBuffer.wrap(buff).asLongBuffer(); // DoubleBuffer.put would keep the bits of each NaN
+    int i = start;
+    for (int done = 0; done < len; ) {
+      int n = Math.min(len - done, buff.length / 8);
+      lb.clear();
+      for (int k = 0; k < n; k++, i += stride)
+        lb.put(Double.doubleToLongBits(vals[i]));
+      sink.write(buff, 0, 8 * n);
+      done += n;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+  // int
+
+  static void readInts(DataInputStream source, int[] vals, StatusUI statusUI, int statusBytesPerElem)
+          throws IOException, DataReadException {
+    byte[] buff = new byte[4 * blockElems(4, vals.length)];
+    IntBuffer ib = ByteBuffer.wrap(buff).asIntBuffer();
+    for (int pos = 0; pos < vals.length; ) {
+      int n = Math.min(vals.length - pos, buff.length / 4);
+      source.readFully(buff, 0, 4 * n);
+      ib.clear();
+      ib.get(vals, pos, n);
+      pos += n;
+      status(statusUI, n * statusBytesPerElem);
+    }
+  }
+
+  static void writeInts(DataOutputStream sink, int[] vals, int start, int stop, int stride) throws IOException {
+    int len = subsetLength(start, stop, stride);
+    byte[] buff = new byte[4 * blockElems(4, len)];
+    IntBuffer ib = ByteBuffer.wrap(buff).asIntBuffer();
+    int i = start;
+    for (int done = 0; done < len; ) {
+      int n = Math.min(len - done, buff.length / 4);
+      ib.clear();
+      if (stride == 1) {
+        ib.put(vals, i, n);
+        i += n;
+      } else {
+        for (int k = 0; k < n; k++, i += stride)
+          ib.put(vals[i]);
+      }
+      sink.write(buff, 0, 4 * n);
+      done += n;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+  // short, which DAP2 sends as a 4 byte int
+
+  static void readShortsAsInts(DataInputStream source, short[] vals, StatusUI statusUI, int statusBytesPerElem)
+          throws IOException, DataReadException {
+    byte[] buff = new byte[4 * blockElems(4, vals.length)];
+    IntBuffer ib = ByteBuffer.wrap(buff).asIntBuffer();
+    for (int pos = 0; pos < vals.length; ) {
+      int n = Math.min(vals.length - pos, buff.length / 4);
+      source.readFully(buff, 0, 4 * n);
+      for (int k = 0; k < n; k++)
+        vals[pos + k] = (short) ib.get(k);
+      pos += n;
+      status(statusUI, n * statusBytesPerElem);
+    }
+  }
+
+  static void writeShortsAsInts(DataOutputStream sink, short[] vals, int start, int stop, int stride) throws IOException {
+    int len = subsetLength(start, stop, stride);
+    byte[] buff = new byte[4 * blockElems(4, len)];
+    IntBuffer ib = ByteBuffer.wrap(buff).asIntBuffer();
+    int i = start;
+    for (int done = 0; done < len; ) {
+      int n = Math.min(len - done, buff.length / 4);
+      ib.clear();
+      for (int k = 0; k < n; k++, i += stride)
+        ib.put(vals[i]);
+      sink.write(buff, 0, 4 * n);
+      done += n;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+  // byte, padded to a multiple of 4
+
+  static void readBytes(DataInputStream source, byte[] vals, StatusUI statusUI)
+          throws IOException, DataReadException {
+    for (int pos = 0; pos < vals.length; ) {
+      int n = Math.min(vals.length - pos, BLOCK_SIZE);
+      source.readFully(vals, pos, n);
+      pos += n;
+      status(statusUI, n);
+    }
+    int pad = pad(vals.length);
+    source.readFully(new byte[pad]);
+    if (statusUI != null)
+      statusUI.incrementByteCount(pad);
+  }
+
+  static void writeBytes(DataOutputStream sink, byte[] vals, int start, int stop, int stride) throws IOException {
+    int len = subsetLength(start, stop, stride);
+    if (stride == 1) {
+      sink.write(vals, start, len);
+    } else {
+      byte[] buff = new byte[blockElems(1, len)];
+      int i = start;
+      for (int done = 0; done < len; ) {
+        int n = Math.min(len - done, buff.length);
+        for (int k = 0; k < n; k++, i += stride)
+          buff[k] = vals[i];
+        sink.write(buff, 0, n);
+        done += n;
+      }
+    }
+    sink.write(new byte[pad(len)]);
+  }
+
+  private static int pad(int n) {
+    int modFour = n % 4;
+    return (modFour != 0) ? (4 - modFour) : 0;
+  }
+}
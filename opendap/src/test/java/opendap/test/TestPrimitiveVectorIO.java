@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package opendap.test;
+
+import opendap.dap.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * The bulk serialization of the primitive vectors must be byte for byte the same as writing one value at a time.
+ */
+public class TestPrimitiveVectorIO {
+  // more than one block, and not a multiple of 4
+  private static final int N = 70 * 1000 + 3;
+
+  private interface ElemWriter {
+    void write(DataOutputStream out, int i) throws IOException;
+  }
+
+  // externalize(sink, start, stop, stride) is not on PrimitiveVector
+  private interface SubsetWriter {
+    void write(DataOutputStream out, int start, int stop, int stride) throws IOException;
+  }
+
+  // the original one at a time encoding
+  private static byte[] expected(int start, int stop, int stride, int padTo, ElemWriter w) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bout);
+    int count = 0;
+    for (int i = start; i <= stop; i += stride) {
+      w.write(out, i);
+      count++;
+    }
+    if (padTo > 0)
+      while (count++ % padTo != 0) out.writeByte(0);
+    out.flush();
+    return bout.toByteArray();
+  }
+
+  private static byte[] externalize(PrimitiveVector pv) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bout);
+    pv.externalize(out);
+    out.flush();
+    return bout.toByteArray();
+  }
+
+  private static byte[] externalize(SubsetWriter sw, int start, int stop, int stride) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bout);
+    sw.write(out, start, stop, stride);
+    out.flush();
+    return bout.toByteArray();
+  }
+
+  private static void deserialize(PrimitiveVector pv, byte[] bytes, int len) throws Exception {
+    pv.setLength(len);
+    pv.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)), new ServerVersion(2, 0), null);
+  }
+
+  private void check(PrimitiveVector pv, SubsetWriter sw, PrimitiveVector copy, int padTo, ElemWriter w) throws Exception {
+    byte[] all = expected(0, N - 1, 1, padTo, w);
+    Assert.assertArrayEquals(all, externalize(pv));
+    Assert.assertArrayEquals(all, externalize(sw, 0, N - 1, 1));
+    Assert.assertArrayEquals(expected(7, N - 10, 3, padTo, w), externalize(sw, 7, N - 10, 3));
+    Assert.assertArrayEquals(expected(5, 5, 1, padTo, w), externalize(sw, 5, 5, 1));
+
+    deserialize(copy, all, N);
+    Assert.assertArrayEquals(all, externalize(copy));
+  }
+
+  @Test
+  public void testFloat32() throws Exception {
+    Random r = new Random(1);
+    float[] vals = new float[N];
+    for (int i = 0; i < N; i++) vals[i] = (float) r.nextGaussian();
+    vals[3] = Float.NaN;
+    vals[4] = Float.intBitsToFloat(0xffc00001); // not the canonical NaN, which DataOutputStream writes instead
+    Float32PrimitiveVector pv = new Float32PrimitiveVector(new DFloat32());
+    pv.setInternalStorage(vals);
+    check(pv, pv::externalize, new Float32PrimitiveVector(new DFloat32()), 0, (out, i) -> out.writeFloat(vals[i]));
+  }
+
+  @Test
+  public void testFloat64() throws Exception {
+    Random r = new Random(2);
+    double[] vals = new double[N];
+    for (int i = 0; i < N; i++) vals[i] = r.nextGaussian();
+    vals[3] = Double.NaN;
+    vals[4] = Double.longBitsToDouble(0xfff8000000000001L);
+    Float64PrimitiveVector pv = new Float64PrimitiveVector(new DFloat64());
+    pv.setInternalStorage(vals);
+    check(pv, pv::externalize, new Float64PrimitiveVector(new DFloat64()), 0, (out, i) -> out.writeDouble(vals[i]));
+  }
+
+  @Test
+  public void testInt32() throws Exception {
+    Random r = new Random(3);
+    int[] vals = new int[N];
+    for (int i = 0; i < N; i++) vals[i] = r.nextInt();
+    Int32PrimitiveVector pv = new Int32PrimitiveVector(new DInt32());
+    pv.setInternalStorage(vals);
+    check(pv, pv::externalize, new Int32PrimitiveVector(new DInt32()), 0, (out, i) -> out.writeInt(vals[i]));
+  }
+
+  @Test
+  public void testInt16() throws Exception {
+    Random r = new Random(4);
+    short[] vals = new short[N];
+    for (int i = 0; i < N; i++) vals[i] = (short) r.nextInt();
+    Int16PrimitiveVector pv = new Int16PrimitiveVector(new DInt16());
+    pv.setInternalStorage(vals);
+    check(pv, pv::externalize, new Int16PrimitiveVector(new DInt16()), 0, (out, i) -> out.writeInt(vals[i]));
+  }
+
+  @Test
+  public void testByte() throws Exception {
+    byte[] vals = new byte[N];
+    new Random(5).nextBytes(vals);
+    BytePrimitiveVector pv = new BytePrimitiveVector(new DByte());
+    pv.setInternalStorage(vals);
+    check(pv, pv::externalize, new BytePrimitiveVector(new DByte()), 4, (out, i) -> out.writeByte(vals[i]));
+  }
+
+  @Test
+  public void testNaNRoundTrip() throws Exception {
+    float[] fvals = {1.0f, Float.intBitsToFloat(0x7fc00001), Float.intBitsToFloat(0xff800001), Float.NaN};
+    Float32PrimitiveVector fpv = new Float32PrimitiveVector(new DFloat32());
+    fpv.setInternalStorage(fvals);
+    Float32PrimitiveVector fcopy = new Float32PrimitiveVector(new DFloat32());
+    deserialize(fcopy, externalize(fpv), fvals.length);
+    float[] fgot = (float[]) fcopy.getInternalStorage();
+    Assert.assertEquals(1.0f, fgot[0], 0.0f);
+    for (int i = 1; i < fvals.length; i++)
+      Assert.assertEquals(Float.floatToRawIntBits(Float.NaN), Float.floatToRawIntBits(fgot[i]));
+
+    double[] dvals = {1.0, Double.longBitsToDouble(0x7ff8000000000001L), Double.longBitsToDouble(0xfff0000000000001L)};
+    Float64PrimitiveVector dpv = new Float64PrimitiveVector(new DFloat64());
+    dpv.setInternalStorage(dvals);
+    Float64PrimitiveVector dcopy = new Float64PrimitiveVector(new DFloat64());
+    deserialize(dcopy, externalize(dpv), dvals.length);
+    double[] dgot = (double[]) dcopy.getInternalStorage();
+    Assert.assertEquals(1.0, dgot[0], 0.0);
+    for (int i = 1; i < dvals.length; i++)
+      Assert.assertEquals(Double.doubleToRawLongBits(Double.NaN), Double.doubleToRawLongBits(dgot[i]));
+  }
+
+  @Test
+  public void testTruncated() throws Exception {
+    float[] vals = new float[N];
+    Float32PrimitiveVector pv = new Float32PrimitiveVector(new DFloat32());
+    pv.setInternalStorage(vals);
+    byte[] bytes = externalize(pv);
+    try {
+      deserialize(new Float32PrimitiveVector(new DFloat32()), bytes, N + 1);
+      Assert.fail();
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+}
@@ -8,16 +8,19 @@ import thredds.client.catalog.Dataset;
 import thredds.server.catalog.tracker.DataRootExt;
 import thredds.server.catalog.tracker.DataRootTracker;
 import ucar.nc2.util.AliasTranslator;
-import ucar.unidata.util.StringUtil2;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Find the dataRoot path from the request, by getting the longest match.
- * Use a TreeSet for minimum in-memory use.
+ * The paths are kept in an immutable radix tree, so a match takes time proportional to the length of the request path,
+ * not to the number of dataRoots. The tree is made again when paths have been added, and is swapped in as a whole,
+ * so lookups never wait while it is being made.
  * Keep the objects in a seperate map that could be off-heap and persistent.
  *
  * @author caron
@@ -26,15 +29,86 @@ import java.util.*;
 public class DataRootPathMatcher {
   static private final Logger logger = LoggerFactory.getLogger(DataRootPathMatcher.class);
   static private org.slf4j.Logger logCatalogInit = org.slf4j.LoggerFactory.getLogger("catalogInit");
-  static private final boolean debug = false;
   static private final String ERROR = "*** ERROR: ";
   static private boolean skipTestDataDir = true;
 
-  private static class PathComparator implements Comparator<String> {
-    public int compare(String s1, String s2) {
-      int compare = s2.compareTo( s1); // reverse sort
-      if (debug) System.out.println(" compare "+s1+" to "+s2+" = "+compare);
-      return compare;
+  /**
+   * A radix tree of paths: each node has the characters that follow its parent's, and the path that ends there, if any.
+   */
+  @Immutable
+  static class PathTree {
+    private final String label;      // the characters from the parent to this node
+    private final String path;       // the path ending at this node, or null
+    private final char[] firsts;     // the first character of each child's label, sorted
+    private final PathTree[] children;
+
+    /**
+     * Make the tree.
+     *
+     * @param paths the paths, in any order
+     */
+    PathTree(Collection<String> paths) {
+      this(sortedDistinct(paths), "");
+    }
+
+    private PathTree(String[] paths, String label) {
+      this(paths, 0, paths.length, 0, label);
+    }
+
+    // paths[lo, hi) are sorted, and have the same first depth characters
+    private PathTree(String[] paths, int lo, int hi, int depth, String label) {
+      this.label = label;
+      if (lo < hi && paths[lo].length() == depth) // a path that ends here comes first
+        this.path = paths[lo++];
+      else
+        this.path = null;
+
+      List<PathTree> kids = new ArrayList<>();
+      int i = lo;
+      while (i < hi) {
+        char c = paths[i].charAt(depth);
+        int j = i + 1;
+        while (j < hi && paths[j].charAt(depth) == c) j++;
+
+        // the characters shared by paths[i, j) are those shared by the first and last of them
+        String first = paths[i], last = paths[j - 1];
+        int end = depth + 1;
+        int max = Math.min(first.length(), last.length());
+        while (end < max && first.charAt(end) == last.charAt(end)) end++;
+
+        kids.add(new PathTree(paths, i, j, end, first.substring(depth, end)));
+        i = j;
+      }
+
+      this.children = kids.toArray(new PathTree[kids.size()]);
+      this.firsts = new char[children.length];
+      for (int k = 0; k < children.length; k++)
+        firsts[k] = children[k].label.charAt(0);
+    }
+
+    static private String[] sortedDistinct(Collection<String> paths) {
+      return new TreeSet<>(paths).toArray(new String[0]);
+    }
+
+    /**
+     * Find the longest path that the request path starts with.
+     *
+     * @param reqPath the request path
+     * @return the longest path where reqPath.startsWith(path), or null if none
+     */
+    String findLongestMatch(String reqPath) {
+      PathTree node = this;
+      String result = path;
+      int pos = 0;
+      while (pos < reqPath.length()) {
+        int index = Arrays.binarySearch(node.firsts, reqPath.charAt(pos));
+        if (index < 0) break;
+        node = node.children[index];
+        if (!reqPath.startsWith(node.label, pos)) break;
+        pos += node.label.length();
+        if (node.path != null) result = node.path;
+      }
+      return result;
     }
   }
 
@@ -43,8 +117,8 @@ public class DataRootPathMatcher {
   private ConfigCatalogCache ccc;
   private DataRootTracker tracker;
 
-  private final TreeSet<String> treeSet = new TreeSet<>( new PathComparator());    // this should be in-memory for speed
-  private final Map<String, DataRootExt> map = new HashMap<>();         // this could be turned into an off-heap cache if needed, with persistence.
+  private volatile PathTree pathTree;  // null when paths have been added since it was made
+  private final Map<String, DataRootExt> map = new ConcurrentHashMap<>();         // this could be turned into an off-heap cache if needed, with persistence.
 
   public DataRootPathMatcher(ConfigCatalogCache ccc, DataRootTracker tracker) {
     this.ccc = ccc;
@@ -59,9 +133,16 @@ public class DataRootPathMatcher {
    * Add a dataRootExt to in-memory tree.
    * @return true if not already exist
    */
-  private boolean put(DataRootExt dateRootExt) {
-    map.put(dateRootExt.getPath(), dateRootExt);
-    return treeSet.add(dateRootExt.getPath());
+  private synchronized boolean put(DataRootExt dateRootExt) {
+    boolean isNew = (map.put(dateRootExt.getPath(), dateRootExt) == null);
+    if (isNew) pathTree = null;
+    return isNew;
+  }
+
+  private synchronized PathTree getPathTree() {
+    if (pathTree == null)
+      pathTree = new PathTree(map.keySet());
+    return pathTree;
   }
 
   /**
@@ -70,7 +151,7 @@ public class DataRootPathMatcher {
    * @return true if already contains the key
    */
   public boolean contains(String  path) {
-    return treeSet.contains(path);
+    return map.containsKey(path);
   }
 
   public DataRootExt get(String  path) {
@@ -91,23 +172,9 @@ public class DataRootPathMatcher {
    * @return the value whose key is the longest that matches path, or null if none
    */
   public String findLongestPathMatch( String reqPath) {
-    SortedSet<String> tail = treeSet.tailSet(reqPath);
-    if (tail.isEmpty()) return null;
-    String after = tail.first();
-    if (reqPath.startsWith( after)) // common case
-      return tail.first();
-
-    // have to check more, until no common starting chars
-    for (String key : tail) {
-      if (reqPath.startsWith(key))
-        return key;
-
-      // terminate when there's no match at all.
-      if (StringUtil2.match(reqPath, key) == 0)
-        break;
-    }
-
-    return null;
+    PathTree tree = pathTree;
+    if (tree == null) tree = getPathTree();
+    return tree.findLongestMatch(reqPath);
   }
 
   /**
@@ -131,10 +198,14 @@ public class DataRootPathMatcher {
     DataRoot dataRoot = dataRootExt.getDataRoot();
     if (dataRoot != null) return dataRoot;
 
-    // otherwise must read the catalog that its in
-    dataRoot = readDataRootFromCatalog(dataRootExt);
-    dataRootExt.setDataRoot(dataRoot);
-    return dataRoot;
+    // otherwise must read the catalog that its in, only once
+    synchronized (this) {
+      dataRoot = dataRootExt.getDataRoot();
+      if (dataRoot != null) return dataRoot;
+      dataRoot = readDataRootFromCatalog(dataRootExt);
+      dataRootExt.setDataRoot(dataRoot);
+      return dataRoot;
+    }
   }
 
   private @Nonnull DataRoot readDataRootFromCatalog( DataRootExt dataRootExt) {
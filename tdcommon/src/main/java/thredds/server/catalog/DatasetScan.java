@@ -48,17 +48,14 @@ import ucar.nc2.time.CalendarDate;
 import ucar.nc2.units.DateRange;
 import ucar.nc2.units.DateType;
 import ucar.nc2.units.TimeDuration;
-import ucar.nc2.util.CloseableIterator;
 
 import javax.annotation.concurrent.Immutable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 /**
@@ -73,6 +70,7 @@ public class DatasetScan extends CatalogRef {
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DatasetScan.class);
   static private Service latestService, fileService;
   static private AllowedServicesIF allowedServices;
+  static private DirectoryListingCache listingCache;
 
   static public void setSpecialServices(Service _latestService, Service _fileService) {
     if (latestService != null && !latestService.equals(_latestService)) // mocking framework sets multiple times
@@ -85,6 +83,22 @@ public class DatasetScan extends CatalogRef {
     allowedServices = _allowedServices;
   }
 
+  /**
+   * Share the directory listings among all DatasetScans and requests.
+   *
+   * @param cache use this cache, or null to read the directory on every request
+   */
+  static public void setListingCache(DirectoryListingCache cache) {
+    DirectoryListingCache old = listingCache;
+    listingCache = cache;
+    if (old != null && old != cache)
+      old.shutdown();
+  }
+
+  static public DirectoryListingCache getListingCache() {
+    return listingCache;
+  }
+
   private final DatasetScanConfig config;
   private final AddTimeCoverageEnhancer addTimeCoverage;
   private final List<RegExpNamer> namers;
@@ -168,6 +182,22 @@ public class DatasetScan extends CatalogRef {
    * @return the catalog for this path or null if build unsuccessful.
    */
   public CatalogBuilder makeCatalogForDirectory(String orgPath, URI baseURI) throws IOException {
+    return makeCatalogForDirectory(orgPath, baseURI, 0, -1);
+  }
+
+  /**
+   * Build a catalog for the given path with a slice of the datasets of the directory, in the order they are listed.
+   * The catalog has the properties "DatasetScan.start" and "DatasetScan.total" when it does not have all of them.
+   *
+   * @param orgPath the part of the baseURI that is the path
+   * @param baseURI the base URL for the catalog, used to resolve relative URLs.
+   * @param start   index of the first dataset to include
+   * @param count   maximum number of datasets to include, or -1 for all of them
+   * @return the catalog for this path or null if build unsuccessful.
+   */
+  public CatalogBuilder makeCatalogForDirectory(String orgPath, URI baseURI, int start, int count) throws IOException {
+    if (start < 0)
+      throw new IllegalArgumentException("start must not be negative: " + start);
 
     // Get the dataset location.
     String dataDirReletive = translatePathToReletiveLocation(orgPath, config.path);
@@ -229,7 +259,16 @@ public class DatasetScan extends CatalogRef {
     // scan and sort the directory
     List<MFile> mfiles = getSortedFiles(p, config.getSortFilesAscending());
 
-    if (config.addLatest != null && config.addLatest.latestOnTop)
+    // the slice wanted
+    int total = mfiles.size();
+    int end = (count < 0) ? total : (int) Math.min((long) start + count, total);
+    if (start > 0 || end < total) {
+      mfiles = mfiles.subList(Math.min(start, total), end);
+      catBuilder.addProperty(new Property("DatasetScan.start", Integer.toString(start)));
+      catBuilder.addProperty(new Property("DatasetScan.total", Integer.toString(total)));
+    }
+
+    if (config.addLatest != null && config.addLatest.latestOnTop && start == 0)
       top.addDataset(makeLatestProxy(top, parentId));
 
     // create Datasets
@@ -267,7 +306,7 @@ public class DatasetScan extends CatalogRef {
       ds.put(Dataset.Id, parentId + mfile.getName());
     }
 
-    if (config.addLatest != null && !config.addLatest.latestOnTop)
+    if (config.addLatest != null && !config.addLatest.latestOnTop && end == total)
       top.addDataset(makeLatestProxy(top, parentId));
 
     // make the catalog
@@ -277,83 +316,23 @@ public class DatasetScan extends CatalogRef {
   ///////////////////////
   // Scan and sort
 
-  private List<MFile> getSortedFiles(Path p, final boolean isSortIncreasing) throws IOException {
+  // files before directories, each sorted by name
+  private List<MFile> getSortedFiles(Path p, boolean isSortIncreasing) throws IOException {
+    DirectoryListingCache cache = listingCache;
+    DirectoryListingCache.Listing listing = (cache != null) ? cache.get(p) : DirectoryListingCache.read(p);
 
-    // scan the directory
     List<MFile> mfiles = new ArrayList<>();
-    try (DatasetScanMFileIterator iter = new DatasetScanMFileIterator(p)) {
-      while (iter.hasNext())
-        mfiles.add(iter.next());
-    }
-
-    // sort them
-    Collections.sort(mfiles, new Comparator<MFile>() {
-      public int compare(MFile o1, MFile o2) {
-        if (o1.isDirectory() != o2.isDirectory())
-          return o1.isDirectory() ? 1 : -1;
-
-        if (isSortIncreasing)
-          return o1.getName().compareTo(o2.getName());
-        else
-          return o2.getName().compareTo(o1.getName());
-      }
-    });
-
+    addAccepted(listing.getFiles(), fileFilters, isSortIncreasing, mfiles);
+    addAccepted(listing.getDirectories(), dirFilters, isSortIncreasing, mfiles);
     return mfiles;
   }
 
-  private class DatasetScanMFileIterator implements CloseableIterator<MFile> {
-    DirectoryStream<Path> dirStream;
-    Iterator<Path> dirStreamIterator;
-    MFile nextMFile;
-    //long now;
-
-    DatasetScanMFileIterator(Path p) throws IOException {
-      dirStream = Files.newDirectoryStream(p);
-      dirStreamIterator = dirStream.iterator();
-      //now = System.currentTimeMillis();
-    }
-
-    public boolean hasNext() {
-
-      while (true) {
-        if (!dirStreamIterator.hasNext()) {
-          nextMFile = null;
-          return false;
-        }
-
-        try {
-          Path nextPath = dirStreamIterator.next();
-          BasicFileAttributes attr = Files.readAttributes(nextPath, BasicFileAttributes.class);
-          nextMFile = new MFileOS7(nextPath, attr);
-          if (accept(nextMFile))
-            return true;
-
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-      }
-    }
-
-    private boolean accept(MFile mfile) {
-      if (mfile.isDirectory())
-        return dirFilters == null || dirFilters.accept(mfile);
-      return fileFilters == null || fileFilters.accept(mfile);
-    }
-
-    public MFile next() {
-      if (nextMFile == null) throw new NoSuchElementException();
-      return nextMFile;
-    }
-
-    public void remove() {
-      throw new UnsupportedOperationException();
-    }
-
-    // better alternative is for caller to send in callback (Visitor pattern)
-    // then we could use the try-with-resource
-    public void close() throws IOException {
-      dirStream.close();
+  private void addAccepted(List<MFile> sorted, CompositeMFileFilter filters, boolean isSortIncreasing, List<MFile> result) {
+    int n = sorted.size();
+    for (int i = 0; i < n; i++) {
+      MFile mfile = sorted.get(isSortIncreasing ? i : n - 1 - i);
+      if (filters == null || filters.accept(mfile))
+        result.add(mfile);
     }
   }
 
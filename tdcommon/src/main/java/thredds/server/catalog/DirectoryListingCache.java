@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.server.catalog;
+
+import thredds.filesystem.MFileOS7;
+import thredds.inventory.MFile;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sorted listings of the directories scanned by DatasetScans, shared by all of them.
+ * <p>
+ * A listing is used again as long as the directory's last modified time has not changed, and it is no older
+ * than maxAge. When the directory's time has changed, only the names are read again: the entries that were added
+ * are read and merged in, the ones that were removed are dropped, and the others are kept as they were.
+ * So the size and last modified time of a file that is being written may be up to maxAge old.
+ * <p>
+ * The cache is bounded by the total number of entries in the listings, dropping the least recently used directories.
+ * Listings of hot directories may be kept up to date in the background, so that requests never wait for them.
+ */
+@ThreadSafe
+public class DirectoryListingCache {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DirectoryListingCache.class);
+  static private final long COARSEST_TIME_MSECS = 2000; // some file systems only keep times to 2 seconds
+  static private final Comparator<MFile> byName = (o1, o2) -> o1.getName().compareTo(o2.getName());
+
+  /**
+   * The entries of a directory, each sorted by name.
+   */
+  @Immutable
+  static public class Listing {
+    private final List<MFile> files, directories;
+    private final long dirLastModified; // the directory's last modified time, read before its entries
+    private final long readTime;        // when the entries were read
+    private final long fullReadTime;    // when all of the entries were last read
+
+    Listing(List<MFile> files, List<MFile> directories, long dirLastModified, long readTime, long fullReadTime) {
+      this.files = Collections.unmodifiableList(files);
+      this.directories = Collections.unmodifiableList(directories);
+      this.dirLastModified = dirLastModified;
+      this.readTime = readTime;
+      this.fullReadTime = fullReadTime;
+    }
+
+    public List<MFile> getFiles() {
+      return files;
+    }
+
+    public List<MFile> getDirectories() {
+      return directories;
+    }
+
+    int size() {
+      return files.size() + directories.size();
+    }
+  }
+
+  /**
+   * Read the entries of a directory, without a cache.
+   *
+   * @param dir the directory
+   * @return its listing
+   * @throws IOException on read error
+   */
+  static public Listing read(Path dir) throws IOException {
+    long now = System.currentTimeMillis();
+    long dirLastModified = Files.getLastModifiedTime(dir).toMillis();
+
+    List<MFile> files = new ArrayList<>();
+    List<MFile> directories = new ArrayList<>();
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path p : dirStream) {
+        MFile mfile = readEntry(p);
+        if (mfile == null) continue;
+        if (mfile.isDirectory()) directories.add(mfile);
+        else files.add(mfile);
+      }
+    }
+    files.sort(byName);
+    directories.sort(byName);
+    return new Listing(files, directories, dirLastModified, now, now);
+  }
+
+  // null if it has been removed since it was listed
+  static private MFile readEntry(Path p) throws IOException {
+    try {
+      return new MFileOS7(p, Files.readAttributes(p, BasicFileAttributes.class));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  // read just the names again, and only the entries that were added
+  static private Listing update(Path dir, Listing old) throws IOException {
+    long now = System.currentTimeMillis();
+    long dirLastModified = Files.getLastModifiedTime(dir).toMillis();
+
+    Set<String> names = new HashSet<>();
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path p : dirStream)
+        names.add(p.getFileName().toString());
+    }
+
+    List<MFile> files = new ArrayList<>();
+    List<MFile> directories = new ArrayList<>();
+    List<MFile> addedFiles = new ArrayList<>();
+    List<MFile> addedDirectories = new ArrayList<>();
+    keep(old.files, names, files);
+    keep(old.directories, names, directories);
+    for (String name : names) { // what is left has been added
+      MFile mfile = readEntry(dir.resolve(name));
+      if (mfile == null) continue;
+      if (mfile.isDirectory()) addedDirectories.add(mfile);
+      else addedFiles.add(mfile);
+    }
+
+    return new Listing(merge(files, addedFiles), merge(directories, addedDirectories), dirLastModified, now,
+            old.fullReadTime);
+  }
+
+  // keep the entries that are still there, removing their names from the set
+  static private void keep(List<MFile> entries, Set<String> names, List<MFile> result) {
+    for (MFile mfile : entries) {
+      if (names.remove(mfile.getName()))
+        result.add(mfile);
+    }
+  }
+
+  static private List<MFile> merge(List<MFile> sorted, List<MFile> added) {
+    if (added.isEmpty()) return sorted;
+    added.sort(byName);
+    List<MFile> result = new ArrayList<>(sorted.size() + added.size());
+    int i = 0, j = 0;
+    while (i < sorted.size() && j < added.size()) {
+      if (byName.compare(sorted.get(i), added.get(j)) <= 0) result.add(sorted.get(i++));
+      else result.add(added.get(j++));
+    }
+    result.addAll(sorted.subList(i, sorted.size()));
+    result.addAll(added.subList(j, added.size()));
+    return result;
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+
+  // the listing of one directory, guarded by itself while it is being read
+  static private class Entry {
+    Listing listing;
+    int counted; // number of entries counted in totalEntries, guarded by the map
+  }
+
+  private final int maxEntries;
+  private final long maxAgeMsecs;
+
+  // guarded by itself
+  private final LinkedHashMap<Path, Entry> map = new LinkedHashMap<>(64, 0.75f, true);
+  private long totalEntries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong updates = new AtomicLong();
+  private final AtomicLong reads = new AtomicLong();
+
+  private ScheduledExecutorService precomputeExecutor;
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries  maximum total number of entries in the listings kept
+   * @param maxAgeMsecs read all the entries of a directory again after this long, even if it has not changed
+   */
+  public DirectoryListingCache(int maxEntries, long maxAgeMsecs) {
+    this.maxEntries = maxEntries;
+    this.maxAgeMsecs = maxAgeMsecs;
+  }
+
+  /**
+   * Get the listing of a directory, reading whatever has changed since it was cached.
+   *
+   * @param dir the directory
+   * @return its listing
+   * @throws IOException on read error
+   */
+  public Listing get(Path dir) throws IOException {
+    Path key = dir.toAbsolutePath().normalize();
+    Entry entry;
+    synchronized (map) {
+      entry = map.computeIfAbsent(key, k -> new Entry());
+    }
+
+    // only one thread reads a directory; the others wait for it
+    synchronized (entry) {
+      Listing old = entry.listing;
+      Listing listing = refresh(key, old);
+      if (listing != old) {
+        entry.listing = listing;
+        synchronized (map) {
+          if (map.get(key) == entry) {
+            totalEntries += listing.size() - entry.counted;
+            entry.counted = listing.size();
+            evict();
+          }
+        }
+      }
+      return listing;
+    }
+  }
+
+  private Listing refresh(Path dir, Listing old) throws IOException {
+    try {
+      if (old != null && System.currentTimeMillis() - old.fullReadTime < maxAgeMsecs) {
+        long dirLastModified = Files.getLastModifiedTime(dir).toMillis();
+        // a change made in the same tick as the last read would not show in the directory's time
+        if (dirLastModified == old.dirLastModified && old.readTime - dirLastModified > COARSEST_TIME_MSECS) {
+          hits.incrementAndGet();
+          return old;
+        }
+        updates.incrementAndGet();
+        return update(dir, old);
+      }
+      reads.incrementAndGet();
+      return read(dir);
+
+    } catch (IOException | RuntimeException e) {
+      remove(dir);
+      throw e;
+    }
+  }
+
+  private void remove(Path dir) {
+    synchronized (map) {
+      Entry entry = map.remove(dir);
+      if (entry != null) totalEntries -= entry.counted;
+    }
+  }
+
+  // guarded by map
+  private void evict() {
+    Iterator<Entry> iter = map.values().iterator();
+    while (totalEntries > maxEntries && iter.hasNext()) {
+      Entry eldest = iter.next();
+      totalEntries -= eldest.counted;
+      iter.remove();
+    }
+  }
+
+  /**
+   * Keep the listings of these directories up to date in the background, checking each of them at the given interval.
+   * Replaces any directories given before.
+   *
+   * @param dirs         the hot directories
+   * @param intervalSecs how often to check them
+   */
+  public synchronized void precompute(List<Path> dirs, int intervalSecs) {
+    if (precomputeExecutor != null)
+      precomputeExecutor.shutdownNow();
+    precomputeExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "DirectoryListingCache");
+      t.setDaemon(true);
+      return t;
+    });
+
+    final List<Path> hot = new ArrayList<>(dirs);
+    precomputeExecutor.scheduleWithFixedDelay(() -> {
+      for (Path dir : hot) {
+        try {
+          get(dir);
+        } catch (Throwable t) {
+          log.warn("Failed to read directory {}: {}", dir, t.getMessage());
+        }
+      }
+    }, 0, intervalSecs, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop keeping the hot directories up to date.
+   */
+  public synchronized void shutdown() {
+    if (precomputeExecutor != null)
+      precomputeExecutor.shutdownNow();
+    precomputeExecutor = null;
+  }
+
+  public void clearCache() {
+    synchronized (map) {
+      map.clear();
+      totalEntries = 0;
+    }
+  }
+
+  /**
+   * Add stat report (hits, updates, reads, etc) to formatter.
+   *
+   * @param format add to this
+   */
+  public void showStats(Formatter format) {
+    synchronized (map) {
+      format.format("  DirectoryListingCache hits= %d updates= %d reads= %d directories= %d entries= %d (max= %d)%n",
+              hits.get(), updates.get(), reads.get(), map.size(), totalEntries, maxEntries);
+    }
+  }
+}
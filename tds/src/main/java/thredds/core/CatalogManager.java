@@ -65,6 +65,19 @@ public class CatalogManager {
    * @return the requested Catalog, or null if catalog does not exist or is not allowed.
    */
   public Catalog getCatalog(String path, URI baseURI) throws IOException {
+    return getCatalog(path, baseURI, 0, -1);
+  }
+
+  /**
+   * Same as getCatalog(path, baseURI), but a DatasetScan catalog only has a slice of the datasets of its directory.
+   *
+   * @param path    the path for the requested catalog.
+   * @param baseURI the base URI for the catalog, used to resolve relative URLs.
+   * @param start   index of the first dataset of a DatasetScan directory to include
+   * @param count   maximum number of datasets of a DatasetScan directory to include, or -1 for all of them
+   * @return the requested Catalog, or null if catalog does not exist or is not allowed.
+   */
+  public Catalog getCatalog(String path, URI baseURI, int start, int count) throws IOException {
     if (path == null)
       return null;
 
@@ -73,7 +86,7 @@ public class CatalogManager {
       workPath = workPath.substring(1);
 
     // Check if its a CatalogBuilder or ConfigCatalog
-    Object dyno = makeDynamicCatalog(workPath, baseURI);
+    Object dyno = makeDynamicCatalog(workPath, baseURI, start, count);
     if (dyno != null) {
       CatalogBuilder catBuilder;
       if (dyno instanceof CatalogBuilder) {
@@ -95,7 +108,7 @@ public class CatalogManager {
   }
 
   // barfola on the return type
-  private Object makeDynamicCatalog(String path, URI baseURI) throws IOException {
+  private Object makeDynamicCatalog(String path, URI baseURI, int start, int count) throws IOException {
     boolean isLatest = path.endsWith("/latest.xml");
 
     // strip off the filename
@@ -127,7 +140,7 @@ public class CatalogManager {
       if (isLatest)
         cat = dscan.makeCatalogForLatest(workPath, baseURI);
       else
-        cat = dscan.makeCatalogForDirectory(workPath, baseURI);
+        cat = dscan.makeCatalogForDirectory(workPath, baseURI, start, count);
 
       if (null == cat)
         log.error("makeDynamicCatalog(): DatasetScan.makeCatalogForDirectory failed = " + workPath);
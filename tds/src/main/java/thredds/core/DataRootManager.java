@@ -52,7 +52,7 @@ public class DataRootManager implements InitializingBean {
   private TdsContext tdsContext;
 
   // injected by catalogInitializer, when catalogs are reread, so cant be spring managed
-  private DataRootPathMatcher dataRootPathMatcher;
+  private volatile DataRootPathMatcher dataRootPathMatcher;
 
   @Autowired
   private DebugCommands debugCommands;
@@ -140,13 +140,13 @@ public class DataRootManager implements InitializingBean {
     return match;
   }
 
-  private synchronized DataRoot findDataRoot(String spath) {
+  private DataRoot findDataRoot(String spath) {
     if (spath == null)
       return null;
     if (spath.startsWith("/"))
       spath = spath.substring(1);
 
-    // LOOK could it be safe to swap dataRootPathMatcher without synchronizing?
+    // the matcher is thread-safe, and a new one is only swapped in once it is complete
     return dataRootPathMatcher.findDataRoot(spath);
   }
 
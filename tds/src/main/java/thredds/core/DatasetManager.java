@@ -102,6 +102,12 @@ public class DatasetManager implements InitializingBean {
     return dataRootManager.getLocationFromRequestPath(reqPath);
   }
 
+  // the feature collection that serves this path, or null
+  public FeatureCollectionRef findFeatureCollection(String reqPath) {
+    DataRootManager.DataRootMatch match = dataRootManager.findDataRootMatch(reqPath);
+    return (match == null) ? null : match.dataRoot.getFeatureCollection();
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
 
@@ -320,6 +320,14 @@ public abstract class InvDatasetFeatureCollection implements Closeable {
     return configPath;
   }
 
+  /**
+   * The last time the dataset inventory was changed. Services that hold on to datasets from this collection
+   * can compare it to decide if they are stale.
+   */
+  public long getLastInvChange() throws IOException {
+    return checkState().lastInvChange;
+  }
+
   public String getLatestFileName() {
     if (config.gribConfig.latestNamer != null) {
       return config.gribConfig.latestNamer;
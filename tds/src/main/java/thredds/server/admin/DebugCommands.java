@@ -8,6 +8,8 @@ package thredds.server.admin;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import thredds.server.catalog.DatasetScan;
+import thredds.server.catalog.DirectoryListingCache;
 import thredds.server.config.TdsContext;
 import thredds.servlet.ServletUtil;
 import ucar.nc2.dataset.NetcdfDataset;
@@ -20,8 +22,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import ucar.nc2.grib.collection.GribCdmIndex;
+import ucar.nc2.iosp.hdf5.H5iosp;
+import ucar.nc2.util.cache.ChunkCache;
 import ucar.nc2.util.cache.FileCacheIF;
 import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.http.HTTPRandomAccessFile;
 
 /**
  * A Singleton class instantiated by Spring, to populate the Debug methods in the
@@ -135,6 +140,27 @@ public class DebugCommands {
           fc.showCache(f);
         }
 
+        ChunkCache cc = H5iosp.getChunkCache();
+        if (cc == null) f.format("%nHDF5ChunkCache : turned off%n");
+        else {
+          f.format("%n%n");
+          cc.showStats(f);
+        }
+
+        cc = HTTPRandomAccessFile.getBlockCache();
+        if (cc == null) f.format("%nHTTPRandomAccessFile block cache : turned off%n");
+        else {
+          f.format("%n%n");
+          cc.showStats(f);
+        }
+
+        DirectoryListingCache dlc = DatasetScan.getListingCache();
+        if (dlc == null) f.format("%nDatasetScan listing cache : turned off%n");
+        else {
+          f.format("%n%n");
+          dlc.showStats(f);
+        }
+
         e.pw.flush();
       }
     };
@@ -146,6 +172,12 @@ public class DebugCommands {
          RandomAccessFile.getGlobalFileCache().clearCache(false);
          FileCacheIF fc = GribCdmIndex.gribCollectionCache;
          if (fc != null) fc.clearCache(false);
+         ChunkCache cc = H5iosp.getChunkCache();
+         if (cc != null) cc.clearCache();
+         cc = HTTPRandomAccessFile.getBlockCache();
+         if (cc != null) cc.clearCache();
+         DirectoryListingCache dlc = DatasetScan.getListingCache();
+         if (dlc != null) dlc.clearCache();
          e.pw.println("  ClearCache ok");
        }
      };
@@ -6,6 +6,8 @@ package thredds.server.catalogservice;
 
 public class CatalogRequest {
   String dataset;
+  int start = 0;   // first dataset of a DatasetScan directory
+  int count = -1;  // number of datasets of a DatasetScan directory, -1 for all
 
   public String getDataset() {
     return dataset;
@@ -15,4 +17,20 @@ public class CatalogRequest {
     this.dataset = dataset;
   }
 
+  public int getStart() {
+    return start;
+  }
+
+  public void setStart(int start) {
+    this.start = start;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public void setCount(int count) {
+    this.count = count;
+  }
+
 }
@@ -54,7 +54,7 @@ public class CatalogServiceController {
     String baseUriString = request.getRequestURL().toString();
     try {
       baseUri = new URI(baseUriString);
-      catalog = catalogManager.getCatalog(catalogPath, baseUri);
+      catalog = catalogManager.getCatalog(catalogPath, baseUri, params.start, params.count);
 
     } catch (URISyntaxException e) {
       String msg = "Bad URI syntax [" + baseUriString + "]: " + e.getMessage();
@@ -33,6 +33,7 @@ import ucar.nc2.NetcdfFile;
 import ucar.nc2.ParsedSectionSpec;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.ft.FeatureDatasetFactoryManager;
+import ucar.nc2.stream.NcStreamProto;
 import ucar.nc2.stream.NcStreamWriter;
 
 import javax.servlet.http.HttpServletRequest;
@@ -218,8 +219,13 @@ public class CdmRemoteController {
       StringTokenizer stoke = new StringTokenizer(query, ";"); // need UTF/%decode
       while (stoke.hasMoreTokens()) {
         ParsedSectionSpec cer = ParsedSectionSpec.parseVariableSection(ncfile, stoke.nextToken());
-        // size += ncWriter.sendData(cer.v, cer.section, out, qb.getCompression());
-        size += ncWriter.sendData2(cer.v, cer.section, out, qb.getCompression());
+        // only the Data message supports compression, and only for fixed length primitive arrays.
+        // Clients that send deflate= rather than compress= expect the DataCol message, as they always got.
+        if (qb.isCompressParam() && qb.getCompression().getType() != NcStreamProto.Compress.NONE &&
+                cer.v.getDataType().isNumeric() && !cer.v.isVariableLength())
+          size += ncWriter.sendData(cer.v, cer.section, out, qb.getCompression());
+        else
+          size += ncWriter.sendData2(cer.v, cer.section, out, qb.getCompression());
         // size += ncWriter.sendData3(cer.v, cer.section, out, qb.getCompression());
       }
       out.flush();
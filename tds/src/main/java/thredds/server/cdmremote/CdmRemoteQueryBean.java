@@ -30,6 +30,7 @@ public class CdmRemoteQueryBean {
 
   // type of compression
   private NcStreamCompression compressType = NcStreamCompression.none(); // default
+  private boolean compressParam; // only clients that read compressed Data messages send compress=
 
   // parsed
   private RequestType reqType = null;
@@ -70,6 +71,22 @@ public class CdmRemoteQueryBean {
     compressType = NcStreamCompression.deflate(level);
   }
 
+  public String getCompress() {
+    return compressType.getType().toString().toLowerCase();
+  }
+
+  // compress=lz4|deflate|none; send uncompressed if we dont know the type, so clients can ask for newer ones
+  public void setCompress(String type) {
+    NcStreamCompression result = NcStreamCompression.fromName(type);
+    compressType = (result == null) ? NcStreamCompression.none() : result;
+    compressParam = true;
+  }
+
+  // true if the client asked for compression with compress=, rather than the older deflate=
+  boolean isCompressParam() {
+    return compressParam;
+  }
+
   private List<String> errs;
   public void addError(String mess) {
     if (errs == null) errs = new ArrayList<>();
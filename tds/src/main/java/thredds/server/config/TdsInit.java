@@ -23,28 +23,42 @@ import thredds.featurecollection.CollectionUpdater;
 import thredds.featurecollection.InvDatasetFeatureCollection;
 import thredds.server.catalog.ConfigCatalogCache;
 import thredds.server.catalog.DatasetScan;
+import thredds.server.catalog.DirectoryListingCache;
 import thredds.server.ncss.controller.NcssDiskCache;
 import thredds.server.ncss.format.FormatsAvailabilityService;
 import thredds.server.ncss.format.SupportedFormat;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.ft.point.collection.CompositeDatasetFactory;
+import ucar.nc2.grib.GribIndex;
 import ucar.nc2.grib.GribIndexCache;
 import ucar.nc2.grib.collection.GribCdmIndex;
+import ucar.nc2.grib.collection.GribDataReader;
+import ucar.nc2.iosp.bufr.BufrIosp2;
+import ucar.nc2.iosp.hdf5.H5iosp;
 import ucar.nc2.jni.netcdf.Nc4Iosp;
 import ucar.nc2.ncml.Aggregation;
 import ucar.nc2.stream.CdmRemote;
+import ucar.nc2.util.AliasTranslator;
 import ucar.nc2.util.DebugFlags;
 import ucar.nc2.util.DebugFlagsImpl;
 import ucar.nc2.util.DiskCache;
 import ucar.nc2.util.DiskCache2;
+import ucar.nc2.util.cache.ChunkCache;
 import ucar.nc2.util.cache.FileCache;
+import ucar.nc2.util.cache.FileCacheARC;
 import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.http.HTTPRandomAccessFile;
 import ucar.util.prefs.PreferencesExt;
 import ucar.util.prefs.XMLStore;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -276,6 +290,15 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     Aggregation.setTypicalDatasetMode(typicalDataset);
     startupLog.info("TdsInit: Aggregation.setTypicalDatasetMode= " + typicalDataset);
 
+    // nested datasets of an aggregation read concurrently: default is off
+    int aggThreads = ThreddsConfig.getInt("Aggregation.parallelism", 1);
+    if (aggThreads > 1) {
+      int aggReadsPerRequest = ThreddsConfig.getInt("Aggregation.maxReadsPerRequest", 0);
+      Aggregation.setParallelism(aggThreads);
+      Aggregation.setMaxReadsPerRequest(aggReadsPerRequest);
+      startupLog.info("TdsInit: Aggregation.setParallelism= " + aggThreads + " maxReadsPerRequest = " + aggReadsPerRequest);
+    }
+
     ////////////////////////////////////////////////////////////////
     // Disk Caching
     String dir;
@@ -320,6 +343,15 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     GribIndexCache.setDiskCache2(gribCache);
     startupLog.info("TdsInit: GribIndex=" + gribCache);
 
+    // gbx9 indexes of a collection's files read or created concurrently: default is off
+    int gribIndexThreads = ThreddsConfig.getInt("GribIndex.parallelism", 1);
+    if (gribIndexThreads > 1) {
+      GribIndex.setParallelism(gribIndexThreads);
+      startupLog.info("TdsInit: GribIndex.setParallelism= " + gribIndexThreads);
+    }
+    boolean gribIndexMemoryMap = ThreddsConfig.getBoolean("GribIndex.memoryMap", true);
+    GribIndex.setMemoryMapScan(gribIndexMemoryMap);
+
     // LOOK just create the diskCache here and send it in
     ncssDiskCache.init();
 
@@ -366,16 +398,30 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     min = ThreddsConfig.getInt("RandomAccessFile.minFiles", 400);
     max = ThreddsConfig.getInt("RandomAccessFile.maxFiles", 500);
     secs = ThreddsConfig.getSeconds("RandomAccessFile.scour", 11 * 60);
-    if (max > 0) {
+    String policy = ThreddsConfig.get("RandomAccessFile.policy", "LRU");
+    long maxMemory = ThreddsConfig.getBytes("RandomAccessFile.maxMemory", -1);
+    if (max > 0 && policy.equalsIgnoreCase("ARC")) {
+      RandomAccessFile.setGlobalFileCache(new FileCacheARC("RandomAccessFile", max, maxMemory));
+      startupLog.info("TdsInit: RandomAccessFile.initPartitionCache= ARC max = " + max + " maxMemory = " + maxMemory);
+    } else if (max > 0) {
       RandomAccessFile.setGlobalFileCache(new FileCache("RandomAccessFile", min, max, -1, secs));
       startupLog.info("TdsInit: RandomAccessFile.initPartitionCache= [" + min + "," + max + "] scour = " + secs);
     }
+    boolean memoryMap = ThreddsConfig.getBoolean("RandomAccessFile.memoryMap", false);
+    RandomAccessFile.setMemoryMapDefault(memoryMap);
+    if (memoryMap)
+      startupLog.info("TdsInit: RandomAccessFile.memoryMap= true");
 
     // NetcdfFileCache : default is allow 100 - 150 open files, cleanup every 12 minutes
     min = ThreddsConfig.getInt("NetcdfFileCache.minFiles", 100);
     max = ThreddsConfig.getInt("NetcdfFileCache.maxFiles", 150);
     secs = ThreddsConfig.getSeconds("NetcdfFileCache.scour", 12 * 60);
-    if (max > 0) {
+    policy = ThreddsConfig.get("NetcdfFileCache.policy", "LRU");
+    maxMemory = ThreddsConfig.getBytes("NetcdfFileCache.maxMemory", -1);
+    if (max > 0 && policy.equalsIgnoreCase("ARC")) {
+      NetcdfDataset.initNetcdfFileCache(new FileCacheARC("NetcdfFileCache", max, maxMemory));
+      startupLog.info("TdsInit: NetcdfDataset.initNetcdfFileCache= ARC max = " + max + " maxMemory = " + maxMemory);
+    } else if (max > 0) {
       NetcdfDataset.initNetcdfFileCache(min, max, secs);
       startupLog.info("TdsInit: NetcdfDataset.initNetcdfFileCache= [" + min + "," + max + "] scour = " + secs);
     }
@@ -389,6 +435,69 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       startupLog.info("TdsInit: GribCdmIndex.initDefaultCollectionCache= [" + min + "," + max + "] scour = " + secs);
     }
 
+    // HDF5 / netCDF-4 decoded chunks: default is off
+    long chunkCacheBytes = ThreddsConfig.getBytes("HDF5ChunkCache.maxSize", 0);
+    boolean chunkCacheOffHeap = ThreddsConfig.getBoolean("HDF5ChunkCache.offHeap", false);
+    if (chunkCacheBytes > 0) {
+      H5iosp.setChunkCache(new ChunkCache("HDF5ChunkCache", chunkCacheBytes, chunkCacheOffHeap));
+      startupLog.info("TdsInit: H5iosp.setChunkCache= " + chunkCacheBytes + " bytes offHeap = " + chunkCacheOffHeap);
+    }
+
+    // blocks of remote files read over http: default is off
+    long httpCacheBytes = ThreddsConfig.getBytes("HTTPRandomAccessFile.cacheSize", 0);
+    if (httpCacheBytes > 0) {
+      int httpReadAhead = ThreddsConfig.getInt("HTTPRandomAccessFile.maxReadAhead", 16);
+      int httpThreads = ThreddsConfig.getInt("HTTPRandomAccessFile.parallelism", 1);
+      HTTPRandomAccessFile.setBlockCache(new ChunkCache("HTTPRandomAccessFile", httpCacheBytes, false));
+      HTTPRandomAccessFile.setMaxReadAhead(httpReadAhead);
+      HTTPRandomAccessFile.setParallelism(httpThreads);
+      startupLog.info("TdsInit: HTTPRandomAccessFile.setBlockCache= " + httpCacheBytes + " bytes maxReadAhead = " +
+              httpReadAhead + " parallelism = " + httpThreads);
+    }
+
+    // GRIB records read concurrently: default is off
+    int gribReadThreads = ThreddsConfig.getInt("GribDataReader.parallelism", 1);
+    if (gribReadThreads > 1) {
+      long gribMaxBytes = ThreddsConfig.getBytes("GribDataReader.maxBytesInFlight", 128 * 1000 * 1000);
+      GribDataReader.setParallelism(gribReadThreads);
+      GribDataReader.setMaxBytesInFlight(gribMaxBytes);
+      startupLog.info("TdsInit: GribDataReader.setParallelism= " + gribReadThreads + " maxBytesInFlight = " + gribMaxBytes);
+    }
+
+    // point collection datasets read ahead: default is off
+    int pointPrefetch = ThreddsConfig.getInt("PointCollection.prefetch", 0);
+    if (pointPrefetch > 0) {
+      int pointQueueSize = ThreddsConfig.getInt("PointCollection.queueSize", 1000);
+      CompositeDatasetFactory.setPrefetch(pointPrefetch);
+      CompositeDatasetFactory.setPrefetchQueueSize(pointQueueSize);
+      startupLog.info("TdsInit: CompositeDatasetFactory.setPrefetch= " + pointPrefetch + " queueSize = " + pointQueueSize);
+    }
+
+    // BUFR messages decoded concurrently: default is off
+    int bufrThreads = ThreddsConfig.getInt("BufrIosp.parallelism", 1);
+    if (bufrThreads > 1) {
+      BufrIosp2.setParallelism(bufrThreads);
+      startupLog.info("TdsInit: BufrIosp2.setParallelism= " + bufrThreads);
+    }
+
+    // directory listings of DatasetScans: default is off
+    int listingCacheSize = ThreddsConfig.getInt("DatasetScan.listingCacheSize", 0);
+    if (listingCacheSize > 0) {
+      int listingMaxAgeSecs = ThreddsConfig.getSeconds("DatasetScan.listingMaxAge", 60);
+      DirectoryListingCache listingCache = new DirectoryListingCache(listingCacheSize, listingMaxAgeSecs * 1000L);
+      String hotDirs = ThreddsConfig.get("DatasetScan.precompute", null);
+      if (hotDirs != null) {
+        List<Path> dirs = new ArrayList<>();
+        for (String hotDir : hotDirs.split(","))
+          if (!hotDir.trim().isEmpty()) dirs.add(Paths.get(AliasTranslator.translateAlias(hotDir.trim())));
+        int precomputeSecs = ThreddsConfig.getSeconds("DatasetScan.precomputeInterval", 60);
+        listingCache.precompute(dirs, precomputeSecs);
+        startupLog.info("TdsInit: DirectoryListingCache.precompute= " + dirs + " interval = " + precomputeSecs);
+      }
+      DatasetScan.setListingCache(listingCache);
+      startupLog.info("TdsInit: DatasetScan.setListingCache= " + listingCacheSize + " entries maxAge = " + listingMaxAgeSecs);
+    }
+
     //RandomAccessFile.enableDefaultGlobalFileCache();
     //RandomAccessFile.setDebugLeaks(true);
 
@@ -447,6 +556,13 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     DiskCache2.exit();                // this handles background threads for all instances of DiskCache2
     thredds.inventory.bdb.MetadataManager.closeAll();
     executor.shutdownNow();
+    DatasetScan.setListingCache(null);
+    Aggregation.shutdown();            // thread pools for concurrent reads, shared by all instances
+    GribIndex.shutdown();
+    GribDataReader.shutdown();
+    CompositeDatasetFactory.shutdown();
+    BufrIosp2.shutdown();
+    HTTPRandomAccessFile.setParallelism(1); // stops its threads; HTTPRandomAccessFile.shutdown() is RandomAccessFile's
 
     /* try {
       catalogWatcher.close();
@@ -109,9 +109,6 @@ public class NcssGridController extends AbstractNcssController {
                 "Grid requests with vertCoord must have variables with same vertical levels.");
       }
 
-    String responseFile = getResponseFileName(datasetPath, version);
-    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
-
     // filename download attachment
     String suffix = version.getSuffix();
     int pos = datasetPath.lastIndexOf("/");
@@ -125,6 +122,25 @@ public class NcssGridController extends AbstractNcssController {
     httpHeaders.set(ContentType.HEADER, sf.getMimeType());
     httpHeaders.set(Constants.Content_Disposition, Constants.setContentDispositionValue(filename));
 
+    // netcdf3 can be written straight to the response, without a temporary file
+    if (version == NetcdfFileWriter.Version.netcdf3 &&
+            ThreddsConfig.getBoolean("NetcdfSubsetService.streamNetcdf3", false)) {
+      CFGridCoverageWriter2.Netcdf3Stream stream = makeCFNetcdf3Stream(gcd, params);
+      if (stream.isSupported()) {
+        httpHeaders.set(Constants.Content_Length, Long.toString(stream.getLength()));
+        setResponseHeaders(res, httpHeaders);
+
+        stream.write(res.getOutputStream());
+        res.flushBuffer();
+        res.getOutputStream().close();
+        res.setStatus(HttpServletResponse.SC_OK);
+        return;
+      }
+    }
+
+    String responseFile = getResponseFileName(datasetPath, version);
+    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
+
     // set content length
     httpHeaders.set(Constants.Content_Length, Constants.getContentLengthValue(netcdfResult));
 
@@ -136,6 +152,25 @@ public class NcssGridController extends AbstractNcssController {
     res.setStatus(HttpServletResponse.SC_OK);
   }
 
+  private CFGridCoverageWriter2.Netcdf3Stream makeCFNetcdf3Stream(CoverageCollection gcd, NcssGridParamsBean params)
+          throws InvalidRangeException, IOException {
+    SubsetParams subset = params.makeSubset(gcd);
+
+    Optional<CFGridCoverageWriter2.Netcdf3Stream> streamo = CFGridCoverageWriter2.makeNetcdf3Stream(
+            gcd, params.getVar(), subset, params.isAddLatLon());
+    if (!streamo.isPresent())
+      throw new InvalidRangeException("Request contains no data: " + streamo.getErrorMessage());
+    CFGridCoverageWriter2.Netcdf3Stream stream = streamo.get();
+
+    // Test maxFileDownloadSize. The size is exact, since nothing is compressed.
+    long maxFileDownloadSize = ThreddsConfig.getBytes("NetcdfSubsetService.maxFileDownloadSize", -1L);
+    if (maxFileDownloadSize > 0 && stream.isSupported() && stream.getLength() > maxFileDownloadSize)
+      throw new RequestTooLargeException(
+              "NCSS response too large = " + stream.getLength() + " max = " + maxFileDownloadSize);
+
+    return stream;
+  }
+
   private File makeCFNetcdfFile(CoverageCollection gcd, String responseFilename, NcssGridParamsBean params,
           NetcdfFileWriter.Version version) throws InvalidRangeException, IOException {
     SubsetParams subset = params.makeSubset(gcd);
@@ -12,12 +12,16 @@ import ucar.nc2.time.*;
 import ucar.nc2.units.DateRange;
 import ucar.unidata.geoloc.EarthLocation;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Class to manage generating an inventory of radar data and providing a way
@@ -33,26 +37,43 @@ public class RadarDataInventory {
     }
 
     private static final long updateIntervalMsec = 600000;
-    private EnumMap<DirType, Set<String>> items;
+    // Directories for dates this recent are checked by each query, as
+    // they may have new files that the index does not have yet
+    private static final long liveWindowMsec = 24 * 3600 * 1000L;
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RadarDataInventory.class);
+
+    // Refreshes the indexes in the background, so that requests do not wait for them
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "RadarServerIndexRefresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile EnumMap<DirType, Set<String>> items;
     private Path collectionDir;
     private DirectoryStructure structure;
     private String fileTimeFmt, dataFormat;
     private java.util.regex.Pattern fileTimeRegex;
     private boolean dirty;
-    private CalendarDate lastUpdate;
-    private int maxCrawlItems;
+    private volatile CalendarDate lastUpdate;
+    private File indexFile;
+    private volatile RadarFileIndex index;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
     private StationList stations;
     private CalendarPeriod nearestWindow, rangeAdjustment;
     private String name, description;
     private DateRange timeCoverage;
     private RadarServerConfig.RadarConfigEntry.GeoInfo geoCoverage;
 
+    /**
+     * @param datasetRoot top directory of the collection
+     * @param numCrawl no longer used: every directory is indexed
+     */
     public RadarDataInventory(Path datasetRoot, int numCrawl) {
         items = new EnumMap<>(DirType.class);
         collectionDir = datasetRoot;
         structure = new DirectoryStructure(collectionDir);
         dirty = true;
-        maxCrawlItems = numCrawl;
         stations = new StationList();
         nearestWindow = CalendarPeriod.of(1, CalendarPeriod.Field.Hour);
     }
@@ -127,9 +148,20 @@ public class RadarDataInventory {
         nearestWindow = pd;
     }
 
+    /**
+     * Keep the index of the collection in this file, so that it survives a restart
+     * without crawling the collection again.
+     *
+     * @param indexFile where to keep the index; null to keep it only in memory
+     */
+    public void setIndexFile(File indexFile) {
+        this.indexFile = indexFile;
+        dirty = true;
+    }
+
     public static class DirectoryStructure {
         int maxCrawlDepth = 1;
-        private static class DirEntry {
+        static class DirEntry {
             public DirType type;
             public String fmt;
             public DirEntry(DirType type, String fmt) {
@@ -138,7 +170,7 @@ public class RadarDataInventory {
             }
         }
 
-        private class DirectoryDateMatcher {
+        class DirectoryDateMatcher {
             // Map a directory level to a date format
             List<Integer> levels;
             String fmt;
@@ -176,7 +208,7 @@ public class RadarDataInventory {
 
         private Path base;
 
-        private List<DirEntry> order;
+        List<DirEntry> order;
         private List<Integer> keyIndices;
 
         public DirectoryStructure(Path dir) {
@@ -249,40 +281,23 @@ public class RadarDataInventory {
         fileTimeFmt = fmt;
     }
 
-    private void findItems(Path start, int level) {
-        // Add each entry from this level to the appropriate item box
-        // and recurse
+    // Collect the names of the station and variable directories, and of
+    // any date directories above them
+    private void findItems(RadarFileIndex.Dir dir, int level,
+                           EnumMap<DirType, Set<String>> found) {
         if (level >= structure.order.size() || level >= structure.maxCrawlDepth)
             return;
 
         DirectoryStructure.DirEntry entry = structure.order.get(level);
-        Set<String> values;
-
-        if (!items.containsKey(entry.type)) {
+        Set<String> values = found.get(entry.type);
+        if (values == null) {
             values = new TreeSet<>();
-            items.put(entry.type, values);
-        } else {
-            values = items.get(entry.type);
+            found.put(entry.type, values);
         }
 
-        int crawled = 0;
-        try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(start)) {
-            for (Path p : dirStream) {
-                if (Files.isDirectory(p)) {
-                    String item = p.getFileName().toString();
-                    values.add(item);
-                    // Try to grab station info from some file
-                    // TODO: Fix or remove
-//                    if (entry.type == DirType.Station)
-//                        updateStations(item, p);
-                    if (crawled < maxCrawlItems) {
-                        findItems(p, level + 1);
-                        ++crawled;
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("findItems(): Error reading directory: " + start.toString());
+        for (RadarFileIndex.Dir sub : dir.subdirs.values()) {
+            values.add(sub.name);
+            findItems(sub, level + 1, found);
         }
     }
 
@@ -325,14 +340,53 @@ public class RadarDataInventory {
         }
     }
 
-    private void update() {
-        if (dirty || timeToUpdate()) {
-            findItems(structure.base, 0);
+    private synchronized void update() {
+        if (dirty) {
+            // The first time, use the saved index if there is one, and bring
+            // it up to date in the background. Otherwise crawl now.
+            index = new RadarFileIndex(collectionDir, structure, fileTimeRegex,
+                    fileTimeFmt, indexFile);
+            boolean loaded = index.load();
+            if (!loaded) {
+                try {
+                    index.refresh();
+                } catch (IOException e) {
+                    logger.warn("Error indexing {}", collectionDir, e);
+                }
+            }
+            indexUpdated();
             dirty = false;
-            lastUpdate = CalendarDate.present();
+            if (loaded) refreshInBackground();
+        } else if (timeToUpdate()) {
+            refreshInBackground();
         }
     }
 
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) return;
+
+        final RadarFileIndex current = index;
+        refresher.submit(() -> {
+            try {
+                current.refresh();
+            } catch (Throwable t) {
+                logger.warn("Error refreshing index of {}", collectionDir, t);
+            } finally {
+                // dont try again until the next interval, even on failure
+                indexUpdated();
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private void indexUpdated() {
+        EnumMap<DirType, Set<String>> found = new EnumMap<>(DirType.class);
+        RadarFileIndex.Dir root = index.getRoot();
+        if (root != null) findItems(root, 0, found);
+        items = found;
+        lastUpdate = CalendarDate.present();
+    }
+
     boolean timeToUpdate() {
         // See if it's been more than enough time since the last update
         CalendarDate now = CalendarDate.present();
@@ -417,11 +471,47 @@ public class RadarDataInventory {
             return range == null || range.includes(d);
         }
 
-        public Collection<QueryResultItem> results() {
-            List<Path> results = new ArrayList<>();
+        // The index may be up to updateIntervalMsec old, so the directories
+        // of the requested stations and variables whose dates are in the range
+        // and within liveWindowMsec of now are checked first. Only the ones
+        // that have been modified since they were indexed are listed again.
+        private RadarFileIndex.Dir currentRoot(RadarFileIndex index,
+                                               CalendarDateRange range) {
+            final long liveSince = System.currentTimeMillis() - liveWindowMsec;
+            if (range != null && range.getEnd().getMillis() < liveSince)
+                return index.getRoot();
+
+            int n = structure.order.size();
+            final CalendarDateRange[] dirRanges = new CalendarDateRange[n];
+            final CalendarPeriod[] spans = new CalendarPeriod[n];
             DirectoryStructure.DirectoryDateMatcher matcher = structure.matcher();
-            results.add(structure.base);
+            for (int i = 0; i < n; ++i) {
+                DirectoryStructure.DirEntry entry = structure.order.get(i);
+                if (entry.type == DirType.Date) {
+                    matcher.add(i, entry.fmt);
+                    dirRanges[i] = rangeFromFormat(matcher.getFormat(), range);
+                    spans[i] = findRangeAdjustment(matcher.fmt);
+                }
+            }
 
+            return index.refresh((level, name, date) -> {
+                DirType type = structure.order.get(level).type;
+                if (type == DirType.Date) {
+                    if (date == RadarFileIndex.NO_DATE) return false;
+                    CalendarDate d = CalendarDate.of(date);
+                    return checkDate(dirRanges[level], d) &&
+                            d.add(spans[level]).getMillis() >= liveSince;
+                }
+                List<Object> wanted = q.get(type);
+                if (wanted == null) return false;
+                for (Object next : wanted) {
+                    if (next.toString().equals(name)) return true;
+                }
+                return false;
+            });
+        }
+
+        public Collection<QueryResultItem> results() {
             // Grab the range of dates up front
             List<Object> dates = q.get(DirType.Date);
             CalendarDateRange range = (CalendarDateRange) dates.get(0);
@@ -434,32 +524,44 @@ public class RadarDataInventory {
                         range.getEnd().add(nearestWindow));
             }
 
+            // Answered from the index, checking only recent directories
+            RadarFileIndex index = RadarDataInventory.this.index;
+            List<RadarFileIndex.Dir> results = new ArrayList<>();
+            List<Path> resultPaths = new ArrayList<>();
+            RadarFileIndex.Dir root = currentRoot(index, range);
+            if (root != null) {
+                results.add(root);
+                resultPaths.add(structure.base);
+            }
+            DirectoryStructure.DirectoryDateMatcher matcher = structure.matcher();
+
             // Loop over each entry in the directory structure and handle
             // as appropriate. For stn/var we check if the desired item
             // exists. For dates, add the items that are within the filter
             for (int i = 0; i < structure.order.size(); ++i) {
                 DirectoryStructure.DirEntry entry = structure.order.get(i);
-                List<Path> newResults = new ArrayList<>();
+                List<RadarFileIndex.Dir> newResults = new ArrayList<>();
+                List<Path> newPaths = new ArrayList<>();
                 List<Object> queryItem = q.get(entry.type);
                 switch (entry.type) {
                     // Loop over results and add subdirs that are within the
                     // appropriate range, which is found by successively adding
-                    // the date format to a matcher string
+                    // the date format to a matcher string. The dates of the
+                    // subdirs were parsed the same way when they were indexed.
                     case Date:
                         matcher.add(i, entry.fmt);
                         SimpleDateFormat fmt = matcher.getFormat();
                         CalendarDateRange dirRange = rangeFromFormat(fmt, range);
 
-                        for (Path p : results)
-                            try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(p)) {
-                                for (Path sub : dirStream) {
-                                    Date d = matcher.getDate(sub);
-                                    if (d != null && checkDate(dirRange, CalendarDate.of(d)))
-                                        newResults.add(sub);
+                        for (int j = 0; j < results.size(); ++j) {
+                            for (RadarFileIndex.Dir sub : results.get(j).subdirs.values()) {
+                                if (sub.date != RadarFileIndex.NO_DATE &&
+                                        checkDate(dirRange, CalendarDate.of(sub.date))) {
+                                    newResults.add(sub);
+                                    newPaths.add(resultPaths.get(j).resolve(sub.name));
                                 }
-                            } catch (IOException e) {
-                                System.out.println("results(): Error reading dir: " + p.toString());
                             }
+                        }
                         break;
 
                     // Add to results and prune non-existent
@@ -468,39 +570,32 @@ public class RadarDataInventory {
                     case Variable:
                     default:
                         for (Object next: queryItem) {
-                            for (Path p : results) {
-                                Path nextPath = p.resolve(next.toString());
-                                if (Files.exists(nextPath))
-                                    newResults.add(nextPath);
+                            for (int j = 0; j < results.size(); ++j) {
+                                RadarFileIndex.Dir sub = results.get(j).subdirs.get(next.toString());
+                                if (sub != null) {
+                                    newResults.add(sub);
+                                    newPaths.add(resultPaths.get(j).resolve(sub.name));
+                                }
                             }
                         }
                 }
                 results = newResults;
+                resultPaths = newPaths;
             }
 
-            // Now get the contents of the remaining directories
+            // Now get the files of the remaining directories, which are
+            // sorted by time
             Collection<QueryResultItem> filteredFiles = new ArrayList<>();
-            for(Path p : results) {
-                try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(p)) {
-                    for (Path f: dirStream) {
-                        java.util.regex.Matcher regexMatcher = fileTimeRegex.matcher(f.toString());
-                        if (!regexMatcher.find()) continue;
-
-                        try {
-                            SimpleDateFormat fmt = new SimpleDateFormat(fileTimeFmt);
-                            fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
-                            Date d = fmt.parse(regexMatcher.group());
-                            if (d != null) {
-                                CalendarDate cd = CalendarDate.of(d);
-                                if (checkDate(range, cd))
-                                    filteredFiles.add(new QueryResultItem(f, cd));
-                            }
-                        } catch (ParseException e) {
-                            // Ignore file
-                        }
-                    }
-                } catch (IOException e) {
-                    System.out.println("results(): Error getting files for: " + p.toString());
+            SimpleDateFormat fileTimeFormat = index.newFileTimeFormat();
+            for (int j = 0; j < results.size(); ++j) {
+                RadarFileIndex.Dir dir = results.get(j);
+                int first = (range == null) ? 0 :
+                        dir.firstAtOrAfter(range.getStart().getMillis());
+                long last = (range == null) ? Long.MAX_VALUE : range.getEnd().getMillis();
+                for (int k = first; k < dir.fileTimes.length && dir.fileTimes[k] <= last; ++k) {
+                    filteredFiles.add(new QueryResultItem(
+                            resultPaths.get(j).resolve(dir.getFileName(k, fileTimeFormat)),
+                            CalendarDate.of(dir.fileTimes[k])));
                 }
             }
 
@@ -0,0 +1,685 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.radarServer2;
+
+import java.io.*;
+import java.nio.file.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An index of the directories and files of a RadarDataInventory, so that queries do not crawl the file system.
+ * <p>
+ * The index is a tree of the directories in the collection's layout (station, variable and date directories).
+ * The date of each date directory, and the time of each file, are parsed once, when the directory is listed.
+ * The files of each directory in the last level are kept sorted by time. Their names are not kept when they can be
+ * made again from the time and a prefix and suffix shared by the other files, which is the usual case.
+ * <p>
+ * refresh() updates the index incrementally: every directory is checked for its modification time, and only
+ * directories that have changed since they were last listed are listed again. refresh(Filter) does the same for
+ * just the directories a query needs. The tree is replaced, not modified, so queries may use getRoot() while a
+ * refresh is running.
+ * <p>
+ * If an index file is given, the directories that have changed are appended to it after each refresh(), and it is
+ * rewritten whole once it has grown to twice the size it had then. It can be loaded at startup instead of crawling
+ * the collection.
+ *
+ * @since 5.0
+ */
+class RadarFileIndex {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RadarFileIndex.class);
+
+  static private final int MAGIC = 0x52445849; // "RDXI"
+  static private final int VERSION = 2;
+  static final long NO_DATE = Long.MIN_VALUE;
+
+  // a directory is listed again if it was modified within this long of its last listing, in case of a coarse
+  // modification time
+  static private final long MTIME_GRANULARITY_MSECS = 2000;
+
+  static private final int MAX_SHARED_AFFIXES = 10000;
+  static private final String[] NO_AFFIXES = new String[0];
+
+  /**
+   * Decides which directories refresh(Filter) looks at.
+   */
+  interface Filter {
+    /**
+     * @param level the level of the directory in the layout
+     * @param name  its name
+     * @param date  for date directories, the date parsed from the path, else NO_DATE
+     * @return true to check the directory, and the ones below it that are accepted
+     */
+    boolean accept(int level, String name, long date);
+  }
+
+  /**
+   * A directory, as of when it was listed. Immutable.
+   */
+  static class Dir {
+    final String name;
+    final long lastModified; // 0 if not known, then it is always listed again
+    final long listed;       // when it was listed
+    final long date;         // for date directories, the date parsed from the path, else NO_DATE
+    final SortedMap<String, Dir> subdirs; // null for the last level
+
+    // last level only: the files whose names have a time, sorted by time. The name of file i is
+    // affixes[2k] + time + affixes[2k+1], with k = affixIndex[i], or 0 if affixIndex is null;
+    // fileNames is only kept if some of the names cant be made that way.
+    final long[] fileTimes;
+    final String[] affixes;
+    final int[] affixIndex;
+    final String[] fileNames;
+
+    Dir(String name, long lastModified, long listed, long date, SortedMap<String, Dir> subdirs) {
+      this(name, lastModified, listed, date, subdirs, null, null, null, null);
+    }
+
+    Dir(String name, long lastModified, long listed, long date, long[] fileTimes, String[] affixes,
+        int[] affixIndex, String[] fileNames) {
+      this(name, lastModified, listed, date, null, fileTimes, affixes, affixIndex, fileNames);
+    }
+
+    private Dir(String name, long lastModified, long listed, long date, SortedMap<String, Dir> subdirs,
+                long[] fileTimes, String[] affixes, int[] affixIndex, String[] fileNames) {
+      this.name = name;
+      this.lastModified = lastModified;
+      this.listed = listed;
+      this.date = date;
+      this.subdirs = subdirs;
+      this.fileTimes = fileTimes;
+      this.affixes = affixes;
+      this.affixIndex = affixIndex;
+      this.fileNames = fileNames;
+    }
+
+    boolean isUnchanged(long lastModified) {
+      return lastModified != 0 && lastModified == this.lastModified &&
+              listed - lastModified > MTIME_GRANULARITY_MSECS;
+    }
+
+    boolean isEmpty() {
+      return (subdirs != null) ? subdirs.isEmpty() : fileTimes.length == 0;
+    }
+
+    // index of the first file with time >= t
+    int firstAtOrAfter(long t) {
+      int lo = 0, hi = fileTimes.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (fileTimes[mid] < t) lo = mid + 1;
+        else hi = mid;
+      }
+      return lo;
+    }
+
+    /**
+     * @param i   index of the file
+     * @param fmt from newFileTimeFormat()
+     * @return the name of the file
+     */
+    String getFileName(int i, SimpleDateFormat fmt) {
+      if (fileNames != null) return fileNames[i];
+      int k = (affixIndex == null) ? 0 : affixIndex[i];
+      return affixes[2 * k] + fmt.format(new Date(fileTimes[i])) + affixes[2 * k + 1];
+    }
+  }
+
+  // a directory that was made by a refresh, and its path below base
+  static private class Change {
+    final String[] path;
+    final Dir dir;
+
+    Change(List<String> path, Dir dir) {
+      this.path = path.toArray(new String[path.size()]);
+      this.dir = dir;
+    }
+  }
+
+  private final Path base;
+  private final RadarDataInventory.DirectoryStructure structure;
+  private final java.util.regex.Pattern fileTimeRegex;
+  private final String fileTimeFmt;
+  private final File indexFile; // may be null
+  private final String signature;
+
+  // the file name prefixes and suffixes, which are mostly the same in many directories
+  private final Map<String, String> sharedAffixes = new ConcurrentHashMap<>();
+
+  private volatile Dir root;
+
+  // only one refresh at a time changes the index
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  // guarded by refreshLock
+  private final List<Change> unsaved = new ArrayList<>();
+  private long savedLength; // length of the index file when it was last written whole
+  private boolean rewrite;  // write the index file whole next time
+
+  RadarFileIndex(Path base, RadarDataInventory.DirectoryStructure structure,
+                 java.util.regex.Pattern fileTimeRegex, String fileTimeFmt, File indexFile) {
+    this.base = base;
+    this.structure = structure;
+    this.fileTimeRegex = fileTimeRegex;
+    this.fileTimeFmt = fileTimeFmt;
+    this.indexFile = indexFile;
+
+    // an index file made with a different configuration is not used
+    StringBuilder sb = new StringBuilder(base.toUri().toString());
+    for (RadarDataInventory.DirectoryStructure.DirEntry entry : structure.order)
+      sb.append('/').append(entry.type).append(':').append(entry.fmt);
+    sb.append(' ').append(fileTimeRegex).append(' ').append(fileTimeFmt);
+    this.signature = sb.toString();
+  }
+
+  /**
+   * @return the top of the index, null if it has not been loaded or refreshed yet
+   */
+  Dir getRoot() {
+    return root;
+  }
+
+  int getNumLevels() {
+    return structure.order.size();
+  }
+
+  /**
+   * @return a format for the times in the file names, as used by Dir.getFileName()
+   */
+  SimpleDateFormat newFileTimeFormat() {
+    SimpleDateFormat fmt = new SimpleDateFormat(fileTimeFmt);
+    fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return fmt;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // refreshing from the file system
+
+  /**
+   * Bring the index up to date with the file system, listing only the directories that have changed.
+   *
+   * @return true if anything changed
+   */
+  boolean refresh() throws IOException {
+    refreshLock.lock();
+    try {
+      Dir old = root;
+      List<Change> changes = new ArrayList<>();
+      Dir updated = refresh(old, base, 0, new ArrayList<String>(), new DateParsers(), null, changes);
+      if (updated == null) { // base is gone
+        if (old != null && old.lastModified == 0 && old.isEmpty()) {
+          updated = old;
+        } else {
+          updated = emptyDir("", NO_DATE, structure.order.isEmpty());
+          changes.add(new Change(Collections.<String>emptyList(), updated));
+        }
+      }
+
+      boolean changed = (updated != old);
+      if (changed) {
+        root = updated;
+        unsaved.addAll(changes);
+      }
+      if (indexFile != null && !unsaved.isEmpty())
+        save();
+      return changed;
+
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Bring the directories that filter accepts up to date with the file system, for a query. The others are not
+   * looked at. The result is kept in the index, unless another refresh is running; then it is only returned.
+   *
+   * @param filter which directories to check
+   * @return the top of the index, with the accepted directories up to date
+   */
+  Dir refresh(Filter filter) {
+    boolean locked = refreshLock.tryLock();
+    try {
+      Dir old = root;
+      List<Change> changes = new ArrayList<>();
+      Dir updated = refresh(old, base, 0, new ArrayList<String>(), new DateParsers(), filter, changes);
+      if (updated == null) // base is gone, left for refresh()
+        return old;
+      if (locked && updated != old) {
+        root = updated;
+        unsaved.addAll(changes); // saved by the next refresh()
+      }
+      return updated;
+
+    } finally {
+      if (locked) refreshLock.unlock();
+    }
+  }
+
+  // returns old if nothing changed below it, null if the directory is gone
+  private Dir refresh(Dir old, Path dir, int level, List<String> names, DateParsers parsers, Filter filter,
+                      List<Change> changes) {
+    long lastModified;
+    try {
+      lastModified = Files.getLastModifiedTime(dir).toMillis();
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      lastModified = 0; // some file systems (eg S3) dont have directories
+    }
+    boolean unchanged = (old != null) && old.isUnchanged(lastModified);
+    long date = (old != null) ? old.date : (level == 0) ? NO_DATE : parsers.parseDirDate(names, level - 1);
+    String name = (old != null) ? old.name : (level == 0) ? "" : names.get(names.size() - 1);
+
+    if (level == structure.order.size()) { // the files
+      if (unchanged) return old;
+      Dir updated = listFiles(dir, lastModified, date, name);
+      if (updated != null) changes.add(new Change(names, updated));
+      return updated;
+    }
+
+    // the subdirectories: if this directory hasnt changed, neither has the list of subdirectories
+    Collection<String> subdirNames;
+    long listed = (old == null) ? 0 : old.listed;
+    if (unchanged) {
+      subdirNames = old.subdirs.keySet();
+    } else {
+      listed = System.currentTimeMillis();
+      subdirNames = new ArrayList<>();
+      try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+        for (Path p : dirStream) {
+          if (Files.isDirectory(p))
+            subdirNames.add(p.getFileName().toString());
+        }
+      } catch (NoSuchFileException e) {
+        return null;
+      } catch (IOException e) {
+        logger.warn("refresh: Error reading directory {}", dir, e);
+        return old;
+      }
+    }
+
+    boolean changed = !unchanged;
+    boolean removed = false;
+    boolean lastLevel = (level + 1 == structure.order.size());
+    SortedMap<String, Dir> subdirs = new TreeMap<>();
+    for (String subName : subdirNames) {
+      Dir oldSub = (old == null) ? null : old.subdirs.get(subName);
+      names.add(subName);
+      long subDate = (oldSub != null) ? oldSub.date : parsers.parseDirDate(names, level);
+      Dir sub;
+      if (filter == null || filter.accept(level, subName, subDate))
+        sub = refresh(oldSub, dir.resolve(subName), level + 1, names, parsers, filter, changes);
+      else // not looked at; a new one is listed when it is next accepted
+        sub = (oldSub != null) ? oldSub : emptyDir(subName, subDate, lastLevel);
+      names.remove(names.size() - 1);
+      if (sub != oldSub) changed = true;
+      if (sub != null) subdirs.put(subName, sub);
+      else removed = true;
+    }
+
+    if (!changed) return old;
+    Dir updated = new Dir(name, lastModified, listed, date, Collections.unmodifiableSortedMap(subdirs));
+    if (!unchanged || removed) // else only the subdirectories have changed, and they have their own records
+      changes.add(new Change(names, updated));
+    return updated;
+  }
+
+  // a directory that has not been listed yet
+  private static Dir emptyDir(String name, long date, boolean lastLevel) {
+    if (lastLevel)
+      return new Dir(name, 0, 0, date, new long[0], NO_AFFIXES, null, null);
+    return new Dir(name, 0, 0, date, Collections.<String, Dir>emptySortedMap());
+  }
+
+  // a file whose name has a time
+  static private class FileTime {
+    final String name;
+    final long time;
+    final int start, end; // where the time is in the name, -1 if it cant be made again from the time
+
+    FileTime(String name, long time, int start, int end) {
+      this.name = name;
+      this.time = time;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  private Dir listFiles(Path dir, long lastModified, long date, String name) {
+    long listed = System.currentTimeMillis();
+    List<FileTime> files = new ArrayList<>();
+    SimpleDateFormat fmt = newFileTimeFormat();
+
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path f : dirStream) {
+        String path = f.toString();
+        java.util.regex.Matcher regexMatcher = fileTimeRegex.matcher(path);
+        if (!regexMatcher.find()) continue;
+        try {
+          Date d = fmt.parse(regexMatcher.group());
+          if (d != null) {
+            String fileName = f.getFileName().toString();
+            int offset = path.length() - fileName.length();
+            boolean remade = regexMatcher.start() >= offset && fmt.format(d).equals(regexMatcher.group());
+            files.add(new FileTime(fileName, d.getTime(), remade ? regexMatcher.start() - offset : -1,
+                    remade ? regexMatcher.end() - offset : -1));
+          }
+        } catch (ParseException e) {
+          // Ignore file
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      logger.warn("refresh: Error getting files for {}", dir, e);
+    }
+
+    Collections.sort(files, (a, b) -> (a.time != b.time) ? Long.compare(a.time, b.time) : a.name.compareTo(b.name));
+    int n = files.size();
+    long[] fileTimes = new long[n];
+    boolean allRemade = true;
+    for (int i = 0; i < n; i++) {
+      fileTimes[i] = files.get(i).time;
+      if (files.get(i).start < 0) allRemade = false;
+    }
+
+    if (!allRemade) {
+      String[] fileNames = new String[n];
+      for (int i = 0; i < n; i++)
+        fileNames[i] = files.get(i).name;
+      return new Dir(name, lastModified, listed, date, fileTimes, NO_AFFIXES, null, fileNames);
+    }
+
+    Map<String, Integer> pairs = new HashMap<>();
+    List<String> affixes = new ArrayList<>();
+    int[] affixIndex = new int[n];
+    for (int i = 0; i < n; i++) {
+      FileTime file = files.get(i);
+      String prefix = file.name.substring(0, file.start);
+      String suffix = file.name.substring(file.end);
+      String key = prefix + '/' + suffix; // not in a file name
+      Integer k = pairs.get(key);
+      if (k == null) {
+        k = pairs.size();
+        pairs.put(key, k);
+        affixes.add(share(prefix));
+        affixes.add(share(suffix));
+      }
+      affixIndex[i] = k;
+    }
+    return new Dir(name, lastModified, listed, date, fileTimes, affixes.toArray(new String[affixes.size()]),
+            (pairs.size() > 1) ? affixIndex : null, null);
+  }
+
+  private String share(String affix) {
+    String shared = sharedAffixes.get(affix);
+    if (shared != null) return shared;
+    if (sharedAffixes.size() < MAX_SHARED_AFFIXES) sharedAffixes.putIfAbsent(affix, affix);
+    return affix;
+  }
+
+  // Parses the dates of date directories: all of the date levels down to this one make up the date
+  private class DateParsers {
+    private final SimpleDateFormat[] formats = new SimpleDateFormat[structure.order.size()];
+
+    DateParsers() {
+      RadarDataInventory.DirectoryStructure.DirectoryDateMatcher matcher = structure.matcher();
+      for (int i = 0; i < formats.length; i++) {
+        if (structure.order.get(i).type == RadarDataInventory.DirType.Date) {
+          matcher.add(i, structure.order.get(i).fmt);
+          formats[i] = matcher.getFormat();
+        }
+      }
+    }
+
+    // names are the path below base; level is the level of the last name
+    long parseDirDate(List<String> names, int level) {
+      if (formats[level] == null) return NO_DATE;
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i <= level; i++) {
+        if (structure.order.get(i).type == RadarDataInventory.DirType.Date)
+          sb.append(names.get(i));
+      }
+      try {
+        return formats[level].parse(sb.toString()).getTime();
+      } catch (ParseException e) {
+        return NO_DATE;
+      }
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // the index file: a header, then one record for each directory that was made, in order.
+  // A later record of a directory replaces the earlier ones.
+
+  // the last record of a directory
+  static private class Record {
+    long lastModified, listed, date;
+    String[] subdirs; // or
+    Dir files;
+  }
+
+  /**
+   * Read the index from the index file.
+   *
+   * @return false if there is no index file, or it was made for another configuration
+   */
+  boolean load() {
+    if (indexFile == null || !indexFile.exists()) return false;
+
+    Map<String, Record> records = new HashMap<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(signature)) {
+        logger.info("Ignoring out of date radar server index {}", indexFile);
+        return false;
+      }
+      long length = in.readLong();
+      if (!readRecords(in, records)) {
+        logger.warn("Radar server index {} was cut short, it will be rewritten", indexFile);
+        rewrite = true;
+      }
+
+      refreshLock.lock();
+      try {
+        savedLength = length;
+        root = build(records, new ArrayList<String>(), new DateParsers());
+      } finally {
+        refreshLock.unlock();
+      }
+      return true;
+
+    } catch (IOException e) {
+      logger.warn("Failed to read radar server index {}", indexFile, e);
+      return false;
+    }
+  }
+
+  // false if the last record was cut short
+  private static boolean readRecords(DataInputStream in, Map<String, Record> records) throws IOException {
+    while (true) {
+      int depth;
+      try {
+        depth = in.readInt();
+      } catch (EOFException e) {
+        return true;
+      }
+
+      try {
+        String[] path = new String[depth];
+        for (int i = 0; i < depth; i++)
+          path[i] = in.readUTF();
+        Record rec = new Record();
+        rec.lastModified = in.readLong();
+        rec.listed = in.readLong();
+        rec.date = in.readLong();
+        if (in.readBoolean()) {
+          rec.subdirs = new String[in.readInt()];
+          for (int i = 0; i < rec.subdirs.length; i++)
+            rec.subdirs[i] = in.readUTF();
+        } else {
+          rec.files = readFiles(in, (depth == 0) ? "" : path[depth - 1], rec);
+        }
+        records.put(String.join("/", path), rec);
+
+      } catch (EOFException e) {
+        return false;
+      }
+    }
+  }
+
+  private static Dir readFiles(DataInputStream in, String name, Record rec) throws IOException {
+    int n = in.readInt();
+    long[] fileTimes = new long[n];
+    for (int i = 0; i < n; i++)
+      fileTimes[i] = in.readLong();
+    String[] affixes = new String[in.readInt()];
+    for (int i = 0; i < affixes.length; i++)
+      affixes[i] = in.readUTF();
+    int[] affixIndex = null;
+    if (in.readBoolean()) {
+      affixIndex = new int[n];
+      for (int i = 0; i < n; i++)
+        affixIndex[i] = in.readInt();
+    }
+    String[] fileNames = null;
+    if (in.readBoolean()) {
+      fileNames = new String[n];
+      for (int i = 0; i < n; i++)
+        fileNames[i] = in.readUTF();
+    }
+    return new Dir(name, rec.lastModified, rec.listed, rec.date, fileTimes, affixes, affixIndex, fileNames);
+  }
+
+  // a directory with no record has not been listed yet
+  private Dir build(Map<String, Record> records, List<String> names, DateParsers parsers) {
+    int level = names.size();
+    boolean lastLevel = (level == structure.order.size());
+    Record rec = records.get(String.join("/", names));
+    if (rec == null || (rec.files != null) != lastLevel) {
+      long date = (level == 0) ? NO_DATE : parsers.parseDirDate(names, level - 1);
+      return emptyDir((level == 0) ? "" : names.get(level - 1), date, lastLevel);
+    }
+    if (lastLevel) {
+      Dir files = rec.files;
+      String[] affixes = new String[files.affixes.length];
+      for (int i = 0; i < affixes.length; i++)
+        affixes[i] = share(files.affixes[i]);
+      return new Dir(files.name, files.lastModified, files.listed, files.date, files.fileTimes, affixes,
+              files.affixIndex, files.fileNames);
+    }
+
+    SortedMap<String, Dir> subdirs = new TreeMap<>();
+    for (String sub : rec.subdirs) {
+      names.add(sub);
+      subdirs.put(sub, build(records, names, parsers));
+      names.remove(names.size() - 1);
+    }
+    return new Dir((level == 0) ? "" : names.get(level - 1), rec.lastModified, rec.listed, rec.date,
+            Collections.unmodifiableSortedMap(subdirs));
+  }
+
+  // guarded by refreshLock
+  private void save() {
+    try {
+      if (rewrite || !indexFile.exists() || indexFile.length() > 2 * savedLength)
+        saveAll();
+      else
+        saveChanges();
+      rewrite = false;
+
+    } catch (IOException e) {
+      // the file may end with part of a record, dont append to it
+      logger.warn("Failed to write radar server index {}", indexFile, e);
+      rewrite = true;
+    }
+    unsaved.clear();
+  }
+
+  private void saveChanges() throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)))) {
+      for (Change change : unsaved)
+        writeRecord(out, change.path, change.dir);
+    }
+  }
+
+  private void saveAll() throws IOException {
+    File tmp = new File(indexFile.getPath() + ".tmp");
+    try {
+      File parent = indexFile.getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs())
+        throw new IOException("Cant make directory " + parent);
+
+      long lengthPos;
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(signature);
+        lengthPos = out.size();
+        out.writeLong(0);
+        writeTree(out, root, new ArrayList<String>());
+      }
+      long length = tmp.length();
+      try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+        raf.seek(lengthPos);
+        raf.writeLong(length);
+      }
+      Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      savedLength = length;
+
+    } catch (IOException e) {
+      if (tmp.exists() && !tmp.delete())
+        logger.warn("Failed to delete {}", tmp);
+      throw e;
+    }
+  }
+
+  private static void writeTree(DataOutputStream out, Dir dir, List<String> names) throws IOException {
+    writeRecord(out, names.toArray(new String[names.size()]), dir);
+    if (dir.subdirs != null) {
+      for (Dir sub : dir.subdirs.values()) {
+        names.add(sub.name);
+        writeTree(out, sub, names);
+        names.remove(names.size() - 1);
+      }
+    }
+  }
+
+  private static void writeRecord(DataOutputStream out, String[] path, Dir dir) throws IOException {
+    out.writeInt(path.length);
+    for (String name : path)
+      out.writeUTF(name);
+    out.writeLong(dir.lastModified);
+    out.writeLong(dir.listed);
+    out.writeLong(dir.date);
+    if (dir.subdirs != null) {
+      out.writeBoolean(true);
+      out.writeInt(dir.subdirs.size());
+      for (String name : dir.subdirs.keySet())
+        out.writeUTF(name);
+    } else {
+      out.writeBoolean(false);
+      int n = dir.fileTimes.length;
+      out.writeInt(n);
+      for (long time : dir.fileTimes)
+        out.writeLong(time);
+      out.writeInt(dir.affixes.length);
+      for (String affix : dir.affixes)
+        out.writeUTF(affix);
+      out.writeBoolean(dir.affixIndex != null);
+      if (dir.affixIndex != null) {
+        for (int k : dir.affixIndex)
+          out.writeInt(k);
+      }
+      out.writeBoolean(dir.fileNames != null);
+      if (dir.fileNames != null) {
+        for (String name : dir.fileNames)
+          out.writeUTF(name);
+      }
+    }
+  }
+}
@@ -15,6 +15,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -130,6 +131,8 @@ public class RadarServerController {
         data = new TreeMap<>();
         vars = new TreeMap<>();
         String contentPath = tdsContext.getThreddsDirectory().getPath();
+        String indexDir = ThreddsConfig.get("RadarServer.indexDir",
+                new File(tdsContext.getThreddsDirectory(), "/cache/radarServer/").getPath());
         List<RadarServerConfig.RadarConfigEntry> configs = RadarServerConfig.readXML(contentPath + "/radar/radarCollections.xml");
         for (RadarServerConfig.RadarConfigEntry conf : configs) {
             RadarDataInventory di = new RadarDataInventory(conf.dataPath,
@@ -152,6 +155,7 @@ public class RadarServerController {
 
             di.addFileTime(conf.dateParseRegex, conf.dateFmt);
             di.setNearestWindow(CalendarPeriod.of(1, CalendarPeriod.Field.Hour));
+            di.setIndexFile(new File(indexDir, conf.urlPath.replaceAll("[^\\w.-]", "_") + ".index"));
 
             // TODO: These needs to come from files instead
             di.setDataFormat(conf.dataFormat);
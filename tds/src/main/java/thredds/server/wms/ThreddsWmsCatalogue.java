@@ -118,13 +118,6 @@ public class ThreddsWmsCatalogue implements WmsCatalogue {
     private String datasetTitle;
 
     public ThreddsWmsCatalogue(NetcdfDataset ncd, String id) throws IOException, EdalException {
-        // in the TDS, we already have a NetcdfFile object, so let's use it to create
-        // the edal-java related dataset. To do so, we use our own TdsWmsDatasetFactory, which
-        // overrides the getNetcdfDatasetFromLocation method from CdmGridDatasetFactory to take
-        // the NetcdfDataset directly. However, createDataset's signature does not take a NetcdfDataset,
-        // so we need to make it available to TdsWmsDatasetFactory to use.
-        datasetFactory.setNetcdfDataset(ncd);
-
         // set dataset title
         Attribute datasetTitleAttr;
         datasetTitle = ncd.getTitle();
@@ -136,7 +129,16 @@ public class ThreddsWmsCatalogue implements WmsCatalogue {
         }
 
         String location = ncd.getLocation();
-        dataset = datasetFactory.createDataset(id, location);
+        // in the TDS, we already have a NetcdfFile object, so let's use it to create
+        // the edal-java related dataset. To do so, we use our own TdsWmsDatasetFactory, which
+        // overrides the getNetcdfDatasetFromLocation method from CdmGridDatasetFactory to take
+        // the NetcdfDataset directly. However, createDataset's signature does not take a NetcdfDataset,
+        // so we need to make it available to TdsWmsDatasetFactory to use.
+        // The factory is shared, so catalogues for different datasets must not be made at the same time.
+        synchronized (datasetFactory) {
+            datasetFactory.setNetcdfDataset(ncd);
+            dataset = datasetFactory.createDataset(id, location);
+        }
     }
 
     @Override
@@ -28,20 +28,17 @@
 
 package thredds.server.wms;
 
-import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
 import uk.ac.rdg.resc.edal.wms.RequestParams;
 import uk.ac.rdg.resc.edal.wms.WmsCatalogue;
 import uk.ac.rdg.resc.edal.wms.WmsServlet;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import thredds.core.TdsRequestedDataset;
-import ucar.nc2.NetcdfFile;
-import ucar.nc2.dataset.NetcdfDataset;
+import thredds.server.config.ThreddsConfig;
 
 /**
  * An example {@link WmsServlet} which uses the THREDDS catalogue to supply
@@ -49,26 +46,46 @@ import ucar.nc2.dataset.NetcdfDataset;
  * 
  * This is example is well commented and demonstrates how to properly integrate
  * the EDAL WMS into the THREDDS catalogue. It doesn't show how to implement
- * caching, or WMS-specific configuration, but these things are recommended in
- * the final version.
+ * WMS-specific configuration, but this is recommended in the final version.
+ *
+ * The catalogues, and optionally the rendered GetMap images, are kept in a
+ * {@link WmsCatalogueCache}, configured by the WMS section of threddsConfig.xml.
  *
  * @author Guy Griffiths
  */
 @SuppressWarnings("serial")
 public class ThreddsWmsServlet extends WmsServlet {
-    private Map<String, WmsCatalogue> catalogueCache = new HashMap<>();
+    private WmsCatalogueCache catalogueCache;
 
     @Override
-    protected void dispatchWmsRequest(String request, RequestParams params,
-            HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+    public void init(ServletConfig servletConfig) throws ServletException {
+        super.init(servletConfig);
+        int maxCatalogues = ThreddsConfig.getInt("WMS.catalogueCache.maxSize", 100);
+        int catalogueSecs = ThreddsConfig.getSeconds("WMS.catalogueCache.maxAge", 30 * 60);
+        int checkSecs = ThreddsConfig.getSeconds("WMS.catalogueCache.checkInterval", 10);
+        long maxTileBytes = ThreddsConfig.getBytes("WMS.tileCache.maxSize", 0);
+        int tileSecs = ThreddsConfig.getSeconds("WMS.tileCache.maxAge", 10 * 60);
+        catalogueCache = new WmsCatalogueCache(maxCatalogues, catalogueSecs, checkSecs,
+                maxTileBytes, tileSecs);
+    }
+
+    @Override
+    public void destroy() {
+        catalogueCache.invalidateAll();
+        super.destroy();
+    }
+
+    @Override
+    protected void dispatchWmsRequest(final String request, final RequestParams params,
+            final HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
             WmsCatalogue catalogue) throws Exception {
         /*
          * The super implementation of this gets called with a servlet-wide
          * catalogue, which "should" have been injected with the
          * WmsServlet.setCatalogue() method. Since we want one catalogue per
-         * dataset, we never call setCatalogue(), but instead we generate a
-         * WmsCatalogue (or more likely in a final version, retrieve a cached
-         * one) on each request, and pass that to the super implementation.
+         * dataset, we never call setCatalogue(), but instead we retrieve a
+         * cached WmsCatalogue (or generate one) on each request, and pass that
+         * to the super implementation.
          */
 
         /*
@@ -77,41 +94,34 @@ public class ThreddsWmsServlet extends WmsServlet {
         // Look - is setting this to null the right thing to do??
         String removePrefix = null;
         TdsRequestedDataset tdsDataset = new TdsRequestedDataset(httpServletRequest, removePrefix);
-        if(catalogueCache.containsKey(tdsDataset.getPath())) {
-            catalogue = catalogueCache.get(tdsDataset.getPath());
-        } else {
-            NetcdfFile ncf = tdsDataset.getNetcdfFile(httpServletRequest, httpServletResponse,
-                    tdsDataset.getPath());
 
-            NetcdfDataset ncd = new NetcdfDataset(ncf, true);
+        /*
+         * Check resource control on every request, since a cached catalogue
+         * skips opening the dataset. If false, the challenge has been sent.
+         */
+        if (!tdsDataset.isRemote()
+                && !TdsRequestedDataset.resourceControlOk(httpServletRequest, httpServletResponse, tdsDataset.getPath()))
+            return;
 
-            String netcdfFilePath = ncf.getLocation();
-    
+        final WmsCatalogueCache.Entry entry = catalogueCache.acquire(tdsDataset, httpServletRequest, httpServletResponse);
+        try {
             /*
-             * Generate a new catalogue for the given dataset
-             * 
-             * In the full system, we should keep a cache of these
-             * ThreddsWmsCatalogues, but in this example we just create each new one
-             * on the fly.
-             * 
-             * If a feature cache is required on the WMS (a Good Idea), I recommend
-             * a single cache in this servlet which gets passed to each WmsCatalogue
-             * upon construction (i.e. HERE). That's a TDS implementation detail
-             * though, hence not in this example.
+             * Now that we've got a WmsCatalogue, we can pass this request to the
+             * super implementation which will handle things from here.
              */
-            if (netcdfFilePath == null) {
-                throw new EdalLayerNotFoundException(
-                        "The requested dataset is not available on this server");
+            if (catalogueCache.isCachingTiles() && "GetMap".equals(request)) {
+                catalogueCache.getMap(entry, httpServletRequest, httpServletResponse, new WmsCatalogueCache.Renderer() {
+                    public void render(HttpServletResponse res) throws Exception {
+                        ThreddsWmsServlet.super.dispatchWmsRequest(request, params, httpServletRequest, res,
+                                entry.catalogue);
+                    }
+                });
+            } else {
+                super.dispatchWmsRequest(request, params, httpServletRequest, httpServletResponse,
+                        entry.catalogue);
             }
-            catalogue = new ThreddsWmsCatalogue(ncd, tdsDataset.getPath());
-            catalogueCache.put(tdsDataset.getPath(), catalogue);
+        } finally {
+            entry.release();
         }
-
-        /*
-         * Now that we've got a WmsCatalogue, we can pass this request to the
-         * super implementation which will handle things from here.
-         */
-        super.dispatchWmsRequest(request, params, httpServletRequest, httpServletResponse,
-                catalogue);
     }
 }
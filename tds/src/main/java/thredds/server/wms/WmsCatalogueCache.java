@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.wms;
+
+import com.google.common.cache.*;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.core.DatasetManager;
+import thredds.core.TdsRequestedDataset;
+import thredds.server.catalog.FeatureCollectionRef;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
+import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep cache of ThreddsWmsCatalogue, keyed by request path, and optionally of rendered GetMap images.
+ * Using guava cache.
+ * <p>
+ * A catalogue holds its NetcdfDataset open. It is closed when the catalogue has been removed from the cache
+ * and the last request using it has finished, so call release() on every catalogue you acquire().
+ * <p>
+ * A catalogue is stale when its file has been modified, or its feature collection has been updated, since it
+ * was made. This is checked at most once every checkSecs for each catalogue, and stale catalogues are replaced on the
+ * next request. Tiles are keyed by the catalogue that rendered them, so tiles of a stale catalogue are never returned;
+ * they age out of the tile cache.
+ */
+class WmsCatalogueCache {
+  static private final Logger logger = LoggerFactory.getLogger(WmsCatalogueCache.class);
+  static private final AtomicLong generations = new AtomicLong();
+
+  private final Cache<String, Entry> catalogues; // key is the request path
+  private final Cache<String, Tile> tiles;       // null if not caching tiles
+  private final long maxTileBytes;
+  private final long checkMsecs;
+
+  /**
+   * Constructor.
+   *
+   * @param maxCatalogues  maximum number of catalogues (and so open datasets) to keep
+   * @param catalogueSecs  remove a catalogue this long after it was made, even if not stale
+   * @param checkSecs      check if a catalogue is stale at most this often
+   * @param maxTileBytes   maximum total size of the tiles to keep; 0 to not cache tiles
+   * @param tileSecs       remove a tile this long after it was made
+   */
+  WmsCatalogueCache(int maxCatalogues, int catalogueSecs, int checkSecs, long maxTileBytes, int tileSecs) {
+    this.checkMsecs = 1000L * checkSecs;
+    this.catalogues = CacheBuilder.newBuilder()
+            .maximumSize(maxCatalogues)
+            .expireAfterWrite(catalogueSecs, TimeUnit.SECONDS)
+            .recordStats()
+            .removalListener(new RemovalListener<String, Entry>() {
+              public void onRemoval(RemovalNotification<String, Entry> removal) {
+                Entry entry = removal.getValue();
+                if (entry != null) entry.release(); // the reference held by the cache
+              }
+            })
+            .build();
+
+    this.maxTileBytes = maxTileBytes;
+    if (maxTileBytes <= 0) {
+      this.tiles = null;
+    } else {
+      this.tiles = CacheBuilder.newBuilder()
+              .maximumWeight(maxTileBytes)
+              .weigher(new Weigher<String, Tile>() {
+                public int weigh(String key, Tile tile) {
+                  return tile.bytes.length + key.length();
+                }
+              })
+              .expireAfterWrite(tileSecs, TimeUnit.SECONDS)
+              .recordStats()
+              .build();
+    }
+  }
+
+  /**
+   * Get the catalogue for this dataset, making it if needed.
+   * The caller must already have checked resource control for the dataset.
+   *
+   * @return the acquired catalogue; call release() on it when done
+   */
+  Entry acquire(TdsRequestedDataset tdsDataset, HttpServletRequest req, HttpServletResponse res) throws Exception {
+    return acquire(tdsDataset.getPath(), new DatasetLoader(tdsDataset, req, res));
+  }
+
+  /**
+   * Get the catalogue for this path, making it with the loader if needed.
+   *
+   * @return the acquired catalogue; call release() on it when done
+   */
+  Entry acquire(String path, Loader loader) throws Exception {
+    while (true) {
+      Entry entry = get(path, loader);
+      if (isStale(entry, loader)) {
+        catalogues.asMap().remove(path, entry);
+        continue;
+      }
+      if (entry.acquire())
+        return entry;
+      // else it was removed and closed after we got it, try again
+    }
+  }
+
+  private Entry get(final String path, final Loader loader) throws Exception {
+    try {
+      return catalogues.get(path, new Callable<Entry>() {
+        public Entry call() throws Exception {
+          // get the modification time first, so that a change while we are opening makes the entry stale
+          long lastModified = loader.lastModified();
+          return loader.makeEntry(lastModified);
+        }
+      });
+
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwable c = e.getCause();
+      if (c instanceof Exception) throw (Exception) c;
+      throw new RuntimeException(c);
+    }
+  }
+
+  // Finding the modification time may mean checking a feature collection for changes, so do it at most once every
+  // checkMsecs. A new entry was just checked when it was made.
+  private boolean isStale(Entry entry, Loader loader) throws IOException {
+    long now = System.currentTimeMillis();
+    if (now - entry.checked < checkMsecs)
+      return false;
+    entry.checked = now; // other requests use the entry while this one checks
+    return entry.lastModified != loader.lastModified();
+  }
+
+  /**
+   * Makes the catalogue of a dataset, and tells when the dataset has changed.
+   */
+  interface Loader {
+    // changes when the dataset changes
+    long lastModified() throws IOException;
+
+    Entry makeEntry(long lastModified) throws Exception;
+  }
+
+  private static class DatasetLoader implements Loader {
+    private final TdsRequestedDataset tdsDataset;
+    private final HttpServletRequest req;
+    private final HttpServletResponse res;
+
+    DatasetLoader(TdsRequestedDataset tdsDataset, HttpServletRequest req, HttpServletResponse res) {
+      this.tdsDataset = tdsDataset;
+      this.req = req;
+      this.res = res;
+    }
+
+    // the inventory change time of a feature collection, else the file modification time
+    public long lastModified() throws IOException {
+      if (tdsDataset.isRemote())
+        return -1;
+
+      DatasetManager datasetManager = TdsRequestedDataset.getDatasetManager();
+      FeatureCollectionRef fcr = datasetManager.findFeatureCollection(tdsDataset.getPath());
+      if (fcr != null)
+        return datasetManager.openFeatureCollection(fcr).getLastInvChange();
+      return TdsRequestedDataset.getLastModified(tdsDataset.getPath());
+    }
+
+    public Entry makeEntry(long lastModified) throws Exception {
+      String path = tdsDataset.getPath();
+      NetcdfFile ncf = TdsRequestedDataset.getNetcdfFile(req, res, path);
+      if (ncf == null)
+        throw new FileNotFoundException(path);
+      if (ncf.getLocation() == null) {
+        ncf.close();
+        throw new EdalLayerNotFoundException("The requested dataset is not available on this server");
+      }
+
+      NetcdfDataset ncd = null;
+      try {
+        ncd = new NetcdfDataset(ncf, true);
+        return new Entry(new ThreddsWmsCatalogue(ncd, path), ncd, lastModified);
+
+      } catch (Throwable t) {
+        if (ncd != null) ncd.close();
+        else ncf.close();
+        throw t;
+      }
+    }
+  }
+
+  void invalidateAll() {
+    catalogues.invalidateAll();
+    if (tiles != null) tiles.invalidateAll();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+  // tiles
+
+  boolean isCachingTiles() {
+    return tiles != null;
+  }
+
+  /**
+   * Write a GetMap response from the tile cache, or else call the renderer and cache what it writes.
+   *
+   * @param entry    the catalogue rendering the tile
+   * @param req      the GetMap request
+   * @param res      the response
+   * @param renderer writes the response for a cache miss
+   */
+  void getMap(Entry entry, HttpServletRequest req, HttpServletResponse res, Renderer renderer) throws Exception {
+    String key = tileKey(entry, req);
+    Tile tile = tiles.getIfPresent(key);
+    if (tile != null) {
+      res.setContentType(tile.contentType);
+      res.setContentLength(tile.bytes.length);
+      res.getOutputStream().write(tile.bytes);
+      return;
+    }
+
+    TileCapture capture = new TileCapture(res, maxTileBytes);
+    renderer.render(capture);
+
+    byte[] bytes = capture.getBytes();
+    String contentType = capture.getContentType();
+    if (bytes != null && capture.getStatus() == HttpServletResponse.SC_OK
+            && contentType != null && contentType.startsWith("image/"))
+      tiles.put(key, new Tile(contentType, bytes));
+  }
+
+  // the catalogue generation, plus all of the request parameters; WMS parameter names are case insensitive
+  private static String tileKey(Entry entry, HttpServletRequest req) {
+    Map<String, String[]> params = new TreeMap<>();
+    for (Map.Entry<String, String[]> p : req.getParameterMap().entrySet())
+      params.put(p.getKey().toUpperCase(), p.getValue());
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(entry.generation);
+    for (Map.Entry<String, String[]> p : params.entrySet())
+      sb.append('&').append(p.getKey()).append('=').append(Arrays.toString(p.getValue()));
+    return sb.toString();
+  }
+
+  interface Renderer {
+    void render(HttpServletResponse res) throws Exception;
+  }
+
+  private static class Tile {
+    final String contentType;
+    final byte[] bytes;
+
+    Tile(String contentType, byte[] bytes) {
+      this.contentType = contentType;
+      this.bytes = bytes;
+    }
+  }
+
+  // writes through to the response, and keeps a copy of what was written, up to maxBytes
+  private static class TileCapture extends HttpServletResponseWrapper {
+    private final ServletOutputStream out;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    TileCapture(final HttpServletResponse res, final long maxBytes) {
+      super(res);
+      this.out = new ServletOutputStream() {
+        private ServletOutputStream delegate;
+
+        private ServletOutputStream delegate() throws IOException {
+          if (delegate == null) delegate = res.getOutputStream();
+          return delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+          delegate().write(b);
+          keep(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          delegate().write(b, off, len);
+          keep(b, off, len);
+        }
+
+        private void keep(byte[] b, int off, int len) {
+          if (copy == null) return;
+          if (copy.size() + len > maxBytes) copy = null; // too big to cache
+          else copy.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          delegate().flush();
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          throw new UnsupportedOperationException("TileCapture does not support setWriteListener");
+        }
+      };
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      return out;
+    }
+
+    @Override
+    public java.io.PrintWriter getWriter() throws IOException {
+      copy = null; // only binary responses are cached
+      return super.getWriter();
+    }
+
+    byte[] getBytes() {
+      return (copy == null || copy.size() == 0) ? null : copy.toByteArray();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * A cached catalogue, reference counted so that its dataset is closed only when no longer in use.
+   */
+  static class Entry {
+    final ThreddsWmsCatalogue catalogue;
+    private final Closeable dataset;
+    private final long lastModified;
+    private final long generation = generations.incrementAndGet();
+    private final AtomicInteger refs = new AtomicInteger(1); // held by the cache
+    private volatile long checked = System.currentTimeMillis(); // when lastModified was last compared
+
+    /**
+     * Constructor.
+     *
+     * @param catalogue    the catalogue
+     * @param dataset      the dataset it uses, closed when the entry is no longer used
+     * @param lastModified Loader.lastModified() when the dataset was opened
+     */
+    Entry(ThreddsWmsCatalogue catalogue, Closeable dataset, long lastModified) {
+      this.catalogue = catalogue;
+      this.dataset = dataset;
+      this.lastModified = lastModified;
+    }
+
+    // false if already closed
+    private boolean acquire() {
+      while (true) {
+        int r = refs.get();
+        if (r == 0) return false;
+        if (refs.compareAndSet(r, r + 1)) return true;
+      }
+    }
+
+    void release() {
+      if (refs.decrementAndGet() == 0) {
+        try {
+          dataset.close();
+        } catch (IOException e) {
+          String name = (dataset instanceof NetcdfFile) ? ((NetcdfFile) dataset).getLocation() : dataset.toString();
+          logger.warn("Failed to close " + name, e);
+        }
+      }
+    }
+  }
+}
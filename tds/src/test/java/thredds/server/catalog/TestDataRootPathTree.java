@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.server.catalog;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The radix tree of DataRootPathMatcher finds the longest dataRoot path that a request path starts with.
+ */
+public class TestDataRootPathTree {
+
+  // what DataRootPathMatcher used to do
+  static private String longestMatch(List<String> paths, String reqPath) {
+    String result = null;
+    for (String path : paths) {
+      if (reqPath.startsWith(path) && (result == null || path.length() > result.length()))
+        result = path;
+    }
+    return result;
+  }
+
+  @Test
+  public void testMatch() {
+    List<String> paths = Arrays.asList("thredds/dods/test/longer", "thredds/dods/test", "thredds/dods/tester",
+            "thredds/dods/short", "actionable", "myworld", "mynot", "ncmodels", "ncmodels/bzipped");
+    DataRootPathMatcher.PathTree tree = new DataRootPathMatcher.PathTree(paths);
+
+    Assert.assertNull(tree.findLongestMatch("nope"));
+    Assert.assertNull(tree.findLongestMatch(""));
+    Assert.assertEquals("thredds/dods/test", tree.findLongestMatch("thredds/dods/test"));
+    Assert.assertEquals("thredds/dods/test", tree.findLongestMatch("thredds/dods/test/lo"));
+    Assert.assertEquals("thredds/dods/test/longer", tree.findLongestMatch("thredds/dods/test/longer/donger"));
+    Assert.assertEquals("thredds/dods/tester", tree.findLongestMatch("thredds/dods/tester/file.nc"));
+    Assert.assertEquals("myworld", tree.findLongestMatch("myworldly"));
+    Assert.assertNull(tree.findLongestMatch("my"));
+    Assert.assertNull(tree.findLongestMatch("mysnot"));
+    Assert.assertEquals("ncmodels", tree.findLongestMatch("ncmodels/canonical"));
+    Assert.assertEquals("ncmodels/bzipped", tree.findLongestMatch("ncmodels/bzipped/x.nc"));
+
+    Assert.assertNull(new DataRootPathMatcher.PathTree(new ArrayList<>()).findLongestMatch("any"));
+  }
+
+  @Test
+  public void testRandom() {
+    Random random = new Random(17);
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+      paths.add(randomPath(random));
+    DataRootPathMatcher.PathTree tree = new DataRootPathMatcher.PathTree(paths);
+
+    for (int i = 0; i < 20000; i++) {
+      String reqPath = (i % 2 == 0) ? paths.get(random.nextInt(paths.size())) + randomPath(random) : randomPath(random);
+      Assert.assertEquals(reqPath, longestMatch(paths, reqPath), tree.findLongestMatch(reqPath));
+    }
+  }
+
+  // a few segments from a small alphabet, so that many paths share prefixes
+  static private String randomPath(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int nsegs = 1 + random.nextInt(3);
+    for (int i = 0; i < nsegs; i++) {
+      if (i > 0 || random.nextBoolean()) sb.append('/');
+      int len = 1 + random.nextInt(4);
+      for (int j = 0; j < len; j++)
+        sb.append((char) ('a' + random.nextInt(3)));
+    }
+    return sb.toString();
+  }
+}
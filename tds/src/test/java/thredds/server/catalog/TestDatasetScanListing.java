@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.server.catalog;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.client.catalog.Catalog;
+import thredds.client.catalog.Dataset;
+import thredds.client.catalog.Property;
+import thredds.client.catalog.Service;
+import thredds.core.StandardService;
+import thredds.inventory.MFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DatasetScan catalogs are the same with or without the listing cache, and can be read a slice at a time.
+ */
+public class TestDatasetScanListing {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File dataDir;
+
+  @Before
+  public void setup() throws IOException {
+    StandardService ss = StandardService.resolver;
+    Service latest = new Service(ss.getType().toString(), ss.getBase(), ss.getType().toString(), null, null, null, null);
+    StandardService ss2 = StandardService.httpServer;
+    Service httpServer = new Service(ss2.getType().toString(), ss2.getBase(), ss2.getType().toString(), null, null, null, null);
+    DatasetScan.setSpecialServices(latest, httpServer);
+
+    dataDir = tempFolder.newFolder("data");
+    for (int i = 0; i < 10; i++)
+      addFile(dataDir, String.format("file%02d.nc", (i * 7) % 10));
+    addFile(dataDir, "notes.txt");
+    addFile(new File(dataDir, "subdir1"), "a.nc");
+    addFile(new File(dataDir, "subdir0"), "b.nc");
+  }
+
+  @After
+  public void reset() {
+    DatasetScan.setListingCache(null);
+  }
+
+  static private void addFile(File dir, String name) throws IOException {
+    Assert.assertTrue(dir.isDirectory() || dir.mkdirs());
+    Files.write(new File(dir, name).toPath(), name.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static private void setLastModified(File dir, long msecsAgo) throws IOException {
+    Files.setLastModifiedTime(dir.toPath(), FileTime.fromMillis(System.currentTimeMillis() - msecsAgo));
+  }
+
+  private DatasetScan makeDatasetScan(String sort) throws IOException {
+    String xml = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<catalog name='Test' xmlns='http://www.unidata.ucar.edu/namespaces/thredds/InvCatalog/v1.0'>\n" +
+            "  <service name='http' serviceType='HTTPServer' base='/thredds/fileServer/'/>\n" +
+            "  <datasetScan name='scan' ID='scan' path='scan' location='" + dataDir.getPath() + "'>\n" +
+            "    <metadata inherited='true'><serviceName>http</serviceName></metadata>\n" +
+            "    <filter><include wildcard='*.nc'/><include wildcard='subdir*' atomic='false' collection='true'/></filter>\n" +
+            "    <sort><lexigraphicByName increasing='" + sort + "'/></sort>\n" +
+            "  </datasetScan>\n" +
+            "</catalog>\n";
+    File catFile = new File(tempFolder.getRoot(), "catalog" + sort + ".xml");
+    Files.write(catFile.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+    ConfigCatalog cat = TestConfigCatalogBuilder.open("file:" + catFile.getPath());
+    Dataset ds = cat.findDatasetByID("scan");
+    Assert.assertTrue(ds instanceof DatasetScan);
+    return (DatasetScan) ds;
+  }
+
+  static private List<String> names(DatasetScan dss, String path, int start, int count) throws IOException {
+    Catalog cat = dss.makeCatalogForDirectory(path, dss.getParentCatalog().getBaseURI(), start, count).makeCatalog();
+    List<String> result = new ArrayList<>();
+    for (Dataset ds : cat.getDatasets().get(0).getDatasets())
+      result.add(ds.getName());
+    return result;
+  }
+
+  @Test
+  public void testCached() throws IOException {
+    for (String sort : new String[] {"true", "false"}) {
+      DatasetScan dss = makeDatasetScan(sort);
+      DatasetScan.setListingCache(null);
+      List<String> want = names(dss, "scan", 0, -1);
+      Assert.assertEquals(12, want.size());
+      Assert.assertEquals(sort.equals("true") ? "file00.nc" : "file09.nc", want.get(0));
+      Assert.assertEquals("subdir0", want.get(sort.equals("true") ? 10 : 11));
+
+      DatasetScan.setListingCache(new DirectoryListingCache(1000, 60 * 1000));
+      Assert.assertEquals(want, names(dss, "scan", 0, -1));
+      Assert.assertEquals(want, names(dss, "scan", 0, -1));
+      Assert.assertEquals(1, names(dss, "scan/subdir1", 0, -1).size());
+    }
+  }
+
+  @Test
+  public void testPaging() throws IOException {
+    DatasetScan dss = makeDatasetScan("true");
+    List<String> want = names(dss, "scan", 0, -1);
+
+    List<String> pages = new ArrayList<>();
+    for (int start = 0; start < want.size(); start += 5)
+      pages.addAll(names(dss, "scan", start, 5));
+    Assert.assertEquals(want, pages);
+    Assert.assertEquals(0, names(dss, "scan", 20, 5).size());
+
+    Catalog cat = dss.makeCatalogForDirectory("scan", dss.getParentCatalog().getBaseURI(), 5, 5).makeCatalog();
+    Assert.assertTrue(cat.getProperties().contains(new Property("DatasetScan.start", "5")));
+    Assert.assertTrue(cat.getProperties().contains(new Property("DatasetScan.total", "12")));
+  }
+
+  @Test
+  public void testChanges() throws IOException {
+    DirectoryListingCache cache = new DirectoryListingCache(1000, 60 * 1000);
+    Path dir = dataDir.toPath();
+    setLastModified(dataDir, 60 * 1000);
+
+    DirectoryListingCache.Listing listing = cache.get(dir);
+    Assert.assertSame(listing, cache.get(dir));
+
+    // added and removed entries are seen, the others are kept
+    addFile(dataDir, "file05a.nc");
+    Assert.assertTrue(new File(dataDir, "file03.nc").delete());
+    addFile(new File(dataDir, "subdir2"), "c.nc");
+    setLastModified(dataDir, 30 * 1000);
+
+    DirectoryListingCache.Listing updated = cache.get(dir);
+    Assert.assertNotSame(listing, updated);
+    DirectoryListingCache.Listing want = DirectoryListingCache.read(dir);
+    Assert.assertEquals(names(want.getFiles()), names(updated.getFiles()));
+    Assert.assertEquals(names(want.getDirectories()), names(updated.getDirectories()));
+    Assert.assertSame(listing.getFiles().get(0), updated.getFiles().get(0));
+    Assert.assertSame(updated, cache.get(dir));
+
+    // too old
+    cache = new DirectoryListingCache(1000, 0);
+    listing = cache.get(dir);
+    Assert.assertNotSame(listing, cache.get(dir));
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    DirectoryListingCache cache = new DirectoryListingCache(13, 60 * 1000);
+    Path dir = dataDir.toPath();
+    File subdir = new File(dataDir, "subdir0");
+    setLastModified(dataDir, 60 * 1000);
+    setLastModified(subdir, 60 * 1000);
+
+    DirectoryListingCache.Listing listing = cache.get(dir); // 13 entries
+    cache.get(subdir.toPath());
+    Assert.assertNotSame(listing, cache.get(dir));
+  }
+
+  static private List<String> names(List<MFile> mfiles) {
+    List<String> result = new ArrayList<>();
+    for (MFile mfile : mfiles)
+      result.add(mfile.getName());
+    return result;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.radar;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.radarServer2.RadarDataInventory;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateRange;
+import ucar.nc2.time.CalendarPeriod;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Queries of a RadarDataInventory, which are answered from its index of the collection,
+ * and from the directories of recent dates.
+ */
+public class TestRadarDataInventory {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path makeCollection() throws IOException {
+    Path base = tempFolder.newFolder("data").toPath();
+    for (String stn : new String[] {"KFTG", "KABC"}) {
+      for (String day : new String[] {"20150101", "20150102", "20150103"}) {
+        Path dir = Files.createDirectories(base.resolve(stn).resolve(day));
+        for (String hhmm : new String[] {"0005", "0317", "1244", "2359"})
+          Files.createFile(dir.resolve("Level2_" + stn + "_" + day + "_" + hhmm + ".ar2v"));
+        Files.createFile(dir.resolve("README"));
+      }
+    }
+    return base;
+  }
+
+  // so that directories are not listed again just because they were modified recently
+  private void setModifiedInPast(Path base) throws IOException {
+    FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+    for (Path stn : Files.newDirectoryStream(base)) {
+      for (Path day : Files.newDirectoryStream(stn))
+        Files.setLastModifiedTime(day, past);
+      Files.setLastModifiedTime(stn, past);
+    }
+    Files.setLastModifiedTime(base, past);
+  }
+
+  private RadarDataInventory makeInventory(Path base, File indexFile) {
+    RadarDataInventory di = new RadarDataInventory(base, 1);
+    di.addStationDir();
+    di.addDateDir("yyyyMMdd");
+    di.addFileTime("\\d{8}_\\d{4}", "yyyyMMdd_HHmm");
+    di.setIndexFile(indexFile);
+    return di;
+  }
+
+  private List<String> query(RadarDataInventory di, String stn, String start, String end) {
+    RadarDataInventory.Query q = di.newQuery();
+    q.addStation(stn);
+    CalendarDate startDate = CalendarDate.parseISOformat(null, start);
+    CalendarDate endDate = (end == null) ? startDate : CalendarDate.parseISOformat(null, end);
+    q.addDateRange(CalendarDateRange.of(startDate, endDate));
+
+    List<String> result = new ArrayList<>();
+    for (RadarDataInventory.Query.QueryResultItem item : q.results())
+      result.add(item.file.getFileName().toString());
+    Collections.sort(result);
+    return result;
+  }
+
+  @Test
+  public void testQueries() throws IOException {
+    RadarDataInventory di = makeInventory(makeCollection(), null);
+    Assert.assertEquals(Arrays.asList("KABC", "KFTG"), di.listItems(RadarDataInventory.DirType.Station));
+
+    Assert.assertEquals(Arrays.asList("Level2_KFTG_20150101_2359.ar2v", "Level2_KFTG_20150102_0005.ar2v",
+            "Level2_KFTG_20150102_0317.ar2v"),
+            query(di, "KFTG", "2015-01-01T12:45:00Z", "2015-01-02T03:17:00Z"));
+
+    // nearest
+    Assert.assertEquals(Collections.singletonList("Level2_KABC_20150103_1244.ar2v"),
+            query(di, "KABC", "2015-01-03T12:30:00Z", null));
+
+    Assert.assertEquals(Collections.emptyList(), query(di, "KXYZ", "2015-01-01T00:00:00Z", "2015-01-04T00:00:00Z"));
+  }
+
+  @Test
+  public void testSavedIndex() throws Exception {
+    Path base = makeCollection();
+    setModifiedInPast(base);
+    File indexFile = new File(tempFolder.getRoot(), "index/test.index");
+    RadarDataInventory di = makeInventory(base, indexFile);
+    List<String> expected = query(di, "KFTG", "2015-01-01T00:00:00Z", "2015-01-04T00:00:00Z");
+    Assert.assertEquals(12, expected.size());
+    Assert.assertTrue(indexFile.exists());
+    long length = indexFile.length();
+
+    // a new inventory is answered from the saved index, which it brings up to date in the background,
+    // appending just the directory that changed
+    Files.createFile(base.resolve("KFTG/20150102/Level2_KFTG_20150102_1800.ar2v"));
+    RadarDataInventory di2 = makeInventory(base, indexFile);
+    Assert.assertEquals(expected, query(di2, "KFTG", "2015-01-01T00:00:00Z", "2015-01-04T00:00:00Z"));
+    for (int i = 0; i < 100 && indexFile.length() == length; i++)
+      Thread.sleep(100);
+    Assert.assertTrue(indexFile.length() > length);
+    Assert.assertTrue(indexFile.length() < length + 200);
+
+    RadarDataInventory di3 = makeInventory(base, indexFile);
+    List<String> updated = query(di3, "KFTG", "2015-01-01T00:00:00Z", "2015-01-04T00:00:00Z");
+    Assert.assertEquals(13, updated.size());
+    Assert.assertTrue(updated.contains("Level2_KFTG_20150102_1800.ar2v"));
+  }
+
+  @Test
+  public void testRecentFiles() throws IOException {
+    SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");
+    dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    CalendarDate now = CalendarDate.present();
+    String yesterday = dayFormat.format(now.subtract(CalendarPeriod.of(1, CalendarPeriod.Field.Day)).toDate());
+    String today = dayFormat.format(now.toDate());
+    String start = CalendarDate.of(dayFormat.parse(yesterday, new java.text.ParsePosition(0))).toString();
+    String end = now.add(CalendarPeriod.of(1, CalendarPeriod.Field.Day)).toString();
+
+    Path base = tempFolder.newFolder("recent").toPath();
+    Path dir = Files.createDirectories(base.resolve("KFTG").resolve(yesterday));
+    Files.createFile(dir.resolve("Level2_KFTG_" + yesterday + "_0005.ar2v"));
+    RadarDataInventory di = makeInventory(base, null);
+    Assert.assertEquals(1, query(di, "KFTG", start, end).size());
+
+    // a new file, and a new date directory, are found without waiting for the index to be refreshed
+    Files.createFile(dir.resolve("Level2_KFTG_" + yesterday + "_1200.ar2v"));
+    Path todayDir = Files.createDirectories(base.resolve("KFTG").resolve(today));
+    Files.createFile(todayDir.resolve("Level2_KFTG_" + today + "_0000.ar2v"));
+    Assert.assertEquals(Arrays.asList("Level2_KFTG_" + yesterday + "_0005.ar2v", "Level2_KFTG_" + yesterday + "_1200.ar2v",
+            "Level2_KFTG_" + today + "_0000.ar2v"), query(di, "KFTG", start, end));
+  }
+}
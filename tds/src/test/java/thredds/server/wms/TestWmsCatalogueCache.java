@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.server.wms;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counting, staleness and tile keys of WmsCatalogueCache, with a fake dataset in place of a real one.
+ */
+public class TestWmsCatalogueCache {
+
+  static private class FakeDataset implements Closeable {
+    int closed;
+
+    public void close() {
+      closed++;
+    }
+  }
+
+  static private class FakeLoader implements WmsCatalogueCache.Loader {
+    volatile long lastModified = 1;
+    final AtomicInteger checks = new AtomicInteger();
+    final AtomicInteger opens = new AtomicInteger();
+    FakeDataset last;
+
+    public long lastModified() {
+      checks.incrementAndGet();
+      return lastModified;
+    }
+
+    public WmsCatalogueCache.Entry makeEntry(long lastModified) {
+      opens.incrementAndGet();
+      last = new FakeDataset();
+      return new WmsCatalogueCache.Entry(null, last, lastModified);
+    }
+  }
+
+  @Test
+  public void testCloseAfterLastRelease() throws Exception {
+    WmsCatalogueCache cache = new WmsCatalogueCache(10, 60, 60, 0, 60);
+    FakeLoader loader = new FakeLoader();
+
+    WmsCatalogueCache.Entry entry = cache.acquire("path", loader);
+    FakeDataset dataset = loader.last;
+    Assert.assertSame(entry, cache.acquire("path", loader));
+    entry.release();
+
+    // removed while a request is still using it
+    cache.invalidateAll();
+    Assert.assertEquals(0, dataset.closed);
+    entry.release();
+    Assert.assertEquals(1, dataset.closed);
+
+    // the next request gets a new one
+    WmsCatalogueCache.Entry entry2 = cache.acquire("path", loader);
+    Assert.assertNotSame(entry, entry2);
+    Assert.assertEquals(2, loader.opens.get());
+    entry2.release();
+    Assert.assertEquals(0, loader.last.closed);
+  }
+
+  @Test
+  public void testStale() throws Exception {
+    WmsCatalogueCache cache = new WmsCatalogueCache(10, 60, 0, 0, 60);
+    FakeLoader loader = new FakeLoader();
+
+    WmsCatalogueCache.Entry entry = cache.acquire("path", loader);
+    FakeDataset dataset = loader.last;
+    entry.release();
+    Thread.sleep(5);
+    Assert.assertSame(entry, cache.acquire("path", loader));
+    entry.release();
+
+    loader.lastModified = 2;
+    Thread.sleep(5);
+    WmsCatalogueCache.Entry entry2 = cache.acquire("path", loader);
+    Assert.assertNotSame(entry, entry2);
+    Assert.assertEquals(1, dataset.closed);
+    entry2.release();
+  }
+
+  @Test
+  public void testCheckInterval() throws Exception {
+    WmsCatalogueCache cache = new WmsCatalogueCache(10, 60, 60, 0, 60);
+    FakeLoader loader = new FakeLoader();
+
+    WmsCatalogueCache.Entry entry = cache.acquire("path", loader);
+    entry.release();
+    int checks = loader.checks.get();
+
+    // not checked again until the interval has passed, so a change is not seen yet
+    loader.lastModified = 2;
+    for (int i = 0; i < 10; i++)
+      cache.acquire("path", loader).release();
+    Assert.assertEquals(checks, loader.checks.get());
+    Assert.assertEquals(1, loader.opens.get());
+  }
+
+  @Test
+  public void testTileKeys() throws Exception {
+    WmsCatalogueCache cache = new WmsCatalogueCache(10, 60, 0, 1000 * 1000, 60);
+    FakeLoader loader = new FakeLoader();
+    final AtomicInteger renders = new AtomicInteger();
+    WmsCatalogueCache.Renderer renderer = res -> {
+      res.setContentType("image/png");
+      res.getOutputStream().write(("tile" + renders.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+    };
+
+    WmsCatalogueCache.Entry entry = cache.acquire("path", loader);
+    Assert.assertEquals("tile1", getMap(cache, entry, "bbox", "0,0,10,10", renderer));
+    Assert.assertEquals("tile1", getMap(cache, entry, "BBOX", "0,0,10,10", renderer));
+    Assert.assertEquals("tile2", getMap(cache, entry, "bbox", "0,0,20,20", renderer));
+    entry.release();
+
+    // a new generation of the same path renders its own tiles
+    loader.lastModified = 2;
+    Thread.sleep(5);
+    WmsCatalogueCache.Entry entry2 = cache.acquire("path", loader);
+    Assert.assertNotSame(entry, entry2);
+    Assert.assertEquals("tile3", getMap(cache, entry2, "bbox", "0,0,10,10", renderer));
+    Assert.assertEquals("tile3", getMap(cache, entry2, "bbox", "0,0,10,10", renderer));
+    entry2.release();
+  }
+
+  static private String getMap(WmsCatalogueCache cache, WmsCatalogueCache.Entry entry, String param, String value,
+                               WmsCatalogueCache.Renderer renderer) throws Exception {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/wms/path");
+    req.addParameter("REQUEST", "GetMap");
+    req.addParameter(param, value);
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    cache.getMap(entry, req, res, renderer);
+    return res.getContentAsString();
+  }
+}